@@ -0,0 +1,77 @@
+package jsanalyser;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Check of the allocations of the parsing hot path, failing if they exceed a
+ * limit.
+ * <p>
+ * A generated code (see {@link CorpusGenerator}) is parsed by the table
+ * driven lexer a first time, so all its elements are known by the analysers,
+ * then parsed again several times by the same parser. Parsing elements
+ * already seen must not allocate, so the bytes allocated by the thread
+ * during these parses, per parsed char, must stay under the limit. The check
+ * exits with the status 1 otherwise, so it can be run after each change of
+ * the lexer or of the analysers. The legacy engine, kept as the reference
+ * implementation, is not checked.
+ * </p>
+ */
+public class AllocationCheck
+{
+	/**
+	 * Default size of the generated code.
+	 */
+	protected static final String DEFAULT_SIZE = "4M";
+
+	/**
+	 * Default maximum number of bytes allocated per parsed char.
+	 */
+	protected static final double DEFAULT_LIMIT = 0.01;
+
+	/**
+	 * Number of parses of the code to know its elements, then to measure the
+	 * allocations.
+	 */
+	protected static final int NB_PARSES = 10;
+
+	/**
+	 * Parses the code and checks the allocated bytes.
+	 * <p>
+	 * The arguments are the maximum number of bytes allocated per parsed
+	 * char, and the size of the generated code, with an optional K, M or G
+	 * suffix.
+	 * </p>
+	 *
+	 * @param argv The application arguments
+	 */
+	public static void main(String[] argv)
+	{
+		double limit = argv.length > 0 ? Double.parseDouble(argv[0]) : DEFAULT_LIMIT;
+		String size = argv.length > 1 ? argv[1] : DEFAULT_SIZE;
+		char[] chars = new CorpusGenerator(42).generate((int) CorpusGenerator.parseSize(size)).toCharArray();
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		Parser parser = new Parser();
+		parser.reset();
+		// The elements are stored, and the parsing methods compiled
+		for (int i = 0; i < NB_PARSES; i++) {
+			parser.parse(chars, 0, chars.length);
+			parser.resetState();
+		}
+
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < NB_PARSES; i++) {
+			parser.parse(chars, 0, chars.length);
+			parser.resetState();
+		}
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+		double perChar = (double) allocated / NB_PARSES / chars.length;
+		System.out.printf("%d bytes allocated, %.4f bytes/char%n", allocated, perChar);
+		if (perChar > limit) {
+			System.err.println("The parsing allocates more than " + limit + " bytes/char");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package jsanalyser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of synthetic minified-like javascript code, used as input of the
+ * benchmarks.
+ * <p>
+ * The code is a sequence of short statements, without spaces, cut in long
+ * lines, as produced by a minifier. The proportion of statements containing
+ * strings, tokens, regexes, numeric values and comments can be set.
+ * </p>
+ * <p>
+ * The strings, tokens and regexes are drawn from pools, the first elements of
+ * each pool being drawn more often, so the code contains as many repeated
+ * elements as real code. The generation only depends on the seed and on the
+ * settings, the same code is generated on every run and every platform.
+ * </p>
+ */
+public class CorpusGenerator
+{
+	/**
+	 * Number of distinct strings of the generated code.
+	 */
+	protected static final int NB_STRINGS = 4096;
+
+	/**
+	 * Number of distinct tokens of the generated code.
+	 */
+	protected static final int NB_TOKENS = 1024;
+
+	/**
+	 * Number of distinct regexes of the generated code.
+	 */
+	protected static final int NB_REGEXES = 64;
+
+	/**
+	 * Keywords used in the generated statements.
+	 */
+	protected static final String[] KEYWORDS = {
+		"var", "return", "function", "this", "null", "true", "false", "typeof", "new"
+	};
+
+	/**
+	 * Parts the generated regexes are made of.
+	 */
+	protected static final String[] REGEX_PARTS = {
+		"[a-z]+", "\\d*", "\\s", "(?:ab|cd)", "x?", "^", "$", ".", "\\/", "[^\"']"
+	};
+
+	/**
+	 * Random numbers generator, seeded so the code is reproducible.
+	 */
+	protected Random random;
+
+	/**
+	 * Weight of the statements containing strings.
+	 */
+	protected double strings = 0.3;
+
+	/**
+	 * Weight of the statements containing only tokens.
+	 */
+	protected double tokens = 0.4;
+
+	/**
+	 * Weight of the statements containing regexes.
+	 */
+	protected double regexes = 0.05;
+
+	/**
+	 * Weight of the statements containing numeric values.
+	 */
+	protected double numerics = 0.2;
+
+	/**
+	 * Weight of the comments.
+	 */
+	protected double comments = 0.05;
+
+	/**
+	 * Maximum length of the lines of the generated code.
+	 */
+	protected int lineLength = 32000;
+
+	/**
+	 * Pool of strings.
+	 */
+	protected String[] stringPool;
+
+	/**
+	 * Pool of tokens.
+	 */
+	protected String[] tokenPool;
+
+	/**
+	 * Pool of regexes.
+	 */
+	protected String[] regexPool;
+
+	/**
+	 * Construct
+	 *
+	 * @param seed The seed of the generation.
+	 */
+	public CorpusGenerator(long seed)
+	{
+		this.random = new Random(seed);
+		this.stringPool = new String[NB_STRINGS];
+		for (int i = 0; i < NB_STRINGS; i++) {
+			this.stringPool[i] = this.word(1 + this.random.nextInt(24), " abcdefghijklmnopqrstuvwxyz-_.:/\\'");
+		}
+		this.tokenPool = new String[NB_TOKENS];
+		for (int i = 0; i < NB_TOKENS; i++) {
+			// The shortest tokens are the most frequent, as in minified code
+			this.tokenPool[i] = i < KEYWORDS.length ? KEYWORDS[i] : this.word(1 + i / 200, "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_$");
+		}
+		this.regexPool = new String[NB_REGEXES];
+		for (int i = 0; i < NB_REGEXES; i++) {
+			StringBuilder regex = new StringBuilder("/");
+			for (int j = 1 + this.random.nextInt(6); j > 0; j--) {
+				regex.append(this.word(this.random.nextInt(4), "abcdefghijklmnopqrstuvwxyz"));
+				regex.append(REGEX_PARTS[this.random.nextInt(REGEX_PARTS.length)]);
+			}
+			this.regexPool[i] = regex.append(i % 3 == 0 ? "/g" : "/").toString();
+		}
+	}
+
+	/**
+	 * Sets the weight of each kind of statement in the generated code. The
+	 * weights are relative to each other.
+	 *
+	 * @param strings Weight of the statements containing strings.
+	 * @param tokens Weight of the statements containing only tokens.
+	 * @param regexes Weight of the statements containing regexes.
+	 * @param numerics Weight of the statements containing numeric values.
+	 * @param comments Weight of the comments.
+	 * @return this generator.
+	 */
+	public CorpusGenerator setDensities(double strings, double tokens, double regexes, double numerics, double comments)
+	{
+		double total = strings + tokens + regexes + numerics + comments;
+		if (total <= 0) {
+			throw new IllegalArgumentException("At least one density must be positive");
+		}
+
+		this.strings = strings / total;
+		this.tokens = tokens / total;
+		this.regexes = regexes / total;
+		this.numerics = numerics / total;
+		this.comments = comments / total;
+		return this;
+	}
+
+	/**
+	 * @param lineLength The maximum length of the lines of the generated code.
+	 * @return this generator.
+	 */
+	public CorpusGenerator setLineLength(int lineLength)
+	{
+		this.lineLength = lineLength;
+		return this;
+	}
+
+	/**
+	 * Generates code in a string.
+	 *
+	 * @param size The number of chars to generate.
+	 * @return the generated code.
+	 */
+	public String generate(int size)
+	{
+		StringBuilder code = new StringBuilder(size);
+		try {
+			this.generate(code, size);
+		} catch (IOException io) {
+			// Cannot happen with a StringBuilder
+			throw new IllegalStateException(io);
+		}
+
+		return code.toString();
+	}
+
+	/**
+	 * Generates code.
+	 *
+	 * @param out Where the code is written.
+	 * @param size The number of chars to generate.
+	 * @throws IOException if the code cannot be written.
+	 */
+	public void generate(Appendable out, long size) throws IOException
+	{
+		StringBuilder statement = new StringBuilder();
+		long written = 0;
+		int line = 0;
+
+		while (written < size) {
+			statement.setLength(0);
+			this.statement(statement);
+			if (line > 0 && line + statement.length() > this.lineLength) {
+				statement.insert(0, '\n');
+				line = 0;
+			}
+
+			int length = (int) Math.min(statement.length(), size - written);
+			out.append(statement, 0, length);
+			written += length;
+			line += length;
+		}
+	}
+
+	/**
+	 * Appends a random statement.
+	 *
+	 * @param out Where the statement is appended.
+	 */
+	protected void statement(StringBuilder out)
+	{
+		double kind = this.random.nextDouble();
+		String target = this.token();
+
+		if ((kind -= this.strings) < 0) {
+			out.append(target).append('.').append(this.token()).append("(\"").append(this.string()).append("\",").append(this.token()).append(");");
+		}
+		else if ((kind -= this.tokens) < 0) {
+			out.append("var ").append(target).append('=').append(this.token()).append('.').append(this.token()).append('(').append(this.token()).append(");");
+		}
+		else if ((kind -= this.regexes) < 0) {
+			out.append(target).append('=').append(this.regex()).append(".test(").append(this.token()).append(");");
+		}
+		else if ((kind -= this.numerics) < 0) {
+			out.append(target).append('=').append(this.token()).append('+').append(this.numeric()).append(';');
+		}
+		else {
+			out.append("/*").append(this.string()).append("*/");
+		}
+	}
+
+	/**
+	 * @return a string of the pool, without its quotes.
+	 */
+	protected String string()
+	{
+		String string = this.stringPool[this.skewed(NB_STRINGS)];
+		return string.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/**
+	 * @return a token of the pool.
+	 */
+	protected String token()
+	{
+		return this.tokenPool[this.skewed(NB_TOKENS)];
+	}
+
+	/**
+	 * @return a regex of the pool.
+	 */
+	protected String regex()
+	{
+		return this.regexPool[this.skewed(NB_REGEXES)];
+	}
+
+	/**
+	 * @return a random numeric value, integer, decimal or hexadecimal.
+	 */
+	protected String numeric()
+	{
+		switch (this.random.nextInt(4)) {
+			case 0:
+				return "0x" + Integer.toHexString(this.random.nextInt(65536));
+			case 1:
+				return this.random.nextInt(1000) + "." + this.random.nextInt(100);
+			default:
+				return Integer.toString(this.random.nextInt(10000));
+		}
+	}
+
+	/**
+	 * @param bound The size of a pool.
+	 * @return a random index of the pool, the small indexes being the most
+	 * 		frequent.
+	 */
+	protected int skewed(int bound)
+	{
+		double r = this.random.nextDouble();
+		return (int) (r * r * r * bound);
+	}
+
+	/**
+	 * @param length The length of the word.
+	 * @param chars The chars the word is made of.
+	 * @return a random word.
+	 */
+	protected String word(int length, String chars)
+	{
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++) {
+			word[i] = chars.charAt(this.random.nextInt(chars.length()));
+		}
+
+		return new String(word);
+	}
+
+	/**
+	 * Parses a size, in bytes, with an optional K, M or G suffix.
+	 *
+	 * @param size The size to parse, such as "64K" or "500M".
+	 * @return the size in bytes.
+	 */
+	public static long parseSize(String size)
+	{
+		long unit = 1;
+		switch (Character.toUpperCase(size.charAt(size.length() - 1))) {
+			case 'K':
+				unit = 1L << 10;
+				break;
+			case 'M':
+				unit = 1L << 20;
+				break;
+			case 'G':
+				unit = 1L << 30;
+				break;
+		}
+
+		return Long.parseLong(unit == 1 ? size : size.substring(0, size.length() - 1)) * unit;
+	}
+
+	/**
+	 * Entry point of the generator.
+	 * <p>
+	 * Usage: CorpusGenerator size [seed [strings tokens regexes numerics
+	 * comments]] [--out file]. The code is written on stdout if no file is
+	 * given.
+	 * </p>
+	 *
+	 * @param argv The generator arguments
+	 * @throws IOException if the code cannot be written.
+	 */
+	public static void main(String[] argv) throws IOException
+	{
+		String out = null;
+		List<String> args = new ArrayList<String>();
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("--out") && i + 1 < argv.length) {
+				out = argv[++i];
+			}
+			else {
+				args.add(argv[i]);
+			}
+		}
+
+		if (args.size() != 1 && args.size() != 2 && args.size() != 7) {
+			System.err.println("Usage: CorpusGenerator size [seed [strings tokens regexes numerics comments]] [--out file]");
+			System.exit(1);
+		}
+
+		CorpusGenerator generator = new CorpusGenerator(args.size() > 1 ? Long.parseLong(args.get(1)) : 0);
+		if (args.size() == 7) {
+			generator.setDensities(
+				Double.parseDouble(args.get(2)),
+				Double.parseDouble(args.get(3)),
+				Double.parseDouble(args.get(4)),
+				Double.parseDouble(args.get(5)),
+				Double.parseDouble(args.get(6))
+			);
+		}
+
+		try (Writer writer = new BufferedWriter(
+			out == null
+				? new OutputStreamWriter(System.out, StandardCharsets.US_ASCII)
+				: Files.newBufferedWriter(Paths.get(out), StandardCharsets.US_ASCII),
+			1 << 16
+		)) {
+			generator.generate(writer, parseSize(args.get(0)));
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package jsanalyser;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jsanalyser.report.ReportWriter;
+
+/**
+ * Check that the legacy engine and the table driven lexer find the same
+ * elements, failing if they do not.
+ * <p>
+ * The reports of both engines are compared on inputs which once differed,
+ * then on random inputs mixing numeric values, strings, regexes, tokens,
+ * comments and punctuation, with a fixed seed. The table driven lexer and
+ * the UTF-8 lexer also parse each input in small chunks, to check the
+ * elements spanning several chunks. The check exits with the status 1 at
+ * the first difference, so it can be run after each change of one of the
+ * engines.
+ * </p>
+ */
+public class EngineCheck
+{
+	/**
+	 * Inputs once parsed differently by the engines.
+	 */
+	protected static final String[] REGRESSIONS = {
+		"a=15\"s\";",
+		"a=15's';",
+		"a=b./x/.test(c);",
+		"a=b.\"s\";",
+		"a=1..toString();",
+		"a=.5+.5e3;b=0x1Fn;",
+		"a=/\\s*(\\s*,\\s*)*$/;b=/\\d+\\d+x/.test(c);",
+		"a=/\\/path\\//g;b=/\\*x/;"
+	};
+
+	/**
+	 * Fragments the random inputs are made of.
+	 */
+	protected static final String[] FRAGMENTS = {
+		"15", "1.5", ".5", "5.", "1e3", "1E-3", "0x1F", "0b101", "0o17", "017",
+		"1_000", "10n", "0.0", "a", "b2", "$c", "_d", "test", "new", "var",
+		"\"s\"", "'t'", "\"a\\\"b\"", "/x/g", "/\\s+/", "/[/]/", "/\\/y/",
+		".", ",", ";", "=", "+", "-", "*", "/", "(", ")", "{", "}", "[", "]",
+		" ", "\n", "//c\n", "/*c*/", "'", "\"", "\\", "\u00e9", "\u2028"
+	};
+
+	/**
+	 * Number of random inputs.
+	 */
+	protected static final int NB_INPUTS = 10000;
+
+	/**
+	 * Maximum number of fragments of a random input.
+	 */
+	protected static final int MAX_FRAGMENTS = 30;
+
+	/**
+	 * Compares the engines on the inputs.
+	 * <p>
+	 * The optional argument is the seed of the random inputs.
+	 * </p>
+	 *
+	 * @param argv The application arguments
+	 * @throws IOException never, the reports being written in strings.
+	 */
+	public static void main(String[] argv) throws IOException
+	{
+		Random random = new Random(argv.length > 0 ? Long.parseLong(argv[0]) : 42);
+		List<String> inputs = new ArrayList<String>();
+		for (String input : REGRESSIONS) {
+			inputs.add(input);
+		}
+		for (int i = 0; i < NB_INPUTS; i++) {
+			StringBuilder input = new StringBuilder();
+			int nbFragments = 1 + random.nextInt(MAX_FRAGMENTS);
+			for (int f = 0; f < nbFragments; f++) {
+				input.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			// Ends the elements in progress
+			inputs.add(input.append(";\n").toString());
+		}
+
+		for (String input : inputs) {
+			String legacy = report(input, true, false, input.length()),
+				lexer = report(input, false, false, input.length()),
+				chunked = report(input, false, false, 3),
+				utf8 = report(input, false, true, 3);
+			if (!legacy.equals(lexer) || !lexer.equals(chunked) || !lexer.equals(utf8)) {
+				System.err.println("The engines differ on: " + input);
+				System.err.println("Legacy engine:\n" + legacy);
+				System.err.println("Table driven lexer:\n" + lexer);
+				System.err.println("Table driven lexer, in chunks:\n" + chunked);
+				System.err.println("UTF-8 lexer, in chunks:\n" + utf8);
+				System.exit(1);
+			}
+		}
+		System.out.println(inputs.size() + " inputs parsed the same by all the engines");
+	}
+
+	/**
+	 * @param input A code.
+	 * @param legacyEngine true to parse it with the legacy engine.
+	 * @param utf8 true to parse its UTF-8 bytes.
+	 * @param chunkSize The number of chars or bytes given to the parser at
+	 * 		once.
+	 * @return the text report of the code.
+	 * @throws IOException never, the report being written in a string.
+	 */
+	protected static String report(String input, boolean legacyEngine, boolean utf8, int chunkSize) throws IOException
+	{
+		Parser parser = new Parser(legacyEngine);
+		parser.setUtf8(utf8);
+		parser.reset();
+		if (utf8) {
+			byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+			for (int off = 0; off < bytes.length; off += chunkSize) {
+				parser.parse(bytes, off, Math.min(chunkSize, bytes.length - off));
+			}
+		}
+		else {
+			char[] chars = input.toCharArray();
+			for (int off = 0; off < chars.length; off += chunkSize) {
+				parser.parse(chars, off, Math.min(chunkSize, chars.length - off));
+			}
+		}
+
+		StringWriter out = new StringWriter();
+		ReportWriter writer = ReportWriter.create("text", out);
+		writer.write(parser.report("Report", 0));
+		writer.flush();
+		return out.toString();
+	}
+}
@@ -0,0 +1,223 @@
+package jsanalyser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the parsing of a generated code (see {@link CorpusGenerator}).
+ * <p>
+ * Each benchmark parses the whole code once per operation. The "bytes"
+ * secondary result is the number of chars parsed per second, which gives the
+ * throughput in MB/s once divided by 1 000 000. The allocation rate is given
+ * by the gc profiler (-prof gc).
+ * </p>
+ * <p>
+ * The parseX benchmarks give all the chars of the code to a single parsing
+ * method of the legacy engine, to measure the cost of each of them alone.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ParserBenchmark
+{
+	/**
+	 * Size of the generated code, with an optional K, M or G suffix.
+	 */
+	@Param({"1K", "1M", "16M"})
+	public String size;
+
+	/**
+	 * Densities of strings, tokens, regexes, numerics and comments of the
+	 * generated code, separated by commas (see
+	 * {@link CorpusGenerator#setDensities}).
+	 */
+	@Param({"0.3,0.4,0.05,0.2,0.05"})
+	public String densities;
+
+	/**
+	 * If true, the end to end benchmark uses the legacy engine. The parseX
+	 * benchmarks always use it, so they can be run with -p legacyEngine=true
+	 * only.
+	 */
+	@Param({"false", "true"})
+	public boolean legacyEngine;
+
+	/**
+	 * Generated code.
+	 */
+	protected String code;
+
+	/**
+	 * Chars of the generated code.
+	 */
+	protected char[] chars;
+
+	/**
+	 * Counter of the parsed chars, reported as a secondary result.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Bytes
+	{
+		/**
+		 * Number of parsed chars.
+		 */
+		public long bytes;
+
+		/**
+		 * Resets the counter before each iteration.
+		 */
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			this.bytes = 0;
+		}
+	}
+
+	/**
+	 * Generates the code to parse.
+	 */
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		String[] weights = this.densities.split(",");
+		this.code = new CorpusGenerator(42)
+			.setDensities(
+				Double.parseDouble(weights[0]),
+				Double.parseDouble(weights[1]),
+				Double.parseDouble(weights[2]),
+				Double.parseDouble(weights[3]),
+				Double.parseDouble(weights[4])
+			)
+			.generate((int) CorpusGenerator.parseSize(this.size));
+		this.chars = this.code.toCharArray();
+	}
+
+	/**
+	 * Parses the code with a new parser, from the string to the analysers.
+	 *
+	 * @param bytes Counter of the parsed chars.
+	 * @return the parser, so its work is not eliminated.
+	 */
+	@Benchmark
+	public Parser parseCodeChunk(Bytes bytes)
+	{
+		Parser parser = new Parser(this.legacyEngine);
+		parser.reset();
+		parser.parseCodeChunk(this.code);
+		bytes.bytes += this.chars.length;
+		return parser;
+	}
+
+	/**
+	 * @return a new legacy parser, for the parseX benchmarks.
+	 */
+	protected Parser legacyParser()
+	{
+		Parser parser = new Parser(true);
+		parser.reset();
+		return parser;
+	}
+
+	/**
+	 * Gives all the chars to {@link Parser#parseComments}.
+	 *
+	 * @param bytes Counter of the parsed chars.
+	 * @return the parser, so its work is not eliminated.
+	 */
+	@Benchmark
+	public Parser parseComments(Bytes bytes)
+	{
+		Parser parser = this.legacyParser();
+		for (char c : this.chars) {
+			parser.parseComments(c);
+		}
+		bytes.bytes += this.chars.length;
+		return parser;
+	}
+
+	/**
+	 * Gives all the chars to {@link Parser#parseRegex}.
+	 *
+	 * @param bytes Counter of the parsed chars.
+	 * @return the parser, so its work is not eliminated.
+	 */
+	@Benchmark
+	public Parser parseRegex(Bytes bytes)
+	{
+		Parser parser = this.legacyParser();
+		for (char c : this.chars) {
+			parser.parseRegex(c);
+		}
+		bytes.bytes += this.chars.length;
+		return parser;
+	}
+
+	/**
+	 * Gives all the chars to {@link Parser#parseString}.
+	 *
+	 * @param bytes Counter of the parsed chars.
+	 * @return the parser, so its work is not eliminated.
+	 */
+	@Benchmark
+	public Parser parseString(Bytes bytes)
+	{
+		Parser parser = this.legacyParser();
+		for (char c : this.chars) {
+			parser.parseString(c);
+		}
+		bytes.bytes += this.chars.length;
+		return parser;
+	}
+
+	/**
+	 * Gives all the chars to {@link Parser#parseNumeric}.
+	 *
+	 * @param bytes Counter of the parsed chars.
+	 * @return the parser, so its work is not eliminated.
+	 */
+	@Benchmark
+	public Parser parseNumeric(Bytes bytes)
+	{
+		Parser parser = this.legacyParser();
+		for (char c : this.chars) {
+			parser.parseNumeric(c);
+		}
+		bytes.bytes += this.chars.length;
+		return parser;
+	}
+
+	/**
+	 * Gives all the chars to {@link Parser#parseToken}.
+	 *
+	 * @param bytes Counter of the parsed chars.
+	 * @return the parser, so its work is not eliminated.
+	 */
+	@Benchmark
+	public Parser parseToken(Bytes bytes)
+	{
+		Parser parser = this.legacyParser();
+		for (char c : this.chars) {
+			parser.parseToken(c);
+		}
+		bytes.bytes += this.chars.length;
+		return parser;
+	}
+}
@@ -0,0 +1,188 @@
+package jsanalyser.analyser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jsanalyser.report.TextReportWriter;
+
+/**
+ * Benchmarks of the storage of the elements in an analyser and of the
+ * generation of its report.
+ * <p>
+ * The stored elements are drawn from a pool of distinct elements, the first
+ * ones being drawn more often, as the elements of real code. The elements
+ * are stored in the default hash table, or in a radix tree (see
+ * {@link Analyser#setSorted}).
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyserBenchmark
+{
+	/**
+	 * Number of elements stored per operation of the storage benchmarks.
+	 */
+	protected static final int NB_STORED = 1 << 16;
+
+	/**
+	 * Number of distinct elements.
+	 */
+	@Param({"100", "10000", "1000000"})
+	public int distinct;
+
+	/**
+	 * Store of the elements, "table" or "radix".
+	 */
+	@Param({"table", "radix"})
+	public String store;
+
+	/**
+	 * Elements stored by the storage benchmarks, in the order they are
+	 * stored.
+	 */
+	protected String[] sequence;
+
+	/**
+	 * The elements of {@link #sequence}, concatenated.
+	 */
+	protected char[] chars;
+
+	/**
+	 * Index of each element of {@link #sequence} in {@link #chars}.
+	 */
+	protected int[] offsets;
+
+	/**
+	 * Analyser in which the elements are stored.
+	 */
+	protected Analyser analyser;
+
+	/**
+	 * Analyser containing all the distinct elements, for the report
+	 * benchmark.
+	 */
+	protected Analyser full;
+
+	/**
+	 * Writer discarding the reports.
+	 */
+	protected TextReportWriter writer;
+
+	/**
+	 * Generates the elements.
+	 */
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		Random random = new Random(42);
+		String[] pool = new String[this.distinct];
+		for (int i = 0; i < this.distinct; i++) {
+			pool[i] = Integer.toString(i, 36) + "_" + Long.toString(random.nextLong() & 0xffffff, 36);
+		}
+
+		StringBuilder chars = new StringBuilder();
+		this.sequence = new String[NB_STORED];
+		this.offsets = new int[NB_STORED + 1];
+		for (int i = 0; i < NB_STORED; i++) {
+			double r = random.nextDouble();
+			this.sequence[i] = pool[(int) (r * r * r * this.distinct)];
+			this.offsets[i] = chars.length();
+			chars.append(this.sequence[i]);
+		}
+		this.offsets[NB_STORED] = chars.length();
+		this.chars = chars.toString().toCharArray();
+
+		this.full = new StringAnalyser();
+		if (this.store.equals("radix")) {
+			this.full.setSorted();
+		}
+		for (String element : pool) {
+			this.full.incElementOccurences(element);
+		}
+		this.writer = new TextReportWriter(Writer.nullWriter(), true);
+	}
+
+	/**
+	 * Starts each iteration with an empty analyser.
+	 */
+	@Setup(Level.Iteration)
+	public void reset()
+	{
+		this.analyser = new TokenAnalyser();
+		if (this.store.equals("radix")) {
+			this.analyser.setSorted();
+		}
+	}
+
+	/**
+	 * Stores elements given as strings.
+	 *
+	 * @return the analyser, so its work is not eliminated.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NB_STORED)
+	public Analyser incElementOccurencesString()
+	{
+		for (String element : this.sequence) {
+			this.analyser.incElementOccurences(element);
+		}
+		return this.analyser;
+	}
+
+	/**
+	 * Stores elements given as ranges of a char buffer, as the lexer does.
+	 *
+	 * @return the analyser, so its work is not eliminated.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NB_STORED)
+	public Analyser incElementOccurencesChars()
+	{
+		for (int i = 0; i < NB_STORED; i++) {
+			this.analyser.incElementOccurences(this.chars, this.offsets[i], this.offsets[i + 1] - this.offsets[i]);
+		}
+		return this.analyser;
+	}
+
+	/**
+	 * Builds and writes the verbose report of all the distinct elements.
+	 *
+	 * @throws IOException never, the report is discarded.
+	 */
+	@Benchmark
+	public void report() throws IOException
+	{
+		this.writer.writeSection(this.full.report(0));
+	}
+
+	/**
+	 * Builds and writes the report of the 100 most frequent elements.
+	 *
+	 * @throws IOException never, the report is discarded.
+	 */
+	@Benchmark
+	public void reportTop() throws IOException
+	{
+		this.writer.writeSection(this.full.report(100));
+	}
+}
@@ -0,0 +1,164 @@
+package jsanalyser.analyser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the store of the elements duplicated across files, updated
+ * by many threads at once.
+ * <p>
+ * Each thread adds the distinct elements of its files, drawn from a pool
+ * shared by all the files, the first ones being in more files, as the
+ * strings of the chunks of an application. The {@link DuplicateStore} is
+ * compared with a hash map under a global lock.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class DuplicateStoreBenchmark
+{
+	/**
+	 * Number of distinct elements of a file.
+	 */
+	protected static final int NB_ELEMENTS = 1 << 12;
+
+	/**
+	 * Number of distinct elements of all the files.
+	 */
+	@Param({"10000", "1000000"})
+	public int distinct;
+
+	/**
+	 * Pool of the distinct elements.
+	 */
+	protected String[] pool;
+
+	/**
+	 * Store shared by the threads.
+	 */
+	protected DuplicateStore store;
+
+	/**
+	 * Map shared by the threads, under a global lock.
+	 */
+	protected Map<String, int[]> locked;
+
+	/**
+	 * Index of the next file.
+	 */
+	protected AtomicInteger nextFile = new AtomicInteger();
+
+	/**
+	 * Elements of the files of a thread.
+	 */
+	@State(Scope.Thread)
+	public static class File
+	{
+		/**
+		 * Distinct elements of the file.
+		 */
+		protected String[] elements = new String[NB_ELEMENTS];
+
+		/**
+		 * Draws the elements of the files of the thread.
+		 *
+		 * @param benchmark The benchmark, containing the pool.
+		 */
+		@Setup(Level.Iteration)
+		public void draw(DuplicateStoreBenchmark benchmark)
+		{
+			Random random = new Random(benchmark.nextFile.getAndIncrement());
+			for (int i = 0; i < NB_ELEMENTS; i++) {
+				double r = random.nextDouble();
+				this.elements[i] = benchmark.pool[(int) (r * r * r * benchmark.distinct)];
+			}
+		}
+	}
+
+	/**
+	 * Generates the elements.
+	 */
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		Random random = new Random(42);
+		this.pool = new String[this.distinct];
+		for (int i = 0; i < this.distinct; i++) {
+			this.pool[i] = Integer.toString(i, 36) + "_" + Long.toString(random.nextLong() & 0xffffff, 36);
+		}
+	}
+
+	/**
+	 * Starts each iteration with empty stores.
+	 */
+	@Setup(Level.Iteration)
+	public void reset()
+	{
+		this.store = new DuplicateStore("strings", "Strings:", 2, 16);
+		this.locked = new HashMap<String, int[]>();
+	}
+
+	/**
+	 * Adds the elements of a file to the shared store.
+	 *
+	 * @param file The file of the thread.
+	 * @return the store, so its work is not eliminated.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NB_ELEMENTS)
+	public DuplicateStore shared(File file)
+	{
+		// Each invocation adds another file
+		int index = this.nextFile.getAndIncrement();
+		for (String element : file.elements) {
+			this.store.add(element, 1, index);
+		}
+		return this.store;
+	}
+
+	/**
+	 * Adds the elements of a file to the map under a global lock.
+	 *
+	 * @param file The file of the thread.
+	 * @return the map, so its work is not eliminated.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NB_ELEMENTS)
+	public Map<String, int[]> globalLock(File file)
+	{
+		for (String element : file.elements) {
+			synchronized (this.locked) {
+				int[] counts = this.locked.get(element);
+				if (counts == null) {
+					this.locked.put(element, counts = new int[2]);
+				}
+				counts[0]++;
+				counts[1]++;
+			}
+		}
+		return this.locked;
+	}
+}
@@ -1,41 +1,593 @@
 package jsanalyser;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
+
+import jsanalyser.analyser.BacktrackingChecker;
+import jsanalyser.analyser.GzipEstimator;
+import jsanalyser.analyser.PluginAnalyser;
+import jsanalyser.analyser.SpaceSaving;
+import jsanalyser.monitoring.Monitoring;
+import jsanalyser.report.ReportWriter;
 
 /**
  * Entry class of the application
  */
 public class AnalyserApp
 {
+	/**
+	 * Usage of the application, printed with the errors about the arguments.
+	 */
+	protected static final String USAGE = "Usage: ./run [--legacy | --utf8] [--positions] [--chains] [--loops]\n"
+		+ "	[--plugins] [--gzip-savings] [--redos] [--batch [--duplicates] [--cache dir [--cache-size mb]]]\n"
+		+ "	[--parallel [--chunk-size chars] | --pipeline] [--threads n] [--approximate spec] [--radix spec]\n"
+		+ "	[--memory-budget mb] [--snapshot-bytes n] [--snapshot-seconds n] [--deltas]\n"
+		+ "	[--format text|json|csv] [--top n] [--jmx] [--server [--port port]] [file ...]";
+
 	/**
 	 * Entry point of the application
 	 * <p>
-	 * Instanciates a parser and read the code to parse from stdin
+	 * Instanciates a parser and read the code to parse from the files given
+	 * as arguments, or from stdin if no file is given.
 	 * </p>
 	 * <p>
 	 * Once the code is parsed, a report is displayed with the optimisable
 	 * elements of the code.
 	 * </p>
+	 * <p>
+	 * With the --legacy argument, the code is parsed with the legacy per
+	 * character engine instead of the table driven one.
+	 * </p>
+	 * <p>
+	 * With the --utf8 argument, the input is read as UTF-8 and parsed without
+	 * being decoded (see {@link Utf8Lexer}).
+	 * </p>
+	 * <p>
+	 * With the --positions argument, the lines and columns of the occurences
+	 * of each element are reported with the element.
+	 * </p>
+	 * <p>
+	 * With the --chains argument, the member access chains repeated in a
+	 * function body are reported, with the savings of caching them in a
+	 * local variable (see {@link ChainLexer}).
+	 * </p>
+	 * <p>
+	 * With the --loops argument, the code run at each iteration of a loop
+	 * which could run once before it, such as the DOM lookups, the lengths
+	 * read in the conditions, the regexes created and the strings
+	 * concatenated in the loops, is reported with its positions (see
+	 * {@link LoopLexer}).
+	 * </p>
+	 * <p>
+	 * The inputs compressed with gzip or deflate are decompressed while they
+	 * are read. With the --gzip-savings argument, the bytes saved by the
+	 * optimisable strings in the gzipped code are estimated (see
+	 * {@link GzipEstimator}).
+	 * </p>
+	 * <p>
+	 * With the --plugins argument, the analysers registered as
+	 * {@link PluginAnalyser} services in the classpath are added to the
+	 * report.
+	 * </p>
+	 * <p>
+	 * With the --redos argument, the regexes which can backtrack
+	 * catastrophically are reported with their hazard (see
+	 * {@link BacktrackingChecker}).
+	 * </p>
+	 * <p>
+	 * With the --batch argument, the arguments can also be directories or
+	 * glob patterns, the files are parsed in parallel and a report is
+	 * displayed for each file, followed by the aggregate report. The number of
+	 * threads can be set with the --threads argument. With the --duplicates
+	 * argument, only the strings and regexes found in several files are
+	 * reported, with the bytes saved by moving them in a shared chunk.
+	 * </p>
+	 * <p>
+	 * With the --parallel argument, each input is split in chunks parsed in
+	 * parallel, of at least --chunk-size chars.
+	 * </p>
+	 * <p>
+	 * With the --pipeline argument, the reading, the lexing and the storage of
+	 * the elements run in three threads (see {@link PipelinedReader}).
+	 * </p>
+	 * <p>
+	 * With the --approximate argument, the elements are counted with a
+	 * bounded memory and only the most frequent ones are reported (see
+	 * {@link #setApproximate}).
+	 * </p>
+	 * <p>
+	 * With the --radix argument, the elements of the given analysers are
+	 * stored in radix trees, which share their prefixes (see
+	 * {@link #setSorted}).
+	 * </p>
+	 * <p>
+	 * With the --memory-budget argument, the elements counted exactly by each
+	 * analyser are kept in at most the given number of megabytes, the other
+	 * ones being spilled in sorted runs on the disk, merged for the report.
+	 * </p>
+	 * <p>
+	 * With the --snapshot-bytes or --snapshot-seconds arguments, a snapshot
+	 * report is printed every given number of bytes or seconds while the
+	 * input is parsed. With the --deltas argument, the snapshots only contain
+	 * the elements found since the previous one.
+	 * </p>
+	 * <p>
+	 * The reports are written as text, or in JSON or CSV with the --format
+	 * argument. With the --top argument, only the most frequent elements of
+	 * each analyser are reported.
+	 * </p>
+	 * <p>
+	 * In batch mode, with the --cache argument, the elements of each file are
+	 * stored in a cache directory, from which they are loaded by the next runs
+	 * if the file is unchanged. The size of the cache, in megabytes, is set
+	 * with the --cache-size argument.
+	 * </p>
+	 * <p>
+	 * With the --server argument, the application is an analysis service
+	 * listening on the --port port of the loopback interface (see
+	 * {@link AnalyserServer}), which handles --threads requests at once.
+	 * </p>
+	 * <p>
+	 * With the --jmx argument, statistics of the parsing and of the analysers
+	 * are collected and exposed as JMX MBeans (see {@link Monitoring}).
+	 * </p>
 	 *
-	 * @param argv The application arguments, none for the moment
+	 * @param argv The application arguments
 	 */
 	public static void main(String[] argv)
 	{
+		boolean legacyEngine = false,
+			utf8 = false,
+			positions = false,
+			chains = false,
+			loops = false,
+			plugins = false,
+			gzipSavings = false,
+			backtracking = false,
+			batch = false,
+			duplicates = false,
+			parallel = false,
+			pipeline = false,
+			deltas = false,
+			server = false,
+			jmx = false;
+		long snapshotBytes = 0,
+			snapshotSeconds = 0,
+			memoryBudget = 0,
+			cacheSize = ResultCache.DEFAULT_MAX_SIZE;
+		int threads = Runtime.getRuntime().availableProcessors(),
+			chunkSize = ParallelParser.DEFAULT_CHUNK_SIZE,
+			top = 0,
+			port = AnalyserServer.DEFAULT_PORT;
+		String format = "text",
+			cache = null;
+		List<String> files = new ArrayList<String>(),
+			approximations = new ArrayList<String>(),
+			radixTrees = new ArrayList<String>();
+		for (int i = 0; i < argv.length; i++) {
+			String arg = argv[i];
+			if (arg.equals("--legacy")) {
+				legacyEngine = true;
+			}
+			else if (arg.equals("--utf8")) {
+				utf8 = true;
+			}
+			else if (arg.equals("--positions")) {
+				positions = true;
+			}
+			else if (arg.equals("--chains")) {
+				chains = true;
+			}
+			else if (arg.equals("--loops")) {
+				loops = true;
+			}
+			else if (arg.equals("--plugins")) {
+				plugins = true;
+			}
+			else if (arg.equals("--gzip-savings")) {
+				gzipSavings = true;
+			}
+			else if (arg.equals("--redos")) {
+				backtracking = true;
+			}
+			else if (arg.equals("--batch")) {
+				batch = true;
+			}
+			else if (arg.equals("--duplicates")) {
+				duplicates = true;
+			}
+			else if (arg.equals("--threads")) {
+				threads = (int) number(arg, value(argv, ++i), 1, Integer.MAX_VALUE);
+			}
+			else if (arg.equals("--parallel")) {
+				parallel = true;
+			}
+			else if (arg.equals("--pipeline")) {
+				pipeline = true;
+			}
+			else if (arg.equals("--chunk-size")) {
+				chunkSize = (int) number(arg, value(argv, ++i), 1, Integer.MAX_VALUE);
+			}
+			else if (arg.equals("--approximate")) {
+				approximations.add(value(argv, ++i));
+			}
+			else if (arg.equals("--radix")) {
+				radixTrees.add(value(argv, ++i));
+			}
+			else if (arg.equals("--memory-budget")) {
+				memoryBudget = number(arg, value(argv, ++i), 0, Long.MAX_VALUE >> 20) << 20;
+			}
+			else if (arg.equals("--snapshot-bytes")) {
+				snapshotBytes = number(arg, value(argv, ++i), 0, Long.MAX_VALUE);
+			}
+			else if (arg.equals("--snapshot-seconds")) {
+				snapshotSeconds = number(arg, value(argv, ++i), 0, Long.MAX_VALUE / 1000);
+			}
+			else if (arg.equals("--deltas")) {
+				deltas = true;
+			}
+			else if (arg.equals("--format")) {
+				format = value(argv, ++i);
+			}
+			else if (arg.equals("--top")) {
+				top = (int) number(arg, value(argv, ++i), 0, Integer.MAX_VALUE);
+			}
+			else if (arg.equals("--cache")) {
+				cache = value(argv, ++i);
+			}
+			else if (arg.equals("--cache-size")) {
+				cacheSize = number(arg, value(argv, ++i), 1, Long.MAX_VALUE >> 20) << 20;
+			}
+			else if (arg.equals("--server")) {
+				server = true;
+			}
+			else if (arg.equals("--jmx")) {
+				jmx = true;
+			}
+			else if (arg.equals("--port")) {
+				port = (int) number(arg, value(argv, ++i), 1, 65535);
+			}
+			else if (arg.startsWith("--")) {
+				exit("Unknown argument: " + arg);
+			}
+			else {
+				files.add(arg);
+			}
+		}
+
+		if (jmx) {
+			try {
+				Monitoring.enable(analyserNames());
+			} catch (JMException e) {
+				System.err.println("Cannot register the MBeans: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+
+		if (server) {
+			serve(port, threads);
+			return;
+		}
+
+		Parser parser = new Parser(legacyEngine);
 		try {
-			BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-			Parser parser = new Parser();
+			for (String approximation : approximations) {
+				setApproximate(parser, approximation);
+			}
+			for (String radixTree : radixTrees) {
+				setSorted(parser, radixTree);
+			}
+		} catch (IllegalArgumentException e) {
+			exit(e.getMessage());
+		}
+
+		ReportWriter writer = null;
+		try {
+			writer = ReportWriter.create(format, new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+		} catch (IllegalArgumentException e) {
+			exit(e.getMessage());
+		}
+
+		boolean snapshots = snapshotBytes > 0 || snapshotSeconds > 0;
+		if (batch && snapshots) {
+			exit("The snapshots are not available in batch mode");
+		}
+		if (parallel && legacyEngine) {
+			exit("The parallel parsing is not available with the legacy engine");
+		}
+		if (pipeline && (batch || parallel || snapshots || legacyEngine)) {
+			exit("The pipeline is not available with the batch mode, the parallel parsing, the snapshots or the legacy engine");
+		}
+		if (utf8 && (legacyEngine || parallel || pipeline)) {
+			exit("The UTF-8 parsing is not available with the legacy engine, the parallel parsing or the pipeline");
+		}
+		if (positions && (legacyEngine || utf8 || parallel || pipeline)) {
+			exit("The positions are not available with the legacy engine, the UTF-8 parsing, the parallel parsing or the pipeline");
+		}
+		if (chains && (legacyEngine || utf8 || parallel || pipeline)) {
+			exit("The chains are not available with the legacy engine, the UTF-8 parsing, the parallel parsing or the pipeline");
+		}
+		if (loops && (legacyEngine || utf8 || parallel || pipeline)) {
+			exit("The loops are not available with the legacy engine, the UTF-8 parsing, the parallel parsing or the pipeline");
+		}
+		if (plugins && (legacyEngine || utf8 || parallel || pipeline)) {
+			exit("The plugins are not available with the legacy engine, the UTF-8 parsing, the parallel parsing or the pipeline");
+		}
+		if (gzipSavings && (utf8 || pipeline)) {
+			exit("The gzip savings are not available with the UTF-8 parsing or the pipeline");
+		}
+		if (memoryBudget > 0 && gzipSavings) {
+			exit("The memory budget is not available with the gzip savings");
+		}
+		if (!batch && duplicates) {
+			exit("The duplicates are only searched in batch mode");
+		}
+		if (!batch && cache != null) {
+			exit("The cache is only available in batch mode");
+		}
+		parser.setUtf8(utf8);
+		parser.setIndexed(positions);
+		parser.setChains(chains);
+		parser.setLoops(loops);
+		parser.setPlugins(plugins);
+		parser.setGzipSavings(gzipSavings);
+		parser.setMemoryBudget(memoryBudget);
+		parser.setBacktrackingCheck(backtracking);
+
+		try {
+			if (batch) {
+				Batch analyse = new Batch(Batch.expand(files), parser, top);
+				if (cache != null) {
+					analyse.setCache(new ResultCache(Paths.get(cache), cacheSize));
+				}
+				if (duplicates) {
+					analyse.setDuplicates(threads);
+					analyse.writeDuplicates(new ForkJoinPool(threads), writer);
+				}
+				else {
+					analyse.writeReports(new ForkJoinPool(threads), writer);
+				}
+				return;
+			}
+
+			SourceReader reader = new SourceReader(parser);
 
 			parser.reset();
-			String input;
-			while ((input=br.readLine()) != null){
-				parser.parseCodeChunk(input + '\n');
+			if (parallel) {
+				parser.setParallel(new ForkJoinPool(threads), chunkSize);
+				// Decode enough code at once to give some chunks to each thread
+				reader = new SourceReader(parser, (int) Math.min(Integer.MAX_VALUE, 4L * threads * chunkSize));
+			}
+			if (pipeline) {
+				reader = new PipelinedReader(parser);
+			}
+			StreamReporter reporter = null;
+			if (snapshots) {
+				reporter = new StreamReporter(parser, snapshotBytes, snapshotSeconds * 1000, deltas, writer, top);
+				reader.setReporter(reporter);
+				reporter.start();
+			}
+			if (files.isEmpty()) {
+				reader.read(Channels.newChannel(System.in));
+			}
+			for (String file : files) {
+				reader.read(Paths.get(file));
+			}
+
+			if (pipeline) {
+				((PipelinedReader) reader).finish();
+			}
+
+			if (reporter != null) {
+				reporter.end();
+			}
+			else {
+				writer.write(parser.report("Report", top));
+				writer.flush();
 			}
-			parser.printReport();
 
 		} catch (IOException io) {
 			io.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs the analysis service until the application is stopped.
+	 *
+	 * @param port The port the server listens to.
+	 * @param threads The number of requests handled concurrently.
+	 */
+	protected static void serve(int port, int threads)
+	{
+		final AnalyserServer server;
+		try {
+			server = new AnalyserServer(port, threads);
+		} catch (IOException io) {
+			System.err.println("Cannot listen to the port " + port + ": " + io.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		server.start();
+		System.err.println("Listening on http://127.0.0.1:" + port + "/analyse");
+	}
+
+	/**
+	 * Prints an error about the arguments and the usage of the application,
+	 * and exits.
+	 *
+	 * @param error The error.
+	 */
+	protected static void exit(String error)
+	{
+		System.err.println(error);
+		System.err.println(USAGE);
+		System.exit(1);
+	}
+
+	/**
+	 * @param argv The application arguments.
+	 * @param i The index of the value of an argument.
+	 * @return the value, exiting with an error if the argument is the last
+	 * 		one.
+	 */
+	protected static String value(String[] argv, int i)
+	{
+		if (i >= argv.length) {
+			exit("Missing value of " + argv[i - 1]);
+		}
+		return argv[i];
+	}
+
+	/**
+	 * Parses the value of a numeric argument, exiting with an error if it is
+	 * not a number in its range.
+	 *
+	 * @param arg The argument.
+	 * @param value The value of the argument.
+	 * @param min The minimum value.
+	 * @param max The maximum value.
+	 * @return the value.
+	 */
+	protected static long number(String arg, String value, long min, long max)
+	{
+		try {
+			return parseNumber(arg, value, min, max);
+		} catch (IllegalArgumentException e) {
+			exit(e.getMessage());
+			return min;
+		}
+	}
+
+	/**
+	 * Parses a numeric value.
+	 *
+	 * @param name The name of the value, in the error.
+	 * @param value The value.
+	 * @param min The minimum value.
+	 * @param max The maximum value.
+	 * @return the value.
+	 * @throws IllegalArgumentException if the value is not a number in its
+	 * 		range.
+	 */
+	protected static long parseNumber(String name, String value, long min, long max)
+	{
+		long number = min - 1;
+		try {
+			number = Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			// Reported as out of the range
+		}
+		if (number < min || number > max) {
+			throw new IllegalArgumentException("The value of " + name + " must be a number between " + min + " and " + max + ": " + value);
+		}
+		return number;
+	}
+
+	/**
+	 * @return the name of the analyser of each kind of elements, indexed by
+	 * 		the {@link Lexer} K_* constants.
+	 */
+	protected static String[] analyserNames()
+	{
+		String[] names = new String[Lexer.NB_KINDS];
+		names[Lexer.K_NUMERIC] = "numerics";
+		names[Lexer.K_TOKEN] = "tokens";
+		names[Lexer.K_REGEX] = "regexes";
+		names[Lexer.K_STRING] = "strings";
+		return names;
+	}
+
+	/**
+	 * Sets the approximate counting of the parser's analysers.
+	 * <p>
+	 * The specification is either a number of reported elements for all the
+	 * analysers, such as "1000", or a comma separated list of analysers with
+	 * their number of reported elements, such as "tokens=1000,strings=500".
+	 * The analysers are "strings", "numerics", "regexes" and "tokens", and
+	 * the numbers are between 1 and {@link SpaceSaving#MAX_TOP_K}.
+	 * </p>
+	 *
+	 * @param parser The parser to set.
+	 * @param specification The approximate counting specification.
+	 * @throws IllegalArgumentException if the specification is invalid.
+	 */
+	protected static void setApproximate(Parser parser, String specification)
+	{
+		setApproximate(parser, specification, SpaceSaving.MAX_TOP_K);
+	}
+
+	/**
+	 * Sets the approximate counting of the parser's analysers, with a maximum
+	 * number of reported elements (see {@link #setApproximate(Parser, String)}).
+	 *
+	 * @param parser The parser to set.
+	 * @param specification The approximate counting specification.
+	 * @param max The maximum number of reported elements of an analyser.
+	 * @throws IllegalArgumentException if the specification is invalid.
+	 */
+	protected static void setApproximate(Parser parser, String specification, int max)
+	{
+		String[] kinds = analyserNames();
+		for (String item : specification.split(",")) {
+			int equal = item.indexOf('=');
+			int topK = (int) parseNumber("--approximate", item.substring(equal + 1), 1, max);
+			if (equal == -1) {
+				for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+					parser.setApproximate(kind, topK);
+				}
+				continue;
+			}
+
+			int kind = Arrays.asList(kinds).indexOf(item.substring(0, equal));
+			if (kind == -1) {
+				throw new IllegalArgumentException("Unknown analyser: " + item.substring(0, equal));
+			}
+			parser.setApproximate(kind, topK);
+		}
+	}
+
+	/**
+	 * Stores the elements of some of the parser's analysers in radix trees.
+	 * <p>
+	 * The specification is a comma separated list of analysers, such as
+	 * "tokens,strings", or "all" for all the analysers. The analysers are
+	 * "strings", "numerics", "regexes" and "tokens".
+	 * </p>
+	 *
+	 * @param parser The parser to set.
+	 * @param specification The analysers storing their elements in radix
+	 * 		trees.
+	 * @throws IllegalArgumentException if the specification is invalid.
+	 */
+	protected static void setSorted(Parser parser, String specification)
+	{
+		String[] kinds = analyserNames();
+		for (String item : specification.split(",")) {
+			if (item.equals("all")) {
+				for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+					parser.setSorted(kind, true);
+				}
+				continue;
+			}
+
+			int kind = Arrays.asList(kinds).indexOf(item);
+			if (kind == -1) {
+				throw new IllegalArgumentException("Unknown analyser: " + item);
+			}
+			parser.setSorted(kind, true);
 		}
 	}
 }
@@ -0,0 +1,355 @@
+package jsanalyser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import jsanalyser.report.Report;
+import jsanalyser.report.ReportWriter;
+
+/**
+ * Long running analysis service, to analyse many small codes without starting
+ * a JVM for each of them.
+ * <p>
+ * The server listens on the loopback interface only, with the JDK HTTP
+ * server. A request to /analyse gives the code to analyse in its body, and
+ * receives the same report as the one printed by the application. The
+ * parameters are "format", "top", "approximate" and "legacy", as the
+ * application's arguments, the approximate counting reporting at most
+ * {@link #MAX_APPROXIMATE} elements.
+ * </p>
+ * <p>
+ * The server only reads the code it is sent, never the local files, and
+ * only answers the requests whose Host header is a loopback address, so a
+ * web page cannot reach it through a domain name resolving to the loopback
+ * interface (DNS rebinding). The code must be sent as
+ * application/octet-stream, a type a web page cannot send to another origin
+ * without the server's consent.
+ * </p>
+ * <p>
+ * The requests are handled concurrently by a fixed pool of threads. Each one
+ * takes a parser from a pool of parsers having the same settings, which is
+ * cleared after use (see {@link Parser#clear}), so the analysers, the lexer
+ * and the buffers are reused by the next requests. The parsers of at most
+ * {@link #MAX_SETTINGS} different settings are kept.
+ * </p>
+ */
+public class AnalyserServer implements HttpHandler
+{
+	/**
+	 * Default port of the server.
+	 */
+	public static final int DEFAULT_PORT = 8173;
+
+	/**
+	 * Host names of the loopback interface, accepted in the Host header of
+	 * the requests.
+	 */
+	protected static final String[] LOOPBACK_HOSTS = {"127.0.0.1", "[::1]", "localhost"};
+
+	/**
+	 * Content type of the code sent in the requests.
+	 */
+	protected static final String CONTENT_TYPE = "application/octet-stream";
+
+	/**
+	 * Maximum number of elements reported by an analyser counting
+	 * approximately, its counters being allocated for each request.
+	 */
+	public static final int MAX_APPROXIMATE = 1 << 14;
+
+	/**
+	 * Maximum number of different settings whose parsers are kept for the
+	 * next requests.
+	 */
+	protected static final int MAX_SETTINGS = 8;
+
+	/**
+	 * HTTP server receiving the requests.
+	 */
+	protected HttpServer server;
+
+	/**
+	 * Threads handling the requests.
+	 */
+	protected ExecutorService executor;
+
+	/**
+	 * Readers, with their parser, available for the next requests, by
+	 * settings of their parser.
+	 */
+	protected ConcurrentHashMap<String, ConcurrentLinkedQueue<SourceReader>> readers;
+
+	/**
+	 * Construct
+	 *
+	 * @param port The port the server listens to, on the loopback interface.
+	 * @param threads The number of requests handled concurrently.
+	 * @throws IOException if the server cannot listen to the port.
+	 */
+	public AnalyserServer(int port, int threads) throws IOException
+	{
+		this.readers = new ConcurrentHashMap<String, ConcurrentLinkedQueue<SourceReader>>();
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.server.createContext("/analyse", this);
+		this.server.setExecutor(this.executor);
+	}
+
+	/**
+	 * Starts handling the requests, in the background.
+	 */
+	public void start()
+	{
+		this.server.start();
+	}
+
+	/**
+	 * Stops the server, once the requests being handled are answered.
+	 */
+	public void stop()
+	{
+		this.server.stop(0);
+		this.executor.shutdown();
+		try {
+			this.executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Analyses the code of a request and answers with its report.
+	 * <p>
+	 * A request whose Host is not the loopback interface is answered with a
+	 * 403 status, a code which is not sent as application/octet-stream with a
+	 * 415 status, an invalid parameter with a 400 status, a code which cannot
+	 * be read with a 500 status, the response then containing the error.
+	 * </p>
+	 *
+	 * @param exchange The request and its response.
+	 * @throws IOException if the request cannot be read or answered.
+	 */
+	public void handle(HttpExchange exchange) throws IOException
+	{
+		try (exchange) {
+			if (!isLoopback(exchange.getRequestHeaders().getFirst("Host"))) {
+				this.error(exchange, 403, "Only the requests to the loopback interface are answered");
+				return;
+			}
+
+			String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("POST")) {
+				this.error(exchange, 405, "Unsupported method: " + method);
+				return;
+			}
+			String type = exchange.getRequestHeaders().getFirst("Content-Type");
+			if (method.equals("POST") && (type == null || !type.split(";")[0].trim().equalsIgnoreCase(CONTENT_TYPE))) {
+				this.error(exchange, 415, "The code must be sent as " + CONTENT_TYPE);
+				return;
+			}
+
+			Map<String, List<String>> parameters;
+			Parser settings;
+			ReportWriter writer;
+			int top;
+			try {
+				parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+				settings = new Parser(parameters.containsKey("legacy"));
+				for (String approximation : parameters.getOrDefault("approximate", new ArrayList<String>())) {
+					AnalyserApp.setApproximate(settings, approximation, MAX_APPROXIMATE);
+				}
+				top = (int) AnalyserApp.parseNumber("top", last(parameters, "top", "0"), 0, Integer.MAX_VALUE);
+				writer = ReportWriter.create(
+					last(parameters, "format", "text"),
+					new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody()), 1 << 16)
+				);
+			} catch (IllegalArgumentException e) {
+				this.error(exchange, 400, e.getMessage());
+				return;
+			}
+
+			Report report;
+			String key = settingsKey(settings);
+			SourceReader reader = this.acquire(key, settings);
+			try {
+				reader.read(Channels.newChannel(exchange.getRequestBody()));
+				report = reader.parser.report("Report", top);
+			} catch (IOException io) {
+				this.error(exchange, 500, "Cannot read the code: " + io.getMessage());
+				return;
+			} finally {
+				this.release(key, reader);
+			}
+
+			exchange.sendResponseHeaders(200, 0);
+			writer.write(report);
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Takes a reader from the pool, or creates one if none is available.
+	 *
+	 * @param key The key of the parser's settings.
+	 * @param settings The settings of the parser.
+	 * @return a reader whose parser is empty.
+	 */
+	protected SourceReader acquire(String key, Parser settings)
+	{
+		ConcurrentLinkedQueue<SourceReader> pool = this.readers.get(key);
+		SourceReader reader = pool == null ? null : pool.poll();
+		if (reader != null) {
+			return reader;
+		}
+
+		Parser parser = new Parser(settings);
+		parser.reset();
+		return new SourceReader(parser);
+	}
+
+	/**
+	 * Clears the parser of a reader and puts the reader back in the pool,
+	 * unless the parsers of {@link #MAX_SETTINGS} other settings are already
+	 * kept.
+	 *
+	 * @param key The key of the parser's settings.
+	 * @param reader The reader.
+	 */
+	protected void release(String key, SourceReader reader)
+	{
+		ConcurrentLinkedQueue<SourceReader> pool = this.readers.get(key);
+		if (pool == null) {
+			synchronized (this.readers) {
+				if (this.readers.size() >= MAX_SETTINGS) {
+					return;
+				}
+				pool = this.readers.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<SourceReader>());
+			}
+		}
+		reader.parser.clear();
+		pool.offer(reader);
+	}
+
+	/**
+	 * Answers a request with an error.
+	 *
+	 * @param exchange The request and its response.
+	 * @param status The HTTP status.
+	 * @param message The error message.
+	 * @throws IOException if the response cannot be written.
+	 */
+	protected void error(HttpExchange exchange, int status, String message) throws IOException
+	{
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * @param settings A parser.
+	 * @return a key identifying the settings of the parser, the parsers
+	 * 		having the same key being interchangeable.
+	 */
+	protected static String settingsKey(Parser settings)
+	{
+		StringBuilder key = new StringBuilder(settings.legacyEngine ? "legacy" : "lexer");
+		for (int topK : settings.topK) {
+			key.append(',').append(topK);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @param host The Host header of a request, null if there is none.
+	 * @return true if the host is the loopback interface, with or without a
+	 * 		port.
+	 */
+	protected static boolean isLoopback(String host)
+	{
+		if (host == null) {
+			return false;
+		}
+
+		int colon = host.lastIndexOf(':');
+		if (colon > host.lastIndexOf(']')) {
+			host = host.substring(0, colon);
+		}
+		for (String loopback : LOOPBACK_HOSTS) {
+			if (loopback.equalsIgnoreCase(host)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes the parameters of a query string.
+	 *
+	 * @param query The raw query string, null if there is none.
+	 * @return the values of each parameter, in their order.
+	 */
+	protected static Map<String, List<String>> parseQuery(String query)
+	{
+		Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+		if (query == null || query.isEmpty()) {
+			return parameters;
+		}
+
+		for (String parameter : query.split("&")) {
+			int equal = parameter.indexOf('=');
+			String name = decode(equal == -1 ? parameter : parameter.substring(0, equal)),
+				value = equal == -1 ? "" : decode(parameter.substring(equal + 1));
+			parameters.computeIfAbsent(name, k -> new ArrayList<String>()).add(value);
+		}
+		return parameters;
+	}
+
+	/**
+	 * @param component A component of a query string.
+	 * @return the decoded component.
+	 */
+	protected static String decode(String component)
+	{
+		try {
+			return URLDecoder.decode(component, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param parameters The parameters of a request.
+	 * @param name The name of a parameter.
+	 * @param defaultValue The value if the parameter is not given.
+	 * @return the last value of the parameter.
+	 */
+	protected static String last(Map<String, List<String>> parameters, String name, String defaultValue)
+	{
+		List<String> values = parameters.get(name);
+		return values == null ? defaultValue : values.get(values.size() - 1);
+	}
+}
@@ -0,0 +1,403 @@
+package jsanalyser;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+import jsanalyser.analyser.DuplicateStore;
+import jsanalyser.report.Report;
+import jsanalyser.report.ReportWriter;
+import jsanalyser.report.Section;
+
+/**
+ * Batch analyse of many files.
+ * <p>
+ * The files are parsed in parallel in a fork/join pool, each file with its own
+ * {@link Parser}. The report of each file is built by the task which parsed
+ * it, then the parsers are merged two by two up to the parser of the
+ * whole batch, which gives the aggregate report.
+ * </p>
+ * <p>
+ * With a {@link ResultCache}, the elements of the files already analysed by a
+ * previous run are loaded from the cache instead of being parsed.
+ * </p>
+ * <p>
+ * To find the strings and regexes duplicated across the files, the elements
+ * of each file can be added to {@link DuplicateStore}s shared by the threads
+ * instead (see {@link #setDuplicates}).
+ * </p>
+ */
+public class Batch
+{
+	/**
+	 * Extensions of the files searched in the directories to analyse, the
+	 * javascript files, plain or compressed with gzip.
+	 */
+	protected static final String[] EXTENSIONS = {".js", ".js.gz"};
+
+	/**
+	 * Files to analyse.
+	 */
+	protected List<Path> files;
+
+	/**
+	 * Report of each file, same index as {@link #files}.
+	 */
+	protected Report[] reports;
+
+	/**
+	 * Error of each file which could not be read, null for the other files.
+	 */
+	protected String[] errors;
+
+	/**
+	 * Parser whose settings are used to parse the files.
+	 */
+	protected Parser settings;
+
+	/**
+	 * Number of most frequent elements reported by each analyser, 0 to
+	 * report all the elements.
+	 */
+	protected int top;
+
+	/**
+	 * Cache of the elements of the files, null to parse all the files.
+	 */
+	protected ResultCache cache;
+
+	/**
+	 * Stores of the strings and of the regexes of all the files, null if the
+	 * files are reported separately.
+	 */
+	protected DuplicateStore[] duplicates;
+
+	/**
+	 * Construct
+	 *
+	 * @param files The files to analyse.
+	 * @param settings The parser whose settings (engine, approximate
+	 * 		counting) are used to parse the files.
+	 * @param top The number of most frequent elements reported by each
+	 * 		analyser, 0 to report all the elements.
+	 */
+	public Batch(List<Path> files, Parser settings, int top)
+	{
+		this.files = files;
+		this.settings = settings;
+		this.top = top;
+		this.reports = new Report[files.size()];
+		this.errors = new String[files.size()];
+	}
+
+	/**
+	 * Sets the cache from which the elements of the unchanged files are
+	 * loaded. It is not used if the elements are counted approximately.
+	 *
+	 * @param cache The cache, null to parse all the files.
+	 */
+	public void setCache(ResultCache cache)
+	{
+		this.cache = cache;
+	}
+
+	/**
+	 * @param file A file.
+	 * @return true if the file has the extension of a javascript file, plain
+	 * 		or compressed.
+	 */
+	protected static boolean isJavascript(Path file)
+	{
+		String name = file.toString();
+		for (String extension : EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Expands the arguments of the batch mode in a list of files.
+	 * <p>
+	 * An argument can be a file, a directory, in which all the javascript files
+	 * are searched recursively, or a glob pattern (such as "dist/**.js").
+	 * </p>
+	 *
+	 * @param args The arguments to expand.
+	 * @return the files, sorted for each argument.
+	 * @throws IOException if a directory cannot be read.
+	 */
+	public static List<Path> expand(List<String> args) throws IOException
+	{
+		List<Path> files = new ArrayList<Path>();
+		for (String arg : args) {
+			List<Path> found = new ArrayList<Path>();
+			Path path = Paths.get(arg);
+			int globStart = indexOfGlob(arg);
+
+			if (globStart != -1) {
+				int baseEnd = arg.lastIndexOf('/', globStart);
+				Path base = Paths.get(baseEnd == -1 ? "." : arg.substring(0, baseEnd + 1));
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + arg);
+				try (Stream<Path> walk = Files.walk(base)) {
+					for (Path file : (Iterable<Path>) walk::iterator) {
+						Path relative = baseEnd == -1 ? base.relativize(file) : file;
+						if (Files.isRegularFile(file) && matcher.matches(relative)) {
+							found.add(file);
+						}
+					}
+				}
+			}
+			else if (Files.isDirectory(path)) {
+				try (Stream<Path> walk = Files.walk(path)) {
+					for (Path file : (Iterable<Path>) walk::iterator) {
+						if (Files.isRegularFile(file) && isJavascript(file)) {
+							found.add(file);
+						}
+					}
+				}
+			}
+			else {
+				found.add(path);
+			}
+
+			Collections.sort(found);
+			files.addAll(found);
+		}
+
+		return files;
+	}
+
+	/**
+	 * @param arg An argument of the batch mode.
+	 * @return the index of the first glob special char of the argument, -1 if
+	 * 		it is not a glob pattern.
+	 */
+	protected static int indexOfGlob(String arg)
+	{
+		for (int i = 0; i < arg.length(); i++) {
+			char c = arg.charAt(i);
+			if (c == '*' || c == '?' || c == '[' || c == '{') {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Adds the strings and the regexes of the files to stores shared by the
+	 * threads, to report the ones duplicated across the files (see
+	 * {@link #writeDuplicates}). The elements of each file are then neither
+	 * reported nor aggregated.
+	 *
+	 * @param concurrency The number of threads parsing the files.
+	 */
+	public void setDuplicates(int concurrency)
+	{
+		this.duplicates = new DuplicateStore[] {
+			new DuplicateStore("strings", "Strings duplicated across files:", 2, concurrency),
+			new DuplicateStore("regexes", "Regexes duplicated across files:", 0, concurrency)
+		};
+	}
+
+	/**
+	 * Parses all the files.
+	 *
+	 * @param pool The pool in which the files are parsed.
+	 * @return the parser containing the elements of all the files.
+	 */
+	public Parser run(ForkJoinPool pool)
+	{
+		return pool.invoke(new ParseTask(0, this.files.size()));
+	}
+
+	/**
+	 * Writes the report of each file, in the order of the files, followed by
+	 * the aggregate report. The errors are printed on stderr.
+	 *
+	 * @param pool The pool in which the files are parsed.
+	 * @param writer The writer of the reports.
+	 * @throws IOException if the reports cannot be written.
+	 */
+	public void writeReports(ForkJoinPool pool, ReportWriter writer) throws IOException
+	{
+		Parser all = this.run(pool);
+		int nbErrors = 0;
+
+		for (int i = 0; i < this.reports.length; i++) {
+			if (this.errors[i] != null) {
+				System.err.println(this.errors[i]);
+				nbErrors++;
+			}
+			else {
+				writer.write(this.reports[i]);
+			}
+		}
+
+		writer.write(all.report(
+			"Aggregate report (" + (this.reports.length - nbErrors) + " files)",
+			this.top
+		));
+		writer.flush();
+	}
+
+	/**
+	 * Writes the report of the strings and regexes duplicated across the
+	 * files (see {@link #setDuplicates}), whose title gives the total number
+	 * of duplicated bytes. The errors are printed on stderr.
+	 *
+	 * @param pool The pool in which the files are parsed.
+	 * @param writer The writer of the report.
+	 * @throws IOException if the report cannot be written.
+	 */
+	public void writeDuplicates(ForkJoinPool pool, ReportWriter writer) throws IOException
+	{
+		this.run(pool);
+		int nbErrors = 0;
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < this.files.size(); i++) {
+			if (this.errors[i] != null) {
+				System.err.println(this.errors[i]);
+				nbErrors++;
+			}
+			names.add(this.files.get(i).toString());
+		}
+
+		long duplicatedBytes = 0;
+		List<Section> sections = new ArrayList<Section>();
+		for (DuplicateStore store : this.duplicates) {
+			sections.add(store.report(names, this.top));
+			duplicatedBytes += store.getDuplicatedBytes();
+		}
+		writer.write(new Report(
+			"Duplicates across " + (this.files.size() - nbErrors) + " files (" + duplicatedBytes + " duplicated bytes)",
+			sections
+		));
+		writer.flush();
+	}
+
+	/**
+	 * Parses a single file, or loads its elements from the cache, and builds
+	 * its report, or adds its elements to the stores of the duplicates.
+	 *
+	 * @param index The index of the file.
+	 * @return the parser of the file, empty if the file cannot be read.
+	 */
+	protected Parser parseFile(int index)
+	{
+		Path file = this.files.get(index);
+		Parser parser = new Parser(this.settings);
+		String key = null;
+
+		parser.reset();
+		try {
+			if (this.cache != null && ResultCache.isCacheable(parser)) {
+				key = this.cache.key(file, parser);
+			}
+			if (key == null || !this.cache.load(key, parser)) {
+				new SourceReader(parser).read(file);
+				if (key != null) {
+					this.store(key, file, parser);
+				}
+			}
+		} catch (IOException io) {
+			this.errors[index] = "Cannot read " + file + ": " + io.getMessage();
+			parser.reset();
+			return parser;
+		}
+
+		if (this.duplicates != null) {
+			this.duplicates[0].add(parser.getAnalyser(Lexer.K_STRING), index);
+			this.duplicates[1].add(parser.getAnalyser(Lexer.K_REGEX), index);
+			// The elements are only kept in the stores, there is nothing to
+			// merge
+			parser.reset();
+			return parser;
+		}
+
+		this.reports[index] = parser.report("Report for " + file, this.top);
+		return parser;
+	}
+
+	/**
+	 * Stores the elements of a parsed file in the cache. A file which cannot
+	 * be cached is only reported on stderr, its report being complete.
+	 *
+	 * @param key The key of the file's entry.
+	 * @param file The file.
+	 * @param parser The parser of the file.
+	 */
+	protected void store(String key, Path file, Parser parser)
+	{
+		try {
+			this.cache.store(key, parser);
+		} catch (IOException io) {
+			System.err.println("Cannot cache " + file + ": " + io.getMessage());
+		}
+	}
+
+	/**
+	 * Fork/join task parsing a range of the files.
+	 */
+	protected class ParseTask extends RecursiveTask<Parser>
+	{
+		/**
+		 * Index of the first file of the range.
+		 */
+		protected int start;
+
+		/**
+		 * Index following the last file of the range.
+		 */
+		protected int end;
+
+		/**
+		 * Construct
+		 *
+		 * @param start Index of the first file of the range.
+		 * @param end Index following the last file of the range.
+		 */
+		public ParseTask(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Parses the file if the range contains a single one, otherwise
+		 * splits the range in two and merges the parsers of both halves.
+		 *
+		 * @return the parser containing the elements of the range's files.
+		 */
+		protected Parser compute()
+		{
+			if (this.end - this.start <= 1) {
+				if (this.start == this.end) {
+					Parser parser = new Parser(Batch.this.settings);
+					parser.reset();
+					return parser;
+				}
+				return Batch.this.parseFile(this.start);
+			}
+
+			int middle = (this.start + this.end) >>> 1;
+			ParseTask left = new ParseTask(this.start, middle);
+			ParseTask right = new ParseTask(middle, this.end);
+
+			right.fork();
+			Parser parser = left.compute();
+			return parser.merge(right.join());
+		}
+	}
+}
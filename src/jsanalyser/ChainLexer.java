@@ -0,0 +1,462 @@
+package jsanalyser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jsanalyser.analyser.ChainAnalyser;
+import jsanalyser.analyser.LineIndex;
+import jsanalyser.analyser.NumericAnalyser;
+import jsanalyser.analyser.RegexAnalyser;
+import jsanalyser.analyser.StringAnalyser;
+import jsanalyser.analyser.TokenAnalyser;
+
+/**
+ * Table driven lexer which also tracks the member access chains and the
+ * bodies of the functions.
+ * <p>
+ * On top of the elements of the {@link Lexer}, the tokens separated by dots
+ * (such as document.body.style) are joined in chains, and the braces opening
+ * a function body (after the parameters of a function or a method, or after
+ * an arrow) start a new scope, which ends with the matching brace. The
+ * chains of at least {@link ChainAnalyser#MIN_PROPERTIES} property accesses
+ * are counted per scope, and stored in a {@link ChainAnalyser} once they are
+ * repeated in their scope.
+ * </p>
+ * <p>
+ * The last property of a chain is not part of it if it is called, as
+ * caching a method loses its receiver, or assigned, as it can then not be
+ * read from a variable. The chains following another expression, such as
+ * the result of a call, are ignored.
+ * </p>
+ * <p>
+ * The punctuation of the code is only seen in this lexer's parsing loop, so
+ * the plain lexer is not slowed down when the chains are not tracked. Unlike
+ * the plain lexer, this lexer cannot parse chunks of a code in parallel.
+ * </p>
+ */
+public class ChainLexer extends Lexer
+{
+	/**
+	 * The chain is not followed yet.
+	 */
+	protected static final int F_NONE = 0;
+
+	/**
+	 * The chain is followed by a '='.
+	 */
+	protected static final int F_EQUAL = 1;
+
+	/**
+	 * The chain is followed by an operator which is an assignment if it is
+	 * followed by a '=' or doubled (++ and --).
+	 */
+	protected static final int F_OPERATOR = 2;
+
+	/**
+	 * The tokens followed by parenthesis, such as in "if (a) {", after which
+	 * a brace opens a block and not a method's body.
+	 */
+	protected static final String[] BLOCK_KEYWORDS = {"catch", "for", "if", "switch", "while", "with"};
+
+	/**
+	 * A scope of the chains: a function body or the global code.
+	 */
+	protected static class Scope
+	{
+		/**
+		 * Description of the scope in the elements, such as
+		 * "function at 12:5".
+		 */
+		protected String name;
+
+		/**
+		 * Number of occurences of each chain in the scope.
+		 */
+		protected Map<String, Integer> chains = new HashMap<String, Integer>();
+
+		/**
+		 * Construct
+		 *
+		 * @param name The description of the scope.
+		 */
+		protected Scope(String name)
+		{
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Analyser receiving the repeated chains.
+	 */
+	protected ChainAnalyser chains;
+
+	/**
+	 * Lines of the parsed code, to name the scopes after their position.
+	 */
+	protected LineIndex lines;
+
+	/**
+	 * Scope of the global code.
+	 */
+	protected Scope global;
+
+	/**
+	 * For each brace currently open, the scope it opened, or null if it opens
+	 * a block or an object.
+	 */
+	protected List<Scope> braces = new ArrayList<Scope>();
+
+	/**
+	 * Tokens preceding each parenthesis currently open, null if the
+	 * parenthesis does not follow a token.
+	 */
+	protected List<String> parentheses = new ArrayList<String>();
+
+	/**
+	 * Current chain, empty if there is none.
+	 */
+	protected StringBuilder chain = new StringBuilder();
+
+	/**
+	 * Length of the current chain without its last property.
+	 */
+	protected int lastDot;
+
+	/**
+	 * If true, the current chain is the access to the members of another
+	 * expression, and is ignored.
+	 */
+	protected boolean detached;
+
+	/**
+	 * If true, a '.' was seen after the current chain, which continues with
+	 * the next token.
+	 */
+	protected boolean member;
+
+	/**
+	 * If the current chain ended, what follows it, one of the F_* constants.
+	 */
+	protected int follower;
+
+	/**
+	 * Operator following the current chain, if the follower is
+	 * {@link #F_OPERATOR}.
+	 */
+	protected char operator;
+
+	/**
+	 * Last token, if it was followed by no code but white spaces.
+	 */
+	protected String lastToken;
+
+	/**
+	 * Last code char which is not a white space, 0 if it was followed by a
+	 * token.
+	 */
+	protected char lastChar;
+
+	/**
+	 * If true, the last code chars were an arrow ("=>"), after which a brace
+	 * opens a function body.
+	 */
+	protected boolean arrow;
+
+	/**
+	 * Token preceding the parenthesis closed by the last code char, if it
+	 * was a ')' closing the parameters of a function or a method, after which
+	 * a brace opens a function body.
+	 */
+	protected String closedParenthesis;
+
+	/**
+	 * Construct
+	 *
+	 * @param strings Analyser receiving the detected strings.
+	 * @param numerics Analyser receiving the detected numeric values.
+	 * @param regexes Analyser receiving the detected regexes.
+	 * @param tokens Analyser receiving the detected tokens.
+	 * @param chains Analyser receiving the repeated chains, null if they are
+	 * 		not tracked.
+	 * @param lines Lines of the parsed code, filled before each chunk is
+	 * 		parsed.
+	 */
+	public ChainLexer(StringAnalyser strings, NumericAnalyser numerics, RegexAnalyser regexes, TokenAnalyser tokens, ChainAnalyser chains, LineIndex lines)
+	{
+		super(strings, numerics, regexes, tokens);
+		this.chains = chains;
+		this.lines = lines;
+		this.resetChains();
+	}
+
+	/**
+	 * Sets the analyser receiving the next repeated chains.
+	 *
+	 * @param chains Analyser receiving the repeated chains.
+	 */
+	public void setChains(ChainAnalyser chains)
+	{
+		this.chains = chains;
+	}
+
+	/**
+	 * Resets the state of the lexer, so the next char is parsed as code in
+	 * the global scope.
+	 */
+	public void resetState()
+	{
+		super.resetState();
+		this.resetChains();
+	}
+
+	/**
+	 * Parses a chunk of code, as {@link Lexer#parse}, the code chars being
+	 * given to {@link #code}.
+	 *
+	 * @param buf The buffer containing the chunk of code to parse.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 */
+	public void parse(final char[] buf, final int off, final int len)
+	{
+		int end = off + len,
+			state = this.state;
+
+		this.chunkStart = off;
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			this.starts[kind] = this.ends[kind] = off;
+		}
+
+		for (int i = off; i < end; i++) {
+			final char c = buf[i];
+			final int transition = state * NB_CLASSES + (c < 128 ? CHAR_CLASSES[c] : C_OTHER);
+			final int actions = ACTIONS[transition];
+			final int previous = state;
+
+			state = TRANSITIONS[transition];
+			if (actions != 0) {
+				this.run(actions, buf, i);
+				if ((actions & A_SKIP) != 0) {
+					i = this.skip(state, buf, i + 1, end) - 1;
+				}
+			}
+			// The '/' ending a block comment is not code, a '.' which can start
+			// a numeric value is
+			if ((state == S_CODE || state == S_OPERAND || state == S_DOT) && previous != S_BLOCK_COMMENT_STAR) {
+				this.code(c, i);
+			}
+		}
+		this.state = state;
+
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			if ((this.elementsInProgress & (1 << kind)) != 0) {
+				this.copy(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+			}
+		}
+	}
+
+	/**
+	 * Stores an element, and adds the tokens to the chains.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 */
+	protected void store(final int kind, final char[] buf, final int off, final int len)
+	{
+		super.store(kind, buf, off, len);
+		if (kind == K_TOKEN) {
+			this.token(new String(buf, off, len));
+		}
+	}
+
+	/**
+	 * Continues the current chain with a token if it follows a '.', otherwise
+	 * ends the current chain and starts a new one.
+	 *
+	 * @param token The token.
+	 */
+	protected void token(String token)
+	{
+		if (this.member) {
+			this.member = false;
+			if (!this.detached) {
+				this.lastDot = this.chain.length();
+				this.chain.append('.').append(token);
+			}
+		}
+		else {
+			this.endChain(this.follower != F_EQUAL);
+			this.chain.append(token);
+		}
+		this.lastToken = token;
+		this.lastChar = 0;
+		this.arrow = false;
+		this.closedParenthesis = null;
+	}
+
+	/**
+	 * Handles a char of the code, out of the elements.
+	 *
+	 * @param c The char.
+	 * @param i The index of the char in the parsed buffer.
+	 */
+	protected void code(final char c, final int i)
+	{
+		if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+			return;
+		}
+
+		if (c == '.') {
+			if (this.chain.length() == 0 && !this.detached || this.member || this.follower != F_NONE) {
+				// The members of a call, an index or a literal
+				this.endChain(true);
+				this.detached = true;
+			}
+			this.member = true;
+		}
+		else {
+			this.follow(c);
+		}
+
+		String closedParenthesis = null;
+		if (c == '{') {
+			Scope scope = null;
+			if (this.arrow || this.closedParenthesis != null) {
+				scope = new Scope("function at " + this.lines.position(this.position + i - this.chunkStart));
+			}
+			this.braces.add(scope);
+		}
+		else if (c == '}' && !this.braces.isEmpty()) {
+			this.braces.remove(this.braces.size() - 1);
+		}
+		else if (c == '(') {
+			this.parentheses.add(this.lastToken);
+		}
+		else if (c == ')' && !this.parentheses.isEmpty()) {
+			closedParenthesis = this.parentheses.remove(this.parentheses.size() - 1);
+			if (closedParenthesis != null && Arrays.binarySearch(BLOCK_KEYWORDS, closedParenthesis) >= 0) {
+				closedParenthesis = null;
+			}
+		}
+
+		this.arrow = c == '>' && this.lastChar == '=';
+		this.closedParenthesis = closedParenthesis;
+		this.lastChar = c;
+		this.lastToken = null;
+	}
+
+	/**
+	 * Ends the current chain on the code char following it, if it cannot be
+	 * continued.
+	 *
+	 * @param c The code char, which is not a '.' or a white space.
+	 */
+	protected void follow(final char c)
+	{
+		if (this.member) {
+			// A '.' followed by anything but a token
+			this.endChain(true);
+			return;
+		}
+
+		switch (this.follower) {
+			case F_NONE:
+				if (c == '=') {
+					this.follower = F_EQUAL;
+				}
+				else if ("+-*/%&|^".indexOf(c) != -1) {
+					this.follower = F_OPERATOR;
+					this.operator = c;
+				}
+				else {
+					this.endChain(c != '(');
+				}
+				break;
+			case F_EQUAL:
+				this.endChain(c == '=');
+				break;
+			default:
+				this.endChain(c != '=' && !(c == this.operator && (c == '+' || c == '-')));
+		}
+	}
+
+	/**
+	 * Ends the current chain, and counts it in its scope.
+	 *
+	 * @param read If false, the last property of the chain is called or
+	 * 		assigned, so is not part of the counted chain.
+	 */
+	protected void endChain(boolean read)
+	{
+		if (this.chain.length() > 0 && !this.detached) {
+			if (!read) {
+				this.chain.setLength(this.lastDot);
+			}
+			this.count(this.chain.toString());
+		}
+
+		this.chain.setLength(0);
+		this.lastDot = 0;
+		this.detached = this.member = false;
+		this.follower = F_NONE;
+	}
+
+	/**
+	 * Counts a chain in the innermost scope, and stores it in the analyser
+	 * once it is repeated in this scope.
+	 *
+	 * @param chain The chain.
+	 */
+	protected void count(String chain)
+	{
+		if (this.chains == null) {
+			return;
+		}
+
+		int nbProperties = 0;
+		for (int i = 0; i < chain.length(); i++) {
+			if (chain.charAt(i) == '.') {
+				nbProperties++;
+			}
+		}
+		if (nbProperties < ChainAnalyser.MIN_PROPERTIES) {
+			return;
+		}
+
+		Scope scope = this.global;
+		for (int i = this.braces.size() - 1; i >= 0; i--) {
+			if (this.braces.get(i) != null) {
+				scope = this.braces.get(i);
+				break;
+			}
+		}
+
+		int count = scope.chains.merge(chain, 1, Integer::sum);
+		if (count > 1) {
+			// The first occurence is counted when the chain is repeated
+			this.chains.addChainOccurences(chain, scope.name, count == 2 ? 2 : 1);
+		}
+	}
+
+	/**
+	 * Resets the chains and the scopes.
+	 */
+	protected void resetChains()
+	{
+		this.global = new Scope("global code");
+		this.braces.clear();
+		this.parentheses.clear();
+		this.chain.setLength(0);
+		this.lastDot = 0;
+		this.detached = this.member = false;
+		this.follower = F_NONE;
+		this.lastToken = this.closedParenthesis = null;
+		this.lastChar = 0;
+		this.arrow = false;
+	}
+}
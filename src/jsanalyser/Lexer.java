@@ -0,0 +1,1268 @@
+package jsanalyser;
+
+import jsanalyser.analyser.Analyser;
+import jsanalyser.analyser.ElementBatch;
+import jsanalyser.analyser.StringAnalyser;
+import jsanalyser.analyser.RegexAnalyser;
+import jsanalyser.analyser.TokenAnalyser;
+import jsanalyser.analyser.NumericAnalyser;
+
+/**
+ * Table driven lexing engine.
+ * <p>
+ * This class produces the same elements as the per character state machine of
+ * the {@link Parser}, but instead of testing the current char against regular
+ * expressions and combining state bits, each char is mapped to a class through
+ * a precomputed table, and the couple (state, char class) gives, through a
+ * transition table, the next state and the actions to run on the elements
+ * being parsed.
+ * </p>
+ * <p>
+ * The states of the legacy parser which always lead to the same elements have
+ * been merged, which gives a machine of 38 states over 19 char classes.
+ * </p>
+ * <p>
+ * The numeric values follow the grammar of ECMAScript: decimal values with a
+ * fraction and an exponent, or starting with a '.', hexadecimal, octal and
+ * binary values, numeric separators and BigInt suffixes. A '.' in the code
+ * starts a numeric value, which is dropped if the '.' is not followed by a
+ * digit.
+ * </p>
+ * <p>
+ * In the bodies of comments, strings and regexes, only one or two chars can
+ * change the state, so the transitions entering those states also skip the
+ * chars up to the next one of them, found by a {@link SpanScanner}, the
+ * skipped chars being appended at once to the current element.
+ * </p>
+ */
+public class Lexer
+{
+	/* CHAR CLASSES */
+
+	/**
+	 * Char class of '/'.
+	 */
+	protected static final int C_SLASH = 0;
+
+	/**
+	 * Char class of '*'.
+	 */
+	protected static final int C_STAR = 1;
+
+	/**
+	 * Char class of '\'.
+	 */
+	protected static final int C_BACKSLASH = 2;
+
+	/**
+	 * Char class of '"'.
+	 */
+	protected static final int C_DOUBLE_QUOTE = 3;
+
+	/**
+	 * Char class of '\''.
+	 */
+	protected static final int C_SIMPLE_QUOTE = 4;
+
+	/**
+	 * Char class of the line endings ('\n' and '\r').
+	 */
+	protected static final int C_NEWLINE = 5;
+
+	/**
+	 * Char class of ')'.
+	 */
+	protected static final int C_CLOSING_PARENTHESIS = 6;
+
+	/**
+	 * Char class of '.'.
+	 */
+	protected static final int C_DOT = 7;
+
+	/**
+	 * Char class of the digits.
+	 */
+	protected static final int C_DIGIT = 8;
+
+	/**
+	 * Char class of the letters which cannot continue a numeric value. The
+	 * letters are the only chars allowed in the options of a regex.
+	 */
+	protected static final int C_LETTER = 9;
+
+	/**
+	 * Char class of '$', the other char allowed in a token with '_'.
+	 */
+	protected static final int C_TOKEN = 10;
+
+	/**
+	 * Char class of any other char, including all the non ASCII chars.
+	 */
+	protected static final int C_OTHER = 11;
+
+	/**
+	 * Char class of the letters of an exponent ('e' and 'E'), which are also
+	 * hexadecimal digits.
+	 */
+	protected static final int C_EXPONENT = 12;
+
+	/**
+	 * Char class of the other letters which are hexadecimal digits.
+	 */
+	protected static final int C_HEX = 13;
+
+	/**
+	 * Char class of the letters of the binary prefix ('b' and 'B'), which are
+	 * also hexadecimal digits.
+	 */
+	protected static final int C_BINARY = 14;
+
+	/**
+	 * Char class of the letters of the hexadecimal and octal prefixes ('x',
+	 * 'X', 'o' and 'O').
+	 */
+	protected static final int C_RADIX = 15;
+
+	/**
+	 * Char class of the BigInt suffix ('n').
+	 */
+	protected static final int C_BIGINT = 16;
+
+	/**
+	 * Char class of the signs of an exponent ('+' and '-').
+	 */
+	protected static final int C_SIGN = 17;
+
+	/**
+	 * Char class of '_', the numeric separator.
+	 */
+	protected static final int C_UNDERSCORE = 18;
+
+	/**
+	 * Number of char classes, width of the transition table.
+	 */
+	protected static final int NB_CLASSES = 19;
+
+	/* STATES */
+
+	/**
+	 * State in the code, where a '/' starts a regex or a comment.
+	 */
+	protected static final int S_CODE = 0;
+
+	/**
+	 * State in the code after a closing parenthesis or a block comment, where
+	 * a '/' is a division or starts a comment.
+	 */
+	protected static final int S_OPERAND = 1;
+
+	/**
+	 * State on a '/' which can only be a division or the beginning of a
+	 * comment.
+	 */
+	protected static final int S_SLASH = 2;
+
+	/**
+	 * State on a '/' which can be the beginning of a regex or of a comment.
+	 */
+	protected static final int S_REGEX_SLASH = 3;
+
+	/**
+	 * State on an escaped char right after a '/' which can be the beginning of
+	 * a regex.
+	 */
+	protected static final int S_REGEX_SLASH_ESCAPED = 4;
+
+	/**
+	 * State in the body of a regex.
+	 */
+	protected static final int S_REGEX = 5;
+
+	/**
+	 * State on an escaped char in the body of a regex.
+	 */
+	protected static final int S_REGEX_ESCAPED = 6;
+
+	/**
+	 * State in the options of a regex (after the ending '/').
+	 */
+	protected static final int S_REGEX_END = 7;
+
+	/**
+	 * State on an escaped char in the options of a regex.
+	 */
+	protected static final int S_REGEX_END_ESCAPED = 8;
+
+	/**
+	 * State in an inline comment.
+	 */
+	protected static final int S_INLINE_COMMENT = 9;
+
+	/**
+	 * State in a block comment.
+	 */
+	protected static final int S_BLOCK_COMMENT = 10;
+
+	/**
+	 * State on a '*' in a block comment, which can be the end of the comment.
+	 */
+	protected static final int S_BLOCK_COMMENT_STAR = 11;
+
+	/**
+	 * State in the integer part of a decimal numeric value, or on the 0 of a
+	 * prefix.
+	 */
+	protected static final int S_NUMERIC = 12;
+
+	/**
+	 * State in a token.
+	 */
+	protected static final int S_TOKEN = 13;
+
+	/**
+	 * State in a numeric value started in a token. The token is still being
+	 * parsed and continues after the numeric value if it is followed by a
+	 * letter.
+	 */
+	protected static final int S_TOKEN_NUMERIC = 14;
+
+	/**
+	 * State on a '.' which starts a numeric value if it is followed by a
+	 * digit.
+	 */
+	protected static final int S_DOT = 15;
+
+	/**
+	 * State in the fraction of a decimal numeric value.
+	 */
+	protected static final int S_FRACTION = 16;
+
+	/**
+	 * State on the 'e' of an exponent.
+	 */
+	protected static final int S_EXPONENT_MARK = 17;
+
+	/**
+	 * State on the sign of an exponent.
+	 */
+	protected static final int S_EXPONENT_SIGN = 18;
+
+	/**
+	 * State in the digits of an exponent.
+	 */
+	protected static final int S_EXPONENT = 19;
+
+	/**
+	 * State in a hexadecimal, octal or binary numeric value.
+	 */
+	protected static final int S_RADIX = 20;
+
+	/**
+	 * State on the suffix of a BigInt.
+	 */
+	protected static final int S_BIGINT = 21;
+
+	/**
+	 * First of the 16 states in a string. The states in a string are indexed
+	 * by the string's delimiter, if the current char is escaped and the
+	 * elements whose end is pending until the string ends (see
+	 * {@link #stringState}).
+	 */
+	protected static final int S_STRING = 22;
+
+	/**
+	 * Number of states, height of the transition table.
+	 */
+	protected static final int NB_STATES = 38;
+
+	/* ELEMENTS KINDS */
+
+	/**
+	 * Kind of the numeric values.
+	 */
+	public static final int K_NUMERIC = 0;
+
+	/**
+	 * Kind of the tokens.
+	 */
+	public static final int K_TOKEN = 1;
+
+	/**
+	 * Kind of the regexes.
+	 */
+	public static final int K_REGEX = 2;
+
+	/**
+	 * Kind of the strings.
+	 */
+	public static final int K_STRING = 3;
+
+	/**
+	 * Number of elements kinds.
+	 */
+	public static final int NB_KINDS = 4;
+
+	/* ACTIONS */
+
+	/**
+	 * Action bit: store the current numeric value in its analyser.
+	 */
+	protected static final int A_EMIT_NUMERIC = 1 << K_NUMERIC;
+
+	/**
+	 * Action bit: store the current token in its analyser.
+	 */
+	protected static final int A_EMIT_TOKEN = 1 << K_TOKEN;
+
+	/**
+	 * Action bit: store the current regex in its analyser.
+	 */
+	protected static final int A_EMIT_REGEX = 1 << K_REGEX;
+
+	/**
+	 * Action bit: store the current string in its analyser.
+	 */
+	protected static final int A_EMIT_STRING = 1 << K_STRING;
+
+	/**
+	 * Actions storing the elements which are pending when a string starts
+	 * right after them. Those are run at the end of the string.
+	 */
+	protected static final int A_EMIT_PENDING = A_EMIT_NUMERIC | A_EMIT_TOKEN;
+
+	/**
+	 * Action bit: start a new numeric value with the current char.
+	 */
+	protected static final int A_START_NUMERIC = 1 << 4;
+
+	/**
+	 * Action bit: append the current char to the current numeric value.
+	 */
+	protected static final int A_APPEND_NUMERIC = 1 << 5;
+
+	/**
+	 * Action bit: start a new token with the current char.
+	 */
+	protected static final int A_START_TOKEN = 1 << 6;
+
+	/**
+	 * Action bit: append the current char to the current token.
+	 */
+	protected static final int A_APPEND_TOKEN = 1 << 7;
+
+	/**
+	 * Action bit: start a new regex with the '/' preceding the current char
+	 * and the current char.
+	 */
+	protected static final int A_START_REGEX = 1 << 8;
+
+	/**
+	 * Action bit: append the current char to the current regex.
+	 */
+	protected static final int A_APPEND_REGEX = 1 << 9;
+
+	/**
+	 * Action bit: start a new empty string.
+	 */
+	protected static final int A_START_STRING = 1 << 10;
+
+	/**
+	 * Action bit: append the current char to the current string.
+	 */
+	protected static final int A_APPEND_STRING = 1 << 11;
+
+	/**
+	 * Action bit: skip the following chars which do not leave the next state
+	 * (see {@link #skip}).
+	 */
+	protected static final int A_SKIP = 1 << 12;
+
+	/**
+	 * Action bit: drop the current numeric value, started by a '.' which is
+	 * not followed by a digit.
+	 */
+	protected static final int A_DROP_NUMERIC = 1 << 13;
+
+	/**
+	 * Action bit: start a new regex with the '/' and the '\\' preceding the
+	 * current char, escaped, and the current char.
+	 */
+	protected static final int A_START_ESCAPED_REGEX = 1 << 14;
+
+	/**
+	 * Chars preceding the first char of a regex, the '\\' being only part of
+	 * the regexes starting with an escaped char.
+	 */
+	protected static final char[] REGEX_PREFIX = {'/', '\\'};
+
+	/* TABLES */
+
+	/**
+	 * Class of each ASCII char. The chars out of this table are of the class
+	 * {@link #C_OTHER}.
+	 */
+	protected static final byte[] CHAR_CLASSES = new byte[128];
+
+	/**
+	 * Next state for each couple (state, char class), indexed by
+	 * state * {@link #NB_CLASSES} + class.
+	 */
+	protected static final byte[] TRANSITIONS = new byte[NB_STATES * NB_CLASSES];
+
+	/**
+	 * Actions to run for each couple (state, char class), same index as
+	 * {@link #TRANSITIONS}.
+	 */
+	protected static final short[] ACTIONS = new short[NB_STATES * NB_CLASSES];
+
+	/**
+	 * For each state whose entering transitions have the action
+	 * {@link #A_SKIP}, the two chars ending the skipped chars, indexed by
+	 * state * 2.
+	 */
+	protected static final char[] SKIP_STOPS = new char[NB_STATES * 2];
+
+	/**
+	 * For each state whose entering transitions have the action
+	 * {@link #A_SKIP}, the kind of the element the skipped chars are appended
+	 * to, -1 if they are not part of an element.
+	 */
+	protected static final byte[] SKIP_KINDS = new byte[NB_STATES];
+
+	/**
+	 * Search of the chars ending the skipped chars.
+	 */
+	protected static final SpanScanner SCANNER = SpanScanner.create();
+
+	static {
+		java.util.Arrays.fill(CHAR_CLASSES, (byte) C_OTHER);
+		for (char c = '0'; c <= '9'; c++) {
+			CHAR_CLASSES[c] = C_DIGIT;
+		}
+		for (char c = 'a'; c <= 'z'; c++) {
+			CHAR_CLASSES[c] = CHAR_CLASSES[Character.toUpperCase(c)] = (byte) (c <= 'f' ? C_HEX : C_LETTER);
+		}
+		CHAR_CLASSES['e'] = CHAR_CLASSES['E'] = C_EXPONENT;
+		CHAR_CLASSES['b'] = CHAR_CLASSES['B'] = C_BINARY;
+		CHAR_CLASSES['x'] = CHAR_CLASSES['X'] = CHAR_CLASSES['o'] = CHAR_CLASSES['O'] = C_RADIX;
+		CHAR_CLASSES['n'] = C_BIGINT;
+		CHAR_CLASSES['+'] = CHAR_CLASSES['-'] = C_SIGN;
+		CHAR_CLASSES['$'] = C_TOKEN;
+		CHAR_CLASSES['_'] = C_UNDERSCORE;
+		CHAR_CLASSES['/'] = C_SLASH;
+		CHAR_CLASSES['*'] = C_STAR;
+		CHAR_CLASSES['\\'] = C_BACKSLASH;
+		CHAR_CLASSES['"'] = C_DOUBLE_QUOTE;
+		CHAR_CLASSES['\''] = C_SIMPLE_QUOTE;
+		CHAR_CLASSES['\n'] = CHAR_CLASSES['\r'] = C_NEWLINE;
+		CHAR_CLASSES[')'] = C_CLOSING_PARENTHESIS;
+		CHAR_CLASSES['.'] = C_DOT;
+
+		for (int cls = 0; cls < NB_CLASSES; cls++) {
+			// Code states, the elements are started from here
+			codeTransition(S_CODE, cls, S_REGEX_SLASH, 0);
+			codeTransition(S_OPERAND, cls, S_SLASH, 0);
+			codeTransition(S_SLASH, cls, S_SLASH, 0);
+
+			// A '/' followed by a '/' or a '*' is a comment, otherwise it is a
+			// regex if it was expected in the code
+			codeTransition(S_REGEX_SLASH, cls, S_SLASH, 0);
+			set(S_REGEX_SLASH_ESCAPED, cls, S_REGEX, A_START_ESCAPED_REGEX);
+			if (cls != C_SLASH && cls != C_STAR && cls != C_BACKSLASH) {
+				set(S_REGEX_SLASH, cls, S_REGEX, A_START_REGEX);
+			}
+
+			set(S_REGEX, cls, S_REGEX, A_APPEND_REGEX);
+			set(S_REGEX_ESCAPED, cls, S_REGEX, A_APPEND_REGEX);
+			codeTransition(S_REGEX_END, cls, S_CODE, A_EMIT_REGEX);
+			codeTransition(S_REGEX_END_ESCAPED, cls, S_CODE, A_EMIT_REGEX);
+
+			set(S_INLINE_COMMENT, cls, S_INLINE_COMMENT, 0);
+			set(S_BLOCK_COMMENT, cls, S_BLOCK_COMMENT, 0);
+			set(S_BLOCK_COMMENT_STAR, cls, S_BLOCK_COMMENT, 0);
+
+			// The '/' after an element can only be a division
+			codeTransition(S_NUMERIC, cls, S_SLASH, A_EMIT_NUMERIC);
+			codeTransition(S_TOKEN, cls, S_SLASH, A_EMIT_TOKEN);
+			codeTransition(S_TOKEN_NUMERIC, cls, S_SLASH, A_EMIT_NUMERIC | A_EMIT_TOKEN);
+			for (int numeric = S_FRACTION; numeric <= S_BIGINT; numeric++) {
+				codeTransition(numeric, cls, S_SLASH, A_EMIT_NUMERIC);
+			}
+
+			// A '.' which does not start a numeric value is code
+			codeTransition(S_DOT, cls, S_REGEX_SLASH, A_DROP_NUMERIC);
+
+			for (int pending = 0; pending <= A_EMIT_PENDING; pending++) {
+				for (int quote = 0; quote < 2; quote++) {
+					int string = stringState(quote, pending, false);
+					set(string, cls, string, A_APPEND_STRING);
+					set(stringState(quote, pending, true), cls, string, A_APPEND_STRING);
+				}
+			}
+		}
+
+		set(S_SLASH, C_SLASH, S_INLINE_COMMENT, 0);
+		set(S_SLASH, C_STAR, S_BLOCK_COMMENT, 0);
+		set(S_REGEX_SLASH, C_SLASH, S_INLINE_COMMENT, 0);
+		set(S_REGEX_SLASH, C_STAR, S_BLOCK_COMMENT, 0);
+		set(S_REGEX_SLASH, C_BACKSLASH, S_REGEX_SLASH_ESCAPED, 0);
+
+		set(S_REGEX, C_SLASH, S_REGEX_END, A_APPEND_REGEX);
+		set(S_REGEX, C_BACKSLASH, S_REGEX_ESCAPED, A_APPEND_REGEX);
+		set(S_REGEX_END, C_LETTER, S_REGEX_END, A_APPEND_REGEX);
+		set(S_REGEX_END, C_BACKSLASH, S_REGEX_END_ESCAPED, A_APPEND_REGEX);
+		set(S_REGEX_END_ESCAPED, C_LETTER, S_REGEX_END, A_APPEND_REGEX);
+		set(S_REGEX_END_ESCAPED, C_BACKSLASH, S_CODE, A_EMIT_REGEX);
+
+		set(S_INLINE_COMMENT, C_NEWLINE, S_CODE, 0);
+		set(S_BLOCK_COMMENT, C_STAR, S_BLOCK_COMMENT_STAR, 0);
+		set(S_BLOCK_COMMENT_STAR, C_STAR, S_BLOCK_COMMENT_STAR, 0);
+		set(S_BLOCK_COMMENT_STAR, C_SLASH, S_OPERAND, 0);
+
+		set(S_TOKEN, C_LETTER, S_TOKEN, A_APPEND_TOKEN);
+		set(S_TOKEN, C_TOKEN, S_TOKEN, A_APPEND_TOKEN);
+		set(S_TOKEN, C_DIGIT, S_TOKEN_NUMERIC, A_START_NUMERIC);
+		set(S_TOKEN_NUMERIC, C_DOT, S_TOKEN_NUMERIC, A_APPEND_NUMERIC);
+		set(S_TOKEN_NUMERIC, C_DIGIT, S_TOKEN_NUMERIC, A_APPEND_NUMERIC);
+		set(S_TOKEN_NUMERIC, C_LETTER, S_TOKEN, A_EMIT_NUMERIC | A_APPEND_TOKEN);
+		set(S_TOKEN_NUMERIC, C_TOKEN, S_TOKEN, A_EMIT_NUMERIC | A_APPEND_TOKEN);
+
+		for (int pending = 0; pending <= A_EMIT_PENDING; pending++) {
+			set(stringState(0, pending, false), C_DOUBLE_QUOTE, S_CODE, A_EMIT_STRING | pending);
+			set(stringState(0, pending, false), C_BACKSLASH, stringState(0, pending, true), A_APPEND_STRING);
+			set(stringState(1, pending, false), C_SIMPLE_QUOTE, S_CODE, A_EMIT_STRING | pending);
+			set(stringState(1, pending, false), C_BACKSLASH, stringState(1, pending, true), A_APPEND_STRING);
+		}
+
+		// Out of the numeric values, the letters, signs and separators are
+		// the letters, other chars and token chars they always were
+		inherit(C_EXPONENT, C_LETTER);
+		inherit(C_HEX, C_LETTER);
+		inherit(C_BINARY, C_LETTER);
+		inherit(C_RADIX, C_LETTER);
+		inherit(C_BIGINT, C_LETTER);
+		inherit(C_SIGN, C_OTHER);
+		inherit(C_UNDERSCORE, C_TOKEN);
+
+		numeric(S_NUMERIC, S_NUMERIC, C_DIGIT, C_UNDERSCORE);
+		numeric(S_NUMERIC, S_FRACTION, C_DOT);
+		numeric(S_NUMERIC, S_EXPONENT_MARK, C_EXPONENT);
+		numeric(S_NUMERIC, S_RADIX, C_RADIX, C_BINARY);
+		numeric(S_NUMERIC, S_BIGINT, C_BIGINT);
+		numeric(S_DOT, S_FRACTION, C_DIGIT);
+		numeric(S_FRACTION, S_FRACTION, C_DIGIT, C_UNDERSCORE);
+		numeric(S_FRACTION, S_EXPONENT_MARK, C_EXPONENT);
+		numeric(S_EXPONENT_MARK, S_EXPONENT_SIGN, C_SIGN);
+		numeric(S_EXPONENT_MARK, S_EXPONENT, C_DIGIT);
+		numeric(S_EXPONENT_SIGN, S_EXPONENT, C_DIGIT);
+		numeric(S_EXPONENT, S_EXPONENT, C_DIGIT, C_UNDERSCORE);
+		numeric(S_RADIX, S_RADIX, C_DIGIT, C_HEX, C_EXPONENT, C_BINARY, C_UNDERSCORE);
+		numeric(S_RADIX, S_BIGINT, C_BIGINT);
+
+		// The bodies only end on these chars, the other ones are skipped
+		skippable(S_INLINE_COMMENT, '\n', '\r', -1);
+		skippable(S_BLOCK_COMMENT, '*', '*', -1);
+		skippable(S_REGEX, '/', '\\', K_REGEX);
+		for (int pending = 0; pending <= A_EMIT_PENDING; pending++) {
+			skippable(stringState(0, pending, false), '"', '\\', K_STRING);
+			skippable(stringState(1, pending, false), '\'', '\\', K_STRING);
+		}
+	}
+
+	/**
+	 * @param quote 0 for a string delimited by double quotes, 1 for simple
+	 * 		quotes.
+	 * @param pending The actions storing the elements pending until the end
+	 * 		of the string, among {@link #A_EMIT_PENDING}.
+	 * @param escaped If the current char of the string is escaped.
+	 * @return the index of the state in a string.
+	 */
+	protected static int stringState(final int quote, final int pending, final boolean escaped)
+	{
+		return S_STRING + (pending << 2) + (quote << 1) + (escaped ? 1 : 0);
+	}
+
+	/**
+	 * Sets an entry of the transition table.
+	 *
+	 * @param state The current state.
+	 * @param cls The class of the current char.
+	 * @param next The next state.
+	 * @param actions The actions to run.
+	 */
+	protected static void set(final int state, final int cls, final int next, final int actions)
+	{
+		TRANSITIONS[state * NB_CLASSES + cls] = (byte) next;
+		ACTIONS[state * NB_CLASSES + cls] = (short) actions;
+	}
+
+	/**
+	 * Gives a char class the transitions of another one in all the states.
+	 *
+	 * @param cls The char class.
+	 * @param parent The char class whose transitions are copied.
+	 */
+	protected static void inherit(final int cls, final int parent)
+	{
+		for (int state = 0; state < NB_STATES; state++) {
+			set(state, cls, TRANSITIONS[state * NB_CLASSES + parent], ACTIONS[state * NB_CLASSES + parent]);
+		}
+	}
+
+	/**
+	 * Sets the entries of the transition table for chars which continue a
+	 * numeric value.
+	 *
+	 * @param state The current state, in a numeric value.
+	 * @param next The next state.
+	 * @param classes The classes of the chars.
+	 */
+	protected static void numeric(final int state, final int next, final int... classes)
+	{
+		for (int cls : classes) {
+			set(state, cls, next, A_APPEND_NUMERIC);
+		}
+	}
+
+	/**
+	 * Adds the action {@link #A_SKIP} to the transitions entering a state,
+	 * once the transition table is complete.
+	 *
+	 * @param state The state, which only changes on the two given chars, its
+	 * 		other transitions leading to itself with the same actions.
+	 * @param stop A char leaving the state.
+	 * @param otherStop Another char leaving the state, can be the same as
+	 * 		stop.
+	 * @param kind The kind of the element the skipped chars are appended to,
+	 * 		-1 if they are not part of an element.
+	 */
+	protected static void skippable(final int state, final char stop, final char otherStop, final int kind)
+	{
+		SKIP_STOPS[state * 2] = stop;
+		SKIP_STOPS[state * 2 + 1] = otherStop;
+		SKIP_KINDS[state] = (byte) kind;
+		for (int transition = 0; transition < TRANSITIONS.length; transition++) {
+			if (TRANSITIONS[transition] == state) {
+				ACTIONS[transition] |= A_SKIP;
+			}
+		}
+	}
+
+	/**
+	 * Sets the entry of the transition table for a char which does not
+	 * continue the current element, the char then being parsed as code.
+	 *
+	 * @param state The current state.
+	 * @param cls The class of the current char.
+	 * @param slash The next state if the char is a '/', depending if it can
+	 * 		start a regex or not.
+	 * @param actions The actions ending the current element. If the char
+	 * 		starts a string, the numeric value or token ending is pending until
+	 * 		the end of the string.
+	 */
+	protected static void codeTransition(final int state, final int cls, final int slash, final int actions)
+	{
+		switch (cls) {
+			case C_SLASH:
+				set(state, cls, slash, actions);
+				break;
+			case C_DOUBLE_QUOTE:
+			case C_SIMPLE_QUOTE:
+				set(
+					state, cls,
+					stringState(cls == C_SIMPLE_QUOTE ? 1 : 0, actions & A_EMIT_PENDING, false),
+					(actions & ~A_EMIT_PENDING) | A_START_STRING
+				);
+				break;
+			case C_CLOSING_PARENTHESIS:
+				set(state, cls, S_OPERAND, actions);
+				break;
+			case C_DIGIT:
+				set(state, cls, S_NUMERIC, actions | A_START_NUMERIC);
+				break;
+			case C_DOT:
+				set(state, cls, S_DOT, actions | A_START_NUMERIC);
+				break;
+			case C_LETTER:
+			case C_TOKEN:
+				set(state, cls, S_TOKEN, actions | A_START_TOKEN);
+				break;
+			default:
+				set(state, cls, S_CODE, actions);
+		}
+	}
+
+	/**
+	 * Computes the state reached at the end of a chunk of code, for each state
+	 * the chunk can start in.
+	 * <p>
+	 * The states only are followed, no action is run. All the possible states
+	 * are followed at once, and the runs which reach the same state are merged,
+	 * so after a few chars only some runs are left (usually one in the code
+	 * and one out of phase, which took the strings for code).
+	 * </p>
+	 *
+	 * @param buf The buffer containing the chunk of code.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 * @return the state reached at the end of the chunk for each starting
+	 * 		state, or null if all the runs were merged, in which case the chunk
+	 * 		ends in the same state whatever its starting state.
+	 */
+	public static byte[] endStates(final char[] buf, final int off, final int len)
+	{
+		int[] runs = new int[NB_STATES],
+			runOfState = new int[NB_STATES],
+			merged = new int[NB_STATES],
+			runIndex = new int[NB_STATES];
+		int nbRuns = NB_STATES,
+			end = off + len;
+
+		for (int state = 0; state < NB_STATES; state++) {
+			runs[state] = runOfState[state] = state;
+		}
+		java.util.Arrays.fill(runIndex, -1);
+
+		for (int i = off; i < end; ) {
+			// The runs are merged every 32 chars
+			int blockEnd = Math.min(end, i + 32);
+			for (; i < blockEnd; i++) {
+				final char c = buf[i];
+				final int cls = c < 128 ? CHAR_CLASSES[c] : C_OTHER;
+				for (int run = 0; run < nbRuns; run++) {
+					runs[run] = TRANSITIONS[runs[run] * NB_CLASSES + cls];
+				}
+			}
+
+			int nbMerged = 0;
+			for (int run = 0; run < nbRuns; run++) {
+				int state = runs[run];
+				if (runIndex[state] == -1) {
+					runIndex[state] = nbMerged;
+					runs[nbMerged++] = state;
+				}
+				merged[run] = runIndex[state];
+			}
+			for (int run = 0; run < nbMerged; run++) {
+				runIndex[runs[run]] = -1;
+			}
+			for (int state = 0; state < NB_STATES; state++) {
+				runOfState[state] = merged[runOfState[state]];
+			}
+
+			nbRuns = nbMerged;
+			if (nbRuns == 1) {
+				return null;
+			}
+		}
+
+		byte[] endStates = new byte[NB_STATES];
+		for (int state = 0; state < NB_STATES; state++) {
+			endStates[state] = (byte) runs[runOfState[state]];
+		}
+		return endStates;
+	}
+
+	/* PARSING ATTRIBUTES */
+
+	/**
+	 * Analysers receiving the detected elements, indexed by kind.
+	 */
+	protected Analyser[] analysers;
+
+	/**
+	 * For each kind, index in the parsed buffer of the first char of the
+	 * current element's part which is a contiguous range of the buffer.
+	 */
+	protected int[] starts = new int[NB_KINDS];
+
+	/**
+	 * For each kind, index in the parsed buffer following the last char of the
+	 * current element's contiguous range.
+	 */
+	protected int[] ends = new int[NB_KINDS];
+
+	/**
+	 * For each kind, beginning of the current element copied out of the
+	 * parsed buffer. An element is only copied when it is not a contiguous
+	 * range of the buffer, or if it continues after the end of the buffer.
+	 */
+	protected char[][] copies = new char[NB_KINDS][16];
+
+	/**
+	 * For each kind, number of chars in {@link #copies}.
+	 */
+	protected int[] copyLengths = new int[NB_KINDS];
+
+	/**
+	 * Bits of the elements kinds currently being parsed (among the A_EMIT_*
+	 * bits).
+	 */
+	protected int elementsInProgress;
+
+	/**
+	 * Bits of the elements kinds started by this lexer (among the A_EMIT_*
+	 * bits). An element which ends but was not started by this lexer is the
+	 * end of an element started before the chunk of code parsed by the lexer,
+	 * see {@link #startChunk}.
+	 */
+	protected int startedElements = A_EMIT_NUMERIC | A_EMIT_TOKEN | A_EMIT_REGEX | A_EMIT_STRING;
+
+	/**
+	 * For each kind, end of the element started before the chunk parsed by
+	 * this lexer, or null if no such element ended in the chunk.
+	 */
+	protected String[] continuedElements = new String[NB_KINDS];
+
+	/**
+	 * Index of the first char of the chunk being parsed.
+	 */
+	protected int chunkStart;
+
+	/**
+	 * Current state of the lexer, one of the S_* constants.
+	 */
+	protected int state = S_CODE;
+
+	/**
+	 * If true, the elements are stored with the position of their first char
+	 * in the code.
+	 */
+	protected boolean indexed;
+
+	/**
+	 * Position in the code of the first char of the chunk being parsed.
+	 */
+	protected long position;
+
+	/**
+	 * For each kind, position in the code of the current element's first
+	 * char.
+	 */
+	protected long[] positions = new long[NB_KINDS];
+
+	/**
+	 * Batch receiving the elements wanted by the plugin analysers, null if
+	 * there is none.
+	 */
+	protected ElementBatch batch;
+
+	/**
+	 * Bits of the elements kinds added to {@link #batch} (among the A_EMIT_*
+	 * bits).
+	 */
+	protected int batchedKinds;
+
+	/**
+	 * Construct
+	 *
+	 * @param strings Analyser receiving the detected strings.
+	 * @param numerics Analyser receiving the detected numeric values.
+	 * @param regexes Analyser receiving the detected regexes.
+	 * @param tokens Analyser receiving the detected tokens.
+	 */
+	public Lexer(StringAnalyser strings, NumericAnalyser numerics, RegexAnalyser regexes, TokenAnalyser tokens)
+	{
+		this.analysers = new Analyser[NB_KINDS];
+		this.setAnalysers(strings, numerics, regexes, tokens);
+	}
+
+	/**
+	 * Construct
+	 * <p>
+	 * The analysers receiving the elements must be set with
+	 * {@link #setAnalyser} before parsing.
+	 * </p>
+	 */
+	public Lexer()
+	{
+		this.analysers = new Analyser[NB_KINDS];
+	}
+
+	/**
+	 * Sets the analyser receiving the next detected elements of a kind.
+	 *
+	 * @param kind The kind of the elements, one of the K_* constants.
+	 * @param analyser The analyser receiving the elements.
+	 */
+	public void setAnalyser(int kind, Analyser analyser)
+	{
+		this.analysers[kind] = analyser;
+	}
+
+	/**
+	 * Sets the analysers receiving the next detected elements. The elements
+	 * in progress are stored in the new analysers when they end.
+	 *
+	 * @param strings Analyser receiving the detected strings.
+	 * @param numerics Analyser receiving the detected numeric values.
+	 * @param regexes Analyser receiving the detected regexes.
+	 * @param tokens Analyser receiving the detected tokens.
+	 */
+	public void setAnalysers(StringAnalyser strings, NumericAnalyser numerics, RegexAnalyser regexes, TokenAnalyser tokens)
+	{
+		this.analysers[K_NUMERIC] = numerics;
+		this.analysers[K_TOKEN] = tokens;
+		this.analysers[K_REGEX] = regexes;
+		this.analysers[K_STRING] = strings;
+	}
+
+	/**
+	 * Sets if the elements are stored with their position in the code (see
+	 * {@link Analyser#incElementOccurences(char[], int, int, long)}).
+	 *
+	 * @param indexed true to store the positions of the elements.
+	 */
+	public void setIndexed(boolean indexed)
+	{
+		this.indexed = indexed;
+	}
+
+	/**
+	 * Sets the batch receiving the elements wanted by the plugin analysers,
+	 * in addition to the analysers of their kinds.
+	 *
+	 * @param batch The batch, or null if there is no plugin.
+	 */
+	public void setBatch(ElementBatch batch)
+	{
+		this.batch = batch;
+		this.batchedKinds = batch == null ? 0 : batch.getKinds();
+	}
+
+	/**
+	 * Sets the position in the code of the next parsed chunk.
+	 *
+	 * @param position The position of the chunk's first char.
+	 */
+	public void setPosition(long position)
+	{
+		this.position = position;
+	}
+
+	/**
+	 * Resets the state of the lexer, so the next char is parsed as code.
+	 */
+	public void resetState()
+	{
+		this.state = S_CODE;
+		this.elementsInProgress = 0;
+	}
+
+	/**
+	 * Prepares the lexer to parse a chunk of code which is not the beginning
+	 * of the code.
+	 * <p>
+	 * The elements which were started before the chunk are not stored when
+	 * they end, their part in the chunk is kept in
+	 * {@link #continuedElements} instead, to be completed by the one who knows
+	 * the beginning of the elements (see {@link #continueWith}).
+	 * </p>
+	 *
+	 * @param state The state the chunk starts in.
+	 */
+	public void startChunk(int state)
+	{
+		this.state = state;
+		this.startedElements = 0;
+		this.elementsInProgress = A_EMIT_NUMERIC | A_EMIT_TOKEN | A_EMIT_REGEX | A_EMIT_STRING;
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			this.copyLengths[kind] = 0;
+			this.continuedElements[kind] = null;
+		}
+	}
+
+	/**
+	 * Continues the parsing with the result of a lexer which parsed the chunk
+	 * of code following the one parsed by this lexer (see {@link #startChunk}).
+	 * <p>
+	 * The elements which overlap both chunks are completed and stored, and
+	 * this lexer takes the state and the elements in progress of the other
+	 * lexer.
+	 * </p>
+	 *
+	 * @param next The lexer which parsed the next chunk.
+	 */
+	public void continueWith(Lexer next)
+	{
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			final int bit = 1 << kind;
+			String end = next.continuedElements[kind];
+			if (end != null) {
+				this.copy(kind, end.toCharArray(), 0, end.length());
+				this.analysers[kind].incElementOccurences(this.copies[kind], 0, this.copyLengths[kind]);
+			}
+
+			if ((next.startedElements & bit) != 0) {
+				this.copyLengths[kind] = 0;
+				this.elementsInProgress = (this.elementsInProgress & ~bit) | (next.elementsInProgress & bit);
+			}
+			this.copy(kind, next.copies[kind], 0, next.copyLengths[kind]);
+		}
+		this.state = next.state;
+	}
+
+	/**
+	 * Parses a chunk of code.
+	 * <p>
+	 * The elements are read in place in the buffer. Only the elements which
+	 * are still in progress at the end of the chunk are copied, as the buffer
+	 * can then be reused.
+	 * </p>
+	 *
+	 * @param buf The buffer containing the chunk of code to parse. A chunk can
+	 * 		be a subpart of a whole code, so does not need to be valid by itself.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 */
+	public void parse(final char[] buf, final int off, final int len)
+	{
+		int end = off + len,
+			state = this.state;
+
+		// The elements in progress continue at the beginning of the chunk
+		this.chunkStart = off;
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			this.starts[kind] = this.ends[kind] = off;
+		}
+
+		for (int i = off; i < end; i++) {
+			final char c = buf[i];
+			final int transition = state * NB_CLASSES + (c < 128 ? CHAR_CLASSES[c] : C_OTHER);
+			final int actions = ACTIONS[transition];
+
+			state = TRANSITIONS[transition];
+			if (actions != 0) {
+				this.run(actions, buf, i);
+				if ((actions & A_SKIP) != 0) {
+					i = this.skip(state, buf, i + 1, end) - 1;
+				}
+			}
+		}
+		this.state = state;
+
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			if ((this.elementsInProgress & (1 << kind)) != 0) {
+				this.copy(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+			}
+		}
+	}
+
+	/**
+	 * Runs the actions of a transition. The elements are stored before the
+	 * new ones are started.
+	 *
+	 * @param actions The actions bits.
+	 * @param buf The parsed buffer.
+	 * @param i The index of the current char in the buffer.
+	 */
+	protected void run(final int actions, final char[] buf, final int i)
+	{
+		if ((actions & ~A_SKIP) == A_APPEND_STRING) {
+			this.append(K_STRING, buf, i);
+			return;
+		}
+
+		if ((actions & A_EMIT_NUMERIC) != 0) {
+			this.emit(K_NUMERIC, buf);
+		}
+		if ((actions & A_EMIT_TOKEN) != 0) {
+			this.emit(K_TOKEN, buf);
+		}
+		if ((actions & A_EMIT_REGEX) != 0) {
+			this.emit(K_REGEX, buf);
+		}
+		if ((actions & A_EMIT_STRING) != 0) {
+			this.emit(K_STRING, buf);
+		}
+		if ((actions & A_DROP_NUMERIC) != 0) {
+			this.drop(K_NUMERIC);
+		}
+
+		if ((actions & A_START_NUMERIC) != 0) {
+			this.start(K_NUMERIC, i, i + 1);
+		}
+		else if ((actions & A_APPEND_NUMERIC) != 0) {
+			this.append(K_NUMERIC, buf, i);
+		}
+		else if ((actions & A_START_TOKEN) != 0) {
+			this.start(K_TOKEN, i, i + 1);
+		}
+		else if ((actions & A_APPEND_TOKEN) != 0) {
+			this.append(K_TOKEN, buf, i);
+		}
+		else if ((actions & (A_START_REGEX | A_START_ESCAPED_REGEX)) != 0) {
+			// The regex starts with the '/' preceding the current char, and the
+			// '\\' escaping it, which can be in the previous chunk
+			int prefix = (actions & A_START_REGEX) != 0 ? 1 : 2,
+				inChunk = Math.min(prefix, i - this.chunkStart);
+			this.start(K_REGEX, i - inChunk, i + 1);
+			if (inChunk < prefix) {
+				for (int c = 0; c < prefix - inChunk; c++) {
+					this.copies[K_REGEX][c] = REGEX_PREFIX[c];
+				}
+				this.copyLengths[K_REGEX] = prefix - inChunk;
+				this.positions[K_REGEX] -= prefix - inChunk;
+			}
+		}
+		else if ((actions & A_APPEND_REGEX) != 0) {
+			this.append(K_REGEX, buf, i);
+		}
+		else if ((actions & A_START_STRING) != 0) {
+			// The position of a string is the one of its opening quote
+			this.start(K_STRING, i + 1, i + 1);
+			this.positions[K_STRING]--;
+		}
+	}
+
+	/**
+	 * Skips the chars which do not leave the current state, after a transition
+	 * with the action {@link #A_SKIP}. The skipped chars are appended to the
+	 * current element of the state's kind, if any, which ends at the current
+	 * char.
+	 *
+	 * @param state The current state.
+	 * @param buf The parsed buffer.
+	 * @param from The index of the char following the current char.
+	 * @param end The index following the chunk's last char.
+	 * @return the index of the next char leaving the state, or end if there
+	 * 		is none in the chunk.
+	 */
+	protected int skip(final int state, final char[] buf, final int from, final int end)
+	{
+		int next = SCANNER.indexOf(buf, from, end, SKIP_STOPS[state * 2], SKIP_STOPS[state * 2 + 1]),
+			kind = SKIP_KINDS[state];
+		if (kind != -1) {
+			this.ends[kind] = next;
+		}
+		return next;
+	}
+
+	/**
+	 * Starts a new element.
+	 *
+	 * @param kind The kind of the element.
+	 * @param start The index of the element's first char in the buffer.
+	 * @param end The index following the element's last char.
+	 */
+	protected void start(final int kind, final int start, final int end)
+	{
+		this.startedElements |= 1 << kind;
+		this.elementsInProgress |= 1 << kind;
+		this.copyLengths[kind] = 0;
+		this.starts[kind] = start;
+		this.ends[kind] = end;
+		this.positions[kind] = this.position + start - this.chunkStart;
+	}
+
+	/**
+	 * Drops the current element of a kind, without storing it. An element
+	 * started before the parsed chunk is dropped as well when the lexers are
+	 * continued (see {@link #continueWith}).
+	 *
+	 * @param kind The kind of the element.
+	 */
+	protected void drop(final int kind)
+	{
+		this.startedElements |= 1 << kind;
+		this.elementsInProgress &= ~(1 << kind);
+		this.copyLengths[kind] = 0;
+	}
+
+	/**
+	 * Appends the current char to the current element of a kind. If the char
+	 * does not follow the element's contiguous range, the range is copied and
+	 * a new range starts with the char.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The parsed buffer.
+	 * @param i The index of the current char in the buffer.
+	 */
+	protected void append(final int kind, final char[] buf, final int i)
+	{
+		if (this.ends[kind] == i) {
+			this.ends[kind] = i + 1;
+			return;
+		}
+
+		this.copy(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+		this.starts[kind] = i;
+		this.ends[kind] = i + 1;
+	}
+
+	/**
+	 * Appends chars to the copied part of the current element of a kind. The
+	 * element's contiguous range is emptied.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The buffer containing the chars to copy.
+	 * @param off The index of the first char to copy.
+	 * @param len The number of chars to copy.
+	 */
+	protected void copy(final int kind, final char[] buf, final int off, final int len)
+	{
+		int length = this.copyLengths[kind];
+		if (length + len > this.copies[kind].length) {
+			this.copies[kind] = java.util.Arrays.copyOf(
+				this.copies[kind],
+				Math.max(length + len, this.copies[kind].length * 2)
+			);
+		}
+		System.arraycopy(buf, off, this.copies[kind], length, len);
+		this.copyLengths[kind] = length + len;
+		this.starts[kind] = this.ends[kind];
+	}
+
+	/**
+	 * Stores the current element of a kind in its analyser, or in
+	 * {@link #continuedElements} if it was started before the parsed chunk.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The parsed buffer.
+	 */
+	protected void emit(final int kind, final char[] buf)
+	{
+		this.elementsInProgress &= ~(1 << kind);
+		if (this.copyLengths[kind] != 0) {
+			this.copy(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+		}
+
+		if ((this.startedElements & (1 << kind)) == 0) {
+			this.continuedElements[kind] = this.copyLengths[kind] != 0
+				? new String(this.copies[kind], 0, this.copyLengths[kind])
+				: new String(buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+			this.startedElements |= 1 << kind;
+			return;
+		}
+
+		if (this.copyLengths[kind] != 0) {
+			this.store(kind, this.copies[kind], 0, this.copyLengths[kind]);
+		}
+		else {
+			this.store(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+		}
+	}
+
+	/**
+	 * Stores an element in the analyser of its kind, with its position if the
+	 * positions are indexed, and in the batch of the plugins if they want its
+	 * kind.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 */
+	protected void store(final int kind, final char[] buf, final int off, final int len)
+	{
+		if (this.indexed) {
+			this.analysers[kind].incElementOccurences(buf, off, len, this.positions[kind]);
+		}
+		else {
+			this.analysers[kind].incElementOccurences(buf, off, len);
+		}
+		if ((this.batchedKinds & (1 << kind)) != 0) {
+			this.batch.add(kind, buf, off, len);
+		}
+	}
+}
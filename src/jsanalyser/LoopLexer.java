@@ -0,0 +1,409 @@
+package jsanalyser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jsanalyser.analyser.ChainAnalyser;
+import jsanalyser.analyser.LineIndex;
+import jsanalyser.analyser.LoopAnalyser;
+import jsanalyser.analyser.NumericAnalyser;
+import jsanalyser.analyser.RegexAnalyser;
+import jsanalyser.analyser.StringAnalyser;
+import jsanalyser.analyser.TokenAnalyser;
+
+/**
+ * Table driven lexer which also tracks the loops, and flags the code run at
+ * each iteration which could run once before the loop.
+ * <p>
+ * On top of the braces and parentheses followed by the {@link ChainLexer},
+ * the parentheses following "for" and "while" are loop headers, and the
+ * brace or the statement following a header, or following "do", is a loop
+ * body, which ends with the matching brace or with the statement's ';'. The
+ * condition of a "while" and the second and third clauses of a "for" are run
+ * at each iteration too. The loops are recognised in the same single pass,
+ * without building a syntax tree, so a statement body ends at its first ';'
+ * or at the first '}' closing a block of the statement, an "if" followed by
+ * an "else" included.
+ * </p>
+ * <p>
+ * In the loops, the DOM lookups, the regexes created by a literal or by the
+ * RegExp constructor and the strings concatenated with "+=" (a string
+ * following the "+=" in the same parentheses) are stored in a
+ * {@link LoopAnalyser}, as well as the lengths read in the conditions, with
+ * their positions. The chains are only tracked if they have an analyser.
+ * </p>
+ */
+public class LoopLexer extends ChainLexer
+{
+	/**
+	 * The parenthesis is not a loop header.
+	 */
+	protected static final int P_NONE = 0;
+
+	/**
+	 * The parenthesis is the header of a "for", in its first clause, run
+	 * once.
+	 */
+	protected static final int P_FOR_INIT = 1;
+
+	/**
+	 * The parenthesis is the header of a "for", in its condition.
+	 */
+	protected static final int P_FOR_CONDITION = 2;
+
+	/**
+	 * The parenthesis is the header of a "for", in its last clause.
+	 */
+	protected static final int P_FOR_UPDATE = 3;
+
+	/**
+	 * The parenthesis is the condition of a "while".
+	 */
+	protected static final int P_WHILE = 4;
+
+	/**
+	 * The parenthesis is the condition of a "do ... while", which is not
+	 * followed by a body.
+	 */
+	protected static final int P_DO_WHILE = 5;
+
+	/**
+	 * Not a loop body.
+	 */
+	protected static final int B_NONE = 0;
+
+	/**
+	 * Body of a "for" or of a "while".
+	 */
+	protected static final int B_LOOP = 1;
+
+	/**
+	 * Body of a "do", followed by its condition.
+	 */
+	protected static final int B_DO = 2;
+
+	/**
+	 * Analyser receiving the patterns found in the loops.
+	 */
+	protected LoopAnalyser loops;
+
+	/**
+	 * For each brace currently open, the loop body it opened, one of the B_*
+	 * constants.
+	 */
+	protected List<Integer> braceBodies = new ArrayList<Integer>();
+
+	/**
+	 * For each parenthesis currently open, the loop header it opened, one of
+	 * the P_* constants.
+	 */
+	protected List<Integer> headers = new ArrayList<Integer>();
+
+	/**
+	 * Loop bodies which are a statement without braces, currently open: the
+	 * number of braces and parentheses open when the body started, and the
+	 * kind of the body.
+	 */
+	protected List<int[]> statementBodies = new ArrayList<int[]>();
+
+	/**
+	 * Number of loop bodies currently open.
+	 */
+	protected int nbBodies;
+
+	/**
+	 * Header opened by the next parenthesis, if the last token is "for" or
+	 * "while".
+	 */
+	protected int nextHeader;
+
+	/**
+	 * Body following the last code, one of the B_* constants, if the last
+	 * code was a loop header or "do".
+	 */
+	protected int nextBody;
+
+	/**
+	 * If true, the last code was the body of a "do", which is followed by
+	 * its condition.
+	 */
+	protected boolean afterDo;
+
+	/**
+	 * Last code char which is not a white space before {@link #lastChar}, to
+	 * tell "+=" from "++=".
+	 */
+	protected char previousChar;
+
+	/**
+	 * Target of the "+=" whose right operand is being parsed, null if there
+	 * is none or if it is not a chain.
+	 */
+	protected String concatTarget;
+
+	/**
+	 * Position of the "+=" whose right operand is being parsed, -1 if there
+	 * is none.
+	 */
+	protected long concatPosition = -1;
+
+	/**
+	 * Number of parentheses open at the "+=" whose right operand is being
+	 * parsed.
+	 */
+	protected int concatParentheses;
+
+	/**
+	 * Position of the element being stored.
+	 */
+	protected long elementPosition;
+
+	/**
+	 * Construct
+	 *
+	 * @param strings Analyser receiving the detected strings.
+	 * @param numerics Analyser receiving the detected numeric values.
+	 * @param regexes Analyser receiving the detected regexes.
+	 * @param tokens Analyser receiving the detected tokens.
+	 * @param chains Analyser receiving the repeated chains, null if they are
+	 * 		not tracked.
+	 * @param loops Analyser receiving the patterns found in the loops.
+	 * @param lines Lines of the parsed code, filled before each chunk is
+	 * 		parsed.
+	 */
+	public LoopLexer(StringAnalyser strings, NumericAnalyser numerics, RegexAnalyser regexes, TokenAnalyser tokens, ChainAnalyser chains, LoopAnalyser loops, LineIndex lines)
+	{
+		super(strings, numerics, regexes, tokens, chains, lines);
+		this.loops = loops;
+	}
+
+	/**
+	 * Sets the analyser receiving the next patterns found in the loops.
+	 *
+	 * @param loops Analyser receiving the patterns.
+	 */
+	public void setLoops(LoopAnalyser loops)
+	{
+		this.loops = loops;
+	}
+
+	/**
+	 * Stores an element, and flags the regexes and the concatenated strings
+	 * in the loops. An element following a loop header starts its body.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 */
+	protected void store(final int kind, final char[] buf, final int off, final int len)
+	{
+		if (this.nextBody != B_NONE) {
+			this.startStatementBody();
+		}
+		this.elementPosition = this.positions[kind];
+		if (kind == K_REGEX && this.inLoop()) {
+			this.loops.addRegex(new String(buf, off, len), this.elementPosition);
+		}
+		else if (kind == K_STRING && this.concatPosition != -1 && this.parentheses.size() == this.concatParentheses) {
+			this.loops.addConcatenation(this.concatTarget, this.concatPosition);
+			this.concatPosition = -1;
+		}
+		super.store(kind, buf, off, len);
+	}
+
+	/**
+	 * Recognises the keywords starting a loop, and flags the DOM lookups, the
+	 * RegExp constructors and the lengths read in the loops.
+	 *
+	 * @param token The token.
+	 */
+	protected void token(String token)
+	{
+		boolean member = this.member;
+		String receiver = member && !this.detached && this.chain.length() > 0 ? this.chain.toString() : null,
+			previous = this.lastToken;
+		super.token(token);
+
+		boolean afterDo = this.afterDo;
+		this.afterDo = false;
+		this.nextHeader = P_NONE;
+		if (member) {
+			if (token.equals("length") && this.inCondition()) {
+				this.loops.addLengthRead(receiver, this.elementPosition);
+			}
+			else if (Arrays.binarySearch(LoopAnalyser.DOM_LOOKUPS, token) >= 0 && this.inLoop()) {
+				this.loops.addDomLookup(token, this.elementPosition);
+			}
+		}
+		else if (token.equals("RegExp") && "new".equals(previous) && this.inLoop()) {
+			this.loops.addRegex(null, this.elementPosition);
+		}
+		else if (token.equals("for")) {
+			this.nextHeader = P_FOR_INIT;
+		}
+		else if (token.equals("while")) {
+			this.nextHeader = afterDo ? P_DO_WHILE : P_WHILE;
+		}
+		else if (token.equals("do")) {
+			this.nextBody = B_DO;
+		}
+	}
+
+	/**
+	 * Follows the loop headers and bodies, and the "+=" operators.
+	 *
+	 * @param c The char.
+	 * @param i The index of the char in the parsed buffer.
+	 */
+	protected void code(final char c, final int i)
+	{
+		if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+			return;
+		}
+
+		if (this.nextBody != B_NONE && c != '{') {
+			this.startStatementBody();
+		}
+
+		// The "+=" is the last property of the chain, which is ended by the
+		// '='
+		char lastChar = this.lastChar;
+		if (c == '=' && lastChar == '+' && this.previousChar != '+' && this.inLoop()) {
+			this.concatTarget = this.chain.length() > 0 && !this.detached ? this.chain.toString() : null;
+			this.concatPosition = this.position + i - this.chunkStart - 1;
+			this.concatParentheses = this.parentheses.size();
+		}
+		else if (this.concatPosition != -1 && (c == ';' || c == ',' || c == '}' || (c == ')' && this.parentheses.size() == this.concatParentheses))) {
+			this.concatPosition = -1;
+		}
+
+		super.code(c, i);
+		this.previousChar = lastChar;
+
+		boolean afterDo = this.afterDo;
+		int nextHeader = this.nextHeader;
+		this.afterDo = false;
+		this.nextHeader = P_NONE;
+		if (c == '{') {
+			this.braceBodies.add(this.nextBody);
+			if (this.nextBody != B_NONE) {
+				this.nbBodies++;
+				this.nextBody = B_NONE;
+			}
+		}
+		else if (c == '}' && !this.braceBodies.isEmpty()) {
+			int body = this.braceBodies.remove(this.braceBodies.size() - 1);
+			if (body != B_NONE) {
+				this.nbBodies--;
+				this.afterDo = body == B_DO;
+			}
+			this.endStatementBodies();
+		}
+		else if (c == '(') {
+			this.headers.add(nextHeader);
+		}
+		else if (c == ')' && !this.headers.isEmpty()) {
+			int header = this.headers.remove(this.headers.size() - 1);
+			if (header != P_NONE && header != P_DO_WHILE) {
+				this.nextBody = B_LOOP;
+			}
+		}
+		else if (c == ';') {
+			int last = this.headers.size() - 1;
+			if (last >= 0 && (this.headers.get(last) == P_FOR_INIT || this.headers.get(last) == P_FOR_CONDITION)) {
+				this.headers.set(last, this.headers.get(last) + 1);
+			}
+			else {
+				this.endStatementBodies();
+			}
+		}
+	}
+
+	/**
+	 * Starts a loop body which is a statement without braces.
+	 */
+	protected void startStatementBody()
+	{
+		this.statementBodies.add(new int[] {this.braces.size(), this.parentheses.size(), this.nextBody});
+		this.nbBodies++;
+		this.nextBody = B_NONE;
+	}
+
+	/**
+	 * Ends the statement bodies which end with the current ';' or '}': the
+	 * ones started in the braces and parentheses currently open, and the
+	 * ones started in closed braces.
+	 */
+	protected void endStatementBodies()
+	{
+		while (!this.statementBodies.isEmpty()) {
+			int[] body = this.statementBodies.get(this.statementBodies.size() - 1);
+			if (body[0] < this.braces.size() || body[0] == this.braces.size() && body[1] != this.parentheses.size()) {
+				return;
+			}
+			this.statementBodies.remove(this.statementBodies.size() - 1);
+			this.nbBodies--;
+			this.afterDo = body[2] == B_DO;
+		}
+	}
+
+	/**
+	 * @return true if the current code runs at each iteration of a loop: in
+	 * 		a loop body, or in the condition or the last clause of a loop
+	 * 		header.
+	 */
+	protected boolean inLoop()
+	{
+		if (this.nbBodies > 0) {
+			return true;
+		}
+
+		for (int i = this.headers.size() - 1; i >= 0; i--) {
+			int header = this.headers.get(i);
+			if (header != P_NONE) {
+				return header != P_FOR_INIT;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the current code is in the condition of a loop.
+	 */
+	protected boolean inCondition()
+	{
+		for (int i = this.headers.size() - 1; i >= 0; i--) {
+			int header = this.headers.get(i);
+			if (header != P_NONE) {
+				return header == P_FOR_CONDITION || header == P_WHILE || header == P_DO_WHILE;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Resets the chains, the scopes and the loops.
+	 */
+	protected void resetChains()
+	{
+		super.resetChains();
+		// Called by the constructor of the chain lexer, before the fields of
+		// this lexer are initialised
+		if (this.headers == null) {
+			return;
+		}
+
+		this.braceBodies.clear();
+		this.headers.clear();
+		this.statementBodies.clear();
+		this.nbBodies = 0;
+		this.nextHeader = P_NONE;
+		this.nextBody = B_NONE;
+		this.afterDo = false;
+		this.previousChar = 0;
+		this.concatTarget = null;
+		this.concatPosition = -1;
+	}
+}
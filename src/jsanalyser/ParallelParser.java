@@ -0,0 +1,343 @@
+package jsanalyser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import jsanalyser.monitoring.ChunkEvent;
+
+/**
+ * Speculative parallel parsing of a single piece of code.
+ * <p>
+ * The code is split in chunks which are parsed in parallel, each one by its
+ * own {@link Lexer} with its own analysers. A chunk's real starting state is
+ * only known once the previous chunk is parsed, so each chunk is parsed
+ * speculatively from the code state (the chunks are cut after a line ending
+ * or a ';' when possible, where the code state is the most plausible), and
+ * meanwhile the state reached at the end of the chunk is computed for every
+ * possible starting state (see {@link Lexer#endStates}).
+ * </p>
+ * <p>
+ * The real starting state of each chunk is then known without parsing the
+ * chunks sequentially, and the few chunks whose speculation was wrong are
+ * parsed again, in parallel, from their real state. Finally, the elements
+ * which overlap two chunks are completed with the end of the previous chunk
+ * and the analysers of the chunks are merged in the parser's ones.
+ * </p>
+ */
+public class ParallelParser
+{
+	/**
+	 * Default minimum size of a chunk.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Maximum distance a chunk's start is moved to start after a line ending
+	 * or a ';'.
+	 */
+	protected static final int BOUNDARY_SEARCH = 1 << 12;
+
+	/**
+	 * Parser receiving the elements of the parsed code.
+	 */
+	protected Parser parser;
+
+	/**
+	 * Pool in which the chunks are parsed.
+	 */
+	protected ForkJoinPool pool;
+
+	/**
+	 * Minimum size of a chunk.
+	 */
+	protected int chunkSize;
+
+	/**
+	 * Construct
+	 *
+	 * @param parser The parser receiving the elements of the parsed code.
+	 * @param pool The pool in which the chunks are parsed.
+	 * @param chunkSize The minimum size of a chunk.
+	 */
+	public ParallelParser(Parser parser, ForkJoinPool pool, int chunkSize)
+	{
+		this.parser = parser;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return the minimum size of a chunk.
+	 */
+	public int getChunkSize()
+	{
+		return this.chunkSize;
+	}
+
+	/**
+	 * Parses a piece of code in parallel. The result is the same as if the
+	 * code was parsed sequentially by the parser's lexer, which is left in the
+	 * state reached at the end of the code.
+	 *
+	 * @param buf The buffer containing the code to parse.
+	 * @param off The index of the code's first char in the buffer.
+	 * @param len The number of chars of the code.
+	 */
+	public void parse(char[] buf, int off, int len)
+	{
+		final Lexer lexer = this.parser.lexer;
+		final Chunk[] chunks = this.split(buf, off, len);
+
+		// Parse all the chunks, the first one from the real state
+		chunks[0].entryState = lexer.state;
+		this.invokeAll(chunks, false);
+
+		// Follow the real states from chunk to chunk
+		int state = lexer.state;
+		for (Chunk chunk : chunks) {
+			if (chunk.entryState != state) {
+				chunk.entryState = state;
+				chunk.parsed = false;
+			}
+			state = chunk.endStates == null ? chunk.parser.lexer.state : chunk.endStates[state];
+		}
+
+		// Parse again the chunks whose speculation was wrong
+		this.invokeAll(chunks, true);
+
+		// Complete the elements overlapping the chunks and merge the analysers
+		for (Chunk chunk : chunks) {
+			lexer.continueWith(chunk.parser.lexer);
+		}
+		this.parser.merge(this.pool.invoke(new MergeTask(chunks, 0, chunks.length)));
+	}
+
+	/**
+	 * Splits a piece of code in chunks. The start of each chunk is moved after
+	 * the next line ending, or else the next ';'.
+	 *
+	 * @param buf The buffer containing the code to split.
+	 * @param off The index of the code's first char in the buffer.
+	 * @param len The number of chars of the code.
+	 * @return the chunks.
+	 */
+	protected Chunk[] split(char[] buf, int off, int len)
+	{
+		int nbChunks = Math.max(1, Math.min(len / this.chunkSize, this.pool.getParallelism() * 4)),
+			end = off + len,
+			start = off;
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		for (int i = 1; i <= nbChunks; i++) {
+			int next = i == nbChunks ? end : this.boundary(buf, off + (int) ((long) len * i / nbChunks), end);
+			if (next > start) {
+				chunks.add(new Chunk(buf, start, next - start, chunks.isEmpty()));
+				start = next;
+			}
+		}
+
+		return chunks.toArray(new Chunk[chunks.size()]);
+	}
+
+	/**
+	 * @param buf The buffer containing the code to split.
+	 * @param position The position of the boundary before moving it.
+	 * @param end The index following the code's last char.
+	 * @return the position following the first line ending after the given
+	 * 		position, or else the first ';', or the position itself.
+	 */
+	protected int boundary(char[] buf, int position, int end)
+	{
+		int searchEnd = Math.min(end, position + BOUNDARY_SEARCH),
+			semicolon = -1;
+		for (int i = position; i < searchEnd; i++) {
+			if (buf[i] == '\n') {
+				return i + 1;
+			}
+			if (semicolon == -1 && buf[i] == ';') {
+				semicolon = i + 1;
+			}
+		}
+
+		return semicolon == -1 ? position : semicolon;
+	}
+
+	/**
+	 * Parses in parallel the chunks which need to be.
+	 *
+	 * @param chunks The chunks to parse.
+	 * @param reparse If true, only the chunks whose speculation was wrong are
+	 * 		parsed, without computing their end states again.
+	 */
+	protected void invokeAll(final Chunk[] chunks, final boolean reparse)
+	{
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (final Chunk chunk : chunks) {
+			if (!chunk.parsed) {
+				tasks.add(new RecursiveAction() {
+					protected void compute()
+					{
+						chunk.parse(!reparse);
+					}
+				});
+			}
+		}
+
+		if (!tasks.isEmpty()) {
+			this.pool.invoke(new RecursiveAction() {
+				protected void compute()
+				{
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Chunk of the code, with the parser of its elements.
+	 */
+	protected class Chunk
+	{
+		/**
+		 * Buffer containing the code.
+		 */
+		protected char[] buf;
+
+		/**
+		 * Index of the chunk's first char in the buffer.
+		 */
+		protected int off;
+
+		/**
+		 * Number of chars of the chunk.
+		 */
+		protected int len;
+
+		/**
+		 * If true, the chunk is the first one and its starting state is known.
+		 */
+		protected boolean first;
+
+		/**
+		 * State the chunk is parsed from.
+		 */
+		protected int entryState = Lexer.S_CODE;
+
+		/**
+		 * If true, the chunk has been parsed from {@link #entryState}.
+		 */
+		protected boolean parsed;
+
+		/**
+		 * End state for each starting state, see {@link Lexer#endStates}.
+		 */
+		protected byte[] endStates;
+
+		/**
+		 * Parser of the chunk's elements.
+		 */
+		protected Parser parser;
+
+		/**
+		 * Construct
+		 *
+		 * @param buf Buffer containing the code.
+		 * @param off Index of the chunk's first char in the buffer.
+		 * @param len Number of chars of the chunk.
+		 * @param first If true, the chunk is the first one.
+		 */
+		public Chunk(char[] buf, int off, int len, boolean first)
+		{
+			this.buf = buf;
+			this.off = off;
+			this.len = len;
+			this.first = first;
+			this.parser = new Parser(ParallelParser.this.parser);
+		}
+
+		/**
+		 * Parses the chunk from its entry state.
+		 *
+		 * @param computeEndStates If true, and the chunk is not the first one,
+		 * 		its end states are computed for all the possible starting states.
+		 */
+		public void parse(boolean computeEndStates)
+		{
+			if (computeEndStates && !this.first) {
+				this.endStates = Lexer.endStates(this.buf, this.off, this.len);
+			}
+
+			ChunkEvent event = new ChunkEvent();
+			event.begin();
+			this.parser.reset();
+			this.parser.lexer.startChunk(this.entryState);
+			this.parser.lexer.parse(this.buf, this.off, this.len);
+			this.parsed = true;
+			event.end();
+			if (event.shouldCommit()) {
+				event.chars = this.len;
+				event.entryState = this.entryState;
+				event.reparsed = !computeEndStates;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Fork/join task merging the parsers of a range of chunks.
+	 */
+	protected static class MergeTask extends RecursiveTask<Parser>
+	{
+		/**
+		 * Chunks to merge.
+		 */
+		protected Chunk[] chunks;
+
+		/**
+		 * Index of the first chunk of the range.
+		 */
+		protected int start;
+
+		/**
+		 * Index following the last chunk of the range.
+		 */
+		protected int end;
+
+		/**
+		 * Construct
+		 *
+		 * @param chunks Chunks to merge.
+		 * @param start Index of the first chunk of the range.
+		 * @param end Index following the last chunk of the range.
+		 */
+		public MergeTask(Chunk[] chunks, int start, int end)
+		{
+			this.chunks = chunks;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Merges the parsers of the range two by two.
+		 *
+		 * @return the parser containing the elements of the range's chunks.
+		 */
+		protected Parser compute()
+		{
+			if (this.end - this.start == 1) {
+				return this.chunks[this.start].parser;
+			}
+
+			int middle = (this.start + this.end) >>> 1;
+			MergeTask right = new MergeTask(this.chunks, middle, this.end);
+
+			right.fork();
+			Parser parser = new MergeTask(this.chunks, this.start, middle).compute();
+			return parser.merge(right.join());
+		}
+	}
+}
@@ -1,13 +1,39 @@
 package jsanalyser;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
+import jsanalyser.analyser.Analyser;
+import jsanalyser.analyser.BacktrackingChecker;
+import jsanalyser.analyser.ChainAnalyser;
+import jsanalyser.analyser.ElementBatch;
+import jsanalyser.analyser.GzipEstimator;
+import jsanalyser.analyser.LineIndex;
+import jsanalyser.analyser.LoopAnalyser;
+import jsanalyser.analyser.PluginAnalyser;
 import jsanalyser.analyser.StringAnalyser;
 import jsanalyser.analyser.RegexAnalyser;
 import jsanalyser.analyser.TokenAnalyser;
 import jsanalyser.analyser.NumericAnalyser;
+import jsanalyser.monitoring.AnalyserStats;
+import jsanalyser.monitoring.Monitoring;
+import jsanalyser.monitoring.ParserStats;
+import jsanalyser.report.Report;
+import jsanalyser.report.ReportWriter;
+import jsanalyser.report.Section;
+import jsanalyser.report.TextReportWriter;
 
 /**
  * Parser class.
@@ -30,6 +56,19 @@ import jsanalyser.analyser.NumericAnalyser;
  * Each possible state is stored in an attribute of the class. Those attributes'
  * values are the rank of the bit they change in the global state.
  * </p>
+ * <p>
+ * By default, the code is parsed by the table driven {@link Lexer}, which
+ * produces the same report. The per character methods of this class are the
+ * legacy engine, still available to compare both engines.
+ * </p>
+ * <p>
+ * The parser can also parse UTF-8 bytes without decoding them, with the
+ * {@link Utf8Lexer} (see {@link #setUtf8}).
+ * </p>
+ * <p>
+ * Other analysers can be added as {@link PluginAnalyser} services, which
+ * receive the elements of their kinds in batches (see {@link #setPlugins}).
+ * </p>
  */
 public class Parser
 {
@@ -173,6 +212,16 @@ public class Parser
 	 */
 	protected String currentNumeric;
 
+	/**
+	 * State of the {@link Lexer}'s machine in the current numeric value.
+	 */
+	protected int numericState;
+
+	/**
+	 * Numeric value followed by the current string, stored once the string
+	 * ends, null if there is none.
+	 */
+	protected String pendingNumeric;
 
 	/**
 	 * Analyser for the regexes in the parsed code.
@@ -195,6 +244,49 @@ public class Parser
 	 */
 	protected TokenAnalyser tokens;
 
+	/**
+	 * Analyser of the member access chains, null if they are not tracked.
+	 */
+	protected ChainAnalyser chains;
+
+	/**
+	 * Analyser of the code repeated in the loops, null if it is not tracked.
+	 */
+	protected LoopAnalyser loops;
+
+	/**
+	 * Plugin analysers, empty if the plugins are not loaded.
+	 */
+	protected List<PluginAnalyser> plugins = new ArrayList<PluginAnalyser>();
+
+	/**
+	 * Batch of the elements given to the plugins, null if there is no plugin.
+	 */
+	protected ElementBatch batch;
+
+	/**
+	 * If true, the savings of the strings in the gzipped code are estimated.
+	 */
+	protected boolean gzipSavings;
+
+	/**
+	 * Estimator of the savings in the gzipped code, keeping the parsed code,
+	 * null if they are not estimated.
+	 */
+	protected GzipEstimator gzip;
+
+	/**
+	 * Checker of the backtracking of the regexes, shared by the parsers with
+	 * the same settings so each regex is checked once, null if they are not
+	 * checked.
+	 */
+	protected BacktrackingChecker backtracking;
+
+	/**
+	 * Providers of the plugin analysers, null if the plugins are not loaded.
+	 */
+	protected List<ServiceLoader.Provider<PluginAnalyser>> pluginProviders;
+
 	/**
 	 * Current parsed token. Reinitialised to "" at the beginning of the next
 	 * token.
@@ -203,30 +295,584 @@ public class Parser
 
 
 	/**
-	 * Index of the current parsed char in the code to analyse.
-	 * Not used yet.
+	 * Index of the current parsed char in the code to analyse. Gives the
+	 * positions of the elements when they are indexed (see
+	 * {@link #setIndexed}).
 	 */
-	protected int currentCharIndex = -1;
+	protected long currentCharIndex = 0;
 
 	/**
 	 * Current global state of the parser. Composition of different states bits.
 	 */
 	protected int state = 0;
 
+	/**
+	 * If true, the code is parsed with the legacy per character methods
+	 * instead of the {@link Lexer}.
+	 */
+	protected boolean legacyEngine;
+
+	/**
+	 * Table driven lexer parsing the code, null with the legacy engine.
+	 */
+	protected Lexer lexer;
+
+	/**
+	 * If true, the code is given as UTF-8 bytes, parsed by a
+	 * {@link Utf8Lexer}, instead of chars.
+	 */
+	protected boolean utf8;
+
+	/**
+	 * If true, the positions of the occurences of the elements are indexed
+	 * and reported.
+	 */
+	protected boolean indexed;
+
+	/**
+	 * If true, the member access chains repeated in a scope are tracked and
+	 * reported (see {@link ChainLexer}).
+	 */
+	protected boolean trackChains;
+
+	/**
+	 * If true, the code repeated in the loops is tracked and reported (see
+	 * {@link LoopLexer}).
+	 */
+	protected boolean trackLoops;
+
+	/**
+	 * Lines of the parsed code, to report the positions of the occurences,
+	 * the scopes of the chains and the code repeated in the loops, null if
+	 * none of them are tracked.
+	 */
+	protected LineIndex lines;
+
+	/**
+	 * Parser splitting the large pieces of code in chunks parsed in parallel,
+	 * null if the code is parsed sequentially.
+	 */
+	protected ParallelParser parallelParser;
+
+	/**
+	 * Number of elements reported by each analyser counting its elements
+	 * approximately, 0 for the analysers counting exactly. Indexed by the
+	 * {@link Lexer} elements kinds.
+	 */
+	protected int[] topK = new int[Lexer.NB_KINDS];
+
+	/**
+	 * For each analyser, true if its elements are stored in a radix tree (see
+	 * {@link analyser.Analyser#setSorted}). Indexed by the {@link Lexer}
+	 * elements kinds.
+	 */
+	protected boolean[] sorted = new boolean[Lexer.NB_KINDS];
+
+	/**
+	 * Maximum number of bytes of the elements of each analyser counting
+	 * exactly in memory, beyond which they are spilled on the disk (see
+	 * {@link analyser.Analyser#setMemoryBudget}), 0 for no limit.
+	 */
+	protected long memoryBudget;
+
+	/**
+	 * Construct
+	 * <p>
+	 * The code will be parsed with the table driven {@link Lexer}.
+	 * </p>
+	 */
+	public Parser()
+	{
+		this(false);
+	}
+
+	/**
+	 * Construct
+	 *
+	 * @param legacyEngine If true, the code will be parsed with the legacy per
+	 * 		character engine.
+	 */
+	public Parser(boolean legacyEngine)
+	{
+		this.legacyEngine = legacyEngine;
+	}
+
+	/**
+	 * Construct
+	 * <p>
+	 * The parser has the same settings (engine, input and approximate
+	 * counting) as another parser, to parse another part of the same code.
+	 * </p>
+	 *
+	 * @param settings The parser whose settings are copied.
+	 */
+	public Parser(Parser settings)
+	{
+		this.legacyEngine = settings.legacyEngine;
+		this.utf8 = settings.utf8;
+		this.indexed = settings.indexed;
+		this.trackChains = settings.trackChains;
+		this.trackLoops = settings.trackLoops;
+		this.lines = settings.lines;
+		this.pluginProviders = settings.pluginProviders;
+		this.gzipSavings = settings.gzipSavings;
+		this.backtracking = settings.backtracking;
+		this.topK = settings.topK.clone();
+		this.sorted = settings.sorted.clone();
+		this.memoryBudget = settings.memoryBudget;
+	}
+
 	/**
 	 * Reset the parser with the default values.
 	 * <p>
-	 * The analysers are reconstructed and the state and index of the current
-	 * character are set to 0.
+	 * The analysers and the lexer are reconstructed and the state and index of
+	 * the current character are set to 0.
 	 * </p>
 	 */
 	protected void reset()
 	{
 		this.currentCharIndex = this.state = 0;
+		this.lines = this.indexed || this.trackChains || this.trackLoops ? new LineIndex() : null;
+		this.gzip = this.gzipSavings ? new GzipEstimator() : null;
+		this.resetAnalysers();
+		this.lexer = null;
+		if (this.utf8) {
+			this.lexer = new Utf8Lexer(this.strings, this.numerics, this.regexes, this.tokens);
+		}
+		else if (this.trackLoops) {
+			this.lexer = new LoopLexer(this.strings, this.numerics, this.regexes, this.tokens, this.chains, this.loops, this.lines);
+			this.lexer.setIndexed(this.indexed);
+			this.lexer.setBatch(this.batch);
+		}
+		else if (this.trackChains) {
+			this.lexer = new ChainLexer(this.strings, this.numerics, this.regexes, this.tokens, this.chains, this.lines);
+			this.lexer.setIndexed(this.indexed);
+			this.lexer.setBatch(this.batch);
+		}
+		else if (!this.legacyEngine) {
+			this.lexer = new Lexer(this.strings, this.numerics, this.regexes, this.tokens);
+			this.lexer.setIndexed(this.indexed);
+			this.lexer.setBatch(this.batch);
+		}
+	}
+
+	/**
+	 * Empties the analysers and resets the state of the parser, to parse
+	 * another code.
+	 * <p>
+	 * Unlike {@link #reset}, the analysers and the lexer are kept, with the
+	 * memory they have allocated, so a parser can be reused for many small
+	 * codes.
+	 * </p>
+	 */
+	public void clear()
+	{
+		this.currentCharIndex = 0;
+		if (this.lines != null) {
+			this.lines.clear();
+		}
+		if (this.gzip != null) {
+			this.gzip.clear();
+		}
+		this.regexes.clear();
+		this.strings.clear();
+		this.numerics.clear();
+		this.tokens.clear();
+		if (this.chains != null) {
+			this.chains.clear();
+		}
+		if (this.loops != null) {
+			this.loops.clear();
+		}
+		for (PluginAnalyser plugin : this.plugins) {
+			plugin.clear();
+		}
+		this.resetState();
+	}
+
+	/**
+	 * Reconstructs the analysers, with the approximate counting settings.
+	 */
+	protected void resetAnalysers()
+	{
 		this.regexes = new RegexAnalyser();
 		this.strings = new StringAnalyser();
 		this.numerics = new NumericAnalyser();
 		this.tokens = new TokenAnalyser();
+		this.regexes.setApproximate(this.topK[Lexer.K_REGEX]);
+		this.strings.setApproximate(this.topK[Lexer.K_STRING]);
+		this.numerics.setApproximate(this.topK[Lexer.K_NUMERIC]);
+		this.tokens.setApproximate(this.topK[Lexer.K_TOKEN]);
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			if (this.sorted[kind]) {
+				this.getAnalyser(kind).setSorted();
+			}
+		}
+		if (this.utf8) {
+			this.regexes.setUtf8();
+			this.strings.setUtf8();
+			this.numerics.setUtf8();
+			this.tokens.setUtf8();
+		}
+		if (this.memoryBudget > 0) {
+			this.regexes.setMemoryBudget(this.memoryBudget);
+			this.strings.setMemoryBudget(this.memoryBudget);
+			this.numerics.setMemoryBudget(this.memoryBudget);
+			this.tokens.setMemoryBudget(this.memoryBudget);
+		}
+		this.strings.setGzipEstimator(this.gzip);
+		this.regexes.setBacktrackingChecker(this.backtracking);
+		this.chains = this.trackChains ? new ChainAnalyser() : null;
+		this.loops = this.trackLoops ? new LoopAnalyser() : null;
+		if (this.loops != null) {
+			this.loops.setIndexed(this.lines);
+		}
+		this.plugins = new ArrayList<PluginAnalyser>();
+		if (this.pluginProviders != null) {
+			for (ServiceLoader.Provider<PluginAnalyser> provider : this.pluginProviders) {
+				this.plugins.add(provider.get());
+			}
+		}
+		this.batch = this.plugins.isEmpty() ? null : new ElementBatch(this.plugins, ElementBatch.DEFAULT_CAPACITY);
+		if (this.indexed) {
+			this.regexes.setIndexed(this.lines);
+			this.strings.setIndexed(this.lines);
+			this.numerics.setIndexed(this.lines);
+			this.tokens.setIndexed(this.lines);
+		}
+		if (this.lexer != null) {
+			this.lexer.setAnalysers(this.strings, this.numerics, this.regexes, this.tokens);
+			this.lexer.setBatch(this.batch);
+		}
+		if (this.lexer instanceof ChainLexer) {
+			((ChainLexer) this.lexer).setChains(this.chains);
+		}
+		if (this.lexer instanceof LoopLexer) {
+			((LoopLexer) this.lexer).setLoops(this.loops);
+		}
+	}
+
+	/**
+	 * Detaches the elements found so far in another parser, and continues
+	 * with empty analysers.
+	 * <p>
+	 * The state of the parser is kept, so the elements in progress are stored
+	 * in the new analysers when they end. Detaching the elements does not copy
+	 * them, so it can be done often while a stream is parsed.
+	 * </p>
+	 *
+	 * @return a parser containing the elements found since the parser was
+	 * 		reset or since the previous call.
+	 */
+	public Parser detachElements()
+	{
+		Parser elements = new Parser(this);
+		elements.regexes = this.regexes;
+		elements.strings = this.strings;
+		elements.numerics = this.numerics;
+		elements.tokens = this.tokens;
+		elements.chains = this.chains;
+		elements.loops = this.loops;
+		elements.plugins = this.plugins;
+		this.resetAnalysers();
+		return elements;
+	}
+
+	/**
+	 * @param kind The kind of the elements, one of the {@link Lexer} K_*
+	 * 		constants.
+	 * @return the analyser of the elements of this kind.
+	 */
+	public Analyser getAnalyser(int kind)
+	{
+		switch (kind) {
+			case Lexer.K_NUMERIC:
+				return this.numerics;
+			case Lexer.K_TOKEN:
+				return this.tokens;
+			case Lexer.K_REGEX:
+				return this.regexes;
+			case Lexer.K_STRING:
+				return this.strings;
+			default:
+				throw new IllegalArgumentException("Unknown kind of elements: " + kind);
+		}
+	}
+
+	/**
+	 * Sets the counting of the elements of a kind approximate, with a bounded
+	 * memory, only the most frequent elements being reported (see
+	 * {@link analyser.Analyser#setApproximate}). Applied when the analysers
+	 * are reset.
+	 *
+	 * @param kind The kind of the elements, one of the {@link Lexer} K_*
+	 * 		constants.
+	 * @param topK The number of reported elements, 0 to count all the
+	 * 		elements exactly.
+	 */
+	public void setApproximate(int kind, int topK)
+	{
+		this.topK[kind] = topK;
+	}
+
+	/**
+	 * Sets if the elements of a kind counted exactly are stored in a radix
+	 * tree, sharing their prefixes, instead of a hash table (see
+	 * {@link analyser.Analyser#setSorted}). Applied when the analysers are
+	 * reset.
+	 *
+	 * @param kind The kind of the elements, one of the {@link Lexer} K_*
+	 * 		constants.
+	 * @param sorted true to store the elements in a radix tree.
+	 */
+	public void setSorted(int kind, boolean sorted)
+	{
+		this.sorted[kind] = sorted;
+	}
+
+	/**
+	 * Bounds the memory of the elements counted exactly in hash tables, the
+	 * elements beyond the budget being spilled in sorted runs on the disk and
+	 * merged when they are reported (see
+	 * {@link analyser.Analyser#setMemoryBudget}). Not available with the
+	 * gzip savings, which reorder the reported strings. Applied when the
+	 * analysers are reset.
+	 *
+	 * @param memoryBudget The maximum number of bytes of the elements of
+	 * 		each analyser in memory, 0 for no limit.
+	 */
+	public void setMemoryBudget(long memoryBudget)
+	{
+		if (memoryBudget > 0 && this.gzipSavings) {
+			throw new IllegalStateException("The elements cannot be spilled on the disk with the gzip savings");
+		}
+
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Enables the speculative parallel parsing of the pieces of code larger
+	 * than two chunks (see {@link ParallelParser}). Not available with the
+	 * legacy engine.
+	 *
+	 * @param pool The pool in which the chunks are parsed.
+	 * @param chunkSize The minimum size of a chunk.
+	 */
+	public void setParallel(ForkJoinPool pool, int chunkSize)
+	{
+		if (this.legacyEngine || this.utf8 || this.indexed || this.trackChains || this.trackLoops || this.pluginProviders != null) {
+			throw new IllegalStateException("The legacy engine, the UTF-8 lexer, the indexed positions, the chains, the loops and the plugins cannot parse in parallel");
+		}
+
+		this.parallelParser = new ParallelParser(this, pool, chunkSize);
+	}
+
+	/**
+	 * Sets if the code is given as UTF-8 bytes (see {@link #parse(byte[], int,
+	 * int)}), parsed without being decoded, the elements being stored as
+	 * bytes until they are reported. The elements are the same as the ones
+	 * of the decoded code. Not available with the legacy engine. Applied when
+	 * the parser is reset.
+	 *
+	 * @param utf8 true to parse UTF-8 bytes, false to parse chars.
+	 */
+	public void setUtf8(boolean utf8)
+	{
+		if (utf8 && (this.legacyEngine || this.indexed || this.trackChains || this.trackLoops || this.pluginProviders != null || this.gzipSavings)) {
+			throw new IllegalStateException("The legacy engine, the indexed positions, the chains, the loops, the plugins and the gzip savings cannot parse UTF-8 bytes");
+		}
+
+		this.utf8 = utf8;
+	}
+
+	/**
+	 * Sets if the positions of the occurences of the elements are indexed, to
+	 * be reported with the elements (see {@link Analyser#setIndexed}). The
+	 * positions are given as lines and columns of the code, counting the
+	 * chars from 1. Only available with the sequential char lexer. Applied
+	 * when the parser is reset.
+	 *
+	 * @param indexed true to index the positions of the occurences.
+	 */
+	public void setIndexed(boolean indexed)
+	{
+		if (indexed && (this.legacyEngine || this.utf8 || this.parallelParser != null)) {
+			throw new IllegalStateException("The positions can only be indexed by the sequential char lexer");
+		}
+
+		this.indexed = indexed;
+	}
+
+	/**
+	 * @return true if the positions of the occurences are indexed (see
+	 * 		{@link #setIndexed}).
+	 */
+	public boolean isIndexed()
+	{
+		return this.indexed;
+	}
+
+	/**
+	 * Sets if the member access chains repeated in the scopes of the code are
+	 * tracked by a {@link ChainLexer} and reported in an additional section.
+	 * Only available with the sequential char lexer. Applied when the parser
+	 * is reset.
+	 *
+	 * @param trackChains true to track the chains.
+	 */
+	public void setChains(boolean trackChains)
+	{
+		if (trackChains && (this.legacyEngine || this.utf8 || this.parallelParser != null)) {
+			throw new IllegalStateException("The chains can only be tracked by the sequential char lexer");
+		}
+
+		this.trackChains = trackChains;
+	}
+
+	/**
+	 * @return the analyser of the member access chains, null if they are not
+	 * 		tracked (see {@link #setChains}).
+	 */
+	public ChainAnalyser getChains()
+	{
+		return this.chains;
+	}
+
+	/**
+	 * Sets if the code repeated in the loops, which could run once before
+	 * them, is tracked by a {@link LoopLexer} and reported in an additional
+	 * section, with the positions of its occurences. Only available with the
+	 * sequential char lexer. Applied when the parser is reset.
+	 *
+	 * @param trackLoops true to track the code repeated in the loops.
+	 */
+	public void setLoops(boolean trackLoops)
+	{
+		if (trackLoops && (this.legacyEngine || this.utf8 || this.parallelParser != null)) {
+			throw new IllegalStateException("The loops can only be tracked by the sequential char lexer");
+		}
+
+		this.trackLoops = trackLoops;
+	}
+
+	/**
+	 * @return the analyser of the code repeated in the loops, null if it is
+	 * 		not tracked (see {@link #setLoops}).
+	 */
+	public LoopAnalyser getLoops()
+	{
+		return this.loops;
+	}
+
+	/**
+	 * Sets if the {@link PluginAnalyser} services found in the classpath
+	 * analyse the elements, each in a section of the report. The services are
+	 * looked up once, and a new instance of each plugin is created when the
+	 * analysers are reset. Only available with the sequential char lexer.
+	 *
+	 * @param plugins true to load the plugins.
+	 */
+	public void setPlugins(boolean plugins)
+	{
+		if (plugins && (this.legacyEngine || this.utf8 || this.parallelParser != null)) {
+			throw new IllegalStateException("The plugins can only be used by the sequential char lexer");
+		}
+
+		this.pluginProviders = null;
+		if (plugins) {
+			this.pluginProviders = new ArrayList<ServiceLoader.Provider<PluginAnalyser>>();
+			ServiceLoader.load(PluginAnalyser.class).stream().forEach(this.pluginProviders::add);
+		}
+	}
+
+	/**
+	 * @return the plugin analysers, empty if the plugins are not loaded (see
+	 * 		{@link #setPlugins}).
+	 */
+	public List<PluginAnalyser> getPlugins()
+	{
+		return this.plugins;
+	}
+
+	/**
+	 * Sets if the bytes saved by the optimisable strings in the gzipped code
+	 * are estimated (see {@link GzipEstimator}), the parsed code being kept.
+	 * Not available with the UTF-8 lexer or with a memory budget. Applied when
+	 * the parser is reset.
+	 *
+	 * @param gzipSavings true to estimate the savings in the gzipped code.
+	 */
+	public void setGzipSavings(boolean gzipSavings)
+	{
+		if (gzipSavings && (this.utf8 || this.memoryBudget > 0)) {
+			throw new IllegalStateException("The savings in the gzipped code cannot be estimated by the UTF-8 lexer or with the elements spilled on the disk");
+		}
+
+		this.gzipSavings = gzipSavings;
+	}
+
+	/**
+	 * @return true if the savings in the gzipped code are estimated (see
+	 * 		{@link #setGzipSavings}).
+	 */
+	public boolean hasGzipSavings()
+	{
+		return this.gzipSavings;
+	}
+
+	/**
+	 * Sets if the regexes which can backtrack catastrophically are reported
+	 * as hazards (see {@link BacktrackingChecker}). The checker is shared by
+	 * the parsers created with the settings of this one, so each distinct
+	 * regex is checked once. Applied when the analysers are reset.
+	 *
+	 * @param backtracking true to check the backtracking of the regexes.
+	 */
+	public void setBacktrackingCheck(boolean backtracking)
+	{
+		this.backtracking = backtracking ? new BacktrackingChecker() : null;
+	}
+
+	/**
+	 * @return true if the code is parsed with the legacy per character
+	 * 		engine.
+	 */
+	public boolean isLegacyEngine()
+	{
+		return this.legacyEngine;
+	}
+
+	/**
+	 * @return true if the code is given as UTF-8 bytes (see {@link #setUtf8}).
+	 */
+	public boolean isUtf8()
+	{
+		return this.utf8;
+	}
+
+	/**
+	 * @return the charset in which the input is read, UTF-8 when the code is
+	 * 		given as bytes, the platform's default charset otherwise.
+	 */
+	public Charset getCharset()
+	{
+		return this.utf8 ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+	}
+
+	/**
+	 * Resets the state of the parser, keeping the analysers.
+	 * <p>
+	 * To be called before parsing a new input, so a string or a comment not
+	 * ended in the previous input does not continue in the new one.
+	 * </p>
+	 */
+	public void resetState()
+	{
+		this.state = 0;
+		this.pendingNumeric = null;
+		if (this.lexer != null) {
+			this.lexer.resetState();
+		}
 	}
 
 	/**
@@ -237,10 +883,274 @@ public class Parser
 	 */
 	public void parseCodeChunk(String chunk)
 	{
-		int chunkSize = chunk.length(),
+		this.parse(chunk.toCharArray(), 0, chunk.length());
+	}
+
+	/**
+	 * This method parses a chunk of code stored in a range of a char buffer.
+	 * <p>
+	 * The chars are given as they are to the parser, so the input does not
+	 * need to be copied in intermediate strings. If the parser parses UTF-8
+	 * bytes (see {@link #setUtf8}), the chars are encoded first.
+	 * </p>
+	 *
+	 * @param buf The buffer containing the chunk of code to parse. A chunk can
+	 * 		be a subpart of a whole code, so does not need to be valid by itself.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 */
+	public void parse(char[] buf, int off, int len)
+	{
+		if (this.utf8) {
+			// The chars are encoded, to be parsed as the input
+			this.parse(StandardCharsets.UTF_8.encode(CharBuffer.wrap(buf, off, len)));
+			return;
+		}
+
+		if (this.gzip != null) {
+			this.gzip.append(buf, off, len);
+		}
+		ParserStats stats = Monitoring.getParserStats();
+		if (stats != null) {
+			this.parseMonitored(stats, buf, off, len);
+			return;
+		}
+
+		this.parseChunk(buf, off, len);
+	}
+
+	/**
+	 * Parses a chunk of code stored in a range of a char buffer, with the
+	 * engine of the parser.
+	 *
+	 * @param buf The buffer containing the chunk of code to parse.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 */
+	protected void parseChunk(char[] buf, int off, int len)
+	{
+		int end = off + len,
 			localCurChar;
-		for (localCurChar = 0; localCurChar < chunkSize; localCurChar++, this.currentCharIndex++) {
-			this.parseChar(chunk.charAt(localCurChar));
+		if (this.parallelParser != null && len >= 2 * this.parallelParser.getChunkSize()) {
+			this.parallelParser.parse(buf, off, len);
+			this.currentCharIndex += len;
+			return;
+		}
+		if (this.lexer != null) {
+			if (this.lines != null) {
+				this.lines.scan(buf, off, len, this.currentCharIndex);
+				this.lexer.setPosition(this.currentCharIndex);
+			}
+			this.lexer.parse(buf, off, len);
+			if (this.batch != null) {
+				// The plugins are up to date between the chunks
+				this.batch.flush();
+			}
+			this.currentCharIndex += len;
+			return;
+		}
+
+		for (localCurChar = off; localCurChar < end; localCurChar++, this.currentCharIndex++) {
+			this.parseChar(buf[localCurChar]);
+		}
+	}
+
+	/**
+	 * Parses a chunk of code and updates the statistics of the parsing and of
+	 * the analysers.
+	 * <p>
+	 * With the legacy engine, the parsing methods are timed for one char out
+	 * of {@link ParserStats#SAMPLE_INTERVAL} (see {@link #parseCharTimed}).
+	 * </p>
+	 *
+	 * @param stats The statistics of the parsing.
+	 * @param buf The buffer containing the chunk of code to parse.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 */
+	protected void parseMonitored(ParserStats stats, char[] buf, int off, int len)
+	{
+		long[] nbOccurences = this.getNbOccurences();
+		long start = System.nanoTime();
+		if (this.lexer != null) {
+			this.parseChunk(buf, off, len);
+		}
+		else {
+			for (int i = off, end = off + len; i < end; i++, this.currentCharIndex++) {
+				if ((this.currentCharIndex & (ParserStats.SAMPLE_INTERVAL - 1)) == 0) {
+					this.parseCharTimed(buf[i], stats);
+				}
+				else {
+					this.parseChar(buf[i]);
+				}
+			}
+		}
+		stats.parsed(len, System.nanoTime() - start);
+		this.found(nbOccurences);
+	}
+
+	/**
+	 * @return the number of elements stored by the analyser of each kind,
+	 * 		each occurence counting, indexed by the {@link Lexer} K_* constants.
+	 */
+	protected long[] getNbOccurences()
+	{
+		long[] nbOccurences = new long[Lexer.NB_KINDS];
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			nbOccurences[kind] = this.getAnalyser(kind).getNbOccurences();
+		}
+		return nbOccurences;
+	}
+
+	/**
+	 * Updates the statistics of the analysers after a chunk of code was
+	 * parsed.
+	 *
+	 * @param nbOccurences The number of elements stored by each analyser
+	 * 		before the chunk was parsed (see {@link #getNbOccurences}).
+	 */
+	protected void found(long[] nbOccurences)
+	{
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			Analyser analyser = this.getAnalyser(kind);
+			AnalyserStats analyserStats = Monitoring.getAnalyserStats(analyser.getName());
+			if (analyserStats != null) {
+				analyserStats.found(analyser.getNbOccurences() - nbOccurences[kind], analyser.getNbElements());
+			}
+		}
+	}
+
+	/**
+	 * Parses a char as {@link #parseChar}, timing each parsing method.
+	 *
+	 * @param c The character to parse.
+	 * @param stats The statistics receiving the times.
+	 */
+	protected void parseCharTimed(final char c, ParserStats stats)
+	{
+		long time = System.nanoTime();
+		this.parseComments(c);
+		time = sample(stats, ParserStats.PARSE_COMMENTS, time);
+		this.parseRegex(c);
+		time = sample(stats, ParserStats.PARSE_REGEX, time);
+		this.parseString(c);
+		time = sample(stats, ParserStats.PARSE_STRING, time);
+
+		if (this.inComment() || this.inRegex() || this.inString()) {
+			// The char starting a string or a comment ends the numeric value
+			if (this.compareState(this.IN_NUMERIC)) {
+				this.parseNumeric(c);
+			}
+			return;
+		}
+
+		this.parseNumeric(c);
+		time = sample(stats, ParserStats.PARSE_NUMERIC, time);
+
+		// A '.' which can start a numeric value can also end a token
+		if (this.compareState(this.IN_NUMERIC) && this.numericState != Lexer.S_DOT) {
+			return;
+		}
+
+		this.parseToken(c);
+		sample(stats, ParserStats.PARSE_TOKEN, time);
+
+		if (c == ')') {
+			this.enableState(this.END_PARENTHESIS);
+		}
+		else if (this.compareState(this.END_PARENTHESIS)) {
+			this.disableState(this.END_PARENTHESIS);
+		}
+	}
+
+	/**
+	 * Counts the time spent in a parsing method for a sampled char.
+	 *
+	 * @param stats The statistics receiving the time.
+	 * @param method The index of the method, one of the {@link ParserStats}
+	 * 		PARSE_* constants.
+	 * @param start The time the method was called, in nanoseconds.
+	 * @return the time the next method is called, in nanoseconds.
+	 */
+	protected static long sample(ParserStats stats, int method, long start)
+	{
+		stats.sampled(method, System.nanoTime() - start);
+		return System.nanoTime();
+	}
+
+	/**
+	 * This method parses the remaining chars of a buffer. Once parsed, the
+	 * buffer's position is set to its limit.
+	 *
+	 * @param chars The buffer containing the chunk of code to parse.
+	 */
+	public void parse(CharBuffer chars)
+	{
+		if (chars.hasArray()) {
+			this.parse(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+			chars.position(chars.limit());
+			return;
+		}
+
+		char[] buf = new char[Math.min(chars.remaining(), 8192)];
+		while (chars.hasRemaining()) {
+			int len = Math.min(chars.remaining(), buf.length);
+			chars.get(buf, 0, len);
+			this.parse(buf, 0, len);
+		}
+	}
+
+	/**
+	 * Parses a chunk of UTF-8 code stored in a range of a byte buffer, with
+	 * the {@link Utf8Lexer}. The chunk can end in the middle of the bytes of
+	 * a char.
+	 *
+	 * @param buf The buffer containing the chunk of code to parse.
+	 * @param off The index of the chunk's first byte in the buffer.
+	 * @param len The number of bytes of the chunk.
+	 * @throws IllegalStateException if the parser does not parse UTF-8 bytes
+	 * 		(see {@link #setUtf8}).
+	 */
+	public void parse(byte[] buf, int off, int len)
+	{
+		if (!this.utf8) {
+			throw new IllegalStateException("The parser does not parse UTF-8 bytes");
+		}
+
+		ParserStats stats = Monitoring.getParserStats();
+		if (stats == null) {
+			((Utf8Lexer) this.lexer).parse(buf, off, len);
+			this.currentCharIndex += len;
+			return;
+		}
+
+		long[] nbOccurences = this.getNbOccurences();
+		long start = System.nanoTime();
+		((Utf8Lexer) this.lexer).parse(buf, off, len);
+		this.currentCharIndex += len;
+		stats.parsed(len, System.nanoTime() - start);
+		this.found(nbOccurences);
+	}
+
+	/**
+	 * This method parses the remaining UTF-8 bytes of a buffer. Once parsed,
+	 * the buffer's position is set to its limit.
+	 *
+	 * @param bytes The buffer containing the chunk of code to parse.
+	 */
+	public void parse(ByteBuffer bytes)
+	{
+		if (bytes.hasArray()) {
+			this.parse(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			bytes.position(bytes.limit());
+			return;
+		}
+
+		byte[] buf = new byte[Math.min(bytes.remaining(), 8192)];
+		while (bytes.hasRemaining()) {
+			int len = Math.min(bytes.remaining(), buf.length);
+			bytes.get(buf, 0, len);
+			this.parse(buf, 0, len);
 		}
 	}
 
@@ -266,12 +1176,17 @@ public class Parser
 		this.parseString(c);
 
 		if (this.inComment() || this.inRegex() || this.inString()) {
+			// The char starting a string or a comment ends the numeric value
+			if (this.compareState(this.IN_NUMERIC)) {
+				this.parseNumeric(c);
+			}
 			return;
 		}
 
 		this.parseNumeric(c);
 
-		if (this.compareState(this.IN_NUMERIC)) {
+		// A '.' which can start a numeric value can also end a token
+		if (this.compareState(this.IN_NUMERIC) && this.numericState != Lexer.S_DOT) {
 			return;
 		}
 
@@ -293,11 +1208,83 @@ public class Parser
 	 */
 	public void printReport()
 	{
-		System.out.println("Report");
-		this.regexes.run(true);
-		this.strings.run(true);
-		this.numerics.run(true);
-		this.tokens.run(true);
+		try {
+			ReportWriter writer = new TextReportWriter(new BufferedWriter(new OutputStreamWriter(System.out)), true);
+			writer.write(this.report("Report", 0));
+			writer.flush();
+		} catch (IOException io) {
+			io.printStackTrace();
+		}
+	}
+
+	/**
+	 * Builds the analyse's report, with a section per analyser.
+	 *
+	 * @param title The title of the report.
+	 * @param top The number of most frequent elements reported by each
+	 * 		analyser, 0 to report all the elements.
+	 * @return the report.
+	 */
+	public Report report(String title, int top)
+	{
+		List<Section> sections = new ArrayList<Section>();
+		sections.add(this.regexes.report(top));
+		sections.add(this.strings.report(top));
+		sections.add(this.numerics.report(top));
+		sections.add(this.tokens.report(top));
+		if (this.chains != null) {
+			sections.add(this.chains.report(top));
+		}
+		if (this.loops != null) {
+			sections.add(this.loops.report(top));
+		}
+		for (PluginAnalyser plugin : this.plugins) {
+			sections.add(plugin.report(top));
+		}
+		return new Report(title, sections);
+	}
+
+	/**
+	 * Merge the analysers of another parser in this parser's ones.
+	 * <p>
+	 * The other parser must not be used after the merge (see
+	 * {@link analyser.Analyser#merge}).
+	 * </p>
+	 * <p>
+	 * The chains are named after their scope in their code, and the code
+	 * repeated in the loops is reported with its positions, so they are only
+	 * merged if both parsers parsed the same code, such as successive
+	 * snapshots of a stream. Otherwise this parser stops reporting them.
+	 * </p>
+	 *
+	 * @param other The parser whose elements are merged.
+	 * @return this parser, containing the elements of both parsers.
+	 */
+	public Parser merge(Parser other)
+	{
+		this.regexes.merge(other.regexes);
+		this.strings.merge(other.strings);
+		this.numerics.merge(other.numerics);
+		this.tokens.merge(other.tokens);
+		boolean sameLines = this.lines == other.lines;
+		if (this.chains != null && other.chains != null && (sameLines || this.chains.getNbOccurences() == 0)) {
+			this.chains.merge(other.chains);
+			this.lines = other.lines;
+		}
+		else {
+			this.chains = null;
+		}
+		if (this.loops != null && other.loops != null && (sameLines || this.loops.getNbOccurences() == 0)) {
+			this.loops.merge(other.loops);
+			this.lines = other.lines;
+		}
+		else {
+			this.loops = null;
+		}
+		for (int i = 0; i < this.plugins.size(); i++) {
+			this.plugins.get(i).merge(other.plugins.get(i));
+		}
+		return this;
 	}
 
 	/**
@@ -381,18 +1368,22 @@ public class Parser
 			// Entering regex
 			if (
 				!this.inRegex()
-				&& !this.compareState(this.IN_NUMERIC)
+				// A '.' which can start a numeric value can also precede a
+				// regex
+				&& !(this.compareState(this.IN_NUMERIC) && this.numericState != Lexer.S_DOT)
 				&& !this.compareState(this.IN_TOKEN)
 				&& !this.compareState(this.END_PARENTHESIS)
 				&& !this.inComment()
+				&& !(this.compareState(this.MAYBE_IN_REGEX) && this.compareState(this.ESCAPED_CHAR))
 				&& c == '/'
 			) {
 				this.enableState(this.MAYBE_IN_REGEX);
 			}
 			else if (this.compareState(this.MAYBE_IN_REGEX)) {
 				this.disableState(this.MAYBE_IN_REGEX);
-				if (c != '*' && c != '/') {
-					this.currentRegex = "/";
+				if (c != '*' && c != '/' || this.compareState(this.ESCAPED_CHAR)) {
+					// The '\\' escaping the first char is part of the regex
+					this.currentRegex = this.compareState(this.ESCAPED_CHAR) ? "/\\" : "/";
 					this.enableState(this.IN_REGEX);
 					this.disableState(this.MAYBE_START_COMMENT);
 				}
@@ -486,24 +1477,41 @@ public class Parser
 	 * This method parses a numeric value. It will detect if the parser enters
 	 * or exits a numeric value. At the end of a numeric, the parsed numeric
 	 * will be stored in the numeric analyser ({@link analyser.NumericAnalyser}.
+	 * <p>
+	 * The numeric values follow the transitions of the {@link Lexer}'s table,
+	 * so both engines find the same numeric values in the whole grammar of
+	 * ECMAScript.
+	 * </p>
 	 *
 	 * @param c The current character.
 	 */
 	protected void parseNumeric(final char c)
 	{
-		String sC = String.valueOf(c);
-		if (!this.compareState(this.IN_NUMERIC) && Pattern.matches("[0-9]", sC)) {
+		int state = this.compareState(this.IN_NUMERIC)
+				? this.numericState
+				: (this.compareState(this.IN_TOKEN) ? Lexer.S_TOKEN : Lexer.S_CODE),
+			transition = state * Lexer.NB_CLASSES + (c < 128 ? Lexer.CHAR_CLASSES[c] : Lexer.C_OTHER),
+			actions = Lexer.ACTIONS[transition];
+
+		this.numericState = Lexer.TRANSITIONS[transition];
+		if ((actions & Lexer.A_EMIT_NUMERIC) != 0) {
+			this.numerics.incElementOccurences(this.currentNumeric);
+		}
+		// As in the lexer, a numeric value followed by a string is stored
+		// once the string ends
+		else if (this.numericState >= Lexer.S_STRING && (((this.numericState - Lexer.S_STRING) >> 2) & Lexer.A_EMIT_NUMERIC) != 0) {
+			this.pendingNumeric = this.currentNumeric;
+		}
+
+		if ((actions & Lexer.A_START_NUMERIC) != 0) {
 			this.enableState(this.IN_NUMERIC);
-			this.currentNumeric = sC;
+			this.currentNumeric = String.valueOf(c);
 		}
-		else if (this.compareState(this.IN_NUMERIC)) {
-			if (Pattern.matches("[.0-9]", sC)) {
-				this.currentNumeric = this.currentNumeric.concat(sC);
-			}
-			else {
-				this.numerics.incElementOccurences(this.currentNumeric);
-				this.disableState(this.IN_NUMERIC);
-			}
+		else if ((actions & Lexer.A_APPEND_NUMERIC) != 0) {
+			this.currentNumeric = this.currentNumeric.concat(String.valueOf(c));
+		}
+		else {
+			this.disableState(this.IN_NUMERIC);
 		}
 	}
 
@@ -532,6 +1540,10 @@ public class Parser
 				&& c == this.currentStringDelimiter
 			) {
 				this.strings.incElementOccurences(this.currentString);
+				if (this.pendingNumeric != null) {
+					this.numerics.incElementOccurences(this.pendingNumeric);
+					this.pendingNumeric = null;
+				}
 				this.currentStringDelimiter = '\0';
 				this.enableState(this.STRING_END);
 				this.disableState(this.IN_STRING);
@@ -0,0 +1,448 @@
+package jsanalyser;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import jsanalyser.analyser.Analyser;
+import jsanalyser.monitoring.AnalyserStats;
+import jsanalyser.monitoring.Monitoring;
+import jsanalyser.monitoring.ParserStats;
+
+/**
+ * Reader parsing the code in a pipeline of three threads.
+ * <p>
+ * The calling thread reads and decodes the input, as a {@link SourceReader},
+ * a second thread runs the {@link Lexer} on the decoded chars, and a third one
+ * stores the elements found by the lexer in the parser's analysers. So the
+ * input and output, the lexing and the hashing of the elements overlap,
+ * instead of running one after the other on a single thread.
+ * </p>
+ * <p>
+ * The stages are connected by {@link RingBuffer}s, each one in one direction:
+ * the chunks of decoded chars are given to the lexer and given back to be
+ * reused once lexed, and the batches of elements are given to the aggregator
+ * and given back once stored. A chunk or a batch is a whole buffer, so the
+ * threads only synchronise once per few thousands of elements.
+ * </p>
+ * <p>
+ * The lexer copies each element in the current batch, as its chunk is reused
+ * by the reader once lexed. The aggregator then stores the elements from the
+ * batch as ranges of a char buffer, so only the new elements are copied in a
+ * string.
+ * </p>
+ * <p>
+ * The code is parsed in the order it is read, so the elements are the same as
+ * with a {@link SourceReader}. The reading methods return once the whole
+ * input is decoded: the elements are only all stored once {@link #finish}
+ * returns.
+ * </p>
+ */
+public class PipelinedReader extends SourceReader
+{
+	/**
+	 * Number of chunks of decoded chars, in the pipeline or free.
+	 */
+	protected static final int NB_CHUNKS = 8;
+
+	/**
+	 * Number of batches of elements, in the pipeline or free.
+	 */
+	protected static final int NB_BATCHES = 8;
+
+	/**
+	 * Chunk marking the end of the inputs.
+	 */
+	protected static final Chunk END_OF_CHUNKS = new Chunk(0);
+
+	/**
+	 * Batch marking the end of the elements.
+	 */
+	protected static final ElementBatch END_OF_BATCHES = new ElementBatch();
+
+	/**
+	 * Chunks of decoded chars to lex.
+	 */
+	protected RingBuffer<Chunk> chunks;
+
+	/**
+	 * Chunks lexed, to fill again.
+	 */
+	protected RingBuffer<Chunk> freeChunks;
+
+	/**
+	 * Batches of elements to store in the analysers.
+	 */
+	protected RingBuffer<ElementBatch> batches;
+
+	/**
+	 * Batches stored, to fill again.
+	 */
+	protected RingBuffer<ElementBatch> freeBatches;
+
+	/**
+	 * Chunk being filled by the decoder, whose buffer is {@link #chars}.
+	 */
+	protected Chunk chunk;
+
+	/**
+	 * If true, the next chunk given to the lexer starts a new input.
+	 */
+	protected boolean newInput;
+
+	/**
+	 * Batch being filled by the lexer thread.
+	 */
+	protected ElementBatch batch;
+
+	/**
+	 * Thread running the lexer.
+	 */
+	protected Thread lexerThread;
+
+	/**
+	 * Thread storing the elements in the analysers.
+	 */
+	protected Thread aggregatorThread;
+
+	/**
+	 * Error which stopped a stage, null if none did.
+	 */
+	protected volatile Throwable failure;
+
+	/**
+	 * Construct
+	 *
+	 * @param parser The parser whose analysers receive the elements of the
+	 * 		read code. The parser's own lexer is not used.
+	 */
+	public PipelinedReader(Parser parser)
+	{
+		super(parser, 0);
+		this.chunks = new RingBuffer<Chunk>(NB_CHUNKS);
+		this.freeChunks = new RingBuffer<Chunk>(NB_CHUNKS);
+		this.batches = new RingBuffer<ElementBatch>(NB_BATCHES);
+		this.freeBatches = new RingBuffer<ElementBatch>(NB_BATCHES);
+		for (int i = 1; i < NB_CHUNKS; i++) {
+			this.freeChunks.put(new Chunk(DEFAULT_BUFFER_SIZE));
+		}
+		for (int i = 0; i < NB_BATCHES; i++) {
+			this.freeBatches.put(new ElementBatch());
+		}
+		this.chunk = new Chunk(DEFAULT_BUFFER_SIZE);
+		this.chars = this.chunk.chars;
+	}
+
+	/**
+	 * Prepares the reader for a new input, starting the lexer and aggregator
+	 * threads before the first one.
+	 */
+	protected void start()
+	{
+		if (this.lexerThread == null) {
+			this.lexerThread = new Thread(this::lex, "lexer");
+			this.aggregatorThread = new Thread(this::aggregate, "aggregator");
+			this.lexerThread.setDaemon(true);
+			this.aggregatorThread.setDaemon(true);
+			this.lexerThread.start();
+			this.aggregatorThread.start();
+		}
+
+		this.decoder.reset();
+		this.chars.clear();
+		this.lastChar = '\n';
+		this.bytesRead = 0;
+		this.newInput = true;
+	}
+
+	/**
+	 * Gives the decoded chars to the lexer thread, and continues with a free
+	 * chunk.
+	 */
+	protected void parseChars()
+	{
+		this.chars.flip();
+		if (!this.chars.hasRemaining()) {
+			this.chars.clear();
+			return;
+		}
+
+		this.lastChar = this.chars.get(this.chars.limit() - 1);
+		this.chunk.newInput = this.newInput;
+		this.newInput = false;
+		this.chunks.put(this.chunk);
+
+		this.chunk = this.freeChunks.take();
+		this.chars = this.chunk.chars;
+		this.chars.clear();
+	}
+
+	/**
+	 * Ends the current input, giving a line ending to the lexer if the code
+	 * does not end with one.
+	 */
+	protected void end()
+	{
+		if (this.lastChar != '\n' && this.lastChar != '\r') {
+			this.chars.put('\n');
+			this.parseChars();
+		}
+	}
+
+	/**
+	 * Waits until all the elements of the read inputs are stored in the
+	 * parser's analysers. The reader cannot be used afterwards.
+	 *
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws IllegalStateException if a stage of the pipeline failed.
+	 */
+	public void finish() throws InterruptedException
+	{
+		if (this.lexerThread == null) {
+			return;
+		}
+
+		this.chunks.put(END_OF_CHUNKS);
+		this.lexerThread.join();
+		this.aggregatorThread.join();
+		if (this.failure != null) {
+			throw new IllegalStateException("The parsing pipeline failed", this.failure);
+		}
+	}
+
+	/**
+	 * Lexer stage: lexes the chunks, in order, until the end of the inputs.
+	 * After a failure, the chunks are still taken, so the reader is never
+	 * blocked.
+	 */
+	protected void lex()
+	{
+		Lexer lexer = new Lexer();
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			lexer.setAnalyser(kind, new Recorder(kind));
+		}
+		this.batch = this.freeBatches.take();
+
+		Chunk chunk;
+		while ((chunk = this.chunks.take()) != END_OF_CHUNKS) {
+			if (this.failure == null) {
+				try {
+					if (chunk.newInput) {
+						lexer.resetState();
+					}
+					ParserStats stats = Monitoring.getParserStats();
+					long start = stats == null ? 0 : System.nanoTime();
+					lexer.parse(chunk.chars.array(), 0, chunk.chars.limit());
+					if (stats != null) {
+						stats.parsed(chunk.chars.limit(), System.nanoTime() - start);
+					}
+				} catch (Throwable e) {
+					this.failure = e;
+				}
+			}
+			this.freeChunks.put(chunk);
+
+			if (this.batch.size > 0) {
+				this.batches.put(this.batch);
+				this.batch = this.freeBatches.take();
+			}
+		}
+		this.batches.put(END_OF_BATCHES);
+	}
+
+	/**
+	 * Aggregator stage: stores the elements of the batches in the parser's
+	 * analysers, until the end of the elements.
+	 */
+	protected void aggregate()
+	{
+		Analyser[] analysers = new Analyser[Lexer.NB_KINDS];
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			analysers[kind] = this.parser.getAnalyser(kind);
+		}
+
+		ElementBatch batch;
+		while ((batch = this.batches.take()) != END_OF_BATCHES) {
+			if (this.failure == null) {
+				try {
+					for (int i = 0; i < batch.size; i++) {
+						analysers[batch.kinds[i]].incElementOccurences(batch.chars, batch.offsets[i], batch.lengths[i]);
+					}
+					this.monitor(analysers, batch);
+				} catch (Throwable e) {
+					this.failure = e;
+				}
+			}
+			batch.clear();
+			this.freeBatches.put(batch);
+		}
+	}
+
+	/**
+	 * Updates the statistics of the analysers, if enabled, once a batch is
+	 * stored.
+	 *
+	 * @param analysers The analysers, indexed by kind.
+	 * @param batch The stored batch.
+	 */
+	protected void monitor(Analyser[] analysers, ElementBatch batch)
+	{
+		if (Monitoring.getParserStats() == null) {
+			return;
+		}
+
+		int[] nbElements = new int[Lexer.NB_KINDS];
+		for (int i = 0; i < batch.size; i++) {
+			nbElements[batch.kinds[i]]++;
+		}
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			AnalyserStats stats = Monitoring.getAnalyserStats(analysers[kind].getName());
+			if (stats != null) {
+				stats.found(nbElements[kind], analysers[kind].getNbElements());
+			}
+		}
+	}
+
+	/**
+	 * Chunk of decoded chars.
+	 */
+	protected static class Chunk
+	{
+		/**
+		 * The chars, from the beginning of the buffer to its limit once
+		 * given to the lexer.
+		 */
+		protected CharBuffer chars;
+
+		/**
+		 * If true, the chunk starts a new input.
+		 */
+		protected boolean newInput;
+
+		/**
+		 * Construct
+		 *
+		 * @param capacity The number of chars of the chunk.
+		 */
+		public Chunk(int capacity)
+		{
+			this.chars = CharBuffer.allocate(capacity);
+		}
+	}
+
+	/**
+	 * Batch of elements found by the lexer, whose chars are stored one after
+	 * the other in a single buffer.
+	 */
+	protected static class ElementBatch
+	{
+		/**
+		 * Chars of the elements.
+		 */
+		protected char[] chars = new char[DEFAULT_BUFFER_SIZE];
+
+		/**
+		 * Number of chars used in {@link #chars}.
+		 */
+		protected int length;
+
+		/**
+		 * Kind of each element, one of the {@link Lexer} K_* constants.
+		 */
+		protected int[] kinds = new int[1 << 12];
+
+		/**
+		 * Index of each element's first char in {@link #chars}.
+		 */
+		protected int[] offsets = new int[1 << 12];
+
+		/**
+		 * Number of chars of each element.
+		 */
+		protected int[] lengths = new int[1 << 12];
+
+		/**
+		 * Number of elements in the batch.
+		 */
+		protected int size;
+
+		/**
+		 * Adds an element stored in a range of a char buffer.
+		 *
+		 * @param kind The kind of the element.
+		 * @param buf The buffer containing the element.
+		 * @param off The index of the element's first char in the buffer.
+		 * @param len The number of chars of the element.
+		 */
+		public void add(int kind, char[] buf, int off, int len)
+		{
+			if (this.size == this.kinds.length) {
+				this.kinds = Arrays.copyOf(this.kinds, this.size * 2);
+				this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+				this.lengths = Arrays.copyOf(this.lengths, this.size * 2);
+			}
+			if (this.length + len > this.chars.length) {
+				this.chars = Arrays.copyOf(this.chars, Math.max(this.chars.length * 2, this.length + len));
+			}
+
+			System.arraycopy(buf, off, this.chars, this.length, len);
+			this.kinds[this.size] = kind;
+			this.offsets[this.size] = this.length;
+			this.lengths[this.size] = len;
+			this.length += len;
+			this.size++;
+		}
+
+		/**
+		 * Empties the batch, keeping its buffers.
+		 */
+		public void clear()
+		{
+			this.size = this.length = 0;
+		}
+	}
+
+	/**
+	 * Analyser given to the lexer thread, recording the elements of a kind in
+	 * the current batch instead of storing them.
+	 */
+	protected class Recorder extends Analyser
+	{
+		/**
+		 * Kind of the recorded elements.
+		 */
+		protected int kind;
+
+		/**
+		 * Construct
+		 *
+		 * @param kind The kind of the recorded elements.
+		 */
+		public Recorder(int kind)
+		{
+			this.kind = kind;
+		}
+
+		/**
+		 * Records an element.
+		 *
+		 * @param key The element value.
+		 */
+		public void incElementOccurences(String key)
+		{
+			char[] chars = key.toCharArray();
+			PipelinedReader.this.batch.add(this.kind, chars, 0, chars.length);
+		}
+
+		/**
+		 * Records an element stored in a range of a char buffer.
+		 *
+		 * @param buf The buffer containing the element.
+		 * @param off The index of the element's first char in the buffer.
+		 * @param len The number of chars of the element.
+		 */
+		public void incElementOccurences(char[] buf, int off, int len)
+		{
+			PipelinedReader.this.batch.add(this.kind, buf, off, len);
+		}
+	}
+}
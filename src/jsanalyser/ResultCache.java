@@ -0,0 +1,427 @@
+package jsanalyser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import jsanalyser.analyser.Analyser;
+
+/**
+ * On-disk cache of the elements of the analysed files, across runs.
+ * <p>
+ * Each entry is stored in a file of the cache directory, named after the
+ * SHA-256 hash of the analysed content, and contains the elements of each
+ * analyser with their number of occurences, in a compact binary format. An
+ * unchanged file is then merged from its entry, without being parsed.
+ * </p>
+ * <p>
+ * The entries are stamped with a version computed from {@link #VERSION} and
+ * from the {@link Lexer} tables, so they are invalidated when the parsing
+ * rules change. The stamp, the engine parsing the input (the legacy engine,
+ * the table driven lexer or the UTF-8 lexer) and the charset of the input
+ * are hashed with the content, so an outdated entry, or one found by
+ * another engine, is never looked up, and ends evicted.
+ * </p>
+ * <p>
+ * The total size of the entries is bounded: once it exceeds the limit, the
+ * least recently used entries are deleted. The last use of an entry is its
+ * file's modification time, so the order is kept across runs.
+ * </p>
+ * <p>
+ * Only the exact counts are cached, the elements of an analyser counting
+ * approximately cannot be restored.
+ * </p>
+ */
+public class ResultCache
+{
+	/**
+	 * Version of the cached results, to increment when the elements found in
+	 * a code change without the {@link Lexer} tables changing.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Magic number starting each entry ("JSAC").
+	 */
+	protected static final int MAGIC = 0x4A534143;
+
+	/**
+	 * Default maximum total size of the entries, in bytes.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+	/**
+	 * Stamp of the entries written by this version of the parser.
+	 */
+	protected static final long STAMP = stamp();
+
+	/**
+	 * Directory containing the entries.
+	 */
+	protected Path directory;
+
+	/**
+	 * Maximum total size of the entries, in bytes.
+	 */
+	protected long maxSize;
+
+	/**
+	 * Size of each entry, by name, from the least recently used one.
+	 */
+	protected LinkedHashMap<String, Long> entries;
+
+	/**
+	 * Total size of the entries, in bytes.
+	 */
+	protected long size;
+
+	/**
+	 * Construct
+	 * <p>
+	 * The directory is created if it does not exist, otherwise its entries
+	 * are listed, ordered by last use, and the least recently used ones are
+	 * evicted if they exceed the maximum size.
+	 * </p>
+	 *
+	 * @param directory The directory containing the entries.
+	 * @param maxSize The maximum total size of the entries, in bytes.
+	 * @throws IOException if the directory cannot be created or read.
+	 */
+	public ResultCache(Path directory, long maxSize) throws IOException
+	{
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+		Files.createDirectories(directory);
+		List<Path> files = new ArrayList<Path>();
+		try (Stream<Path> list = Files.list(directory)) {
+			list.filter(file -> isEntryName(file.getFileName().toString()) && Files.isRegularFile(file))
+				.forEach(files::add);
+		}
+
+		final Map<Path, FileTime> times = new HashMap<Path, FileTime>();
+		for (Path file : files) {
+			times.put(file, Files.getLastModifiedTime(file));
+		}
+		files.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+		for (Path file : files) {
+			long fileSize = Files.size(file);
+			this.entries.put(file.getFileName().toString(), fileSize);
+			this.size += fileSize;
+		}
+		// The limit may have been lowered since the previous run
+		this.evict();
+	}
+
+	/**
+	 * Computes the key of a file's entry, hashing its content with the stamp
+	 * of the entries, the engine of the parser and the charset of the input.
+	 *
+	 * @param file The analysed file.
+	 * @param parser The parser of the file, whose settings decide the elements
+	 * 		found in it.
+	 * @return the name of the file's entry.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public String key(Path file, Parser parser) throws IOException
+	{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, STAMP));
+		digest.update((byte) (parser.isLegacyEngine() ? 1 : parser.isUtf8() ? 2 : 0));
+		digest.update(parser.getCharset().name().getBytes(StandardCharsets.US_ASCII));
+		digest.update((byte) 0);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer bytes = ByteBuffer.allocate(SourceReader.DEFAULT_BUFFER_SIZE);
+			while (channel.read(bytes) != -1) {
+				bytes.flip();
+				digest.update(bytes);
+				bytes.clear();
+			}
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @param parser A parser.
+	 * @return true if the elements of the parser can be cached, which means
+	 * 		they are counted exactly, their positions are not indexed, the
+	 * 		chains and the loops are not tracked, there is no plugin and the
+	 * 		gzip savings are not estimated.
+	 */
+	public static boolean isCacheable(Parser parser)
+	{
+		if (parser.isIndexed() || parser.getChains() != null || parser.getLoops() != null || !parser.getPlugins().isEmpty() || parser.hasGzipSavings()) {
+			return false;
+		}
+
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			if (!parser.getAnalyser(kind).isExact()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the elements of an entry to a parser. An invalid entry, such as
+	 * one from another version, is deleted.
+	 *
+	 * @param key The key of the entry.
+	 * @param parser The parser receiving the elements, which must have been
+	 * 		reset. It is not changed if the entry is not found.
+	 * @return true if the entry was found.
+	 */
+	public boolean load(String key, Parser parser)
+	{
+		synchronized (this) {
+			if (this.entries.get(key) == null) {
+				return false;
+			}
+		}
+
+		Path file = this.directory.resolve(key);
+		ByteBuffer entry;
+		try {
+			entry = ByteBuffer.wrap(Files.readAllBytes(file));
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (NoSuchFileException e) {
+			// Evicted meanwhile, by another run
+			this.forget(key, false);
+			return false;
+		} catch (IOException io) {
+			return false;
+		}
+
+		String[][] elements = new String[Lexer.NB_KINDS][];
+		int[][] counts = new int[Lexer.NB_KINDS][];
+		try {
+			if (entry.getInt() != MAGIC || entry.getLong() != STAMP) {
+				this.forget(key, true);
+				return false;
+			}
+			for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+				int nbElements = readVarInt(entry);
+				if (nbElements < 0 || nbElements > entry.remaining()) {
+					throw new IllegalArgumentException("Invalid number of elements");
+				}
+				elements[kind] = new String[nbElements];
+				counts[kind] = new int[nbElements];
+				for (int i = 0; i < nbElements; i++) {
+					int length = readVarInt(entry);
+					elements[kind][i] = new String(entry.array(), entry.position(), length, StandardCharsets.UTF_8);
+					entry.position(entry.position() + length);
+					counts[kind][i] = readVarInt(entry);
+				}
+			}
+			if (entry.hasRemaining()) {
+				throw new IllegalArgumentException("Trailing bytes");
+			}
+		} catch (RuntimeException e) {
+			// Truncated or corrupted entry
+			this.forget(key, true);
+			return false;
+		}
+
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			Analyser analyser = parser.getAnalyser(kind);
+			for (int i = 0; i < elements[kind].length; i++) {
+				analyser.addElementOccurences(elements[kind][i], counts[kind][i]);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the elements of a parser in an entry, then evicts the least
+	 * recently used entries if the cache is full.
+	 * <p>
+	 * The entry is written in a temporary file, then renamed, so a run
+	 * reading the cache meanwhile never reads an incomplete entry.
+	 * </p>
+	 *
+	 * @param key The key of the entry.
+	 * @param parser The parser whose elements are stored. Its elements must be
+	 * 		counted exactly (see {@link #isCacheable}).
+	 * @throws IOException if the entry cannot be written.
+	 */
+	public void store(String key, Parser parser) throws IOException
+	{
+		final ByteArrayOutputStream entry = new ByteArrayOutputStream(1 << 12);
+		ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(MAGIC).putLong(STAMP);
+		entry.write(header.array(), 0, header.capacity());
+		for (int kind = 0; kind < Lexer.NB_KINDS; kind++) {
+			final Analyser analyser = parser.getAnalyser(kind);
+			final int[] nbElements = new int[1];
+			analyser.forEachElement((element, count, error) -> nbElements[0]++);
+			writeVarInt(entry, nbElements[0]);
+			analyser.forEachElement((element, count, error) -> {
+				byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+				writeVarInt(entry, bytes.length);
+				entry.write(bytes, 0, bytes.length);
+				writeVarInt(entry, count);
+			});
+		}
+
+		Path file = this.directory.resolve(key),
+			temporary = this.directory.resolve(key + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			Files.write(temporary, entry.toByteArray());
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+
+		synchronized (this) {
+			Long previous = this.entries.put(key, (long) entry.size());
+			this.size += entry.size() - (previous == null ? 0 : previous);
+		}
+		this.evict();
+	}
+
+	/**
+	 * Deletes the least recently used entries until the total size of the
+	 * entries is under the limit.
+	 *
+	 * @throws IOException if an entry cannot be deleted.
+	 */
+	protected void evict() throws IOException
+	{
+		List<String> evicted = new ArrayList<String>();
+		synchronized (this) {
+			Iterator<Map.Entry<String, Long>> lru = this.entries.entrySet().iterator();
+			while (this.size > this.maxSize && lru.hasNext()) {
+				Map.Entry<String, Long> eldest = lru.next();
+				this.size -= eldest.getValue();
+				evicted.add(eldest.getKey());
+				lru.remove();
+			}
+		}
+
+		for (String name : evicted) {
+			Files.deleteIfExists(this.directory.resolve(name));
+		}
+	}
+
+	/**
+	 * Removes an entry from the cache.
+	 *
+	 * @param key The key of the entry.
+	 * @param delete If true, the entry's file is deleted.
+	 */
+	protected void forget(String key, boolean delete)
+	{
+		synchronized (this) {
+			Long entrySize = this.entries.remove(key);
+			if (entrySize != null) {
+				this.size -= entrySize;
+			}
+		}
+
+		if (delete) {
+			try {
+				Files.deleteIfExists(this.directory.resolve(key));
+			} catch (IOException io) {
+				// Overwritten or evicted later
+			}
+		}
+	}
+
+	/**
+	 * @param name The name of a file of the cache directory.
+	 * @return true if it is the name of an entry, and not of a temporary
+	 * 		file.
+	 */
+	protected static boolean isEntryName(String name)
+	{
+		if (name.length() != 64) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (Character.digit(name.charAt(i), 16) == -1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the stamp of the entries, computed from {@link #VERSION} and
+	 * 		from the {@link Lexer} tables.
+	 */
+	protected static long stamp()
+	{
+		long stamp = VERSION;
+		stamp = 31 * stamp + Arrays.hashCode(Lexer.CHAR_CLASSES);
+		stamp = 31 * stamp + Arrays.hashCode(Lexer.TRANSITIONS);
+		stamp = 31 * stamp + Arrays.hashCode(Lexer.ACTIONS);
+		return stamp;
+	}
+
+	/**
+	 * Writes a positive integer with 7 bits per byte, the high bit of a byte
+	 * being set if another byte follows.
+	 *
+	 * @param out The stream to write in.
+	 * @param value The integer to write.
+	 */
+	protected static void writeVarInt(ByteArrayOutputStream out, int value)
+	{
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Reads an integer written by {@link #writeVarInt}.
+	 *
+	 * @param in The buffer to read from.
+	 * @return the read integer.
+	 */
+	protected static int readVarInt(ByteBuffer in)
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("Malformed integer");
+	}
+}
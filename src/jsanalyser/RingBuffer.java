@@ -0,0 +1,157 @@
+package jsanalyser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue between a single producer thread and a single
+ * consumer thread.
+ * <p>
+ * The items are stored in a circular array indexed by two ever increasing
+ * counters: the producer only writes the tail and the consumer only writes
+ * the head, each counter being published with an ordered store, so the
+ * threads never lock nor contend on the same field. An item is visible to the
+ * consumer once the tail counting it is published.
+ * </p>
+ * <p>
+ * A thread waiting for an item, or for a free place, spins a little, then
+ * yields, then parks for a short time, so an idle stage does not burn a core.
+ * The items are expected to be batches of work, so this is rare when the
+ * stages are balanced.
+ * </p>
+ *
+ * @param <T> The type of the items.
+ */
+public class RingBuffer<T>
+{
+	/**
+	 * Number of busy waiting loops before yielding.
+	 */
+	protected static final int SPINS = 100;
+
+	/**
+	 * Number of yields before parking.
+	 */
+	protected static final int YIELDS = 100;
+
+	/**
+	 * Parking delay of a waiting thread, in nanoseconds.
+	 */
+	protected static final long PARK_NANOS = 20_000;
+
+	/**
+	 * Items, at the index of their counter modulo the capacity.
+	 */
+	protected Object[] items;
+
+	/**
+	 * Mask giving the index of a counter, the capacity being a power of 2.
+	 */
+	protected int mask;
+
+	/**
+	 * Counter of the next item to take, written by the consumer.
+	 */
+	protected AtomicLong head = new AtomicLong();
+
+	/**
+	 * Counter of the next item to put, written by the producer.
+	 */
+	protected AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Construct
+	 *
+	 * @param capacity The maximum number of items in the queue, rounded up
+	 * 		to a power of 2.
+	 */
+	public RingBuffer(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.items = new Object[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds an item if the queue is not full. Called by the producer only.
+	 *
+	 * @param item The item, not null.
+	 * @return true if the item was added.
+	 */
+	public boolean offer(T item)
+	{
+		long tail = this.tail.get();
+		if (tail - this.head.get() == this.items.length) {
+			return false;
+		}
+
+		this.items[(int) tail & this.mask] = item;
+		this.tail.lazySet(tail + 1);
+		return true;
+	}
+
+	/**
+	 * Takes the oldest item if the queue is not empty. Called by the consumer
+	 * only.
+	 *
+	 * @return the item, null if the queue is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll()
+	{
+		long head = this.head.get();
+		if (head == this.tail.get()) {
+			return null;
+		}
+
+		int index = (int) head & this.mask;
+		T item = (T) this.items[index];
+		this.items[index] = null;
+		this.head.lazySet(head + 1);
+		return item;
+	}
+
+	/**
+	 * Adds an item, waiting for a free place if the queue is full.
+	 *
+	 * @param item The item, not null.
+	 */
+	public void put(T item)
+	{
+		for (int waits = 0; !this.offer(item); waits++) {
+			backOff(waits);
+		}
+	}
+
+	/**
+	 * Takes the oldest item, waiting for one if the queue is empty.
+	 *
+	 * @return the item.
+	 */
+	public T take()
+	{
+		T item;
+		for (int waits = 0; (item = this.poll()) == null; waits++) {
+			backOff(waits);
+		}
+		return item;
+	}
+
+	/**
+	 * Waits before trying again to add or take an item.
+	 *
+	 * @param waits The number of times the thread has already waited.
+	 */
+	protected static void backOff(int waits)
+	{
+		if (waits < SPINS) {
+			Thread.onSpinWait();
+		}
+		else if (waits < SPINS + YIELDS) {
+			Thread.yield();
+		}
+		else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package jsanalyser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import jsanalyser.monitoring.ParseEvent;
+
+/**
+ * Class reading the code to parse and giving it to a parser.
+ * <p>
+ * The code is read in bulk through NIO channels and decoded in a reusable
+ * char buffer, which is directly given to the parser. The files larger than
+ * {@link #MAP_THRESHOLD} are memory-mapped instead of being read.
+ * </p>
+ * <p>
+ * If the parser parses UTF-8 bytes (see {@link Parser#setUtf8}), the bytes are
+ * given to it as they are read, without being decoded.
+ * </p>
+ * <p>
+ * The inputs compressed with gzip or deflate (in the zlib format) are
+ * recognized by their header, and decompressed as they are read.
+ * </p>
+ * <p>
+ * If the code does not end with a line ending, one is parsed at the end of the
+ * input, so the element ending the code is stored, as when the code was read
+ * line by line.
+ * </p>
+ */
+public class SourceReader
+{
+	/**
+	 * Size from which a file is memory-mapped instead of being read.
+	 */
+	protected static final long MAP_THRESHOLD = 1 << 20;
+
+	/**
+	 * Maximum size of a mapped region of a file.
+	 */
+	protected static final int MAP_REGION_SIZE = 1 << 26;
+
+	/**
+	 * Default size of the buffers in which the input is read and decoded.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Format of the inputs which are not compressed.
+	 */
+	protected static final int UNCOMPRESSED = 0;
+
+	/**
+	 * Format of the inputs compressed with gzip.
+	 */
+	protected static final int GZIP = 1;
+
+	/**
+	 * Format of the inputs compressed with deflate, in the zlib format.
+	 */
+	protected static final int ZLIB = 2;
+
+	/**
+	 * Number of bytes of the header recognizing the compressed inputs.
+	 */
+	protected static final int HEADER_SIZE = 2;
+
+	/**
+	 * Parser receiving the decoded code.
+	 */
+	protected Parser parser;
+
+	/**
+	 * Decoder of the input, with the platform's default charset.
+	 */
+	protected CharsetDecoder decoder;
+
+	/**
+	 * Buffer in which the input is decoded before being parsed.
+	 */
+	protected CharBuffer chars;
+
+	/**
+	 * Last char given to the parser for the current input.
+	 */
+	protected char lastChar;
+
+	/**
+	 * Reporter informed of the number of parsed bytes, null if the input is
+	 * not reported periodically.
+	 */
+	protected StreamReporter reporter;
+
+	/**
+	 * Number of bytes of the current input decoded.
+	 */
+	protected long bytesRead;
+
+	/**
+	 * Construct
+	 *
+	 * @param parser The parser receiving the read code.
+	 */
+	public SourceReader(Parser parser)
+	{
+		this(parser, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Construct
+	 *
+	 * @param parser The parser receiving the read code.
+	 * @param bufferSize The number of chars decoded before being given to the
+	 * 		parser.
+	 */
+	public SourceReader(Parser parser, int bufferSize)
+	{
+		this.parser = parser;
+		this.decoder = Charset.defaultCharset().newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = CharBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Sets the reporter taking snapshots of the input while it is parsed. The
+	 * parser is locked while it parses, so the reporter can detach its
+	 * elements from another thread.
+	 *
+	 * @param reporter The reporter informed of the number of parsed bytes.
+	 */
+	public void setReporter(StreamReporter reporter)
+	{
+		this.reporter = reporter;
+	}
+
+	/**
+	 * Reads and parses a whole file.
+	 *
+	 * @param path The path of the file to parse.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public void read(Path path) throws IOException
+	{
+		ParseEvent event = new ParseEvent();
+		event.begin();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			header.flip();
+			if (size < MAP_THRESHOLD || format(header) != UNCOMPRESSED) {
+				this.readAll(channel);
+			}
+			else {
+				this.readMapped(channel, size);
+			}
+		}
+		this.commit(event, path.toString());
+	}
+
+	/**
+	 * Reads and parses a whole input, until its end.
+	 *
+	 * @param channel The channel to read the code from.
+	 * @throws IOException if the input cannot be read.
+	 */
+	public void read(ReadableByteChannel channel) throws IOException
+	{
+		ParseEvent event = new ParseEvent();
+		event.begin();
+		this.readAll(channel);
+		this.commit(event, "stream");
+	}
+
+	/**
+	 * Reads and parses a whole input, until its end, decompressing it if it
+	 * is compressed (see {@link #format}).
+	 *
+	 * @param channel The channel to read the code from.
+	 * @throws IOException if the input cannot be read.
+	 */
+	protected void readAll(ReadableByteChannel channel) throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+
+		// The header is read first, to know if the input is compressed
+		while (bytes.position() < HEADER_SIZE && channel.read(bytes) != -1) {
+		}
+		bytes.flip();
+		int format = format(bytes);
+		if (format != UNCOMPRESSED) {
+			InputStream input = new SequenceInputStream(
+				new ByteArrayInputStream(bytes.array(), 0, bytes.limit()),
+				Channels.newInputStream(channel)
+			);
+			channel = Channels.newChannel(format == GZIP
+				? new GZIPInputStream(input, DEFAULT_BUFFER_SIZE)
+				: new InflaterInputStream(input, new Inflater(), DEFAULT_BUFFER_SIZE)
+			);
+			bytes.clear();
+		}
+		else {
+			bytes.position(bytes.limit());
+			bytes.limit(bytes.capacity());
+		}
+
+		this.start();
+		while (channel.read(bytes) != -1) {
+			bytes.flip();
+			this.decode(bytes, false);
+			bytes.compact();
+		}
+		bytes.flip();
+		this.decode(bytes, true);
+		this.end();
+	}
+
+	/**
+	 * Recognizes the format of an input from its first bytes.
+	 * <p>
+	 * A zlib header is two bytes, whose first one is 0x78 for the usual
+	 * window size, forming a multiple of 31. The headers whose second byte is
+	 * a printable char are taken as code, such as "x^".
+	 * </p>
+	 *
+	 * @param header The first bytes of the input, between the position and
+	 * 		the limit of the buffer, unchanged.
+	 * @return the format of the input, {@link #UNCOMPRESSED}, {@link #GZIP}
+	 * 		or {@link #ZLIB}.
+	 */
+	protected static int format(ByteBuffer header)
+	{
+		if (header.remaining() < HEADER_SIZE) {
+			return UNCOMPRESSED;
+		}
+
+		int first = header.get(header.position()) & 0xff,
+			second = header.get(header.position() + 1) & 0xff;
+		if (first == 0x1f && second == 0x8b) {
+			return GZIP;
+		}
+		if (first == 0x78 && (first << 8 | second) % 31 == 0 && (second < 0x20 || second >= 0x7f)) {
+			return ZLIB;
+		}
+		return UNCOMPRESSED;
+	}
+
+	/**
+	 * Parses a whole file by memory-mapping it, region by region.
+	 *
+	 * @param channel The channel of the file.
+	 * @param size The size of the file.
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	protected void readMapped(FileChannel channel, long size) throws IOException
+	{
+		this.start();
+		long position = 0;
+		while (position < size) {
+			long regionSize = Math.min(MAP_REGION_SIZE, size - position);
+			MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+			// The bytes of a char cut at the end of the region are
+			// decoded with the next region
+			this.decode(region, position + regionSize == size);
+			position += region.position();
+		}
+		this.end();
+	}
+
+	/**
+	 * Commits the flight recorder event of a parsed input, if it is recorded.
+	 *
+	 * @param event The event, begun before the input was read.
+	 * @param source The parsed input.
+	 */
+	protected void commit(ParseEvent event, String source)
+	{
+		event.end();
+		if (event.shouldCommit()) {
+			event.source = source;
+			event.bytes = this.bytesRead;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Informs the reporter, if any, of the number of parsed bytes.
+	 *
+	 * @param bytes The number of bytes parsed.
+	 */
+	protected void parsed(long bytes)
+	{
+		this.bytesRead += bytes;
+		if (this.reporter != null) {
+			this.reporter.parsed(bytes);
+		}
+	}
+
+	/**
+	 * Prepares the reader and the parser for a new input.
+	 */
+	protected void start()
+	{
+		this.bytesRead = 0;
+		this.parser.resetState();
+		this.decoder.reset();
+		this.chars.clear();
+		this.lastChar = '\n';
+	}
+
+	/**
+	 * Decodes the available bytes and parses the decoded chars.
+	 *
+	 * @param bytes The bytes to decode. The bytes of an incomplete char at the
+	 * 		end of the buffer are left in it if the input does not end.
+	 * @param endOfInput true if there is no input after those bytes.
+	 */
+	protected void decode(ByteBuffer bytes, boolean endOfInput)
+	{
+		if (this.parser.isUtf8()) {
+			this.parseBytes(bytes);
+			return;
+		}
+
+		CoderResult result;
+		do {
+			int start = bytes.position();
+			result = this.decoder.decode(bytes, this.chars, endOfInput);
+			this.parseChars();
+			this.parsed(bytes.position() - start);
+		} while (result.isOverflow());
+
+		if (endOfInput) {
+			while (this.decoder.flush(this.chars).isOverflow()) {
+				this.parseChars();
+			}
+			this.parseChars();
+		}
+	}
+
+	/**
+	 * Gives the decoded chars to the parser and empties the char buffer.
+	 */
+	protected void parseChars()
+	{
+		this.chars.flip();
+		if (this.chars.hasRemaining()) {
+			this.lastChar = this.chars.get(this.chars.limit() - 1);
+			synchronized (this.parser) {
+				this.parser.parse(this.chars);
+			}
+		}
+		this.chars.clear();
+	}
+
+	/**
+	 * Gives the available bytes to the parser, without decoding them, by
+	 * pieces of the size of the char buffer. A char cut at the end of a piece
+	 * continues in the next bytes.
+	 *
+	 * @param bytes The UTF-8 bytes to parse, consumed.
+	 */
+	protected void parseBytes(ByteBuffer bytes)
+	{
+		int limit = bytes.limit();
+		while (bytes.position() < limit) {
+			int length = Math.min(limit - bytes.position(), this.chars.capacity());
+			bytes.limit(bytes.position() + length);
+			this.lastChar = (char) bytes.get(bytes.limit() - 1);
+			synchronized (this.parser) {
+				this.parser.parse(bytes);
+			}
+			bytes.limit(limit);
+			this.parsed(length);
+		}
+	}
+
+	/**
+	 * Ends the current input, parsing a line ending if the code does not end
+	 * with one.
+	 */
+	protected void end()
+	{
+		if (this.lastChar != '\n' && this.lastChar != '\r') {
+			synchronized (this.parser) {
+				this.parser.parse(new char[] {'\n'}, 0, 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package jsanalyser;
+
+/**
+ * Search of the end of the bodies of comments, strings and regexes.
+ * <p>
+ * In those bodies, only one or two chars can change the state of the lexer
+ * (the end of the comment, the quote or a backslash for a string...), so the
+ * chars in between are skipped, or appended at once to the current element,
+ * after searching the next one of those chars.
+ * </p>
+ * <p>
+ * This implementation tests the chars one by one. When the Vector API is
+ * available (the JVM being started with
+ * "--add-modules jdk.incubator.vector"), {@link #create} returns a
+ * {@link VectorSpanScanner} instead, which tests many chars at once.
+ * </p>
+ */
+public class SpanScanner
+{
+	/**
+	 * Name of the class of the scanner using the Vector API, which is only
+	 * compiled if the module is available.
+	 */
+	protected static final String VECTOR_SCANNER = "jsanalyser.VectorSpanScanner";
+
+	/**
+	 * @return the fastest scanner available in this JVM.
+	 */
+	public static SpanScanner create()
+	{
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (SpanScanner) Class.forName(VECTOR_SCANNER).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Not compiled, fall back to the scalar search
+			}
+		}
+		return new SpanScanner();
+	}
+
+	/**
+	 * @param buf The buffer to search in.
+	 * @param from The index of the first char to test.
+	 * @param end The index following the last char to test.
+	 * @param stop A searched char.
+	 * @param otherStop Another searched char, can be the same as stop.
+	 * @return the index of the first searched char, or end if there is none.
+	 */
+	public int indexOf(final char[] buf, final int from, final int end, final char stop, final char otherStop)
+	{
+		for (int i = from; i < end; i++) {
+			final char c = buf[i];
+			if (c == stop || c == otherStop) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @param buf The buffer of UTF-8 bytes to search in.
+	 * @param from The index of the first byte to test.
+	 * @param end The index following the last byte to test.
+	 * @param stop A searched ASCII char.
+	 * @param otherStop Another searched ASCII char, can be the same as stop.
+	 * @return the index of the first searched char, or end if there is none.
+	 */
+	public int indexOf(final byte[] buf, final int from, final int end, final byte stop, final byte otherStop)
+	{
+		for (int i = from; i < end; i++) {
+			final byte b = buf[i];
+			if (b == stop || b == otherStop) {
+				return i;
+			}
+		}
+		return end;
+	}
+}
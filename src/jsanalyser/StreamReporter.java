@@ -0,0 +1,234 @@
+package jsanalyser;
+
+import java.io.IOException;
+
+import jsanalyser.report.ReportWriter;
+
+/**
+ * Periodic reports of a stream being parsed, such as an unbounded stdin.
+ * <p>
+ * A snapshot report is written every given number of bytes or every given
+ * number of seconds, by a dedicated thread, while the stream continues to be
+ * parsed. To take a snapshot, the elements found since the previous one are
+ * detached from the parser (see {@link Parser#detachElements}), which only
+ * swaps the parser's analysers, then are merged in the elements of the
+ * previous snapshots, owned by the reporting thread. The elements are
+ * never copied, and the parsing is only locked during the swap.
+ * </p>
+ * <p>
+ * The snapshot reports either contain all the elements found so far, or only
+ * the elements found since the previous snapshot (deltas). The report of the
+ * whole stream is written once the stream ends. If a report takes longer to
+ * write than the interval, the snapshots due meanwhile are taken as a single
+ * one.
+ * </p>
+ */
+public class StreamReporter implements Runnable
+{
+	/**
+	 * Parser of the stream, locked while it parses.
+	 */
+	protected Parser parser;
+
+	/**
+	 * Elements of the previous snapshots.
+	 */
+	protected Parser total;
+
+	/**
+	 * Number of parsed bytes after which a snapshot is taken, 0 to take them
+	 * only periodically.
+	 */
+	protected long byteInterval;
+
+	/**
+	 * Delay, in milliseconds, after which a snapshot is taken, 0 to take them
+	 * only every {@link #byteInterval} bytes.
+	 */
+	protected long timeInterval;
+
+	/**
+	 * If true, the snapshots only contain the elements found since the
+	 * previous one.
+	 */
+	protected boolean deltas;
+
+	/**
+	 * Writer of the reports.
+	 */
+	protected ReportWriter writer;
+
+	/**
+	 * Number of most frequent elements reported by each analyser, 0 to
+	 * report all the elements.
+	 */
+	protected int top;
+
+	/**
+	 * Number of bytes parsed since the previous snapshot.
+	 */
+	protected long parsedBytes;
+
+	/**
+	 * If true, the stream has ended.
+	 */
+	protected boolean ended;
+
+	/**
+	 * Number of snapshots taken.
+	 */
+	protected int nbSnapshots;
+
+	/**
+	 * Thread taking the snapshots.
+	 */
+	protected Thread thread;
+
+	/**
+	 * Construct
+	 *
+	 * @param parser The parser of the stream. It must have been reset.
+	 * @param byteInterval The number of parsed bytes after which a snapshot is
+	 * 		taken, 0 to take them only periodically.
+	 * @param timeInterval The delay, in milliseconds, after which a snapshot
+	 * 		is taken, 0 to take them only every byteInterval bytes.
+	 * @param deltas If true, the snapshots only contain the elements found
+	 * 		since the previous one.
+	 * @param writer The writer of the reports.
+	 * @param top The number of most frequent elements reported by each
+	 * 		analyser, 0 to report all the elements.
+	 */
+	public StreamReporter(Parser parser, long byteInterval, long timeInterval, boolean deltas, ReportWriter writer, int top)
+	{
+		if (byteInterval <= 0 && timeInterval <= 0) {
+			throw new IllegalArgumentException("A snapshot interval, in bytes or in time, is needed");
+		}
+
+		this.parser = parser;
+		this.byteInterval = byteInterval;
+		this.timeInterval = timeInterval;
+		this.deltas = deltas;
+		this.writer = writer;
+		this.top = top;
+		this.total = new Parser(parser);
+		this.total.reset();
+	}
+
+	/**
+	 * Starts the thread taking the snapshots.
+	 */
+	public void start()
+	{
+		this.thread = new Thread(this, "snapshots");
+		this.thread.start();
+	}
+
+	/**
+	 * Counts parsed bytes, and wakes the reporting thread up if a snapshot is
+	 * due. Called by the reader of the stream.
+	 *
+	 * @param bytes The number of bytes parsed.
+	 */
+	public synchronized void parsed(long bytes)
+	{
+		this.parsedBytes += bytes;
+		if (this.byteInterval > 0 && this.parsedBytes >= this.byteInterval) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Ends the stream: the last elements are collected and the report of
+	 * the whole stream is written.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the last
+	 * 		report.
+	 */
+	public void end() throws InterruptedException
+	{
+		synchronized (this) {
+			this.ended = true;
+			this.notifyAll();
+		}
+		this.thread.join();
+	}
+
+	/**
+	 * Takes the snapshots until the stream ends, then writes the report of
+	 * the whole stream.
+	 */
+	public void run()
+	{
+		boolean last = false;
+		while (!last) {
+			try {
+				last = this.await();
+			} catch (InterruptedException e) {
+				last = true;
+			}
+
+			try {
+				this.snapshot(last);
+			} catch (IOException io) {
+				io.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits until a snapshot is due.
+	 *
+	 * @return true if the stream has ended.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	protected synchronized boolean await() throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + this.timeInterval;
+		while (!this.ended && (this.byteInterval <= 0 || this.parsedBytes < this.byteInterval)) {
+			if (this.timeInterval <= 0) {
+				this.wait();
+				continue;
+			}
+
+			long delay = deadline - System.currentTimeMillis();
+			if (delay <= 0) {
+				break;
+			}
+			this.wait(delay);
+		}
+		this.parsedBytes = 0;
+
+		return this.ended;
+	}
+
+	/**
+	 * Collects the elements found since the previous snapshot and writes the
+	 * snapshot report.
+	 *
+	 * @param last If true, the stream has ended and the report of the whole
+	 * 		stream is written.
+	 * @throws IOException if the report cannot be written.
+	 */
+	protected void snapshot(boolean last) throws IOException
+	{
+		Parser delta;
+		synchronized (this.parser) {
+			delta = this.parser.detachElements();
+		}
+
+		this.nbSnapshots++;
+		if (this.deltas) {
+			this.writer.write(delta.report("Delta report " + this.nbSnapshots, this.top));
+		}
+		this.total.merge(delta);
+
+		if (last) {
+			this.writer.write(this.total.report("Report", this.top));
+		}
+		else if (!this.deltas) {
+			this.writer.write(this.total.report("Snapshot report " + this.nbSnapshots, this.top));
+		}
+		this.writer.flush();
+	}
+}
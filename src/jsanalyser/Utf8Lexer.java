@@ -0,0 +1,236 @@
+package jsanalyser;
+
+import jsanalyser.analyser.NumericAnalyser;
+import jsanalyser.analyser.RegexAnalyser;
+import jsanalyser.analyser.StringAnalyser;
+import jsanalyser.analyser.TokenAnalyser;
+
+/**
+ * Table driven lexing engine parsing UTF-8 bytes, without decoding them.
+ * <p>
+ * All the chars changing the state of the {@link Lexer} are ASCII, and in
+ * UTF-8 the bytes of the other chars are all greater than 127, so each of
+ * those bytes is of the class {@link #C_OTHER}, as the char it is part of.
+ * After a first char of this class, the states of the machine are not left by
+ * another one, and their actions only append it to the current element, so
+ * the bytes of a char lead to the same state and to the same elements as the
+ * char, the elements being the UTF-8 encoding of the elements found in the
+ * decoded code.
+ * </p>
+ * <p>
+ * The elements are given to the analysers as ranges of the parsed bytes (see
+ * {@link jsanalyser.analyser.Analyser#incElementOccurences(byte[], int, int)}).
+ * </p>
+ * <p>
+ * Unlike the char lexer, this lexer cannot parse chunks of a code in parallel.
+ * </p>
+ */
+public class Utf8Lexer extends Lexer
+{
+	/**
+	 * For each kind, beginning of the current element copied out of the
+	 * parsed buffer, as in {@link #copies}.
+	 */
+	protected byte[][] byteCopies = new byte[NB_KINDS][16];
+
+	/**
+	 * Construct
+	 *
+	 * @param strings Analyser receiving the detected strings.
+	 * @param numerics Analyser receiving the detected numeric values.
+	 * @param regexes Analyser receiving the detected regexes.
+	 * @param tokens Analyser receiving the detected tokens.
+	 */
+	public Utf8Lexer(StringAnalyser strings, NumericAnalyser numerics, RegexAnalyser regexes, TokenAnalyser tokens)
+	{
+		super(strings, numerics, regexes, tokens);
+	}
+
+	/**
+	 * Parses a chunk of UTF-8 code.
+	 * <p>
+	 * The elements are read in place in the buffer. Only the elements which
+	 * are still in progress at the end of the chunk are copied, as the buffer
+	 * can then be reused. A chunk can end in the middle of the bytes of a
+	 * char.
+	 * </p>
+	 *
+	 * @param buf The buffer containing the chunk of code to parse.
+	 * @param off The index of the chunk's first byte in the buffer.
+	 * @param len The number of bytes of the chunk.
+	 */
+	public void parse(final byte[] buf, final int off, final int len)
+	{
+		int end = off + len,
+			state = this.state;
+
+		this.chunkStart = off;
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			this.starts[kind] = this.ends[kind] = off;
+		}
+
+		for (int i = off; i < end; i++) {
+			final byte b = buf[i];
+			final int transition = state * NB_CLASSES + (b >= 0 ? CHAR_CLASSES[b] : C_OTHER);
+			final int actions = ACTIONS[transition];
+
+			state = TRANSITIONS[transition];
+			if (actions != 0) {
+				this.run(actions, buf, i);
+				if ((actions & A_SKIP) != 0) {
+					i = this.skip(state, buf, i + 1, end) - 1;
+				}
+			}
+		}
+		this.state = state;
+
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			if ((this.elementsInProgress & (1 << kind)) != 0) {
+				this.copy(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+			}
+		}
+	}
+
+	/**
+	 * Runs the actions of a transition, as {@link Lexer#run}.
+	 *
+	 * @param actions The actions bits.
+	 * @param buf The parsed buffer.
+	 * @param i The index of the current byte in the buffer.
+	 */
+	protected void run(final int actions, final byte[] buf, final int i)
+	{
+		if ((actions & ~A_SKIP) == A_APPEND_STRING) {
+			this.append(K_STRING, buf, i);
+			return;
+		}
+
+		if ((actions & A_EMIT_NUMERIC) != 0) {
+			this.emit(K_NUMERIC, buf);
+		}
+		if ((actions & A_EMIT_TOKEN) != 0) {
+			this.emit(K_TOKEN, buf);
+		}
+		if ((actions & A_EMIT_REGEX) != 0) {
+			this.emit(K_REGEX, buf);
+		}
+		if ((actions & A_EMIT_STRING) != 0) {
+			this.emit(K_STRING, buf);
+		}
+		if ((actions & A_DROP_NUMERIC) != 0) {
+			this.drop(K_NUMERIC);
+		}
+
+		if ((actions & A_START_NUMERIC) != 0) {
+			this.start(K_NUMERIC, i, i + 1);
+		}
+		else if ((actions & A_APPEND_NUMERIC) != 0) {
+			this.append(K_NUMERIC, buf, i);
+		}
+		else if ((actions & A_START_TOKEN) != 0) {
+			this.start(K_TOKEN, i, i + 1);
+		}
+		else if ((actions & A_APPEND_TOKEN) != 0) {
+			this.append(K_TOKEN, buf, i);
+		}
+		else if ((actions & (A_START_REGEX | A_START_ESCAPED_REGEX)) != 0) {
+			int prefix = (actions & A_START_REGEX) != 0 ? 1 : 2,
+				inChunk = Math.min(prefix, i - this.chunkStart);
+			this.start(K_REGEX, i - inChunk, i + 1);
+			if (inChunk < prefix) {
+				for (int c = 0; c < prefix - inChunk; c++) {
+					this.byteCopies[K_REGEX][c] = (byte) REGEX_PREFIX[c];
+				}
+				this.copyLengths[K_REGEX] = prefix - inChunk;
+			}
+		}
+		else if ((actions & A_APPEND_REGEX) != 0) {
+			this.append(K_REGEX, buf, i);
+		}
+		else if ((actions & A_START_STRING) != 0) {
+			this.start(K_STRING, i + 1, i + 1);
+		}
+	}
+
+	/**
+	 * Skips the bytes which do not leave the current state, as
+	 * {@link Lexer#skip}.
+	 *
+	 * @param state The current state.
+	 * @param buf The parsed buffer.
+	 * @param from The index of the byte following the current byte.
+	 * @param end The index following the chunk's last byte.
+	 * @return the index of the next byte leaving the state, or end if there
+	 * 		is none in the chunk.
+	 */
+	protected int skip(final int state, final byte[] buf, final int from, final int end)
+	{
+		int next = SCANNER.indexOf(buf, from, end, (byte) SKIP_STOPS[state * 2], (byte) SKIP_STOPS[state * 2 + 1]),
+			kind = SKIP_KINDS[state];
+		if (kind != -1) {
+			this.ends[kind] = next;
+		}
+		return next;
+	}
+
+	/**
+	 * Appends the current byte to the current element of a kind, as
+	 * {@link Lexer#append}.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The parsed buffer.
+	 * @param i The index of the current byte in the buffer.
+	 */
+	protected void append(final int kind, final byte[] buf, final int i)
+	{
+		if (this.ends[kind] == i) {
+			this.ends[kind] = i + 1;
+			return;
+		}
+
+		this.copy(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+		this.starts[kind] = i;
+		this.ends[kind] = i + 1;
+	}
+
+	/**
+	 * Appends bytes to the copied part of the current element of a kind. The
+	 * element's contiguous range is emptied.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The buffer containing the bytes to copy.
+	 * @param off The index of the first byte to copy.
+	 * @param len The number of bytes to copy.
+	 */
+	protected void copy(final int kind, final byte[] buf, final int off, final int len)
+	{
+		int length = this.copyLengths[kind];
+		if (length + len > this.byteCopies[kind].length) {
+			this.byteCopies[kind] = java.util.Arrays.copyOf(
+				this.byteCopies[kind],
+				Math.max(length + len, this.byteCopies[kind].length * 2)
+			);
+		}
+		System.arraycopy(buf, off, this.byteCopies[kind], length, len);
+		this.copyLengths[kind] = length + len;
+		this.starts[kind] = this.ends[kind];
+	}
+
+	/**
+	 * Stores the current element of a kind in its analyser.
+	 *
+	 * @param kind The kind of the element.
+	 * @param buf The parsed buffer.
+	 */
+	protected void emit(final int kind, final byte[] buf)
+	{
+		this.elementsInProgress &= ~(1 << kind);
+		if (this.copyLengths[kind] != 0) {
+			this.copy(kind, buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+			this.analysers[kind].incElementOccurences(this.byteCopies[kind], 0, this.copyLengths[kind]);
+		}
+		else {
+			this.analysers[kind].incElementOccurences(buf, this.starts[kind], this.ends[kind] - this.starts[kind]);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package jsanalyser;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Search of the end of the bodies of comments, strings and regexes with the
+ * Vector API.
+ * <p>
+ * The chars are compared by blocks of the platform's preferred vector size
+ * (16 chars with AVX2, 32 with AVX-512), so long bodies, as license headers
+ * or data URIs, are scanned at the speed of the memory. The last chars, which
+ * do not fill a block, are tested one by one.
+ * </p>
+ * <p>
+ * This class needs the incubating module jdk.incubator.vector, both to be
+ * compiled and to be loaded, so it is only referenced by name (see
+ * {@link SpanScanner#create}).
+ * </p>
+ */
+public class VectorSpanScanner extends SpanScanner
+{
+	/**
+	 * Shape of the vectors, a char being compared as a short.
+	 */
+	protected static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+	/**
+	 * Shape of the vectors of UTF-8 bytes.
+	 */
+	protected static final VectorSpecies<Byte> BYTE_SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	/**
+	 * @param buf The buffer to search in.
+	 * @param from The index of the first char to test.
+	 * @param end The index following the last char to test.
+	 * @param stop A searched char.
+	 * @param otherStop Another searched char, can be the same as stop.
+	 * @return the index of the first searched char, or end if there is none.
+	 */
+	@Override
+	public int indexOf(final char[] buf, final int from, final int end, final char stop, final char otherStop)
+	{
+		final int length = SPECIES.length();
+
+		// Most bodies are short, they end before a vector is filled
+		int i = super.indexOf(buf, from, Math.min(end, from + length), stop, otherStop);
+		if (i < from + length) {
+			return i;
+		}
+
+		for (final int bound = end - length; i <= bound; i += length) {
+			final ShortVector chars = ShortVector.fromCharArray(SPECIES, buf, i);
+			final int first = chars.eq((short) stop).or(chars.eq((short) otherStop)).firstTrue();
+			if (first != length) {
+				return i + first;
+			}
+		}
+		return super.indexOf(buf, i, end, stop, otherStop);
+	}
+
+	/**
+	 * @param buf The buffer of UTF-8 bytes to search in.
+	 * @param from The index of the first byte to test.
+	 * @param end The index following the last byte to test.
+	 * @param stop A searched ASCII char.
+	 * @param otherStop Another searched ASCII char, can be the same as stop.
+	 * @return the index of the first searched char, or end if there is none.
+	 */
+	@Override
+	public int indexOf(final byte[] buf, final int from, final int end, final byte stop, final byte otherStop)
+	{
+		final int length = BYTE_SPECIES.length();
+
+		int i = super.indexOf(buf, from, Math.min(end, from + length), stop, otherStop);
+		if (i < from + length) {
+			return i;
+		}
+
+		for (final int bound = end - length; i <= bound; i += length) {
+			final ByteVector bytes = ByteVector.fromArray(BYTE_SPECIES, buf, i);
+			final int first = bytes.eq(stop).or(bytes.eq(otherStop)).firstTrue();
+			if (first != length) {
+				return i + first;
+			}
+		}
+		return super.indexOf(buf, i, end, stop, otherStop);
+	}
+}
@@ -1,9 +1,22 @@
 package jsanalyser.analyser;
 
-import java.util.Map;
-import java.util.HashMap;
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import jsanalyser.monitoring.AnalyserStats;
+import jsanalyser.monitoring.Monitoring;
+import jsanalyser.monitoring.ReportEvent;
+import jsanalyser.report.Entry;
+import jsanalyser.report.Optimisation;
+import jsanalyser.report.Position;
+import jsanalyser.report.Savings;
+import jsanalyser.report.Section;
+import jsanalyser.report.TextReportWriter;
 
 /**
  * Abstract class representing an analyser.
@@ -15,8 +28,9 @@ import java.util.ArrayList;
  * number of time the element appears in the code.
  * </p>
  * <p>
- * A specificReport hook can be overridden to display more informations
- * regarding each element.
+ * An optimisation hook can be overridden to test if each element is
+ * optimisable, a savings hook to estimate what its optimisation saves, and a
+ * hazard hook to describe its performance hazards.
  * </p>
  */
 public abstract class Analyser
@@ -26,12 +40,34 @@ public abstract class Analyser
 	 */
 	protected String reportTitle;
 
+	/**
+	 * The identifier of the analyser's report, such as "strings"
+	 */
+	protected String name;
+
 	/**
 	 * The collections of elements of the analyser.
 	 * Each element is a tuple containing the element itself (in a string) and
 	 * The number of occurences of the element in the code.
 	 */
-	protected Map<String, Integer> elements;
+	protected ElementStore elements;
+
+	/**
+	 * The number of elements stored, each occurence counting.
+	 */
+	protected long nbOccurences;
+
+	/**
+	 * Positions of the occurences of the elements, null if they are not
+	 * indexed.
+	 */
+	protected OccurenceIndex index;
+
+	/**
+	 * Lines of the code the positions are in, null if the positions are not
+	 * indexed.
+	 */
+	protected LineIndex lines;
 
 	/**
 	 * Construct
@@ -41,7 +77,96 @@ public abstract class Analyser
 	 */
 	public Analyser()
 	{
-		this.elements = new HashMap<String, Integer>();
+		this.elements = new ElementTable();
+	}
+
+	/**
+	 * Sets the counting of the elements approximate, with a memory bounded by
+	 * the number of reported elements (see {@link SpaceSaving}). Only the most
+	 * frequent elements are then reported, with their estimated number of
+	 * occurences.
+	 * <p>
+	 * Must be called before any element is stored.
+	 * </p>
+	 *
+	 * @param topK The number of reported elements, 0 to count all the
+	 * 		elements exactly.
+	 */
+	public void setApproximate(int topK)
+	{
+		this.elements = topK > 0 ? new SpaceSaving(topK) : new ElementTable();
+	}
+
+	/**
+	 * Stores the elements counted exactly as UTF-8 bytes (see
+	 * {@link Utf8ElementTable}), for the elements found in UTF-8 code
+	 * without decoding it. The approximate counting is kept.
+	 * <p>
+	 * Must be called before any element is stored.
+	 * </p>
+	 */
+	public void setUtf8()
+	{
+		if (this.elements instanceof ElementTable) {
+			this.elements = new Utf8ElementTable();
+		}
+	}
+
+	/**
+	 * Stores the elements counted exactly in a {@link RadixTree}, which
+	 * shares their prefixes and reports them sorted without sorting them. The
+	 * approximate counting is kept.
+	 * <p>
+	 * Must be called before any element is stored.
+	 * </p>
+	 */
+	public void setSorted()
+	{
+		if (this.elements instanceof ElementTable) {
+			this.elements = new RadixTree();
+		}
+	}
+
+	/**
+	 * Bounds the memory of the elements counted exactly in a hash table (see
+	 * {@link SpillingElementTable}): beyond the budget, the elements are
+	 * spilled in sorted runs on the disk, merged when they are reported. The
+	 * approximate counting, the radix trees and the UTF-8 tables are kept.
+	 * <p>
+	 * Must be called before any element is stored.
+	 * </p>
+	 *
+	 * @param budget The maximum number of bytes of the elements in memory.
+	 */
+	public void setMemoryBudget(long budget)
+	{
+		if (this.elements.getClass() == ElementTable.class) {
+			this.elements = new SpillingElementTable(budget);
+		}
+	}
+
+	/**
+	 * Indexes the positions of the occurences of the elements, which are then
+	 * reported with the elements.
+	 * <p>
+	 * Must be called before any element is stored.
+	 * </p>
+	 *
+	 * @param lines The lines of the code, filled while the code is parsed,
+	 * 		or null to not index the positions.
+	 */
+	public void setIndexed(LineIndex lines)
+	{
+		this.lines = lines;
+		this.index = lines == null ? null : new OccurenceIndex();
+	}
+
+	/**
+	 * @return true if the positions of the occurences are indexed.
+	 */
+	public boolean isIndexed()
+	{
+		return this.index != null;
 	}
 
 	/**
@@ -51,12 +176,7 @@ public abstract class Analyser
 	 */
 	protected Integer getElementOccurences(String key)
 	{
-		Integer occurences = this.elements.get(key);
-		if (occurences == null) {
-			return 0;
-		}
-
-		return occurences;
+		return this.elements.get(key);
 	}
 
 	/**
@@ -66,45 +186,371 @@ public abstract class Analyser
 	 */
 	public void incElementOccurences(String key)
 	{
-		Integer occurences = this.getElementOccurences(key);
-		this.elements.put(key, occurences + 1);
+		this.nbOccurences++;
+		this.elements.add(key, 1);
 	}
 
 	/**
-	 * Run the analyse on the elements collection.
+	 * Increment the number of occurences of an element stored in a range of a
+	 * char buffer. The element is copied in a string only if it is not already
+	 * in the collection.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 */
+	public void incElementOccurences(char[] buf, int off, int len)
+	{
+		this.nbOccurences++;
+		this.elements.add(buf, off, len, 1);
+	}
+
+	/**
+	 * Increment the number of occurences of an element stored in a range of a
+	 * char buffer, and indexes the position of the occurence if the positions
+	 * are indexed.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @param position The position of the occurence in the code.
+	 */
+	public void incElementOccurences(char[] buf, int off, int len, long position)
+	{
+		this.incElementOccurences(buf, off, len);
+		if (this.index != null) {
+			this.index.add(buf, off, len, position, this.elements);
+		}
+	}
+
+	/**
+	 * @param key The element value.
+	 * @return the lines and columns of the occurences of the element, in the
+	 * 		order of the code, or null if the positions are not indexed.
+	 */
+	public List<Position> getPositions(String key)
+	{
+		if (this.index == null) {
+			return null;
+		}
+
+		long[] offsets = this.index.get(key);
+		Arrays.sort(offsets);
+		List<Position> positions = new ArrayList<Position>(offsets.length);
+		for (long offset : offsets) {
+			positions.add(this.lines.position(offset));
+		}
+		return positions;
+	}
+
+	/**
+	 * Increment the number of occurences of an element stored in UTF-8 in a
+	 * range of a byte buffer.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 */
+	public void incElementOccurences(byte[] buf, int off, int len)
+	{
+		this.nbOccurences++;
+		this.elements.add(buf, off, len, 1);
+	}
+
+	/**
+	 * @return the identifier of the analyser's report, such as "strings".
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+
+	/**
+	 * @return the number of elements stored, each occurence counting.
+	 */
+	public long getNbOccurences()
+	{
+		return this.nbOccurences;
+	}
+
+	/**
+	 * @return the number of distinct elements stored.
+	 */
+	public int getNbElements()
+	{
+		return this.elements.size();
+	}
+
+	/**
+	 * Adds occurences to a given element.
+	 *
+	 * @param key The element value.
+	 * @param count The number of occurences to add.
+	 */
+	public void addElementOccurences(String key, int count)
+	{
+		this.nbOccurences += count;
+		this.elements.add(key, count);
+	}
+
+	/**
+	 * @return true if the elements are counted exactly (see
+	 * 		{@link #setApproximate}).
+	 */
+	public boolean isExact()
+	{
+		return this.elements instanceof ElementTable || this.elements instanceof Utf8ElementTable || this.elements instanceof RadixTree;
+	}
+
+	/**
+	 * Visits the elements of the analyser, in no particular order.
+	 *
+	 * @param visitor The visitor called for each element.
+	 */
+	public void forEachElement(ElementStore.Visitor visitor)
+	{
+		this.elements.forEach(visitor);
+	}
+
+	/**
+	 * Removes all the elements, to analyse another code with the same
+	 * analyser.
+	 */
+	public void clear()
+	{
+		this.nbOccurences = 0;
+		this.elements.clear();
+		if (this.index != null) {
+			this.index.clear();
+		}
+	}
+
+	/**
+	 * Merge the elements of another analyser of the same type in this one.
+	 * <p>
+	 * The occurences of each element are added, so merging the analysers of
+	 * several pieces of code, in any grouping, gives the analyser of the whole
+	 * code.
+	 * </p>
+	 * <p>
+	 * To merge the smallest collection in the biggest one, the collections of
+	 * both analysers can be swapped, so the other analyser must not be used
+	 * after the merge.
+	 * </p>
 	 * <p>
-	 * For each element, it's number of occurences will be displayed and the
-	 * {@link #specificReport} method will be called.
+	 * The positions of the occurences are merged if both analysers found
+	 * their elements in the same code, such as successive snapshots of a
+	 * stream. Otherwise they cannot be compared, and this analyser stops
+	 * indexing them.
 	 * </p>
 	 *
-	 * @param verbose A verbose mode, used only if necessary in the
-	 * 		{@link #specificReport} method
+	 * @param other The analyser to merge in this one.
+	 * @return this analyser, containing the elements of both analysers.
+	 */
+	public Analyser merge(Analyser other)
+	{
+		if (other.getClass() != this.getClass()) {
+			throw new IllegalArgumentException(
+				"Cannot merge a " + other.getClass().getSimpleName()
+				+ " in a " + this.getClass().getSimpleName()
+			);
+		}
+
+		ElementStore merged = other.elements;
+		if (merged.size() > this.elements.size() && merged.getClass() == this.elements.getClass()) {
+			other.elements = this.elements;
+			this.elements = merged;
+			merged = other.elements;
+		}
+
+		if (this.index != null && other.index != null && (this.lines == other.lines || this.nbOccurences == 0)) {
+			this.index.merge(other.index);
+			this.lines = other.lines;
+		}
+		else {
+			this.index = null;
+			this.lines = null;
+		}
+
+		merged.addTo(this.elements);
+		this.nbOccurences += other.nbOccurences;
+		return this;
+	}
+
+	/**
+	 * Run the analyse on the elements collection and display the report on
+	 * the standard output.
+	 *
+	 * @param verbose A verbose mode, to also display the non optimisable
+	 * 		elements.
 	 */
 	public void run(boolean verbose)
 	{
-		int nbElements = this.elements.size();
-		if (nbElements == 0) {
-			return;
+		try {
+			TextReportWriter writer = new TextReportWriter(new OutputStreamWriter(System.out), verbose);
+			writer.writeSection(this.report(0));
+			writer.flush();
+		} catch (IOException io) {
+			io.printStackTrace();
+		}
+	}
+
+	/**
+	 * Run the analyse on the elements collection.
+	 * <p>
+	 * For each reported element, the number of occurences is given with the
+	 * result of the {@link #optimisation} test.
+	 * </p>
+	 * <p>
+	 * By default, all the elements are reported, sorted, which they already
+	 * are if they are stored in a {@link RadixTree} or a
+	 * {@link SpillingElementTable}. If the elements were spilled on the disk,
+	 * the entries are built while the report is written, so they are not all
+	 * in memory at once. If only the most frequent elements are reported,
+	 * they are selected with a bounded heap, without sorting all the
+	 * elements, and are sorted by decreasing number of occurences.
+	 * </p>
+	 * <p>
+	 * If the counting is approximate, only the most frequent elements are
+	 * reported, with the maximum overestimation of their number of
+	 * occurences.
+	 * </p>
+	 *
+	 * <p>
+	 * The building of the report is recorded by a {@link ReportEvent} and in
+	 * the analyser's statistics, if enabled.
+	 * </p>
+	 *
+	 * @param top The number of most frequent elements to report, 0 to report
+	 * 		all the elements.
+	 * @return the report's section of the analyser.
+	 */
+	public Section report(final int top)
+	{
+		AnalyserStats stats = Monitoring.getAnalyserStats(this.name);
+		ReportEvent event = new ReportEvent();
+		long start = stats == null ? 0 : System.nanoTime();
+
+		event.begin();
+		Section section = this.buildReport(top);
+		event.end();
+		if (event.shouldCommit()) {
+			event.analyser = this.name;
+			event.elements = this.elements.size();
+			event.entries = section.getEntries().size();
+			event.commit();
+		}
+		if (stats != null) {
+			stats.reported(System.nanoTime() - start);
+		}
+
+		return section;
+	}
+
+	/**
+	 * Builds the report of the analyser (see {@link #report}).
+	 *
+	 * @param top The number of most frequent elements to report, 0 to report
+	 * 		all the elements.
+	 * @return the report's section of the analyser.
+	 */
+	protected Section buildReport(final int top)
+	{
+		final ElementStore elements = this.reportedElements();
+		if (top <= 0 && elements instanceof SpillingElementTable && ((SpillingElementTable) elements).getNbRuns() > 0) {
+			return new Section(this.name, this.reportTitle, new SpilledEntries(this, (SpillingElementTable) elements));
 		}
 
-		System.out.println();
-		System.out.println(this.reportTitle);
-		List<String> list = new ArrayList<String>(this.elements.keySet());
-		java.util.Collections.sort(list);
-		for (String currentElement : list) {
-			int elementLength = currentElement.length(),
-				nbOccurences = this.elements.get(currentElement);
+		final List<Entry> entries = new ArrayList<Entry>();
+		if (top <= 0 || top >= elements.size()) {
+			elements.forEach((key, count, error) -> {
+				entries.add(new Entry(key, count, error, this.optimisation(key, count), this.getPositions(key), this.savings(key, count), null, this.hazard(key)));
+			});
+			if (top > 0) {
+				Collections.sort(entries, Entry.BY_OCCURENCES);
+			}
+			else if (!(elements instanceof RadixTree || elements instanceof SpillingElementTable)) {
+				Collections.sort(entries, Entry.BY_ELEMENT);
+			}
+			return new Section(this.name, this.reportTitle, entries);
+		}
 
-			System.out.println(currentElement + ": " + nbOccurences + " occurence(s)");
+		// The head of the heap is the least frequent of the kept elements
+		final PriorityQueue<Entry> heap = new PriorityQueue<Entry>(top, Entry.BY_OCCURENCES.reversed());
+		elements.forEach((key, count, error) -> {
+			if (heap.size() == top) {
+				Entry last = heap.peek();
+				if (count < last.getOccurences() || (count == last.getOccurences() && key.compareTo(last.getElement()) > 0)) {
+					return;
+				}
+				heap.poll();
+			}
+			heap.add(new Entry(key, count, error, null));
+		});
 
-			this.specificReport(verbose, currentElement, nbOccurences);
+		for (Entry entry : heap) {
+			entries.add(new Entry(
+				entry.getElement(),
+				entry.getOccurences(),
+				entry.getError(),
+				this.optimisation(entry.getElement(), entry.getOccurences()),
+				this.getPositions(entry.getElement()),
+				this.savings(entry.getElement(), entry.getOccurences()),
+				null,
+				this.hazard(entry.getElement())
+			));
 		}
+		Collections.sort(entries, Entry.BY_OCCURENCES);
+		return new Section(this.name, this.reportTitle, entries);
+	}
+
+	/**
+	 * Method to be overloaded to report other elements than the stored ones,
+	 * such as the stored elements grouped by value.
+	 *
+	 * @return the elements to report, the stored elements by default.
+	 */
+	protected ElementStore reportedElements()
+	{
+		return this.elements;
+	}
+
+	/**
+	 * Method to be overloaded to test if an element is optimisable.
+	 *
+	 * @param element The element.
+	 * @param nbOccurences The number of occurences of the element.
+	 * @return the result of the test, null if the analyser does not test its
+	 * 		elements.
+	 */
+	public Optimisation optimisation(String element, int nbOccurences)
+	{
+		return null;
+	}
+
+	/**
+	 * Method to be overloaded to estimate the savings of the optimisation of
+	 * an element.
+	 *
+	 * @param element The element.
+	 * @param nbOccurences The number of occurences of the element.
+	 * @return the estimated savings, null if the analyser does not estimate
+	 * 		them.
+	 */
+	public Savings savings(String element, int nbOccurences)
+	{
+		return null;
 	}
 
 	/**
-	 * Method to be overloaded to run a specific report on each element.
+	 * Method to be overloaded to check if an element is a performance hazard.
+	 *
+	 * @param element The element.
+	 * @return the description of the hazard, null if the element has none or
+	 * 		if the analyser does not check its elements.
 	 */
-	public void specificReport(boolean verbose, String element, Integer nbOccurences)
+	public String hazard(String element)
 	{
+		return null;
 	}
 }
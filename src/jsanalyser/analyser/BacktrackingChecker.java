@@ -0,0 +1,1511 @@
+package jsanalyser.analyser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Checker of the regexes whose matching can backtrack catastrophically,
+ * taking a time exponential or polynomial in the length of the input.
+ * <p>
+ * A regex is first parsed and searched for the constructs matching the same
+ * input in many ways: the quantifiers nested in an unbounded quantifier
+ * whose next iteration can start with the chars of the nested one, such as
+ * (\w+\s?)*, the alternations repeated by an unbounded quantifier whose
+ * alternatives start with the same chars, such as (\w|\d)+, both
+ * exponential, and the successive unbounded quantifiers matching the same
+ * chars, such as \d+\d+, polynomial.
+ * </p>
+ * <p>
+ * The regexes with such a construct are then translated to a
+ * {@link Pattern}, and matched against adversarial inputs: the construct's
+ * chars repeated more and more times, between a prefix leading to the
+ * construct and a suffix making the match fail. The inputs are matched on a
+ * worker, until the matcher reads more than {@link #MAX_READS} chars of an
+ * input, which confirms the construct, or the inputs reach
+ * {@link #MAX_PUMPS} repetitions. Counting the chars read rather than the
+ * time keeps the reports the same from one run to the other. The matching of
+ * all the inputs of a regex is stopped after {@link #TIMEOUT_MILLIS} anyway,
+ * the input read by the matcher checking the deadline, but reaching it only
+ * reports the construct as timed out, not as confirmed, its result depending
+ * on the speed and the load of the machine.
+ * </p>
+ * <p>
+ * The Java engine avoids some of the exponential backtracking of the
+ * JavaScript engines, so an exponential construct can need a longer input
+ * to be confirmed than in a browser, or not be confirmed at all.
+ * </p>
+ * <p>
+ * The results are cached by regex, so each distinct regex is checked once,
+ * even when the checker is shared by the parsers of many files.
+ * </p>
+ */
+public class BacktrackingChecker
+{
+	/**
+	 * Maximum time spent matching the adversarial inputs of a regex.
+	 */
+	public static final long TIMEOUT_MILLIS = 1000;
+
+	/**
+	 * Number of chars read by the matcher of an adversarial input which
+	 * confirms a hazard, far more than a linear match of the longest input
+	 * reads.
+	 */
+	public static final int MAX_READS = 1 << 22;
+
+	/**
+	 * Maximum number of repetitions of the construct in an adversarial input.
+	 */
+	public static final int MAX_PUMPS = 1 << 14;
+
+	/**
+	 * Number of repetitions of the construct in the first adversarial input,
+	 * doubled for the next ones.
+	 */
+	protected static final int MIN_PUMPS = 8;
+
+	/**
+	 * Chars tried to make the match of an adversarial input fail, the first
+	 * one not matched by the construct being used.
+	 */
+	protected static final String SUFFIXES = "!\u0000\n#~ ";
+
+	/**
+	 * Result of {@link #confirm} when the deadline was reached before a
+	 * match read too many chars.
+	 */
+	protected static final int TIMED_OUT = -1;
+
+	/**
+	 * Result cached for the regexes without hazard.
+	 */
+	protected static final String NONE = "";
+
+	/**
+	 * Hazard of each checked regex, {@link #NONE} if it has none.
+	 */
+	protected ConcurrentHashMap<String, String> hazards = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Workers matching the adversarial inputs, daemons so they never keep the
+	 * application running.
+	 */
+	protected ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "backtracking-checker");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Checks a regex, if it was not already checked.
+	 *
+	 * @param regex The regex literal, such as /(a+)+$/i.
+	 * @return the description of the backtracking hazard of the regex, null
+	 * 		if it has none or cannot be parsed.
+	 */
+	public String check(String regex)
+	{
+		String hazard = this.hazards.get(regex);
+		if (hazard == null) {
+			hazard = this.analyse(regex);
+			String previous = this.hazards.putIfAbsent(regex, hazard);
+			if (previous != null) {
+				hazard = previous;
+			}
+		}
+		return hazard.isEmpty() ? null : hazard;
+	}
+
+	/**
+	 * @param regex The regex literal.
+	 * @return the description of the backtracking hazard of the regex,
+	 * 		{@link #NONE} if it has none.
+	 */
+	protected String analyse(String regex)
+	{
+		int slash = regex.lastIndexOf('/');
+		if (!regex.startsWith("/") || slash <= 0) {
+			return NONE;
+		}
+
+		String body = regex.substring(1, slash),
+			flags = regex.substring(slash + 1);
+		Hazard hazard;
+		try {
+			Node root = new RegexParser(body, flags.indexOf('i') != -1, flags.indexOf('s') != -1).parse();
+			List<Hazard> hazards = new ArrayList<Hazard>();
+			search(root, "", hazards);
+			hazard = null;
+			for (Hazard found : hazards) {
+				if (hazard == null || (found.exponential && !hazard.exponential)) {
+					hazard = found;
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// Not a regex, such as a division mistaken for one
+			return NONE;
+		}
+		if (hazard == null) {
+			return NONE;
+		}
+
+		String description = (hazard.exponential ? "exponential" : "polynomial")
+			+ " backtracking on " + hazard.construct + " " + hazard.source;
+		int length = this.confirm(body, flags, hazard);
+		if (length > 0) {
+			return description + ", confirmed on " + length + " chars";
+		}
+		if (length == TIMED_OUT) {
+			return description + ", not confirmed, timed out";
+		}
+		return description + ", not confirmed";
+	}
+
+	/**
+	 * Matches the adversarial inputs of a hazard on a worker.
+	 *
+	 * @param body The body of the regex literal.
+	 * @param flags The flags of the regex literal.
+	 * @param hazard The hazard found in the regex.
+	 * @return the length of the input whose match read too many chars,
+	 * 		{@link #TIMED_OUT} if the deadline was reached before, 0 if no
+	 * 		match did or if the regex cannot be translated.
+	 */
+	protected int confirm(String body, String flags, Hazard hazard)
+	{
+		final Pattern pattern;
+		try {
+			pattern = Pattern.compile(toJava(body), toJavaFlags(flags));
+		} catch (PatternSyntaxException e) {
+			return 0;
+		}
+
+		char suffix = 0;
+		for (int i = 0; i < SUFFIXES.length(); i++) {
+			suffix = SUFFIXES.charAt(i);
+			if (!hazard.chars.contains(suffix)) {
+				break;
+			}
+		}
+		final String end = String.valueOf(suffix);
+		Future<Integer> attack = this.workers.submit(() -> {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+			for (int pumps = MIN_PUMPS; pumps <= MAX_PUMPS; pumps *= 2) {
+				String input = hazard.prefix + hazard.pump.repeat(pumps) + end;
+				try {
+					pattern.matcher(new DeadlineSequence(input, deadline)).find();
+				} catch (DeadlineSequence.Expired e) {
+					return e.timedOut ? TIMED_OUT : input.length();
+				} catch (StackOverflowError e) {
+					// Deep but not slow
+					return 0;
+				}
+			}
+			return 0;
+		});
+
+		try {
+			return attack.get(TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			attack.cancel(true);
+			return TIMED_OUT;
+		} catch (InterruptedException e) {
+			attack.cancel(true);
+			Thread.currentThread().interrupt();
+			return 0;
+		} catch (ExecutionException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Searches the hazards of a node and of its descendants.
+	 *
+	 * @param node The node.
+	 * @param prefix An input leading the match to the node.
+	 * @param hazards The list receiving the hazards.
+	 */
+	protected static void search(Node node, String prefix, List<Hazard> hazards)
+	{
+		switch (node.kind) {
+			case Node.SEQUENCE:
+				StringBuilder before = new StringBuilder(prefix);
+				for (int i = 0; i < node.children.size(); i++) {
+					Node item = node.children.get(i);
+					search(item, before.toString(), hazards);
+					for (int j = i + 1; isLoop(item) && j < node.children.size(); j++) {
+						Node next = node.children.get(j);
+						CharSet overlap = first(item.body()).intersection(first(next));
+						if (isLoop(next) && !overlap.isEmpty()) {
+							hazards.add(new Hazard(
+								false,
+								"overlapping quantifiers",
+								node.source.substring(item.start, next.end),
+								before.toString(),
+								String.valueOf(overlap.sample()),
+								first(item.body()).union(first(next.body()))
+							));
+							break;
+						}
+						if (!nullable(next)) {
+							break;
+						}
+					}
+					before.append(sample(item));
+				}
+				break;
+			case Node.QUANTIFIER:
+				if (isLoop(node)) {
+					CharSet chars = first(node.body());
+					Node inner = repeated(node.body(), node.body(), chars);
+					Node alternation = ambiguous(node.body());
+					if (inner != null) {
+						String pump = sample(node.body());
+						hazards.add(new Hazard(
+							true,
+							"nested quantifiers",
+							node.source.substring(node.start, node.end),
+							prefix,
+							pump.isEmpty() ? String.valueOf(chars.sample()) : pump,
+							chars.union(first(inner.body()))
+						));
+					}
+					else if (alternation != null) {
+						CharSet alternatives = new CharSet();
+						for (Node alternative : alternation.children) {
+							alternatives = alternatives.union(first(alternative));
+						}
+						hazards.add(new Hazard(
+							true,
+							"ambiguous alternation",
+							node.source.substring(node.start, node.end),
+							prefix,
+							String.valueOf(overlap(alternation).sample()),
+							alternatives
+						));
+					}
+				}
+				search(node.body(), prefix, hazards);
+				break;
+			default:
+				for (Node child : node.children) {
+					search(child, prefix, hazards);
+				}
+		}
+	}
+
+	/**
+	 * @param node A node.
+	 * @return true if the node is an unbounded quantifier of a node matching
+	 * 		some chars.
+	 */
+	protected static boolean isLoop(Node node)
+	{
+		return node.kind == Node.QUANTIFIER && node.max == Node.UNBOUNDED && !first(node.body()).isEmpty();
+	}
+
+	/**
+	 * @param body The body of an unbounded quantifier.
+	 * @param node The body or one of its descendants.
+	 * @param chars The first chars of an iteration of the quantifier.
+	 * @return a quantifier repeating its body, nested in the node, whose
+	 * 		first chars can also start the next iteration, the rest of the
+	 * 		iteration matching the same chars, null if there is none.
+	 */
+	protected static Node repeated(Node body, Node node, CharSet chars)
+	{
+		if (node.kind == Node.LOOKAROUND) {
+			return null;
+		}
+		if (node.kind == Node.QUANTIFIER && node.max > 1 && first(node.body()).intersects(chars) && absorbs(body, node, first(node.body()))) {
+			return node;
+		}
+		for (Node child : node.children) {
+			Node inner = repeated(body, child, chars);
+			if (inner != null) {
+				return inner;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param node A node.
+	 * @param inner A quantifier nested in the node.
+	 * @param chars The chars of the quantifier.
+	 * @return true if the node, the quantifier excepted, can match a string
+	 * 		of these chars only, so the quantifier and the rest of the node
+	 * 		can share the chars of an input in many ways.
+	 */
+	protected static boolean absorbs(Node node, Node inner, CharSet chars)
+	{
+		if (node == inner) {
+			return true;
+		}
+
+		switch (node.kind) {
+			case Node.CHARS:
+				return node.chars.intersects(chars);
+			case Node.SEQUENCE:
+				for (Node child : node.children) {
+					if (!absorbs(child, inner, chars)) {
+						return false;
+					}
+				}
+				return true;
+			case Node.ALTERNATION:
+				for (Node child : node.children) {
+					if (absorbs(child, inner, chars)) {
+						return true;
+					}
+				}
+				return false;
+			case Node.GROUP:
+				return absorbs(node.body(), inner, chars);
+			case Node.QUANTIFIER:
+				return node.min == 0 || absorbs(node.body(), inner, chars);
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * @param node The body of an unbounded quantifier.
+	 * @return an alternation nested in the node, whose alternatives start
+	 * 		with the same chars, null if there is none.
+	 */
+	protected static Node ambiguous(Node node)
+	{
+		if (node.kind == Node.LOOKAROUND) {
+			return null;
+		}
+		if (node.kind == Node.ALTERNATION && !overlap(node).isEmpty()) {
+			return node;
+		}
+		for (Node child : node.children) {
+			Node alternation = ambiguous(child);
+			if (alternation != null) {
+				return alternation;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param alternation An alternation.
+	 * @return the first chars shared by two alternatives, empty if there are
+	 * 		none.
+	 */
+	protected static CharSet overlap(Node alternation)
+	{
+		CharSet seen = new CharSet();
+		for (Node alternative : alternation.children) {
+			CharSet chars = first(alternative);
+			if (seen.intersects(chars)) {
+				return seen.intersection(chars);
+			}
+			seen = seen.union(chars);
+		}
+		return new CharSet();
+	}
+
+	/**
+	 * @param node A node.
+	 * @return true if the node can match the empty string.
+	 */
+	protected static boolean nullable(Node node)
+	{
+		switch (node.kind) {
+			case Node.CHARS:
+				return false;
+			case Node.SEQUENCE:
+				for (Node child : node.children) {
+					if (!nullable(child)) {
+						return false;
+					}
+				}
+				return true;
+			case Node.ALTERNATION:
+				for (Node child : node.children) {
+					if (nullable(child)) {
+						return true;
+					}
+				}
+				return false;
+			case Node.GROUP:
+				return nullable(node.body());
+			case Node.QUANTIFIER:
+				return node.min == 0 || nullable(node.body());
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * @param node A node.
+	 * @return the chars the matches of the node can start with.
+	 */
+	protected static CharSet first(Node node)
+	{
+		switch (node.kind) {
+			case Node.CHARS:
+				return node.chars;
+			case Node.SEQUENCE:
+				CharSet chars = new CharSet();
+				for (Node child : node.children) {
+					chars = chars.union(first(child));
+					if (!nullable(child)) {
+						break;
+					}
+				}
+				return chars;
+			case Node.ALTERNATION:
+				CharSet alternatives = new CharSet();
+				for (Node child : node.children) {
+					alternatives = alternatives.union(first(child));
+				}
+				return alternatives;
+			case Node.GROUP:
+				return first(node.body());
+			case Node.QUANTIFIER:
+				return node.max == 0 ? new CharSet() : first(node.body());
+			default:
+				return new CharSet();
+		}
+	}
+
+	/**
+	 * @param node A node.
+	 * @return a short string matched by the node, empty for the assertions
+	 * 		and back references.
+	 */
+	protected static String sample(Node node)
+	{
+		switch (node.kind) {
+			case Node.CHARS:
+				return node.chars.isEmpty() ? "" : String.valueOf(node.chars.sample());
+			case Node.SEQUENCE:
+				StringBuilder sample = new StringBuilder();
+				for (Node child : node.children) {
+					sample.append(sample(child));
+				}
+				return sample.toString();
+			case Node.ALTERNATION:
+			case Node.GROUP:
+				return sample(node.children.get(0));
+			case Node.QUANTIFIER:
+				return sample(node.body()).repeat(Math.min(node.min, MIN_PUMPS));
+			default:
+				return "";
+		}
+	}
+
+	/**
+	 * Translates the body of a JavaScript regex literal to a Java pattern.
+	 *
+	 * @param body The body of the regex literal.
+	 * @return the equivalent Java pattern.
+	 */
+	protected static String toJava(String body)
+	{
+		StringBuilder pattern = new StringBuilder(body.length() + 8);
+		boolean inClass = false;
+		for (int i = 0; i < body.length(); i++) {
+			char c = body.charAt(i);
+			if (c == '\\' && i + 1 < body.length()) {
+				char e = body.charAt(++i);
+				if (e == '0' && (i + 1 == body.length() || !Character.isDigit(body.charAt(i + 1)))) {
+					pattern.append("\\x00");
+				}
+				else if (e == 'v') {
+					pattern.append("\\x0B");
+				}
+				else if (e == 'u' && body.startsWith("{", i + 1) && body.indexOf('}', i) != -1) {
+					int end = body.indexOf('}', i);
+					pattern.append("\\x").append(body, i + 1, end + 1);
+					i = end;
+				}
+				else if (e == 'b' && inClass) {
+					pattern.append("\\x08");
+				}
+				else if (Character.isLetter(e) && "dDwWsSbBtnrfcxukpP".indexOf(e) == -1) {
+					// Identity escape of a letter
+					pattern.append(e);
+				}
+				else {
+					pattern.append(c).append(e);
+				}
+			}
+			else if (inClass) {
+				if (c == ']') {
+					inClass = false;
+					pattern.append(c);
+				}
+				else if (c == '[' || (c == '&' && i + 1 < body.length() && body.charAt(i + 1) == '&')) {
+					pattern.append('\\').append(c);
+				}
+				else {
+					pattern.append(c);
+				}
+			}
+			else if (c == '[') {
+				if (body.startsWith("]", i + 1)) {
+					// Empty class, matching nothing
+					pattern.append("(?!)");
+					i++;
+				}
+				else if (body.startsWith("^]", i + 1)) {
+					pattern.append("[\\s\\S]");
+					i += 2;
+				}
+				else {
+					inClass = true;
+					pattern.append(c);
+				}
+			}
+			else if ((c == '{' && RegexParser.quantifierEnd(body, i) == -1) || c == '}') {
+				if (c == '}' && pattern.length() > 0 && isQuantifierEnd(pattern)) {
+					pattern.append(c);
+				}
+				else {
+					pattern.append('\\').append(c);
+				}
+			}
+			else {
+				pattern.append(c);
+			}
+		}
+		return pattern.toString();
+	}
+
+	/**
+	 * @param pattern The pattern translated so far.
+	 * @return true if the pattern ends with an unclosed quantifier, such as
+	 * 		"a{2,".
+	 */
+	protected static boolean isQuantifierEnd(StringBuilder pattern)
+	{
+		int i = pattern.length() - 1;
+		while (i >= 0 && (Character.isDigit(pattern.charAt(i)) || pattern.charAt(i) == ',')) {
+			i--;
+		}
+		return i >= 0 && i < pattern.length() - 1 && pattern.charAt(i) == '{' && (i == 0 || pattern.charAt(i - 1) != '\\');
+	}
+
+	/**
+	 * @param flags The flags of a regex literal.
+	 * @return the equivalent flags of a Java pattern.
+	 */
+	protected static int toJavaFlags(String flags)
+	{
+		int javaFlags = 0;
+		if (flags.indexOf('i') != -1) {
+			javaFlags |= Pattern.CASE_INSENSITIVE;
+			if (flags.indexOf('u') != -1) {
+				javaFlags |= Pattern.UNICODE_CASE;
+			}
+		}
+		if (flags.indexOf('m') != -1) {
+			javaFlags |= Pattern.MULTILINE;
+		}
+		if (flags.indexOf('s') != -1) {
+			javaFlags |= Pattern.DOTALL;
+		}
+		return javaFlags;
+	}
+
+	/**
+	 * Construct of a regex which can backtrack catastrophically, with the
+	 * adversarial inputs to confirm it.
+	 */
+	protected static class Hazard
+	{
+		/**
+		 * True if the backtracking is exponential, false if it is
+		 * polynomial.
+		 */
+		protected boolean exponential;
+
+		/**
+		 * Kind of the construct, such as "nested quantifiers".
+		 */
+		protected String construct;
+
+		/**
+		 * The construct in the regex.
+		 */
+		protected String source;
+
+		/**
+		 * Input leading the match to the construct.
+		 */
+		protected String prefix;
+
+		/**
+		 * Input matched by the construct in many ways, repeated in the
+		 * adversarial inputs.
+		 */
+		protected String pump;
+
+		/**
+		 * Chars matched by the construct, not used to end the adversarial
+		 * inputs.
+		 */
+		protected CharSet chars;
+
+		/**
+		 * Construct
+		 *
+		 * @param exponential True if the backtracking is exponential.
+		 * @param construct The kind of the construct.
+		 * @param source The construct in the regex.
+		 * @param prefix The input leading the match to the construct.
+		 * @param pump The input repeated in the adversarial inputs.
+		 * @param chars The chars matched by the construct.
+		 */
+		protected Hazard(boolean exponential, String construct, String source, String prefix, String pump, CharSet chars)
+		{
+			this.exponential = exponential;
+			this.construct = construct;
+			this.source = source;
+			this.prefix = prefix;
+			this.pump = pump;
+			this.chars = chars;
+		}
+	}
+
+	/**
+	 * Node of the syntax tree of a regex.
+	 */
+	protected static class Node
+	{
+		/**
+		 * Kinds of the nodes.
+		 */
+		protected static final int CHARS = 0,
+			SEQUENCE = 1,
+			ALTERNATION = 2,
+			GROUP = 3,
+			LOOKAROUND = 4,
+			QUANTIFIER = 5,
+			ASSERTION = 6,
+			BACK_REFERENCE = 7;
+
+		/**
+		 * Maximum of the unbounded quantifiers.
+		 */
+		protected static final int UNBOUNDED = Integer.MAX_VALUE;
+
+		/**
+		 * Kind of the node.
+		 */
+		protected int kind;
+
+		/**
+		 * The regex's body, containing the node.
+		 */
+		protected String source;
+
+		/**
+		 * Index of the node's first char in the regex.
+		 */
+		protected int start;
+
+		/**
+		 * Index of the char after the node in the regex.
+		 */
+		protected int end;
+
+		/**
+		 * Children of the sequences, alternations, groups, lookarounds and
+		 * quantifiers.
+		 */
+		protected List<Node> children = new ArrayList<Node>();
+
+		/**
+		 * Chars matched by a chars node.
+		 */
+		protected CharSet chars;
+
+		/**
+		 * Minimum and maximum number of repetitions of a quantifier.
+		 */
+		protected int min, max;
+
+		/**
+		 * Construct
+		 *
+		 * @param kind The kind of the node.
+		 * @param source The regex's body.
+		 * @param start The index of the node's first char in the regex.
+		 */
+		protected Node(int kind, String source, int start)
+		{
+			this.kind = kind;
+			this.source = source;
+			this.start = start;
+		}
+
+		/**
+		 * @return the only child of a group, lookaround or quantifier.
+		 */
+		protected Node body()
+		{
+			return this.children.get(0);
+		}
+	}
+
+	/**
+	 * Parser of the body of a JavaScript regex literal.
+	 */
+	protected static class RegexParser
+	{
+		/**
+		 * The regex's body.
+		 */
+		protected String source;
+
+		/**
+		 * Index of the next char to parse.
+		 */
+		protected int pos;
+
+		/**
+		 * True if the regex ignores the case (flag i).
+		 */
+		protected boolean ignoreCase;
+
+		/**
+		 * True if the dot matches the line terminators (flag s).
+		 */
+		protected boolean dotAll;
+
+		/**
+		 * Construct
+		 *
+		 * @param source The regex's body.
+		 * @param ignoreCase True if the regex ignores the case.
+		 * @param dotAll True if the dot matches the line terminators.
+		 */
+		protected RegexParser(String source, boolean ignoreCase, boolean dotAll)
+		{
+			this.source = source;
+			this.ignoreCase = ignoreCase;
+			this.dotAll = dotAll;
+		}
+
+		/**
+		 * @return the syntax tree of the regex.
+		 * @throws IllegalArgumentException if the regex is invalid.
+		 */
+		protected Node parse()
+		{
+			Node root = this.alternation();
+			if (this.pos != this.source.length()) {
+				throw new IllegalArgumentException("Unmatched ) in " + this.source);
+			}
+			return root;
+		}
+
+		/**
+		 * @return the alternation, or the single alternative, at the
+		 * 		current char.
+		 */
+		protected Node alternation()
+		{
+			Node alternation = this.node(Node.ALTERNATION, this.pos);
+			alternation.children.add(this.sequence());
+			while (this.pos < this.source.length() && this.source.charAt(this.pos) == '|') {
+				this.pos++;
+				alternation.children.add(this.sequence());
+			}
+			alternation.end = this.pos;
+			return alternation.children.size() == 1 ? alternation.body() : alternation;
+		}
+
+		/**
+		 * @return the sequence of quantified atoms at the current char.
+		 */
+		protected Node sequence()
+		{
+			Node sequence = this.node(Node.SEQUENCE, this.pos);
+			while (this.pos < this.source.length() && this.source.charAt(this.pos) != '|' && this.source.charAt(this.pos) != ')') {
+				sequence.children.add(this.quantified());
+			}
+			sequence.end = this.pos;
+			return sequence;
+		}
+
+		/**
+		 * @return the atom at the current char, with its quantifier.
+		 */
+		protected Node quantified()
+		{
+			int start = this.pos;
+			Node atom = this.atom();
+			if (this.pos == this.source.length()) {
+				return atom;
+			}
+
+			int min,
+				max;
+			char c = this.source.charAt(this.pos);
+			if (c == '*' || c == '+' || c == '?') {
+				min = c == '+' ? 1 : 0;
+				max = c == '?' ? 1 : Node.UNBOUNDED;
+				this.pos++;
+			}
+			else if (c == '{' && quantifierEnd(this.source, this.pos) != -1) {
+				int end = quantifierEnd(this.source, this.pos),
+					comma = this.source.indexOf(',', this.pos);
+				if (comma == -1 || comma > end) {
+					min = max = bound(this.source.substring(this.pos + 1, end));
+				}
+				else {
+					min = bound(this.source.substring(this.pos + 1, comma));
+					max = comma + 1 == end ? Node.UNBOUNDED : bound(this.source.substring(comma + 1, end));
+				}
+				this.pos = end + 1;
+			}
+			else {
+				return atom;
+			}
+			if (this.pos < this.source.length() && this.source.charAt(this.pos) == '?') {
+				// Lazy quantifier, backtracking as much
+				this.pos++;
+			}
+
+			Node quantifier = this.node(Node.QUANTIFIER, start);
+			quantifier.children.add(atom);
+			quantifier.min = min;
+			quantifier.max = max;
+			quantifier.end = this.pos;
+			return quantifier;
+		}
+
+		/**
+		 * @return the atom at the current char.
+		 */
+		protected Node atom()
+		{
+			int start = this.pos;
+			char c = this.source.charAt(this.pos++);
+			Node node;
+			switch (c) {
+				case '(':
+					node = this.node(Node.GROUP, start);
+					if (this.source.startsWith("?=", this.pos) || this.source.startsWith("?!", this.pos)) {
+						node.kind = Node.LOOKAROUND;
+						this.pos += 2;
+					}
+					else if (this.source.startsWith("?<=", this.pos) || this.source.startsWith("?<!", this.pos)) {
+						node.kind = Node.LOOKAROUND;
+						this.pos += 3;
+					}
+					else if (this.source.startsWith("?<", this.pos)) {
+						int name = this.source.indexOf('>', this.pos);
+						if (name == -1) {
+							throw new IllegalArgumentException("Unterminated group name in " + this.source);
+						}
+						this.pos = name + 1;
+					}
+					else if (this.source.startsWith("?:", this.pos)) {
+						this.pos += 2;
+					}
+					node.children.add(this.alternation());
+					if (this.pos == this.source.length()) {
+						throw new IllegalArgumentException("Unterminated group in " + this.source);
+					}
+					this.pos++;
+					break;
+				case '[':
+					node = this.chars(start, this.charClass());
+					break;
+				case '.':
+					CharSet any = new CharSet();
+					any.addRange(0, Character.MAX_VALUE);
+					if (!this.dotAll) {
+						any = any.intersection(lineTerminators().complement());
+					}
+					node = this.chars(start, any);
+					break;
+				case '^':
+				case '$':
+					node = this.node(Node.ASSERTION, start);
+					break;
+				case '\\':
+					node = this.escape(start);
+					break;
+				case '*':
+				case '+':
+				case '?':
+					throw new IllegalArgumentException("Nothing to repeat in " + this.source);
+				case '{':
+					if (quantifierEnd(this.source, start) != -1) {
+						throw new IllegalArgumentException("Nothing to repeat in " + this.source);
+					}
+					// Literal brace
+				default:
+					CharSet literal = new CharSet();
+					literal.add(c);
+					node = this.chars(start, literal);
+			}
+			node.end = this.pos;
+			return node;
+		}
+
+		/**
+		 * @param start The index of the backslash.
+		 * @return the escape at the current char, after a backslash.
+		 */
+		protected Node escape(int start)
+		{
+			if (this.pos == this.source.length()) {
+				throw new IllegalArgumentException("Trailing backslash in " + this.source);
+			}
+
+			char e = this.source.charAt(this.pos);
+			if (e == 'b' || e == 'B') {
+				this.pos++;
+				return this.node(Node.ASSERTION, start);
+			}
+			if (e >= '1' && e <= '9') {
+				while (this.pos < this.source.length() && Character.isDigit(this.source.charAt(this.pos))) {
+					this.pos++;
+				}
+				return this.node(Node.BACK_REFERENCE, start);
+			}
+			if (e == 'k' && this.source.startsWith("<", this.pos + 1) && this.source.indexOf('>', this.pos) != -1) {
+				this.pos = this.source.indexOf('>', this.pos) + 1;
+				return this.node(Node.BACK_REFERENCE, start);
+			}
+			return this.chars(start, this.escapedChars());
+		}
+
+		/**
+		 * @return the chars of the escape at the current char, after a
+		 * 		backslash, in or out of a class.
+		 */
+		protected CharSet escapedChars()
+		{
+			char e = this.source.charAt(this.pos++);
+			CharSet chars = new CharSet();
+			switch (e) {
+				case 'd':
+				case 'D':
+					chars.addRange('0', '9');
+					break;
+				case 'w':
+				case 'W':
+					chars.addRange('a', 'z');
+					chars.addRange('A', 'Z');
+					chars.addRange('0', '9');
+					chars.add('_');
+					break;
+				case 's':
+				case 'S':
+					chars.addRange('\t', '\r');
+					chars.add(' ');
+					chars.other = true;
+					break;
+				case 't':
+					chars.add('\t');
+					break;
+				case 'n':
+					chars.add('\n');
+					break;
+				case 'v':
+					chars.add(0x0B);
+					break;
+				case 'f':
+					chars.add('\f');
+					break;
+				case 'r':
+					chars.add('\r');
+					break;
+				case '0':
+					chars.add(0);
+					break;
+				case 'c':
+					if (this.pos < this.source.length() && Character.isLetter(this.source.charAt(this.pos))) {
+						chars.add(this.source.charAt(this.pos++) % 32);
+					}
+					else {
+						chars.add('\\');
+						this.pos--;
+					}
+					break;
+				case 'x':
+					chars.add(this.hex(2, 'x'));
+					break;
+				case 'u':
+					if (this.source.startsWith("{", this.pos) && this.source.indexOf('}', this.pos) != -1) {
+						int end = this.source.indexOf('}', this.pos);
+						try {
+							chars.add(Integer.parseInt(this.source.substring(this.pos + 1, end), 16));
+						} catch (NumberFormatException invalid) {
+							throw new IllegalArgumentException("Invalid code point in " + this.source);
+						}
+						this.pos = end + 1;
+					}
+					else {
+						chars.add(this.hex(4, 'u'));
+					}
+					break;
+				case 'p':
+				case 'P':
+					// Unicode property, approximated by the letters
+					if (this.source.startsWith("{", this.pos) && this.source.indexOf('}', this.pos) != -1) {
+						this.pos = this.source.indexOf('}', this.pos) + 1;
+					}
+					chars.addRange('a', 'z');
+					chars.addRange('A', 'Z');
+					chars.other = true;
+					break;
+				default:
+					chars.add(e);
+			}
+			return Character.isUpperCase(e) && "DWSP".indexOf(e) != -1 ? chars.complement() : chars;
+		}
+
+		/**
+		 * @param digits The number of hexadecimal digits of the escape.
+		 * @param letter The letter of the escape, matched if the digits are
+		 * 		invalid.
+		 * @return the char of the hexadecimal escape at the current char.
+		 */
+		protected int hex(int digits, char letter)
+		{
+			if (this.pos + digits <= this.source.length()) {
+				try {
+					int c = Integer.parseInt(this.source.substring(this.pos, this.pos + digits), 16);
+					this.pos += digits;
+					return c;
+				} catch (NumberFormatException e) {
+					// Identity escape
+				}
+			}
+			return letter;
+		}
+
+		/**
+		 * @return the chars of the class at the current char, after its
+		 * 		opening bracket.
+		 */
+		protected CharSet charClass()
+		{
+			boolean negated = this.source.startsWith("^", this.pos);
+			if (negated) {
+				this.pos++;
+			}
+
+			CharSet chars = new CharSet();
+			while (this.pos < this.source.length() && this.source.charAt(this.pos) != ']') {
+				int from = this.classChar(chars);
+				if (from != -1 && this.source.startsWith("-", this.pos) && this.pos + 1 < this.source.length() && this.source.charAt(this.pos + 1) != ']') {
+					this.pos++;
+					int to = this.classChar(chars);
+					if (to == -1) {
+						chars.add(from);
+						chars.add('-');
+					}
+					else if (to < from) {
+						throw new IllegalArgumentException("Invalid class range in " + this.source);
+					}
+					else {
+						chars.addRange(from, to);
+					}
+				}
+				else if (from != -1) {
+					chars.add(from);
+				}
+			}
+			if (this.pos == this.source.length()) {
+				throw new IllegalArgumentException("Unterminated class in " + this.source);
+			}
+			this.pos++;
+			return negated ? chars.complement() : chars;
+		}
+
+		/**
+		 * Reads a char of a class.
+		 *
+		 * @param chars The chars of the class, receiving the chars of the
+		 * 		escaped sets such as \d.
+		 * @return the char, -1 if it is an escaped set.
+		 */
+		protected int classChar(CharSet chars)
+		{
+			char c = this.source.charAt(this.pos++);
+			if (c != '\\' || this.pos == this.source.length()) {
+				return c;
+			}
+
+			char e = this.source.charAt(this.pos);
+			if (e == 'b') {
+				this.pos++;
+				return '\b';
+			}
+			if ("dDwWsSpP".indexOf(e) != -1) {
+				chars.addAll(this.escapedChars());
+				return -1;
+			}
+			CharSet escaped = this.escapedChars();
+			return escaped.sample();
+		}
+
+		/**
+		 * @param kind The kind of the node.
+		 * @param start The index of the node's first char in the regex.
+		 * @return a new node of the regex.
+		 */
+		protected Node node(int kind, int start)
+		{
+			return new Node(kind, this.source, start);
+		}
+
+		/**
+		 * @param start The index of the node's first char in the regex.
+		 * @param chars The chars matched by the node.
+		 * @return a new chars node, matching both cases of the letters if the
+		 * 		regex ignores the case.
+		 */
+		protected Node chars(int start, CharSet chars)
+		{
+			Node node = this.node(Node.CHARS, start);
+			node.chars = this.ignoreCase ? chars.foldCase() : chars;
+			return node;
+		}
+
+		/**
+		 * @return the line terminators, not matched by the dot.
+		 */
+		protected static CharSet lineTerminators()
+		{
+			CharSet chars = new CharSet();
+			chars.add('\n');
+			chars.add('\r');
+			return chars;
+		}
+
+		/**
+		 * @param source A regex's body.
+		 * @param start The index of an opening brace.
+		 * @return the index of the closing brace of the quantifier starting
+		 * 		at the brace, such as {2,5}, -1 if the brace is a literal.
+		 */
+		protected static int quantifierEnd(String source, int start)
+		{
+			int i = start + 1,
+				digits = 0;
+			while (i < source.length() && Character.isDigit(source.charAt(i))) {
+				i++;
+				digits++;
+			}
+			if (digits == 0) {
+				return -1;
+			}
+			if (i < source.length() && source.charAt(i) == ',') {
+				i++;
+				while (i < source.length() && Character.isDigit(source.charAt(i))) {
+					i++;
+				}
+			}
+			return i < source.length() && source.charAt(i) == '}' ? i : -1;
+		}
+
+		/**
+		 * @param digits The digits of a bound of a quantifier.
+		 * @return the bound, {@link Node#UNBOUNDED} if it overflows.
+		 */
+		protected static int bound(String digits)
+		{
+			try {
+				return Integer.parseInt(digits);
+			} catch (NumberFormatException e) {
+				return Node.UNBOUNDED;
+			}
+		}
+	}
+
+	/**
+	 * Set of chars, exact for the ASCII chars, the others being considered
+	 * all present or all absent.
+	 */
+	protected static class CharSet
+	{
+		/**
+		 * Bits of the chars 0 to 63.
+		 */
+		protected long low;
+
+		/**
+		 * Bits of the chars 64 to 127.
+		 */
+		protected long high;
+
+		/**
+		 * True if the set contains non ASCII chars.
+		 */
+		protected boolean other;
+
+		/**
+		 * Adds a char.
+		 *
+		 * @param c The char.
+		 */
+		protected void add(int c)
+		{
+			if (c < 64) {
+				this.low |= 1L << c;
+			}
+			else if (c < 128) {
+				this.high |= 1L << (c - 64);
+			}
+			else {
+				this.other = true;
+			}
+		}
+
+		/**
+		 * Adds a range of chars.
+		 *
+		 * @param from The first char of the range.
+		 * @param to The last char of the range.
+		 */
+		protected void addRange(int from, int to)
+		{
+			for (int c = from; c <= Math.min(to, 127); c++) {
+				this.add(c);
+			}
+			if (to >= 128) {
+				this.other = true;
+			}
+		}
+
+		/**
+		 * Adds the chars of another set.
+		 *
+		 * @param chars The other set.
+		 */
+		protected void addAll(CharSet chars)
+		{
+			this.low |= chars.low;
+			this.high |= chars.high;
+			this.other |= chars.other;
+		}
+
+		/**
+		 * @param c A char.
+		 * @return true if the set contains the char.
+		 */
+		protected boolean contains(char c)
+		{
+			if (c < 64) {
+				return (this.low & (1L << c)) != 0;
+			}
+			if (c < 128) {
+				return (this.high & (1L << (c - 64))) != 0;
+			}
+			return this.other;
+		}
+
+		/**
+		 * @return true if the set contains no char.
+		 */
+		protected boolean isEmpty()
+		{
+			return this.low == 0 && this.high == 0 && !this.other;
+		}
+
+		/**
+		 * @param chars Another set.
+		 * @return true if both sets share a char.
+		 */
+		protected boolean intersects(CharSet chars)
+		{
+			return (this.low & chars.low) != 0 || (this.high & chars.high) != 0 || (this.other && chars.other);
+		}
+
+		/**
+		 * @param chars Another set.
+		 * @return the chars of both sets.
+		 */
+		protected CharSet intersection(CharSet chars)
+		{
+			CharSet intersection = new CharSet();
+			intersection.low = this.low & chars.low;
+			intersection.high = this.high & chars.high;
+			intersection.other = this.other && chars.other;
+			return intersection;
+		}
+
+		/**
+		 * @param chars Another set.
+		 * @return the chars of either set.
+		 */
+		protected CharSet union(CharSet chars)
+		{
+			CharSet union = new CharSet();
+			union.addAll(this);
+			union.addAll(chars);
+			return union;
+		}
+
+		/**
+		 * @return the chars not in the set, the non ASCII ones being
+		 * 		considered present.
+		 */
+		protected CharSet complement()
+		{
+			CharSet complement = new CharSet();
+			complement.low = ~this.low;
+			complement.high = ~this.high;
+			complement.other = true;
+			return complement;
+		}
+
+		/**
+		 * @return the set with both cases of its letters.
+		 */
+		protected CharSet foldCase()
+		{
+			CharSet folded = this.union(new CharSet());
+			for (char c = 'a'; c <= 'z'; c++) {
+				char upper = Character.toUpperCase(c);
+				if (this.contains(c) || this.contains(upper)) {
+					folded.add(c);
+					folded.add(upper);
+				}
+			}
+			return folded;
+		}
+
+		/**
+		 * @return a char of the set, printable if possible, 0 if the set is
+		 * 		empty.
+		 */
+		protected char sample()
+		{
+			for (char c = ' '; c < 127; c++) {
+				if (this.contains(c)) {
+					return c;
+				}
+			}
+			for (char c = 0; c < 128; c++) {
+				if (this.contains(c)) {
+					return c;
+				}
+			}
+			return this.other ? '\u00e9' : 0;
+		}
+	}
+
+	/**
+	 * Input of a matcher, failing once {@link #MAX_READS} chars are read or
+	 * once a deadline is reached, so a backtracking match stops.
+	 */
+	protected static class DeadlineSequence implements CharSequence
+	{
+		/**
+		 * Number of chars read between two checks of the deadline, minus 1.
+		 */
+		protected static final int CHECK_MASK = (1 << 10) - 1;
+
+		/**
+		 * The input.
+		 */
+		protected String input;
+
+		/**
+		 * The deadline, in the time of {@link System#nanoTime}.
+		 */
+		protected long deadline;
+
+		/**
+		 * Number of chars read.
+		 */
+		protected int reads;
+
+		/**
+		 * Construct
+		 *
+		 * @param input The input.
+		 * @param deadline The deadline, in the time of
+		 * 		{@link System#nanoTime}.
+		 */
+		protected DeadlineSequence(String input, long deadline)
+		{
+			this.input = input;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @throws Expired if too many chars are read, the deadline is reached
+		 * 		or the worker is interrupted.
+		 */
+		public char charAt(int index)
+		{
+			if ((++this.reads & CHECK_MASK) == 0) {
+				if (this.reads > MAX_READS) {
+					throw new Expired(false);
+				}
+				if (System.nanoTime() > this.deadline || Thread.currentThread().isInterrupted()) {
+					throw new Expired(true);
+				}
+			}
+			return this.input.charAt(index);
+		}
+
+		public int length()
+		{
+			return this.input.length();
+		}
+
+		public CharSequence subSequence(int start, int end)
+		{
+			DeadlineSequence sequence = new DeadlineSequence(this.input.substring(start, end), this.deadline);
+			sequence.reads = this.reads;
+			return sequence;
+		}
+
+		public String toString()
+		{
+			return this.input;
+		}
+
+		/**
+		 * Error thrown when too many chars are read or the deadline is
+		 * reached.
+		 */
+		protected static class Expired extends RuntimeException
+		{
+			/**
+			 * If true, the deadline was reached before too many chars were
+			 * read.
+			 */
+			protected boolean timedOut;
+
+			/**
+			 * Construct
+			 *
+			 * @param timedOut true if the deadline was reached, false if too
+			 * 		many chars were read.
+			 */
+			protected Expired(boolean timedOut)
+			{
+				super(timedOut ? "Deadline reached" : "Too many chars read", null, false, false);
+				this.timedOut = timedOut;
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package jsanalyser.analyser;
+
+import jsanalyser.report.Optimisation;
+import jsanalyser.report.Savings;
+
+/**
+ * Analyser class for the member access chains repeated in a scope.
+ * <p>
+ * The elements are the chains of at least {@link #MIN_PROPERTIES} property
+ * accesses (such as document.body.style) found more than once in the body of
+ * a function, or in the global code, followed by their scope, such as
+ * "document.body.style in function at 12:5". A chain is only counted once it
+ * is repeated in its scope (see {@link jsanalyser.ChainLexer}).
+ * </p>
+ * <p>
+ * A chain is optimisable if storing it in a local variable, then using the
+ * variable instead of the chain, gives a shorter code. Each use of the
+ * variable also saves the property lookups of the chain.
+ * </p>
+ */
+public class ChainAnalyser extends Analyser
+{
+	/**
+	 * Minimum number of property accesses of a reported chain.
+	 */
+	public static final int MIN_PROPERTIES = 2;
+
+	/**
+	 * Separator between a chain and its scope in the elements.
+	 */
+	public static final String SCOPE_SEPARATOR = " in ";
+
+	public ChainAnalyser()
+	{
+		super();
+		this.name = "chains";
+		this.reportTitle = "Member access chains:";
+	}
+
+	/**
+	 * Adds occurences of a chain in a scope.
+	 *
+	 * @param chain The chain, such as "document.body.style".
+	 * @param scope The scope of the chain, such as "function at 12:5".
+	 * @param count The number of occurences to add.
+	 */
+	public void addChainOccurences(String chain, String scope, int count)
+	{
+		this.addElementOccurences(chain + SCOPE_SEPARATOR + scope, count);
+	}
+
+	/**
+	 * The optimisation test tells if the code is shortened by storing the
+	 * chain in a variable, declared with "var x=chain;" or added to an
+	 * existing declaration with ",x=chain".
+	 */
+	public Optimisation optimisation(String element, int nbOccurences)
+	{
+		int strLength = chain(element).length(),
+			relationLenOccurences = (strLength - 1) * nbOccurences - strLength;
+
+		if (7 < relationLenOccurences) {
+			return Optimisation.OPTIMISABLE;
+		}
+		else if (3 < relationLenOccurences) {
+			return Optimisation.OPTIMISABLE_WITH_EXISTING_VAR;
+		}
+		return Optimisation.NON_OPTIMISABLE;
+	}
+
+	/**
+	 * The savings are the bytes saved with a new variable, if any, and the
+	 * property lookups saved by all the uses of the variable but the first.
+	 */
+	public Savings savings(String element, int nbOccurences)
+	{
+		String chain = chain(element);
+		int strLength = chain.length(),
+			nbProperties = 0;
+		for (int i = 0; i < strLength; i++) {
+			if (chain.charAt(i) == '.') {
+				nbProperties++;
+			}
+		}
+
+		return new Savings(
+			Math.max(0, (strLength - 1) * nbOccurences - strLength - 7),
+			(long) (nbOccurences - 1) * nbProperties
+		);
+	}
+
+	/**
+	 * @param element An element of the analyser.
+	 * @return the chain of the element, without its scope.
+	 */
+	protected static String chain(String element)
+	{
+		int separator = element.indexOf(SCOPE_SEPARATOR);
+		return separator == -1 ? element : element.substring(0, separator);
+	}
+}
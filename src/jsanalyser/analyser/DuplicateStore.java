@@ -0,0 +1,227 @@
+package jsanalyser.analyser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jsanalyser.report.Entry;
+import jsanalyser.report.Optimisation;
+import jsanalyser.report.Savings;
+import jsanalyser.report.Section;
+
+/**
+ * Store of the elements of many files, shared by the threads analysing them,
+ * to find the elements duplicated across the files.
+ * <p>
+ * Once a file is analysed, each of its distinct elements is added with its
+ * number of occurences and the index of the file. The elements are kept in a
+ * {@link ConcurrentHashMap}, whose lookups do not lock, the occurences are
+ * counted by a {@link LongAdder}, and the files of an element are recorded
+ * under the lock of the element only, so the threads only wait for each
+ * other when they add the same element at the same time.
+ * </p>
+ * <p>
+ * An element found in several files is shipped several times. It is a
+ * candidate to be moved in a shared chunk if the bytes of its copies are more
+ * than the imports of the shared element, of {@link #IMPORT_LENGTH} bytes per
+ * file.
+ * </p>
+ */
+public class DuplicateStore
+{
+	/**
+	 * Length of the import of a shared element in a file, such as
+	 * "import{a}from'./shared';".
+	 */
+	public static final int IMPORT_LENGTH = 24;
+
+	/**
+	 * Order of the entries by decreasing number of saved bytes, then by
+	 * element.
+	 */
+	protected static final Comparator<Entry> BY_SAVINGS = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b)
+		{
+			if (a.getSavings().getBytes() != b.getSavings().getBytes()) {
+				return a.getSavings().getBytes() > b.getSavings().getBytes() ? -1 : 1;
+			}
+			return a.getElement().compareTo(b.getElement());
+		}
+	};
+
+	/**
+	 * The identifier of the store's report section, such as "strings".
+	 */
+	protected String name;
+
+	/**
+	 * The title of the store's report section.
+	 */
+	protected String reportTitle;
+
+	/**
+	 * Number of chars added to each element in the code, such as its quotes.
+	 */
+	protected int delimitersLength;
+
+	/**
+	 * The elements, with their occurences and files.
+	 */
+	protected ConcurrentHashMap<String, Duplicate> elements;
+
+	/**
+	 * Construct
+	 *
+	 * @param name The identifier of the store's report section.
+	 * @param reportTitle The title of the store's report section.
+	 * @param delimitersLength The number of chars added to each element in
+	 * 		the code, such as its quotes.
+	 * @param concurrency The estimated number of threads adding elements.
+	 */
+	public DuplicateStore(String name, String reportTitle, int delimitersLength, int concurrency)
+	{
+		this.name = name;
+		this.reportTitle = reportTitle;
+		this.delimitersLength = delimitersLength;
+		this.elements = new ConcurrentHashMap<String, Duplicate>(1 << 10, 0.75f, concurrency);
+	}
+
+	/**
+	 * Adds the elements of an analyser, found in a file.
+	 * <p>
+	 * Each file must be added once.
+	 * </p>
+	 *
+	 * @param analyser The analyser of the file.
+	 * @param file The index of the file.
+	 */
+	public void add(Analyser analyser, final int file)
+	{
+		analyser.forEachElement((element, count, error) -> this.add(element, count, file));
+	}
+
+	/**
+	 * Adds the occurences of an element in a file.
+	 *
+	 * @param element The element.
+	 * @param count The number of occurences of the element in the file.
+	 * @param file The index of the file.
+	 */
+	public void add(String element, int count, int file)
+	{
+		Duplicate duplicate = this.elements.get(element);
+		if (duplicate == null) {
+			duplicate = this.elements.computeIfAbsent(element, key -> new Duplicate());
+		}
+
+		duplicate.occurences.add(count);
+		duplicate.addFile(file);
+	}
+
+	/**
+	 * @return the number of chars of the elements shipped more than once,
+	 * 		each copy of an element after the first one counting.
+	 */
+	public long getDuplicatedBytes()
+	{
+		long bytes = 0;
+		for (Map.Entry<String, Duplicate> element : this.elements.entrySet()) {
+			bytes += this.duplicatedBytes(element.getKey(), element.getValue());
+		}
+		return bytes;
+	}
+
+	/**
+	 * Builds the report of the elements found in several files, ranked by
+	 * the bytes saved by moving them in a shared chunk.
+	 *
+	 * @param files The names of the files, by index.
+	 * @param top The number of reported elements, 0 to report all the
+	 * 		duplicated elements.
+	 * @return the report's section of the store.
+	 */
+	public Section report(List<String> files, int top)
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Map.Entry<String, Duplicate> element : this.elements.entrySet()) {
+			Duplicate duplicate = element.getValue();
+			if (duplicate.nbFiles < 2) {
+				continue;
+			}
+
+			long saved = this.duplicatedBytes(element.getKey(), duplicate) - (long) duplicate.nbFiles * IMPORT_LENGTH;
+			List<String> names = new ArrayList<String>(duplicate.nbFiles);
+			int[] indexes = Arrays.copyOf(duplicate.files, duplicate.nbFiles);
+			Arrays.sort(indexes);
+			for (int index : indexes) {
+				names.add(files.get(index));
+			}
+			entries.add(new Entry(
+				element.getKey(),
+				(int) Math.min(Integer.MAX_VALUE, duplicate.occurences.sum()),
+				0,
+				saved > 0 ? Optimisation.OPTIMISABLE : Optimisation.NON_OPTIMISABLE,
+				null,
+				new Savings(Math.max(0, saved), 0),
+				names
+			));
+		}
+
+		Collections.sort(entries, BY_SAVINGS);
+		if (top > 0 && entries.size() > top) {
+			entries = new ArrayList<Entry>(entries.subList(0, top));
+		}
+		return new Section(this.name, this.reportTitle, entries);
+	}
+
+	/**
+	 * @param element An element.
+	 * @param duplicate The occurences and files of the element.
+	 * @return the number of chars of the copies of the element after the
+	 * 		first one.
+	 */
+	protected long duplicatedBytes(String element, Duplicate duplicate)
+	{
+		return (long) (element.length() + this.delimitersLength) * (duplicate.nbFiles - 1);
+	}
+
+	/**
+	 * Occurences and files of an element.
+	 */
+	protected static class Duplicate
+	{
+		/**
+		 * Number of occurences of the element in all the files.
+		 */
+		protected final LongAdder occurences = new LongAdder();
+
+		/**
+		 * Indexes of the files containing the element, in the order they
+		 * were added.
+		 */
+		protected int[] files = new int[2];
+
+		/**
+		 * Number of files in {@link #files}.
+		 */
+		protected int nbFiles;
+
+		/**
+		 * Records a file containing the element.
+		 *
+		 * @param file The index of the file.
+		 */
+		protected synchronized void addFile(int file)
+		{
+			if (this.nbFiles == this.files.length) {
+				this.files = Arrays.copyOf(this.files, this.nbFiles * 2);
+			}
+			this.files[this.nbFiles++] = file;
+		}
+	}
+}
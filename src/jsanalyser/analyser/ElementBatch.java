@@ -0,0 +1,184 @@
+package jsanalyser.analyser;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable buffer of the elements given to the {@link PluginAnalyser}s.
+ * <p>
+ * The lexer adds the elements of the kinds wanted by at least one plugin,
+ * which are copied in a single char buffer, their offsets and lengths being
+ * kept in an int array per kind. When the buffer is full, or at the end of a
+ * parsed chunk, it is flushed: each plugin consumes the elements of its kinds
+ * in a loop of its own, so the lexer does one call per plugin and per batch
+ * instead of one per element.
+ * </p>
+ */
+public final class ElementBatch
+{
+	/**
+	 * Number of kinds of elements, the K_* constants of the
+	 * {@link jsanalyser.Lexer}.
+	 */
+	public static final int NB_KINDS = 4;
+
+	/**
+	 * Default number of elements of a batch, all kinds included.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 10;
+
+	/**
+	 * Plugins consuming the batches.
+	 */
+	protected PluginAnalyser[] plugins;
+
+	/**
+	 * Bits 1 << kind of the kinds wanted by at least one plugin.
+	 */
+	protected int kinds;
+
+	/**
+	 * Maximum number of elements of a batch, all kinds included.
+	 */
+	protected int capacity;
+
+	/**
+	 * Number of elements in the batch, all kinds included.
+	 */
+	protected int size;
+
+	/**
+	 * For each kind, number of elements in the batch.
+	 */
+	protected int[] sizes = new int[NB_KINDS];
+
+	/**
+	 * For each kind, index of the first char of each element in
+	 * {@link #chars}.
+	 */
+	protected int[][] offsets = new int[NB_KINDS][];
+
+	/**
+	 * For each kind, number of chars of each element.
+	 */
+	protected int[][] lengths = new int[NB_KINDS][];
+
+	/**
+	 * Chars of the elements of the batch.
+	 */
+	protected char[] chars = new char[1 << 12];
+
+	/**
+	 * Number of chars in {@link #chars}.
+	 */
+	protected int nbChars;
+
+	/**
+	 * Construct
+	 *
+	 * @param plugins The plugins consuming the batches.
+	 * @param capacity The maximum number of elements of a batch.
+	 */
+	public ElementBatch(List<PluginAnalyser> plugins, int capacity)
+	{
+		this.plugins = plugins.toArray(new PluginAnalyser[0]);
+		for (PluginAnalyser plugin : this.plugins) {
+			this.kinds |= plugin.getKinds();
+		}
+		this.capacity = capacity;
+		for (int kind = 0; kind < NB_KINDS; kind++) {
+			// Only the kinds wanted by a plugin are stored
+			int kindCapacity = (this.kinds & (1 << kind)) != 0 ? capacity : 0;
+			this.offsets[kind] = new int[kindCapacity];
+			this.lengths[kind] = new int[kindCapacity];
+		}
+	}
+
+	/**
+	 * @return the bits 1 << kind of the kinds wanted by at least one plugin,
+	 * 		the only elements to add to the batch.
+	 */
+	public int getKinds()
+	{
+		return this.kinds;
+	}
+
+	/**
+	 * Adds an element to the batch, which is flushed first if it is full.
+	 *
+	 * @param kind The kind of the element, wanted by a plugin.
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 */
+	public void add(int kind, char[] buf, int off, int len)
+	{
+		if (this.size == this.capacity) {
+			this.flush();
+		}
+		if (this.nbChars + len > this.chars.length) {
+			this.chars = Arrays.copyOf(this.chars, Math.max(this.nbChars + len, this.chars.length * 2));
+		}
+
+		System.arraycopy(buf, off, this.chars, this.nbChars, len);
+		int i = this.sizes[kind]++;
+		this.offsets[kind][i] = this.nbChars;
+		this.lengths[kind][i] = len;
+		this.nbChars += len;
+		this.size++;
+	}
+
+	/**
+	 * Gives the elements of the batch to the plugins, and empties it.
+	 */
+	public void flush()
+	{
+		if (this.size == 0) {
+			return;
+		}
+
+		for (PluginAnalyser plugin : this.plugins) {
+			plugin.consume(this);
+		}
+		Arrays.fill(this.sizes, 0);
+		this.size = this.nbChars = 0;
+	}
+
+	/**
+	 * @param kind The kind of the elements.
+	 * @return the number of elements of this kind in the batch.
+	 */
+	public int size(int kind)
+	{
+		return this.sizes[kind];
+	}
+
+	/**
+	 * @return the buffer containing the chars of the elements, valid until
+	 * 		the batch is flushed.
+	 */
+	public char[] getChars()
+	{
+		return this.chars;
+	}
+
+	/**
+	 * @param kind The kind of the element.
+	 * @param i The index of the element among the elements of its kind.
+	 * @return the index of the element's first char in {@link #getChars}.
+	 */
+	public int offset(int kind, int i)
+	{
+		return this.offsets[kind][i];
+	}
+
+	/**
+	 * @param kind The kind of the element.
+	 * @param i The index of the element among the elements of its kind.
+	 * @return the number of chars of the element.
+	 */
+	public int length(int kind, int i)
+	{
+		return this.lengths[kind][i];
+	}
+}
@@ -0,0 +1,106 @@
+package jsanalyser.analyser;
+
+/**
+ * Collection counting the occurences of the elements of an analyser.
+ * <p>
+ * A store can be exact ({@link ElementTable}) or approximate
+ * ({@link SpaceSaving}), in which case the counts of the elements can be
+ * overestimated, by at most {@link #error}.
+ * </p>
+ */
+public interface ElementStore
+{
+	/**
+	 * @return the number of elements in the store.
+	 */
+	public int size();
+
+	/**
+	 * Visits the elements to report, in no particular order.
+	 *
+	 * @param visitor The visitor called for each element.
+	 */
+	public void forEach(Visitor visitor);
+
+	/**
+	 * @param key The element.
+	 * @return the number of occurences of the element, 0 if it is not in the
+	 * 		store.
+	 */
+	public int get(String key);
+
+	/**
+	 * @param key The element.
+	 * @return the maximum overestimation of the number of occurences of the
+	 * 		element, 0 if the count is exact.
+	 */
+	public int error(String key);
+
+	/**
+	 * Adds occurences to an element.
+	 *
+	 * @param key The element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(String key, int count);
+
+	/**
+	 * Adds occurences to an element stored in a range of a char buffer.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(char[] buf, int off, int len, int count);
+
+	/**
+	 * @param buf The buffer containing an element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @return the string of the element kept by the store, to be shared with
+	 * 		the other collections of the element, null if the element is not
+	 * 		in the store or if the store does not keep it as a string.
+	 */
+	public String key(char[] buf, int off, int len);
+
+	/**
+	 * Adds occurences to an element stored in UTF-8 in a range of a byte
+	 * buffer.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(byte[] buf, int off, int len, int count);
+
+	/**
+	 * Adds all the elements of this store to another one.
+	 *
+	 * @param target The store receiving the elements.
+	 */
+	public void addTo(ElementStore target);
+
+	/**
+	 * Removes all the elements, keeping the allocated memory to store the
+	 * next ones.
+	 */
+	public void clear();
+
+	/**
+	 * Visitor of the elements of a store.
+	 */
+	public interface Visitor
+	{
+		/**
+		 * Visits an element.
+		 *
+		 * @param key The element.
+		 * @param count The number of occurences of the element.
+		 * @param error The maximum overestimation of the number of
+		 * 		occurences.
+		 */
+		public void visit(String key, int count, int error);
+	}
+}
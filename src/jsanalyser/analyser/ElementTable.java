@@ -0,0 +1,301 @@
+package jsanalyser.analyser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hash table counting the occurences of elements.
+ * <p>
+ * The elements can be looked up directly from a range of a char buffer, so
+ * counting an element already in the table does not allocate anything. The
+ * element is only copied in a string the first time it is seen.
+ * </p>
+ * <p>
+ * The table uses open addressing with linear probing, the hash of an element
+ * being the one of the equivalent string.
+ * </p>
+ */
+public class ElementTable implements ElementStore
+{
+	/**
+	 * Initial number of slots of the table, a power of 2.
+	 */
+	protected static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Maximum number of slots kept when the table is cleared. A larger table
+	 * is reallocated, so clearing it for a small code is not slower than
+	 * parsing the code.
+	 */
+	protected static final int MAX_KEPT_CAPACITY = 1 << 14;
+
+	/**
+	 * Elements of each slot, null for the free slots.
+	 */
+	protected String[] keys;
+
+	/**
+	 * Hash of the element of each slot.
+	 */
+	protected int[] hashes;
+
+	/**
+	 * Number of occurences of the element of each slot.
+	 */
+	protected int[] counts;
+
+	/**
+	 * Number of elements in the table.
+	 */
+	protected int size;
+
+	/**
+	 * Construct
+	 */
+	public ElementTable()
+	{
+		this.keys = new String[INITIAL_CAPACITY];
+		this.hashes = new int[INITIAL_CAPACITY];
+		this.counts = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @return the number of elements in the table.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Visits all the elements of the table, in no particular order.
+	 *
+	 * @param visitor The visitor called for each element.
+	 */
+	public void forEach(Visitor visitor)
+	{
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.keys[slot] != null) {
+				visitor.visit(this.keys[slot], this.counts[slot], 0);
+			}
+		}
+	}
+
+	/**
+	 * @param key The element.
+	 * @return the number of occurences of the element, 0 if it is not in the
+	 * 		table.
+	 */
+	public int get(String key)
+	{
+		int hash = key.hashCode(),
+			mask = this.keys.length - 1;
+		for (int slot = mix(hash) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.hashes[slot] == hash && this.keys[slot].equals(key)) {
+				return this.counts[slot];
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @param key The element.
+	 * @return 0, the counts are exact.
+	 */
+	public int error(String key)
+	{
+		return 0;
+	}
+
+	/**
+	 * Adds occurences to an element.
+	 *
+	 * @param key The element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(String key, int count)
+	{
+		int hash = key.hashCode(),
+			mask = this.keys.length - 1,
+			slot;
+		for (slot = mix(hash) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.hashes[slot] == hash && this.keys[slot].equals(key)) {
+				this.counts[slot] += count;
+				return;
+			}
+		}
+
+		this.insert(slot, key, hash, count);
+	}
+
+	/**
+	 * Adds occurences to an element stored in a range of a char buffer.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(char[] buf, int off, int len, int count)
+	{
+		int hash = 0,
+			end = off + len,
+			mask = this.keys.length - 1,
+			slot;
+		for (int i = off; i < end; i++) {
+			hash = 31 * hash + buf[i];
+		}
+
+		for (slot = mix(hash) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.hashes[slot] == hash && equals(this.keys[slot], buf, off, len)) {
+				this.counts[slot] += count;
+				return;
+			}
+		}
+
+		this.insert(slot, new String(buf, off, len), hash, count);
+	}
+
+	/**
+	 * @param buf The buffer containing an element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @return the string of the element in the table, null if it is not in
+	 * 		the table.
+	 */
+	public String key(char[] buf, int off, int len)
+	{
+		int hash = 0,
+			end = off + len,
+			mask = this.keys.length - 1;
+		for (int i = off; i < end; i++) {
+			hash = 31 * hash + buf[i];
+		}
+
+		for (int slot = mix(hash) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.hashes[slot] == hash && equals(this.keys[slot], buf, off, len)) {
+				return this.keys[slot];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Adds occurences to an element stored in UTF-8 in a range of a byte
+	 * buffer. The element is decoded.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(byte[] buf, int off, int len, int count)
+	{
+		this.add(new String(buf, off, len, StandardCharsets.UTF_8), count);
+	}
+
+	/**
+	 * Adds all the elements of this table to another store.
+	 *
+	 * @param target The store receiving the elements.
+	 */
+	public void addTo(ElementStore target)
+	{
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.keys[slot] != null) {
+				target.add(this.keys[slot], this.counts[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Removes all the elements. The slots are kept, unless the table has
+	 * grown over {@link #MAX_KEPT_CAPACITY} slots.
+	 */
+	public void clear()
+	{
+		if (this.keys.length > MAX_KEPT_CAPACITY) {
+			this.keys = new String[INITIAL_CAPACITY];
+			this.hashes = new int[INITIAL_CAPACITY];
+			this.counts = new int[INITIAL_CAPACITY];
+		}
+		else {
+			Arrays.fill(this.keys, null);
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Inserts a new element in a free slot, and grows the table if it is more
+	 * than half full.
+	 *
+	 * @param slot The free slot.
+	 * @param key The element.
+	 * @param hash The element's hash.
+	 * @param count The number of occurences of the element.
+	 */
+	protected void insert(int slot, String key, int hash, int count)
+	{
+		this.keys[slot] = key;
+		this.hashes[slot] = hash;
+		this.counts[slot] = count;
+		if (++this.size * 2 <= this.keys.length) {
+			return;
+		}
+
+		String[] keys = this.keys;
+		int[] hashes = this.hashes,
+			counts = this.counts;
+		int mask = keys.length * 2 - 1;
+
+		this.keys = new String[keys.length * 2];
+		this.hashes = new int[keys.length * 2];
+		this.counts = new int[keys.length * 2];
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null) {
+				continue;
+			}
+
+			int newSlot = mix(hashes[i]) & mask;
+			while (this.keys[newSlot] != null) {
+				newSlot = (newSlot + 1) & mask;
+			}
+			this.keys[newSlot] = keys[i];
+			this.hashes[newSlot] = hashes[i];
+			this.counts[newSlot] = counts[i];
+		}
+	}
+
+	/**
+	 * Spreads the high bits of a hash on the low ones, used to index the
+	 * slots.
+	 *
+	 * @param hash The hash of an element.
+	 * @return the mixed hash.
+	 */
+	protected static int mix(int hash)
+	{
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @return true if the string and the range of the buffer contain the same
+	 * 		chars.
+	 */
+	protected static boolean equals(String key, char[] buf, int off, int len)
+	{
+		if (key.length() != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (key.charAt(i) != buf[off + i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,308 @@
+package jsanalyser.analyser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import jsanalyser.report.Savings;
+
+/**
+ * Estimator of the bytes saved by the factorisation of a string in the code
+ * compressed with gzip.
+ * <p>
+ * Gzip replaces the repetitions of a string by references to its previous
+ * occurence, so the bytes saved in the raw code by storing the string in a
+ * variable are not saved in the compressed code. The estimator keeps the
+ * analysed code, and compresses it with a {@link Deflater}, before and after
+ * the factorisation: each occurence of the quoted string is replaced by the
+ * variable {@link #VARIABLE}, declared with the string at the beginning of
+ * the code.
+ * </p>
+ * <p>
+ * As deflate only refers to the last 32KB of the code, the code is
+ * compressed by segments of {@link #SEGMENT_SIZE} chars, whose compressed
+ * sizes are kept, and only the segments containing the string, and the first
+ * one receiving the declaration, are compressed again for each string. The
+ * occurences are searched as text, so the string is also replaced in the
+ * comments or in other strings containing it quoted, and the occurences
+ * overlapping two segments are not replaced.
+ * </p>
+ * <p>
+ * The strings found in more than {@link #MAX_SAMPLED_SEGMENTS} segments, as
+ * the most frequent ones of large bundles, are only replaced in a sample of
+ * their segments, evenly spread, and the savings of the other occurences are
+ * extrapolated from the ones of the sample.
+ * </p>
+ */
+public class GzipEstimator
+{
+	/**
+	 * Compression level, the default one of gzip.
+	 */
+	public static final int LEVEL = 6;
+
+	/**
+	 * Name of the variable storing the string in the factorised code.
+	 */
+	public static final String VARIABLE = "_";
+
+	/**
+	 * Number of chars of the segments compressed separately.
+	 */
+	public static final int SEGMENT_SIZE = 1 << 16;
+
+	/**
+	 * Maximum number of segments compressed again for a string, the first
+	 * one excepted.
+	 */
+	public static final int MAX_SAMPLED_SEGMENTS = 16;
+
+	/**
+	 * The analysed code.
+	 */
+	protected StringBuilder code = new StringBuilder();
+
+	/**
+	 * The analysed code as a string, null if it is not built yet.
+	 */
+	protected String text;
+
+	/**
+	 * Compressed size of each complete segment of the code, the last
+	 * segment, which can still grow, excepted.
+	 */
+	protected long[] segmentSizes = new long[16];
+
+	/**
+	 * Number of segments in {@link #segmentSizes}.
+	 */
+	protected int nbSegmentSizes;
+
+	/**
+	 * Compressed size of the last segment, -1 if it is not known yet.
+	 */
+	protected long lastSegmentSize = -1;
+
+	/**
+	 * Savings of the strings estimated since the code was last appended to.
+	 */
+	protected Map<String, Savings> estimates = new HashMap<String, Savings>();
+
+	/**
+	 * Compressor of the code, reset for each compression.
+	 */
+	protected Deflater deflater = new Deflater(LEVEL, true);
+
+	/**
+	 * Buffer receiving the compressed bytes, which are only counted.
+	 */
+	protected byte[] output = new byte[1 << 16];
+
+	/**
+	 * Appends a chunk of the analysed code.
+	 *
+	 * @param buf The buffer containing the chunk of code.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 */
+	public synchronized void append(char[] buf, int off, int len)
+	{
+		this.code.append(buf, off, len);
+		this.text = null;
+		this.lastSegmentSize = -1;
+		this.estimates.clear();
+	}
+
+	/**
+	 * Removes the code, to analyse another code.
+	 */
+	public synchronized void clear()
+	{
+		this.code.setLength(0);
+		this.text = null;
+		this.nbSegmentSizes = 0;
+		this.lastSegmentSize = -1;
+		this.estimates.clear();
+	}
+
+	/**
+	 * Estimates the bytes saved by storing a string in a variable.
+	 *
+	 * @param string The string, as written in the code between its quotes.
+	 * @return the bytes saved in the raw code and in the compressed code,
+	 * 		null if the quoted string is not found in the code.
+	 */
+	public synchronized Savings savings(String string)
+	{
+		if (this.estimates.containsKey(string)) {
+			return this.estimates.get(string);
+		}
+
+		if (this.text == null) {
+			this.text = this.code.toString();
+		}
+		List<Integer> occurences = new ArrayList<Integer>();
+		char quote = 0;
+		for (char c : new char[] {'"', '\''}) {
+			String quoted = c + string + c;
+			for (int i = this.text.indexOf(quoted); i != -1; i = this.text.indexOf(quoted, i + quoted.length())) {
+				occurences.add(i);
+				quote = quote == 0 ? c : quote;
+			}
+		}
+		if (occurences.isEmpty()) {
+			this.estimates.put(string, null);
+			return null;
+		}
+		Collections.sort(occurences);
+
+		// Segments containing the string, and number of occurences in each
+		int[] segments = new int[occurences.size()],
+			counts = new int[occurences.size()];
+		int nbSegments = 0;
+		for (int occurence : occurences) {
+			int segment = occurence / SEGMENT_SIZE;
+			if (nbSegments == 0 || segments[nbSegments - 1] != segment) {
+				segments[nbSegments++] = segment;
+			}
+			counts[nbSegments - 1]++;
+		}
+
+		// The declaration keeps the quotes of the string, which can contain
+		// the other ones unescaped
+		String declaration = "var " + VARIABLE + "=" + quote + string + quote + ";";
+		long rawSaved = -utf8Length(declaration) + (long) occurences.size() * (utf8Length(string) + 2 - VARIABLE.length()),
+			compressedSaved = this.segmentSaving(0, declaration, string, occurences),
+			sampledSaved = 0;
+		int first = segments[0] == 0 ? 1 : 0,
+			stride = (nbSegments - first + MAX_SAMPLED_SEGMENTS - 1) / MAX_SAMPLED_SEGMENTS,
+			nbOccurences = 0,
+			nbSampled = 0;
+		for (int i = first; i < nbSegments; i++) {
+			nbOccurences += counts[i];
+			if ((i - first) % stride == 0) {
+				sampledSaved += this.segmentSaving(segments[i], "", string, occurences);
+				nbSampled += counts[i];
+			}
+		}
+		if (nbSampled > 0) {
+			compressedSaved += sampledSaved * nbOccurences / nbSampled;
+		}
+
+		Savings savings = new Savings(rawSaved, 0, compressedSaved);
+		this.estimates.put(string, savings);
+		return savings;
+	}
+
+	/**
+	 * Compresses a segment of the code with the occurences of a string
+	 * replaced by the variable.
+	 *
+	 * @param segment The index of the segment.
+	 * @param prefix The code inserted at the beginning of the segment.
+	 * @param string The string, as written in the code between its quotes.
+	 * @param occurences The sorted positions of the quoted string in the
+	 * 		code.
+	 * @return the number of bytes saved in the compressed segment.
+	 */
+	protected long segmentSaving(int segment, String prefix, String string, List<Integer> occurences)
+	{
+		int start = segment * SEGMENT_SIZE,
+			end = Math.min(start + SEGMENT_SIZE, this.text.length()),
+			from = start;
+		StringBuilder factorised = new StringBuilder(prefix.length() + end - start);
+		factorised.append(prefix);
+		for (int i = lowerBound(occurences, start); i < occurences.size() && occurences.get(i) < end; i++) {
+			int occurence = occurences.get(i);
+			if (occurence >= from && occurence + string.length() + 2 <= end) {
+				factorised.append(this.text, from, occurence).append(VARIABLE);
+				from = occurence + string.length() + 2;
+			}
+		}
+		factorised.append(this.text, from, end);
+		return this.segmentSize(segment) - this.compressedSize(factorised);
+	}
+
+	/**
+	 * @param values Sorted values.
+	 * @param value A value.
+	 * @return the index of the first value which is not lower than the value.
+	 */
+	protected static int lowerBound(List<Integer> values, int value)
+	{
+		int index = Collections.binarySearch(values, value);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	/**
+	 * @param segment The index of a segment of the code.
+	 * @return the compressed size of the segment.
+	 */
+	protected long segmentSize(int segment)
+	{
+		if ((segment + 1) * SEGMENT_SIZE > this.text.length()) {
+			if (this.lastSegmentSize == -1) {
+				this.lastSegmentSize = this.compressedSize(this.text.substring(segment * SEGMENT_SIZE));
+			}
+			return this.lastSegmentSize;
+		}
+
+		while (this.nbSegmentSizes <= segment) {
+			if (this.nbSegmentSizes == this.segmentSizes.length) {
+				this.segmentSizes = Arrays.copyOf(this.segmentSizes, this.nbSegmentSizes * 2);
+			}
+			int start = this.nbSegmentSizes * SEGMENT_SIZE;
+			this.segmentSizes[this.nbSegmentSizes++] = this.compressedSize(this.text.substring(start, start + SEGMENT_SIZE));
+		}
+		return this.segmentSizes[segment];
+	}
+
+	/**
+	 * @param code A code.
+	 * @return the number of bytes of the code encoded in UTF-8 and
+	 * 		compressed.
+	 */
+	protected long compressedSize(CharSequence code)
+	{
+		long size = 0;
+		this.deflater.reset();
+		this.deflater.setInput(code.toString().getBytes(StandardCharsets.UTF_8));
+		this.deflater.finish();
+		while (!this.deflater.finished()) {
+			size += this.deflater.deflate(this.output);
+		}
+		return size;
+	}
+
+	/**
+	 * @param code A code.
+	 * @return the number of bytes of the code encoded in UTF-8.
+	 */
+	protected static long utf8Length(CharSequence code)
+	{
+		long length = 0;
+		for (int i = 0; i < code.length(); i++) {
+			char c = code.charAt(i);
+			if (c < 0x80) {
+				length++;
+			}
+			else if (c < 0x800) {
+				length += 2;
+			}
+			else if (Character.isHighSurrogate(c)) {
+				// The surrogate pair is a 4 bytes char
+				length += 4;
+				i++;
+			}
+			else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,113 @@
+package jsanalyser.analyser;
+
+import java.util.Arrays;
+
+import jsanalyser.report.Position;
+
+/**
+ * Index of the lines of the analysed code, to convert the positions of the
+ * occurences (see {@link OccurenceIndex}) in lines and columns.
+ * <p>
+ * The code is scanned chunk by chunk for the line endings ("\n", "\r\n" or
+ * "\r"), and the position of the beginning of each line is kept in a sorted
+ * array, which is searched by dichotomy.
+ * </p>
+ * <p>
+ * The lines can be read while the code is still being scanned, from another
+ * thread, such as when a snapshot is reported.
+ * </p>
+ */
+public class LineIndex
+{
+	/**
+	 * Position of the first char of each line.
+	 */
+	protected long[] starts;
+
+	/**
+	 * Number of lines.
+	 */
+	protected int nbLines;
+
+	/**
+	 * true if the last scanned char is a '\r', which is not a line ending by
+	 * itself if the next char is a '\n'.
+	 */
+	protected boolean carriageReturn;
+
+	/**
+	 * Construct
+	 */
+	public LineIndex()
+	{
+		this.starts = new long[64];
+		this.clear();
+	}
+
+	/**
+	 * Scans a chunk of code for the line endings.
+	 *
+	 * @param buf The buffer containing the chunk of code.
+	 * @param off The index of the chunk's first char in the buffer.
+	 * @param len The number of chars of the chunk.
+	 * @param position The position of the chunk's first char in the code.
+	 */
+	public synchronized void scan(char[] buf, int off, int len, long position)
+	{
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = buf[i];
+			if (c == '\n') {
+				if (!this.carriageReturn) {
+					this.add(position + i - off + 1);
+				}
+				else {
+					// The line already starts after the '\r'
+					this.starts[this.nbLines - 1]++;
+				}
+			}
+			else if (c == '\r') {
+				this.add(position + i - off + 1);
+			}
+			this.carriageReturn = c == '\r';
+		}
+	}
+
+	/**
+	 * @param position The position of a char in the code.
+	 * @return the line and the column of the char.
+	 */
+	public synchronized Position position(long position)
+	{
+		int line = Arrays.binarySearch(this.starts, 0, this.nbLines, position);
+		if (line < 0) {
+			// The char is in the line preceding the insertion point
+			line = -line - 2;
+		}
+
+		return new Position(line + 1, position - this.starts[line] + 1);
+	}
+
+	/**
+	 * Removes all the lines, to scan another code.
+	 */
+	public synchronized void clear()
+	{
+		this.starts[0] = 0;
+		this.nbLines = 1;
+		this.carriageReturn = false;
+	}
+
+	/**
+	 * Adds the beginning of a line.
+	 *
+	 * @param start The position of the line's first char.
+	 */
+	protected void add(long start)
+	{
+		if (this.nbLines == this.starts.length) {
+			this.starts = Arrays.copyOf(this.starts, this.nbLines * 2);
+		}
+		this.starts[this.nbLines++] = start;
+	}
+}
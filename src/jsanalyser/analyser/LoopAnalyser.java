@@ -0,0 +1,131 @@
+package jsanalyser.analyser;
+
+/**
+ * Analyser class for the code repeated in each iteration of a loop, which
+ * could run once before the loop.
+ * <p>
+ * The elements are the patterns found in the bodies of the loops, or in the
+ * parts of their headers run at each iteration (see
+ * {@link jsanalyser.LoopLexer}):
+ * </p>
+ * <ul>
+ * <li>the DOM lookups, such as "getElementById() in a loop",</li>
+ * <li>the lengths read in the conditions, such as "items.length in a loop
+ * condition",</li>
+ * <li>the regexes created by a literal, such as "/\s+/g in a loop", or with
+ * "new RegExp() in a loop",</li>
+ * <li>the strings built by concatenation, such as "html += string in a
+ * loop".</li>
+ * </ul>
+ * <p>
+ * The positions of the occurences of the patterns are always indexed, and
+ * each pattern is reported with its hazard.
+ * </p>
+ */
+public class LoopAnalyser extends Analyser
+{
+	/**
+	 * Methods of the DOM searching elements in the document.
+	 */
+	public static final String[] DOM_LOOKUPS = {
+		"getElementById", "getElementsByClassName", "getElementsByName",
+		"getElementsByTagName", "querySelector", "querySelectorAll"
+	};
+
+	/**
+	 * Suffix of the patterns found in the body of a loop.
+	 */
+	protected static final String IN_LOOP = " in a loop";
+
+	/**
+	 * Suffix of the patterns found in the condition of a loop.
+	 */
+	protected static final String IN_CONDITION = " in a loop condition";
+
+	public LoopAnalyser()
+	{
+		super();
+		this.name = "loops";
+		this.reportTitle = "Code repeated in loops:";
+	}
+
+	/**
+	 * Adds an occurence of a DOM lookup in a loop.
+	 *
+	 * @param method The method of the lookup, one of {@link #DOM_LOOKUPS}.
+	 * @param position The position of the method in the code.
+	 */
+	public void addDomLookup(String method, long position)
+	{
+		this.addPatternOccurence(method + "()" + IN_LOOP, position);
+	}
+
+	/**
+	 * Adds an occurence of a length read in the condition of a loop.
+	 *
+	 * @param receiver The chain whose length is read, such as "items", or
+	 * 		null if it is another expression.
+	 * @param position The position of the length in the code.
+	 */
+	public void addLengthRead(String receiver, long position)
+	{
+		this.addPatternOccurence((receiver == null ? "" : receiver) + ".length" + IN_CONDITION, position);
+	}
+
+	/**
+	 * Adds an occurence of a regex created in a loop.
+	 *
+	 * @param regex The regex literal, or null if it is created with the
+	 * 		RegExp constructor.
+	 * @param position The position of the regex in the code.
+	 */
+	public void addRegex(String regex, long position)
+	{
+		this.addPatternOccurence((regex == null ? "new RegExp()" : regex) + IN_LOOP, position);
+	}
+
+	/**
+	 * Adds an occurence of a string concatenated to a variable in a loop.
+	 *
+	 * @param target The chain the string is concatenated to, such as
+	 * 		"html", or null if it is another expression.
+	 * @param position The position of the concatenation in the code.
+	 */
+	public void addConcatenation(String target, long position)
+	{
+		this.addPatternOccurence((target == null ? "" : target + " ") + "+= string" + IN_LOOP, position);
+	}
+
+	/**
+	 * Adds an occurence of a pattern, with its position if the positions are
+	 * indexed.
+	 *
+	 * @param pattern The pattern.
+	 * @param position The position of the occurence in the code.
+	 */
+	protected void addPatternOccurence(String pattern, long position)
+	{
+		this.incElementOccurences(pattern);
+		if (this.index != null) {
+			this.index.add(pattern, position);
+		}
+	}
+
+	/**
+	 * The hazard of a pattern is the work repeated at each iteration, and how
+	 * to do it once.
+	 */
+	public String hazard(String element)
+	{
+		if (element.endsWith(IN_CONDITION)) {
+			return "length read at each iteration, can be read once before the loop";
+		}
+		if (element.startsWith("/") || element.startsWith("new RegExp()")) {
+			return "regex created at each iteration, can be created once before the loop";
+		}
+		if (element.contains("+= string")) {
+			return "string copied at each iteration, the parts can be pushed in an array and joined after the loop";
+		}
+		return "document searched at each iteration, the element can be looked up once before the loop";
+	}
+}
@@ -1,7 +1,19 @@
 package jsanalyser.analyser;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import jsanalyser.report.Optimisation;
+import jsanalyser.report.Position;
+import jsanalyser.report.Savings;
+
 /**
  * Analyser class for the numeric values.
  * <p>
@@ -20,32 +32,294 @@ import java.util.Map;
  * The fact that a value is optimisable (with or without a new var) depends on
  * the value's size and on the number of occurences of the value.
  * </p>
+ * <p>
+ * The numeric values are reported by value, in their shortest spelling (see
+ * {@link #shortest}): 1000, 1e3 and 0x3E8 are reported together as 1e3, with
+ * the bytes saved by spelling all their occurences this way. The values are
+ * stored as they are spelled, and only grouped when they are reported.
+ * </p>
  */
 public class NumericAnalyser extends Analyser
 {
+	/**
+	 * Maximum number of digits of the decimal integers which are always their
+	 * shortest spelling if they end with less than 3 zeros, the greater ones
+	 * being possibly rounded.
+	 */
+	protected static final int MAX_EXACT_DIGITS = 15;
+
+	/**
+	 * Maximum number of significant digits of the shortest spelling of a
+	 * double.
+	 */
+	protected static final int MAX_DIGITS = 17;
+
+	/**
+	 * For each value reported in its shortest spelling, the other spellings
+	 * of the value found in the code. Built when the values are reported.
+	 */
+	protected Map<String, List<String>> spellings = new HashMap<String, List<String>>();
+
+	/**
+	 * For each value reported in its shortest spelling, the bytes saved by
+	 * spelling all its occurences this way. Built when the values are
+	 * reported.
+	 */
+	protected Map<String, Long> respellingBytes = new HashMap<String, Long>();
+
 	public NumericAnalyser()
 	{
 		super();
+		this.name = "numerics";
 		this.reportTitle = "Numerical values:";
 	}
 
 	/**
-	 * The specific report will display if the code can be optimised by
+	 * The values are grouped by their shortest spelling, in a store of the
+	 * same kind as the stored values, unless they all are spelled this way.
+	 */
+	protected ElementStore reportedElements()
+	{
+		final Map<String, List<String>> spellings = new HashMap<String, List<String>>();
+		final Map<String, Long> respellingBytes = new HashMap<String, Long>();
+		this.elements.forEach((key, count, error) -> {
+			String value = shortest(key);
+			if (!value.equals(key)) {
+				spellings.computeIfAbsent(value, v -> new ArrayList<String>()).add(key);
+				respellingBytes.merge(value, (long) (key.length() - value.length()) * count, Long::sum);
+			}
+		});
+		this.spellings = spellings;
+		this.respellingBytes = respellingBytes;
+		if (spellings.isEmpty()) {
+			return this.elements;
+		}
+
+		final ElementStore values;
+		if (this.elements instanceof SpaceSaving) {
+			values = new SpaceSaving(((SpaceSaving) this.elements).topK);
+		}
+		else if (this.elements instanceof SpillingElementTable) {
+			values = new SpillingElementTable(((SpillingElementTable) this.elements).budget);
+		}
+		else {
+			values = new ElementTable();
+		}
+		this.elements.forEach((key, count, error) -> {
+			if (values instanceof SpaceSaving) {
+				((SpaceSaving) values).add(shortest(key), count, error);
+			}
+			else {
+				values.add(shortest(key), count);
+			}
+		});
+		return values;
+	}
+
+	/**
+	 * The positions of a value are the ones of all its spellings.
+	 */
+	public List<Position> getPositions(String key)
+	{
+		List<String> spellings = this.spellings.get(key);
+		if (this.index == null || spellings == null) {
+			return super.getPositions(key);
+		}
+
+		long[] offsets = this.index.get(key);
+		for (String spelling : spellings) {
+			long[] other = this.index.get(spelling);
+			offsets = Arrays.copyOf(offsets, offsets.length + other.length);
+			System.arraycopy(other, 0, offsets, offsets.length - other.length, other.length);
+		}
+		Arrays.sort(offsets);
+		List<Position> positions = new ArrayList<Position>(offsets.length);
+		for (long offset : offsets) {
+			positions.add(this.lines.position(offset));
+		}
+		return positions;
+	}
+
+	/**
+	 * The optimisation test tells if the code can be optimised by
 	 * fectorising the numeric value.
 	 */
-	public void specificReport(boolean verbose, String element, Integer nbOccurences)
+	public Optimisation optimisation(String element, int nbOccurences)
 	{
 		int strLength = element.length(),
 			relationLenOccurences = strLength * nbOccurences - strLength - nbOccurences;
 
 		if (7 < relationLenOccurences) {
-			System.out.println("\tOptimisable");
+			return Optimisation.OPTIMISABLE;
 		}
 		else if (3 < relationLenOccurences) {
-			System.out.println("\tOptimisable with existing var");
+			return Optimisation.OPTIMISABLE_WITH_EXISTING_VAR;
+		}
+		return Optimisation.NON_OPTIMISABLE;
+	}
+
+	/**
+	 * The savings are the bytes saved by spelling all the occurences of a
+	 * value in its shortest spelling, if some are spelled otherwise with more
+	 * chars.
+	 */
+	public Savings savings(String element, int nbOccurences)
+	{
+		Long bytes = this.respellingBytes.get(element);
+		return bytes == null || bytes == 0 ? null : new Savings(bytes, 0);
+	}
+
+	/**
+	 * Finds the shortest spelling of the value of a numeric literal.
+	 * <p>
+	 * The numbers are compared as doubles, so two literals rounded to the
+	 * same double are the same value. The shortest spelling of a number is
+	 * the shortest of its decimal spelling, without the useless zeros (.5),
+	 * of its exponent spelling (1e3) and of its lowercase hexadecimal
+	 * spelling, the first one being kept for equal lengths. The digits are
+	 * the fewest which give the same double. The BigInts are spelled in
+	 * decimal or in hexadecimal.
+	 * </p>
+	 * <p>
+	 * A literal ending with a '.' keeps it if its value is spelled as a
+	 * decimal integer, as it can be followed by a member access (5..toString()
+	 * is not 5.toString()). The other literals followed by a member access,
+	 * such as 5.0.toString(), are not known, and their advice ignores it.
+	 * </p>
+	 *
+	 * @param literal The numeric literal, as found in the code.
+	 * @return the shortest spelling of the literal's value, or the literal
+	 * 		itself if it is not a valid literal or if its value is infinite.
+	 */
+	public static String shortest(String literal)
+	{
+		int length = literal.length();
+		if (length <= MAX_EXACT_DIGITS && (literal.charAt(0) != '0' || length == 1) && !literal.endsWith("000")) {
+			int i = 0;
+			while (i < length && literal.charAt(i) >= '0' && literal.charAt(i) <= '9') {
+				i++;
+			}
+			if (i == length) {
+				return literal;
+			}
+		}
+
+		String digits = literal.indexOf('_') == -1 ? literal : literal.replace("_", "");
+		try {
+			int radix = radix(digits);
+			if (digits.endsWith("n")) {
+				BigInteger value = new BigInteger(digits.substring(radix == 10 ? 0 : 2, digits.length() - 1), radix);
+				String decimal = value.toString() + "n",
+					hexadecimal = "0x" + value.toString(16) + "n";
+				return hexadecimal.length() < decimal.length() ? hexadecimal : decimal;
+			}
+
+			double value;
+			if (radix != 10) {
+				value = new BigInteger(digits.substring(radix == 8 && digits.charAt(1) != 'o' && digits.charAt(1) != 'O' ? 1 : 2), radix).doubleValue();
+			}
+			else {
+				value = Double.parseDouble(digits);
+			}
+			if (Double.isInfinite(value)) {
+				return literal;
+			}
+			String best = shortest(value);
+			if (literal.endsWith(".") && best.indexOf('.') == -1 && best.indexOf('e') == -1 && !best.startsWith("0x")) {
+				return best + ".";
+			}
+			return best;
+		} catch (NumberFormatException invalid) {
+			return literal;
+		}
+	}
+
+	/**
+	 * @param digits A numeric literal, without separators.
+	 * @return the radix of the literal: 16, 8 or 2 for its prefix, 8 for a
+	 * 		legacy octal literal (a 0 followed by octal digits), 10 otherwise.
+	 */
+	protected static int radix(String digits)
+	{
+		if (digits.length() < 2 || digits.charAt(0) != '0') {
+			return 10;
+		}
+
+		switch (digits.charAt(1)) {
+			case 'x':
+			case 'X':
+				return 16;
+			case 'o':
+			case 'O':
+				return 8;
+			case 'b':
+			case 'B':
+				return 2;
+		}
+		for (int i = 1; i < digits.length(); i++) {
+			if (digits.charAt(i) < '0' || digits.charAt(i) > '7') {
+				return 10;
+			}
+		}
+		return 8;
+	}
+
+	/**
+	 * @param value A finite positive double, or 0.
+	 * @return the shortest spelling of the double (see
+	 * 		{@link #shortest(String)}).
+	 */
+	protected static String shortest(double value)
+	{
+		if (value == 0) {
+			return "0";
+		}
+
+		// The fewest significant digits giving the same double
+		BigDecimal exact = new BigDecimal(value),
+			rounded = exact;
+		for (int precision = 1; precision <= MAX_DIGITS; precision++) {
+			rounded = exact.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+			if (Double.parseDouble(rounded.toString()) == value) {
+				break;
+			}
+		}
+		rounded = rounded.stripTrailingZeros();
+		String mantissa = rounded.unscaledValue().toString();
+		int exponent = -rounded.scale();
+
+		String best;
+		if (exponent >= 0) {
+			StringBuilder decimal = new StringBuilder(mantissa);
+			for (int i = 0; i < exponent; i++) {
+				decimal.append('0');
+			}
+			best = decimal.toString();
+		}
+		else if (mantissa.length() + exponent > 0) {
+			int point = mantissa.length() + exponent;
+			best = mantissa.substring(0, point) + "." + mantissa.substring(point);
+		}
+		else {
+			StringBuilder decimal = new StringBuilder(".");
+			for (int i = mantissa.length() + exponent; i < 0; i++) {
+				decimal.append('0');
+			}
+			best = decimal.append(mantissa).toString();
+		}
+
+		if (exponent != 0) {
+			String scientific = mantissa + "e" + exponent;
+			if (scientific.length() < best.length()) {
+				best = scientific;
+			}
 		}
-		else if (verbose) {
-			System.out.println("\tNon optimisable");
+		if (exponent >= 0) {
+			String hexadecimal = "0x" + exact.toBigIntegerExact().toString(16);
+			if (hexadecimal.length() < best.length()) {
+				best = hexadecimal;
+			}
 		}
+		return best;
 	}
 }
@@ -0,0 +1,301 @@
+package jsanalyser.analyser;
+
+import java.util.Arrays;
+
+/**
+ * Index of the positions of the occurences of the elements of an analyser.
+ * <p>
+ * The positions are the indexes of the occurences' first char in the code.
+ * Each element has a byte array in which its positions are stored as the
+ * difference with the previous position, in a variable length encoding (7
+ * bits per byte, the sign in the lowest bit), so an occurence usually costs
+ * one to three bytes and no object.
+ * </p>
+ * <p>
+ * The elements are looked up from a range of a char buffer without
+ * allocating, as in an {@link ElementTable}. The strings of the elements are
+ * shared with the store counting them (see {@link ElementStore#key}), so
+ * indexing the positions does not copy the elements again.
+ * </p>
+ */
+public class OccurenceIndex
+{
+	/**
+	 * Initial size of the array of positions of an element.
+	 */
+	protected static final int INITIAL_POSITIONS_SIZE = 4;
+
+	/**
+	 * Elements of each slot, null for the free slots.
+	 */
+	protected String[] keys;
+
+	/**
+	 * Hash of the element of each slot.
+	 */
+	protected int[] hashes;
+
+	/**
+	 * Encoded positions of the element of each slot.
+	 */
+	protected byte[][] positions;
+
+	/**
+	 * Number of bytes used in the positions of the element of each slot.
+	 */
+	protected int[] lengths;
+
+	/**
+	 * Last position of the element of each slot, from which the next one is
+	 * encoded.
+	 */
+	protected long[] lasts;
+
+	/**
+	 * Number of elements in the index.
+	 */
+	protected int size;
+
+	/**
+	 * Construct
+	 */
+	public OccurenceIndex()
+	{
+		this.allocate(ElementTable.INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @return the number of elements in the index.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Adds the position of an occurence of an element stored in a range of a
+	 * char buffer.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @param position The position of the occurence in the code.
+	 * @param store The store counting the element, whose string of the
+	 * 		element is shared if it keeps one.
+	 */
+	public void add(char[] buf, int off, int len, long position, ElementStore store)
+	{
+		int hash = 0,
+			end = off + len,
+			mask = this.keys.length - 1,
+			slot;
+		for (int i = off; i < end; i++) {
+			hash = 31 * hash + buf[i];
+		}
+
+		for (slot = ElementTable.mix(hash) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.hashes[slot] == hash && ElementTable.equals(this.keys[slot], buf, off, len)) {
+				this.append(slot, position);
+				return;
+			}
+		}
+
+		String key = store.key(buf, off, len);
+		this.insert(slot, key != null ? key : new String(buf, off, len), hash, position);
+	}
+
+	/**
+	 * Adds the position of an occurence of an element.
+	 *
+	 * @param key The element.
+	 * @param position The position of the occurence in the code.
+	 */
+	public void add(String key, long position)
+	{
+		int hash = key.hashCode(),
+			slot = this.slot(key, hash);
+		if (this.keys[slot] == null) {
+			this.insert(slot, key, hash, position);
+			return;
+		}
+		this.append(slot, position);
+	}
+
+	/**
+	 * @param key The element.
+	 * @return the positions of the occurences of the element, in the order
+	 * 		they were added, empty if the element is not in the index.
+	 */
+	public long[] get(String key)
+	{
+		int slot = this.slot(key, key.hashCode());
+		if (this.keys[slot] == null) {
+			return new long[0];
+		}
+
+		return decode(this.positions[slot], this.lengths[slot]);
+	}
+
+	/**
+	 * Adds the positions of the elements of another index to this one.
+	 *
+	 * @param other The index whose positions are added.
+	 */
+	public void merge(OccurenceIndex other)
+	{
+		for (int slot = 0; slot < other.keys.length; slot++) {
+			if (other.keys[slot] != null) {
+				for (long position : decode(other.positions[slot], other.lengths[slot])) {
+					this.add(other.keys[slot], position);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all the elements. The slots are kept, unless the index has
+	 * grown over {@link ElementTable#MAX_KEPT_CAPACITY} slots.
+	 */
+	public void clear()
+	{
+		if (this.keys.length > ElementTable.MAX_KEPT_CAPACITY) {
+			this.allocate(ElementTable.INITIAL_CAPACITY);
+		}
+		else {
+			Arrays.fill(this.keys, null);
+			Arrays.fill(this.positions, null);
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * @param key The element.
+	 * @param hash The element's hash.
+	 * @return the slot of the element, or the free slot where it would be
+	 * 		inserted.
+	 */
+	protected int slot(String key, int hash)
+	{
+		int mask = this.keys.length - 1,
+			slot;
+		for (slot = ElementTable.mix(hash) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.hashes[slot] == hash && this.keys[slot].equals(key)) {
+				break;
+			}
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Appends a position to the positions of an element.
+	 *
+	 * @param slot The slot of the element.
+	 * @param position The position.
+	 */
+	protected void append(int slot, long position)
+	{
+		long delta = position - this.lasts[slot],
+			value = (delta << 1) ^ (delta >> 63);
+		byte[] bytes = this.positions[slot];
+		int length = this.lengths[slot];
+		if (length + 10 > bytes.length) {
+			bytes = this.positions[slot] = Arrays.copyOf(bytes, Math.max(length + 10, bytes.length * 2));
+		}
+
+		while ((value & ~0x7FL) != 0) {
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte) value;
+		this.lengths[slot] = length;
+		this.lasts[slot] = position;
+	}
+
+	/**
+	 * Inserts a new element in a free slot, and grows the index if it is more
+	 * than half full.
+	 *
+	 * @param slot The free slot.
+	 * @param key The element.
+	 * @param hash The element's hash.
+	 * @param position The position of the element's first occurence.
+	 */
+	protected void insert(int slot, String key, int hash, long position)
+	{
+		this.keys[slot] = key;
+		this.hashes[slot] = hash;
+		this.positions[slot] = new byte[INITIAL_POSITIONS_SIZE];
+		this.lengths[slot] = 0;
+		this.lasts[slot] = 0;
+		this.append(slot, position);
+		if (++this.size * 2 <= this.keys.length) {
+			return;
+		}
+
+		String[] keys = this.keys;
+		int[] hashes = this.hashes,
+			lengths = this.lengths;
+		byte[][] positions = this.positions;
+		long[] lasts = this.lasts;
+		int mask = keys.length * 2 - 1;
+
+		this.allocate(keys.length * 2);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null) {
+				continue;
+			}
+
+			int newSlot = ElementTable.mix(hashes[i]) & mask;
+			while (this.keys[newSlot] != null) {
+				newSlot = (newSlot + 1) & mask;
+			}
+			this.keys[newSlot] = keys[i];
+			this.hashes[newSlot] = hashes[i];
+			this.positions[newSlot] = positions[i];
+			this.lengths[newSlot] = lengths[i];
+			this.lasts[newSlot] = lasts[i];
+		}
+	}
+
+	/**
+	 * Allocates empty slots.
+	 *
+	 * @param capacity The number of slots, a power of 2.
+	 */
+	protected void allocate(int capacity)
+	{
+		this.keys = new String[capacity];
+		this.hashes = new int[capacity];
+		this.positions = new byte[capacity][];
+		this.lengths = new int[capacity];
+		this.lasts = new long[capacity];
+	}
+
+	/**
+	 * @param bytes The encoded positions of an element.
+	 * @param length The number of bytes used.
+	 * @return the decoded positions.
+	 */
+	protected static long[] decode(byte[] bytes, int length)
+	{
+		long[] positions = new long[length];
+		long last = 0;
+		int nbPositions = 0;
+		for (int i = 0; i < length; ) {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[i++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+
+			last += (value >>> 1) ^ -(value & 1);
+			positions[nbPositions++] = last;
+		}
+
+		return Arrays.copyOf(positions, nbPositions);
+	}
+}
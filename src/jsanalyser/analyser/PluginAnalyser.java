@@ -0,0 +1,58 @@
+package jsanalyser.analyser;
+
+/**
+ * Analyser added to the parser without modifying it.
+ * <p>
+ * The plugins are the subclasses of this class registered as services of
+ * the {@link java.util.ServiceLoader}, in a
+ * META-INF/services/jsanalyser.analyser.PluginAnalyser file of the
+ * classpath. A new instance of each plugin is created for each analysed
+ * code, with the public constructor without arguments.
+ * </p>
+ * <p>
+ * A plugin declares the kinds of elements it analyses, and receives them in
+ * {@link ElementBatch}es. The elements of the kinds no plugin wants are not
+ * added to the batches.
+ * </p>
+ * <p>
+ * By default, the elements of the batch are counted as the other analysers
+ * do, and reported in a section of the plugin. A plugin can override
+ * {@link #consume} to analyse them otherwise, and the hooks of
+ * {@link Analyser} to report them.
+ * </p>
+ */
+public abstract class PluginAnalyser extends Analyser
+{
+	/**
+	 * @return the bits 1 << kind of the kinds of the analysed elements, the
+	 * 		kinds being the K_* constants of the {@link jsanalyser.Lexer}.
+	 */
+	public abstract int getKinds();
+
+	/**
+	 * Analyses a batch of elements.
+	 * <p>
+	 * The batch contains the elements wanted by all the plugins, so the
+	 * elements of the kinds which are not analysed by this plugin must be
+	 * ignored. The batch is reused after the call, so its chars must be copied
+	 * to be kept.
+	 * </p>
+	 *
+	 * @param batch The batch of elements.
+	 */
+	public void consume(ElementBatch batch)
+	{
+		final char[] chars = batch.getChars();
+		final int kinds = this.getKinds();
+		for (int kind = 0; kind < ElementBatch.NB_KINDS; kind++) {
+			if ((kinds & (1 << kind)) == 0) {
+				continue;
+			}
+
+			final int size = batch.size(kind);
+			for (int i = 0; i < size; i++) {
+				this.incElementOccurences(chars, batch.offset(kind, i), batch.length(kind, i));
+			}
+		}
+	}
+}
@@ -0,0 +1,469 @@
+package jsanalyser.analyser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Radix tree counting the occurences of elements, which shares the prefixes
+ * of the elements and visits them sorted.
+ * <p>
+ * Each node of the tree has a label, the part of the elements following the
+ * labels of its ancestors, and the elements are the labels of the paths from
+ * the root to the nodes having a count. The children of a node start with
+ * different chars, and are linked in the order of their first char, so the
+ * elements are visited in the order of {@link String#compareTo} by a depth
+ * first walk, without sorting them.
+ * </p>
+ * <p>
+ * The nodes are stored in parallel arrays of ints and their labels in a
+ * single char array, splitting a node only changing the bounds of its label,
+ * so the tree contains no object per element. The minified identifiers, the
+ * generated names and the keys sharing a namespace, such as "_0x3fa2" or
+ * "app.settings.title", only store their distinct suffix. As in an
+ * {@link ElementTable}, an element is looked up directly from a range of a
+ * char buffer.
+ * </p>
+ * <p>
+ * A lookup compares the chars of the element once, but follows the links
+ * between the children of the nodes it traverses (except for the root, whose
+ * children are indexed by their first char), so the tree is slower to fill
+ * than a hash table, and faster to report sorted.
+ * </p>
+ */
+public class RadixTree implements ElementStore
+{
+	/**
+	 * Index of the root node, whose label is empty.
+	 */
+	protected static final int ROOT = 0;
+
+	/**
+	 * Count of the nodes which are not an element.
+	 */
+	protected static final int NO_ELEMENT = -1;
+
+	/**
+	 * Number of first chars whose child of the root is indexed, the ASCII
+	 * chars.
+	 */
+	protected static final int ROOT_INDEX_SIZE = 128;
+
+	/**
+	 * Child of the root starting with each ASCII char, -1 if there is none.
+	 * The root has the most children, which are found without following
+	 * their links.
+	 */
+	protected int[] rootChildren = new int[ROOT_INDEX_SIZE];
+
+	/**
+	 * Index of the first char of the label of each node in {@link #labels}.
+	 */
+	protected int[] labelStarts;
+
+	/**
+	 * Number of chars of the label of each node.
+	 */
+	protected int[] labelLengths;
+
+	/**
+	 * First child of each node, -1 if the node is a leaf.
+	 */
+	protected int[] firstChildren;
+
+	/**
+	 * Next sibling of each node, in the order of the first char of the
+	 * labels, -1 for the last child.
+	 */
+	protected int[] nextSiblings;
+
+	/**
+	 * Number of occurences of the element ending at each node,
+	 * {@link #NO_ELEMENT} if no element ends there.
+	 */
+	protected int[] counts;
+
+	/**
+	 * Number of nodes, the root included.
+	 */
+	protected int nbNodes;
+
+	/**
+	 * Chars of the labels of the nodes.
+	 */
+	protected char[] labels;
+
+	/**
+	 * Number of chars used in {@link #labels}.
+	 */
+	protected int nbLabelChars;
+
+	/**
+	 * Number of elements in the tree.
+	 */
+	protected int size;
+
+	/**
+	 * Buffer in which the elements given as strings are copied to be added.
+	 */
+	protected char[] scratch = new char[64];
+
+	/**
+	 * Construct
+	 */
+	public RadixTree()
+	{
+		this.allocate(ElementTable.INITIAL_CAPACITY);
+		this.clear();
+	}
+
+	/**
+	 * @return the number of elements in the tree.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Visits all the elements of the tree, in the order of
+	 * {@link String#compareTo}.
+	 *
+	 * @param visitor The visitor called for each element.
+	 */
+	public void forEach(Visitor visitor)
+	{
+		if (this.counts[ROOT] != NO_ELEMENT) {
+			visitor.visit("", this.counts[ROOT], 0);
+		}
+		if (this.firstChildren[ROOT] == -1) {
+			return;
+		}
+
+		// Each node of the stack is visited with the path of its parent, so
+		// the stack holds at most one sibling per level of the tree
+		StringBuilder path = new StringBuilder();
+		int[] nodes = new int[16],
+			pathLengths = new int[16];
+		int depth = 0;
+		nodes[0] = this.firstChildren[ROOT];
+		pathLengths[0] = 0;
+		while (depth >= 0) {
+			int node = nodes[depth],
+				parentLength = pathLengths[depth];
+			path.setLength(parentLength);
+			path.append(this.labels, this.labelStarts[node], this.labelLengths[node]);
+			depth--;
+			if (this.counts[node] != NO_ELEMENT) {
+				visitor.visit(path.toString(), this.counts[node], 0);
+			}
+
+			if (depth + 2 >= nodes.length) {
+				nodes = Arrays.copyOf(nodes, nodes.length * 2);
+				pathLengths = Arrays.copyOf(pathLengths, pathLengths.length * 2);
+			}
+			if (this.nextSiblings[node] != -1) {
+				nodes[++depth] = this.nextSiblings[node];
+				pathLengths[depth] = parentLength;
+			}
+			if (this.firstChildren[node] != -1) {
+				nodes[++depth] = this.firstChildren[node];
+				pathLengths[depth] = path.length();
+			}
+		}
+	}
+
+	/**
+	 * @param key The element.
+	 * @return the number of occurences of the element, 0 if it is not in the
+	 * 		tree.
+	 */
+	public int get(String key)
+	{
+		int node = ROOT,
+			length = key.length(),
+			pos = 0;
+		while (pos < length) {
+			char c = key.charAt(pos);
+			int child;
+			if (node == ROOT && c < ROOT_INDEX_SIZE) {
+				child = this.rootChildren[c];
+			}
+			else {
+				child = this.firstChildren[node];
+				while (child != -1 && this.labels[this.labelStarts[child]] < c) {
+					child = this.nextSiblings[child];
+				}
+			}
+			if (child == -1 || this.labels[this.labelStarts[child]] != c) {
+				return 0;
+			}
+
+			int start = this.labelStarts[child],
+				labelLength = this.labelLengths[child];
+			if (labelLength > length - pos) {
+				return 0;
+			}
+			for (int i = 1; i < labelLength; i++) {
+				if (this.labels[start + i] != key.charAt(pos + i)) {
+					return 0;
+				}
+			}
+			node = child;
+			pos += labelLength;
+		}
+
+		return this.counts[node] == NO_ELEMENT ? 0 : this.counts[node];
+	}
+
+	/**
+	 * @param key The element.
+	 * @return 0, the counts are exact.
+	 */
+	public int error(String key)
+	{
+		return 0;
+	}
+
+	/**
+	 * Adds occurences to an element.
+	 *
+	 * @param key The element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(String key, int count)
+	{
+		int length = key.length();
+		if (length > this.scratch.length) {
+			this.scratch = new char[Math.max(length, this.scratch.length * 2)];
+		}
+		key.getChars(0, length, this.scratch, 0);
+		this.add(this.scratch, 0, length, count);
+	}
+
+	/**
+	 * Adds occurences to an element stored in a range of a char buffer. Only
+	 * the chars following the longest prefix already in the tree are copied.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(char[] buf, int off, int len, int count)
+	{
+		int node = ROOT,
+			pos = off,
+			end = off + len;
+		while (pos < end) {
+			char c = buf[pos];
+			boolean indexed = node == ROOT && c < ROOT_INDEX_SIZE;
+			int previous = -1,
+				child;
+			if (indexed) {
+				child = this.rootChildren[c];
+				if (child == -1) {
+					previous = this.previousRootChild(c);
+					child = previous == -1 ? this.firstChildren[ROOT] : this.nextSiblings[previous];
+				}
+			}
+			else {
+				child = this.firstChildren[node];
+				while (child != -1 && this.labels[this.labelStarts[child]] < c) {
+					previous = child;
+					child = this.nextSiblings[child];
+				}
+			}
+
+			if (child == -1 || this.labels[this.labelStarts[child]] != c) {
+				// No child starts with the char, the rest of the element is a
+				// new leaf inserted before the child
+				int leaf = this.newNode(buf, pos, end - pos, count);
+				this.link(node, previous, leaf, child);
+				if (indexed) {
+					this.rootChildren[c] = leaf;
+				}
+				this.size++;
+				return;
+			}
+
+			int start = this.labelStarts[child],
+				labelLength = this.labelLengths[child],
+				matched = 1;
+			while (matched < labelLength && pos + matched < end && this.labels[start + matched] == buf[pos + matched]) {
+				matched++;
+			}
+
+			if (matched < labelLength) {
+				// The element diverges in the label, the child is split in a
+				// node with the common part and a child with the rest
+				int split = this.newNode(null, start, matched, NO_ELEMENT);
+				if (indexed) {
+					previous = this.previousRootChild(c);
+					this.rootChildren[c] = split;
+				}
+				this.link(node, previous, split, this.nextSiblings[child]);
+				this.firstChildren[split] = child;
+				this.nextSiblings[child] = -1;
+				this.labelStarts[child] = start + matched;
+				this.labelLengths[child] = labelLength - matched;
+				child = split;
+			}
+			node = child;
+			pos += matched;
+		}
+
+		if (this.counts[node] == NO_ELEMENT) {
+			this.counts[node] = count;
+			this.size++;
+		}
+		else {
+			this.counts[node] += count;
+		}
+	}
+
+	/**
+	 * @param buf The buffer containing an element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @return null, the elements are not kept as strings.
+	 */
+	public String key(char[] buf, int off, int len)
+	{
+		return null;
+	}
+
+	/**
+	 * Adds occurences to an element stored in UTF-8 in a range of a byte
+	 * buffer. The element is decoded.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(byte[] buf, int off, int len, int count)
+	{
+		this.add(new String(buf, off, len, StandardCharsets.UTF_8), count);
+	}
+
+	/**
+	 * Adds all the elements of this tree to another store, in order.
+	 *
+	 * @param target The store receiving the elements.
+	 */
+	public void addTo(final ElementStore target)
+	{
+		this.forEach((key, count, error) -> target.add(key, count));
+	}
+
+	/**
+	 * Removes all the elements. The nodes are kept, unless the tree has grown
+	 * over {@link ElementTable#MAX_KEPT_CAPACITY} nodes or their labels over
+	 * four times as many chars.
+	 */
+	public void clear()
+	{
+		if (this.counts.length > ElementTable.MAX_KEPT_CAPACITY || this.labels.length > ElementTable.MAX_KEPT_CAPACITY * 4) {
+			this.allocate(ElementTable.INITIAL_CAPACITY);
+		}
+		this.nbNodes = 1;
+		this.nbLabelChars = 0;
+		this.labelStarts[ROOT] = this.labelLengths[ROOT] = 0;
+		this.firstChildren[ROOT] = this.nextSiblings[ROOT] = -1;
+		this.counts[ROOT] = NO_ELEMENT;
+		Arrays.fill(this.rootChildren, -1);
+		this.size = 0;
+	}
+
+	/**
+	 * @param c An ASCII char.
+	 * @return the last child of the root starting with a lower char, -1 if
+	 * 		there is none.
+	 */
+	protected int previousRootChild(char c)
+	{
+		for (int i = c - 1; i >= 0; i--) {
+			if (this.rootChildren[i] != -1) {
+				return this.rootChildren[i];
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Creates a node without children.
+	 *
+	 * @param buf The buffer containing the node's label, which is copied, or
+	 * 		null if the label is already in {@link #labels}.
+	 * @param off The index of the label's first char in the buffer, or in
+	 * 		{@link #labels} if buf is null.
+	 * @param len The number of chars of the label.
+	 * @param count The count of the node, {@link #NO_ELEMENT} if it is not
+	 * 		an element.
+	 * @return the index of the node.
+	 */
+	protected int newNode(char[] buf, int off, int len, int count)
+	{
+		if (this.nbNodes == this.counts.length) {
+			int capacity = this.nbNodes * 2;
+			this.labelStarts = Arrays.copyOf(this.labelStarts, capacity);
+			this.labelLengths = Arrays.copyOf(this.labelLengths, capacity);
+			this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+			this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+			this.counts = Arrays.copyOf(this.counts, capacity);
+		}
+
+		int node = this.nbNodes++;
+		if (buf != null) {
+			if (this.nbLabelChars + len > this.labels.length) {
+				this.labels = Arrays.copyOf(this.labels, Math.max(this.nbLabelChars + len, this.labels.length * 2));
+			}
+			System.arraycopy(buf, off, this.labels, this.nbLabelChars, len);
+			off = this.nbLabelChars;
+			this.nbLabelChars += len;
+		}
+		this.labelStarts[node] = off;
+		this.labelLengths[node] = len;
+		this.firstChildren[node] = -1;
+		this.nextSiblings[node] = -1;
+		this.counts[node] = count;
+		return node;
+	}
+
+	/**
+	 * Links a node in the children of a parent, between two of them.
+	 *
+	 * @param parent The parent.
+	 * @param previous The child preceding the node, -1 if the node is the
+	 * 		first child.
+	 * @param node The node.
+	 * @param next The child following the node, -1 if the node is the last
+	 * 		child.
+	 */
+	protected void link(int parent, int previous, int node, int next)
+	{
+		this.nextSiblings[node] = next;
+		if (previous == -1) {
+			this.firstChildren[parent] = node;
+		}
+		else {
+			this.nextSiblings[previous] = node;
+		}
+	}
+
+	/**
+	 * Allocates the arrays of the nodes and of the labels.
+	 *
+	 * @param capacity The number of nodes.
+	 */
+	protected void allocate(int capacity)
+	{
+		this.labelStarts = new int[capacity];
+		this.labelLengths = new int[capacity];
+		this.firstChildren = new int[capacity];
+		this.nextSiblings = new int[capacity];
+		this.counts = new int[capacity];
+		this.labels = new char[capacity * 4];
+	}
+}
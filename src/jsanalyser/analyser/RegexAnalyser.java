@@ -5,14 +5,43 @@ import java.util.Map;
 /**
  * Analyser class for the regexes.
  * <p>
- * For the moment, it has no specific report.
+ * With a {@link BacktrackingChecker}, the regexes which can backtrack
+ * catastrophically, such as /(a+)+$/, are reported with the construct at
+ * fault, and if it was confirmed by matching adversarial inputs.
  * </p>
  */
 public class RegexAnalyser extends Analyser
 {
+	/**
+	 * Checker of the backtracking of the regexes, null if they are not
+	 * checked.
+	 */
+	protected BacktrackingChecker backtracking;
+
 	public RegexAnalyser()
 	{
 		super();
+		this.name = "regexes";
 		this.reportTitle = "Regular expressions:";
 	}
+
+	/**
+	 * Checks the backtracking of the regexes.
+	 *
+	 * @param backtracking The checker, which can be shared with the analysers
+	 * 		of other codes, or null to not check the regexes.
+	 */
+	public void setBacktrackingChecker(BacktrackingChecker backtracking)
+	{
+		this.backtracking = backtracking;
+	}
+
+	/**
+	 * The regexes which can backtrack catastrophically are hazards, if
+	 * there is a {@link BacktrackingChecker}.
+	 */
+	public String hazard(String element)
+	{
+		return this.backtracking == null ? null : this.backtracking.check(element);
+	}
 }
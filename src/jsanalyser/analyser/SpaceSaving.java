@@ -0,0 +1,508 @@
+package jsanalyser.analyser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Approximate store of the elements, with a fixed memory budget, keeping the
+ * most frequent elements only (Space-Saving algorithm).
+ * <p>
+ * The store monitors a fixed number of elements, each with a counter. When a
+ * new element is found and all the counters are used, the element with the
+ * smallest count is replaced by the new one, which inherits its count. The
+ * inherited count is the maximum overestimation of the new element's count,
+ * so the real count of each monitored element is between its count minus its
+ * error and its count.
+ * </p>
+ * <p>
+ * Any element occuring more often than the total number of occurences divided
+ * by the number of counters is guaranteed to be monitored. To report the top K
+ * elements with small errors, {@link #COUNTERS_PER_ELEMENT} counters are used
+ * per reported element.
+ * </p>
+ * <p>
+ * The counters are kept in a binary min-heap ordered by count, so the element
+ * to replace is the root. They are indexed by an open addressing hash table
+ * (as in {@link ElementTable}), whose slots contain the position of the
+ * counters in the heap.
+ * </p>
+ */
+public class SpaceSaving implements ElementStore
+{
+	/**
+	 * Number of counters per reported element.
+	 */
+	protected static final int COUNTERS_PER_ELEMENT = 4;
+
+	/**
+	 * Maximum number of reported elements, the counters being allocated up
+	 * front (about 110 MB of counters for this number).
+	 */
+	public static final int MAX_TOP_K = 1 << 20;
+
+	/**
+	 * Number of reported elements.
+	 */
+	protected int topK;
+
+	/**
+	 * Element of each counter, in heap order.
+	 */
+	protected String[] keys;
+
+	/**
+	 * Hash of the element of each counter.
+	 */
+	protected int[] hashes;
+
+	/**
+	 * Count of each counter.
+	 */
+	protected int[] counts;
+
+	/**
+	 * Maximum overestimation of each counter.
+	 */
+	protected int[] errors;
+
+	/**
+	 * Slot of the hash table indexing each counter.
+	 */
+	protected int[] slotOf;
+
+	/**
+	 * Hash table of the counters: position of the counter in the heap plus
+	 * one, 0 for the free slots.
+	 */
+	protected int[] slots;
+
+	/**
+	 * Number of used counters.
+	 */
+	protected int size;
+
+	/**
+	 * Construct
+	 *
+	 * @param topK The number of reported elements, at most
+	 * 		{@link #MAX_TOP_K}.
+	 * @throws IllegalArgumentException if the number of elements is out of
+	 * 		range.
+	 */
+	public SpaceSaving(int topK)
+	{
+		if (topK <= 0 || topK > MAX_TOP_K) {
+			throw new IllegalArgumentException("The number of reported elements must be between 1 and " + MAX_TOP_K + ": " + topK);
+		}
+
+		int capacity = topK * COUNTERS_PER_ELEMENT;
+		this.topK = topK;
+		this.keys = new String[capacity];
+		this.hashes = new int[capacity];
+		this.counts = new int[capacity];
+		this.errors = new int[capacity];
+		this.slotOf = new int[capacity];
+		this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+	}
+
+	/**
+	 * @return the number of monitored elements.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Visits the topK monitored elements having the highest counts.
+	 *
+	 * @param visitor The visitor called for each element.
+	 */
+	public void forEach(Visitor visitor)
+	{
+		Integer[] positions = new Integer[this.size];
+		for (int i = 0; i < this.size; i++) {
+			positions[i] = i;
+		}
+		Arrays.sort(positions, (a, b) -> this.counts[b] - this.counts[a]);
+
+		for (int i = 0; i < this.size && i < this.topK; i++) {
+			int position = positions[i];
+			visitor.visit(this.keys[position], this.counts[position], this.errors[position]);
+		}
+	}
+
+	/**
+	 * @param key The element.
+	 * @return the estimated number of occurences of the element, 0 if it is
+	 * 		not monitored.
+	 */
+	public int get(String key)
+	{
+		int position = this.find(key.hashCode(), key, null, 0, 0);
+		return position == -1 ? 0 : this.counts[position];
+	}
+
+	/**
+	 * @param key The element.
+	 * @return the maximum overestimation of the number of occurences of the
+	 * 		element.
+	 */
+	public int error(String key)
+	{
+		int position = this.find(key.hashCode(), key, null, 0, 0);
+		return position == -1 ? 0 : this.errors[position];
+	}
+
+	/**
+	 * Adds occurences to an element.
+	 *
+	 * @param key The element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(String key, int count)
+	{
+		this.add(key, count, 0);
+	}
+
+	/**
+	 * Adds occurences to an element, whose count is already overestimated.
+	 *
+	 * @param key The element.
+	 * @param count The number of occurences to add.
+	 * @param error The maximum overestimation of the added occurences.
+	 */
+	public void add(String key, int count, int error)
+	{
+		int hash = key.hashCode(),
+			position = this.find(hash, key, null, 0, 0);
+		if (position == -1) {
+			this.insert(key, hash, count, error);
+			return;
+		}
+
+		this.counts[position] += count;
+		this.errors[position] += error;
+		this.siftDown(position);
+	}
+
+	/**
+	 * Adds occurences to an element stored in a range of a char buffer. The
+	 * element is copied in a string only if it is not monitored.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(char[] buf, int off, int len, int count)
+	{
+		int hash = 0,
+			end = off + len;
+		for (int i = off; i < end; i++) {
+			hash = 31 * hash + buf[i];
+		}
+
+		int position = this.find(hash, null, buf, off, len);
+		if (position == -1) {
+			this.insert(new String(buf, off, len), hash, count, 0);
+			return;
+		}
+
+		this.counts[position] += count;
+		this.siftDown(position);
+	}
+
+	/**
+	 * @param buf The buffer containing an element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @return the string of the element, null if it is not monitored.
+	 */
+	public String key(char[] buf, int off, int len)
+	{
+		int hash = 0,
+			end = off + len;
+		for (int i = off; i < end; i++) {
+			hash = 31 * hash + buf[i];
+		}
+
+		int position = this.find(hash, null, buf, off, len);
+		return position == -1 ? null : this.keys[position];
+	}
+
+	/**
+	 * Adds occurences to an element stored in UTF-8 in a range of a byte
+	 * buffer. The element is decoded.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(byte[] buf, int off, int len, int count)
+	{
+		this.add(new String(buf, off, len, StandardCharsets.UTF_8), count);
+	}
+
+	/**
+	 * Removes all the monitored elements, keeping the counters.
+	 */
+	public void clear()
+	{
+		Arrays.fill(this.keys, 0, this.size, null);
+		Arrays.fill(this.slots, 0);
+		this.size = 0;
+	}
+
+	/**
+	 * Adds all the monitored elements of this store to another store.
+	 *
+	 * @param target The store receiving the elements.
+	 */
+	public void addTo(ElementStore target)
+	{
+		if (target instanceof SpaceSaving) {
+			((SpaceSaving) target).merge(this);
+			return;
+		}
+
+		for (int i = 0; i < this.size; i++) {
+			target.add(this.keys[i], this.counts[i]);
+		}
+	}
+
+	/**
+	 * Merges the counters of another store in this one.
+	 * <p>
+	 * An element missing from a full store may have occured as often as the
+	 * smallest count of the store, so this count is added to the element's
+	 * count and error. The counters with the highest counts are then kept.
+	 * </p>
+	 *
+	 * @param other The store to merge in this one.
+	 */
+	protected void merge(SpaceSaving other)
+	{
+		int thisMissing = this.size == this.keys.length ? this.counts[0] : 0,
+			otherMissing = other.size == other.keys.length ? other.counts[0] : 0,
+			nbMerged = 0;
+		String[] keys = new String[this.size + other.size];
+		int[] hashes = new int[keys.length],
+			counts = new int[keys.length],
+			errors = new int[keys.length];
+
+		for (int i = 0; i < this.size; i++, nbMerged++) {
+			int position = other.find(this.hashes[i], this.keys[i], null, 0, 0);
+			keys[nbMerged] = this.keys[i];
+			hashes[nbMerged] = this.hashes[i];
+			counts[nbMerged] = this.counts[i] + (position == -1 ? otherMissing : other.counts[position]);
+			errors[nbMerged] = this.errors[i] + (position == -1 ? otherMissing : other.errors[position]);
+		}
+		for (int i = 0; i < other.size; i++) {
+			if (this.find(other.hashes[i], other.keys[i], null, 0, 0) == -1) {
+				keys[nbMerged] = other.keys[i];
+				hashes[nbMerged] = other.hashes[i];
+				counts[nbMerged] = other.counts[i] + thisMissing;
+				errors[nbMerged] = other.errors[i] + thisMissing;
+				nbMerged++;
+			}
+		}
+
+		// Keep the highest counts, in increasing order, which is a valid heap
+		Integer[] order = new Integer[nbMerged];
+		for (int i = 0; i < nbMerged; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> counts[b] - counts[a]);
+
+		this.size = Math.min(nbMerged, this.keys.length);
+		Arrays.fill(this.slots, 0);
+		for (int i = 0; i < this.size; i++) {
+			int merged = order[this.size - 1 - i];
+			this.keys[i] = keys[merged];
+			this.hashes[i] = hashes[merged];
+			this.counts[i] = counts[merged];
+			this.errors[i] = errors[merged];
+			this.link(i);
+		}
+	}
+
+	/**
+	 * Finds the counter of an element given either as a string or as a range
+	 * of a char buffer.
+	 *
+	 * @param hash The hash of the element.
+	 * @param key The element, or null if it is given in a buffer.
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @return the position of the element's counter in the heap, -1 if the
+	 * 		element is not monitored.
+	 */
+	protected int find(int hash, String key, char[] buf, int off, int len)
+	{
+		int mask = this.slots.length - 1;
+		for (int slot = ElementTable.mix(hash) & mask; this.slots[slot] != 0; slot = (slot + 1) & mask) {
+			int position = this.slots[slot] - 1;
+			if (this.hashes[position] == hash && (
+				key != null
+					? this.keys[position].equals(key)
+					: ElementTable.equals(this.keys[position], buf, off, len)
+			)) {
+				return position;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Starts monitoring an element, replacing the element with the smallest
+	 * count if all the counters are used.
+	 *
+	 * @param key The element.
+	 * @param hash The hash of the element.
+	 * @param count The number of occurences of the element.
+	 * @param error The maximum overestimation of the occurences.
+	 */
+	protected void insert(String key, int hash, int count, int error)
+	{
+		int position = this.size;
+		if (position < this.keys.length) {
+			this.size++;
+		}
+		else {
+			// The new element may have occured as often as the replaced one
+			position = 0;
+			count += this.counts[0];
+			error += this.counts[0];
+			this.unlink(this.slotOf[0]);
+		}
+
+		this.keys[position] = key;
+		this.hashes[position] = hash;
+		this.counts[position] = count;
+		this.errors[position] = error;
+		this.link(position);
+		if (position == 0) {
+			this.siftDown(0);
+		}
+		else {
+			this.siftUp(position);
+		}
+	}
+
+	/**
+	 * Indexes a counter in the hash table.
+	 *
+	 * @param position The position of the counter in the heap.
+	 */
+	protected void link(int position)
+	{
+		int mask = this.slots.length - 1,
+			slot = ElementTable.mix(this.hashes[position]) & mask;
+		while (this.slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		this.slots[slot] = position + 1;
+		this.slotOf[position] = slot;
+	}
+
+	/**
+	 * Removes a slot from the hash table. The following slots of the probe
+	 * sequence are moved back, so no element becomes unreachable.
+	 *
+	 * @param slot The slot to free.
+	 */
+	protected void unlink(int slot)
+	{
+		int mask = this.slots.length - 1,
+			hole = slot;
+		for (int next = (slot + 1) & mask; this.slots[next] != 0; next = (next + 1) & mask) {
+			int position = this.slots[next] - 1,
+				ideal = ElementTable.mix(this.hashes[position]) & mask;
+			// The element can fill the hole if the hole is between its ideal
+			// slot and its current one
+			if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+				this.slots[hole] = this.slots[next];
+				this.slotOf[position] = hole;
+				hole = next;
+			}
+		}
+		this.slots[hole] = 0;
+	}
+
+	/**
+	 * Moves a counter up the heap until its parent's count is not greater.
+	 *
+	 * @param position The position of the counter in the heap.
+	 */
+	protected void siftUp(int position)
+	{
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (this.counts[parent] <= this.counts[position]) {
+				return;
+			}
+			this.swap(position, parent);
+			position = parent;
+		}
+	}
+
+	/**
+	 * Moves a counter down the heap until its children's counts are not
+	 * smaller.
+	 *
+	 * @param position The position of the counter in the heap.
+	 */
+	protected void siftDown(int position)
+	{
+		while (true) {
+			int child = position * 2 + 1;
+			if (child >= this.size) {
+				return;
+			}
+			if (child + 1 < this.size && this.counts[child + 1] < this.counts[child]) {
+				child++;
+			}
+			if (this.counts[position] <= this.counts[child]) {
+				return;
+			}
+			this.swap(position, child);
+			position = child;
+		}
+	}
+
+	/**
+	 * Swaps two counters of the heap and updates their slots.
+	 *
+	 * @param a The position of the first counter.
+	 * @param b The position of the second counter.
+	 */
+	protected void swap(int a, int b)
+	{
+		String key = this.keys[a];
+		this.keys[a] = this.keys[b];
+		this.keys[b] = key;
+
+		int tmp = this.hashes[a];
+		this.hashes[a] = this.hashes[b];
+		this.hashes[b] = tmp;
+
+		tmp = this.counts[a];
+		this.counts[a] = this.counts[b];
+		this.counts[b] = tmp;
+
+		tmp = this.errors[a];
+		this.errors[a] = this.errors[b];
+		this.errors[b] = tmp;
+
+		tmp = this.slotOf[a];
+		this.slotOf[a] = this.slotOf[b];
+		this.slotOf[b] = tmp;
+
+		this.slots[this.slotOf[a]] = a + 1;
+		this.slots[this.slotOf[b]] = b + 1;
+	}
+}
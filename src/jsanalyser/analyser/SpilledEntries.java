@@ -0,0 +1,128 @@
+package jsanalyser.analyser;
+
+import java.util.AbstractSequentialList;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import jsanalyser.report.Entry;
+
+/**
+ * Entries of the report of an analyser whose elements were spilled in runs
+ * (see {@link SpillingElementTable}), built while they are iterated.
+ * <p>
+ * Each iteration merges the runs again, and the entries are built one at a
+ * time with the hooks of the analyser, so the entries are never all in
+ * memory. The list can only be iterated forward, and cannot be modified.
+ * </p>
+ */
+class SpilledEntries extends AbstractSequentialList<Entry>
+{
+	/**
+	 * The analyser of the elements.
+	 */
+	protected Analyser analyser;
+
+	/**
+	 * The elements of the analyser.
+	 */
+	protected SpillingElementTable elements;
+
+	/**
+	 * Construct
+	 *
+	 * @param analyser The analyser of the elements.
+	 * @param elements The elements of the analyser.
+	 */
+	SpilledEntries(Analyser analyser, SpillingElementTable elements)
+	{
+		this.analyser = analyser;
+		this.elements = elements;
+	}
+
+	/**
+	 * @return the number of distinct elements.
+	 */
+	public int size()
+	{
+		return this.elements.size();
+	}
+
+	/**
+	 * @param index The index of the first entry returned.
+	 * @return an iterator on the entries, from the given one.
+	 */
+	public ListIterator<Entry> listIterator(final int index)
+	{
+		final SpillingElementTable.Cursor cursor = this.elements.cursor();
+		for (int i = 0; i < index; i++) {
+			cursor.next();
+		}
+
+		return new ListIterator<Entry>() {
+			/**
+			 * Index of the next entry.
+			 */
+			protected int next = index;
+
+			/**
+			 * True if the cursor is on the next entry.
+			 */
+			protected boolean ready = cursor.next();
+
+			public boolean hasNext()
+			{
+				return this.ready;
+			}
+
+			public Entry next()
+			{
+				if (!this.ready) {
+					throw new NoSuchElementException();
+				}
+
+				String key = cursor.getKey();
+				int count = cursor.getCount();
+				Analyser analyser = SpilledEntries.this.analyser;
+				Entry entry = new Entry(key, count, 0, analyser.optimisation(key, count), analyser.getPositions(key), analyser.savings(key, count), null, analyser.hazard(key));
+				this.next++;
+				this.ready = cursor.next();
+				return entry;
+			}
+
+			public int nextIndex()
+			{
+				return this.next;
+			}
+
+			public boolean hasPrevious()
+			{
+				return false;
+			}
+
+			public Entry previous()
+			{
+				throw new UnsupportedOperationException("The entries can only be iterated forward");
+			}
+
+			public int previousIndex()
+			{
+				return this.next - 1;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException("The entries cannot be modified");
+			}
+
+			public void set(Entry entry)
+			{
+				throw new UnsupportedOperationException("The entries cannot be modified");
+			}
+
+			public void add(Entry entry)
+			{
+				throw new UnsupportedOperationException("The entries cannot be modified");
+			}
+		};
+	}
+}
@@ -0,0 +1,512 @@
+package jsanalyser.analyser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Hash table counting the occurences of elements exactly, with a bounded
+ * memory.
+ * <p>
+ * When the estimated memory of the table exceeds its budget, its elements are
+ * sorted and written with their counts in a temporary run file, and the table
+ * is emptied. The elements are then visited by a k-way merge of the runs and
+ * of the table, which adds the counts of the same element found in several
+ * runs, so the elements are visited sorted, one at a time. Beyond
+ * {@link #MAX_RUNS} runs, the runs are merged in one, so the number of files
+ * read at once is bounded too.
+ * </p>
+ * <p>
+ * The runs are deleted when the table is cleared, or when the JVM exits.
+ * </p>
+ */
+public class SpillingElementTable extends ElementTable
+{
+	/**
+	 * Estimated number of bytes of a slot of the table: its element
+	 * reference, hash and count.
+	 */
+	protected static final int SLOT_BYTES = 12;
+
+	/**
+	 * Estimated number of bytes of a string, its chars excepted.
+	 */
+	protected static final int STRING_BYTES = 40;
+
+	/**
+	 * Maximum number of runs, merged in one when it is reached.
+	 */
+	public static final int MAX_RUNS = 64;
+
+	/**
+	 * Size of the buffer of each run read or written.
+	 */
+	protected static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Maximum number of bytes of the table.
+	 */
+	protected long budget;
+
+	/**
+	 * Estimated number of bytes of the strings of the table.
+	 */
+	protected long keysBytes;
+
+	/**
+	 * Files of the elements spilled, each one sorted.
+	 */
+	protected List<Path> runs = new ArrayList<Path>();
+
+	/**
+	 * Number of distinct elements of the runs and of the table, -1 if it must
+	 * be counted again.
+	 */
+	protected int nbElements = -1;
+
+	/**
+	 * Construct
+	 *
+	 * @param budget The maximum number of bytes of the table.
+	 */
+	public SpillingElementTable(long budget)
+	{
+		this.budget = budget;
+	}
+
+	/**
+	 * @return the number of spilled runs.
+	 */
+	public int getNbRuns()
+	{
+		return this.runs.size();
+	}
+
+	/**
+	 * @return the number of distinct elements of the runs and of the table,
+	 * 		counted by a merge of the runs if some elements were spilled.
+	 */
+	public int size()
+	{
+		if (this.runs.isEmpty()) {
+			return this.size;
+		}
+
+		if (this.nbElements == -1) {
+			int nbElements = 0;
+			for (Cursor cursor = this.cursor(); cursor.next();) {
+				nbElements++;
+			}
+			this.nbElements = nbElements;
+		}
+		return this.nbElements;
+	}
+
+	/**
+	 * Visits all the elements, sorted.
+	 *
+	 * @param visitor The visitor called for each element.
+	 */
+	public void forEach(Visitor visitor)
+	{
+		for (Cursor cursor = this.cursor(); cursor.next();) {
+			visitor.visit(cursor.getKey(), cursor.getCount(), 0);
+		}
+	}
+
+	/**
+	 * @param key The element.
+	 * @return the number of occurences of the element, 0 if it is not in the
+	 * 		table. The runs are read until the element.
+	 */
+	public int get(String key)
+	{
+		int count = super.get(key);
+		for (Path run : this.runs) {
+			try (RunReader reader = new RunReader(run)) {
+				while (reader.next() && reader.key.compareTo(key) <= 0) {
+					if (reader.key.equals(key)) {
+						count += reader.count;
+						break;
+					}
+				}
+			} catch (IOException io) {
+				throw new UncheckedIOException(io);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds all the elements to another store, sorted.
+	 *
+	 * @param target The store receiving the elements.
+	 */
+	public void addTo(ElementStore target)
+	{
+		for (Cursor cursor = this.cursor(); cursor.next();) {
+			target.add(cursor.getKey(), cursor.getCount());
+		}
+	}
+
+	/**
+	 * Removes all the elements, and deletes the runs.
+	 */
+	public void clear()
+	{
+		super.clear();
+		this.keysBytes = 0;
+		this.nbElements = -1;
+		for (Path run : this.runs) {
+			delete(run);
+		}
+		this.runs.clear();
+	}
+
+	/**
+	 * @return a cursor on the elements, sorted, merging the runs and the
+	 * 		table.
+	 */
+	public Cursor cursor()
+	{
+		List<Source> sources = new ArrayList<Source>(this.runs.size() + 1);
+		try {
+			for (Path run : this.runs) {
+				sources.add(new RunReader(run));
+			}
+		} catch (IOException io) {
+			for (Source source : sources) {
+				source.close();
+			}
+			throw new UncheckedIOException(io);
+		}
+		sources.add(new TableReader(this.sortedSlots()));
+		return new Cursor(sources);
+	}
+
+	/**
+	 * Counts the bytes of the new element, and spills the table if it
+	 * exceeds the budget.
+	 */
+	protected void insert(int slot, String key, int hash, int count)
+	{
+		super.insert(slot, key, hash, count);
+		this.keysBytes += STRING_BYTES + 2L * key.length();
+		this.nbElements = -1;
+		if (this.keysBytes + (long) this.keys.length * SLOT_BYTES > this.budget) {
+			this.spill();
+		}
+	}
+
+	/**
+	 * Writes the elements of the table in a new run, sorted, and empties the
+	 * table. The runs are merged in one first if there are
+	 * {@link #MAX_RUNS} of them.
+	 */
+	protected void spill()
+	{
+		try {
+			if (this.runs.size() == MAX_RUNS) {
+				List<Source> sources = new ArrayList<Source>(this.runs.size());
+				for (Path run : this.runs) {
+					sources.add(new RunReader(run));
+				}
+				Path merged = this.write(new Cursor(sources));
+				for (Path run : this.runs) {
+					delete(run);
+				}
+				this.runs.clear();
+				this.runs.add(merged);
+			}
+
+			List<Source> table = new ArrayList<Source>(1);
+			table.add(new TableReader(this.sortedSlots()));
+			this.runs.add(this.write(new Cursor(table)));
+		} catch (IOException io) {
+			throw new UncheckedIOException(io);
+		}
+
+		super.clear();
+		this.keysBytes = 0;
+		this.nbElements = -1;
+	}
+
+	/**
+	 * Writes elements in a new run.
+	 *
+	 * @param cursor The cursor on the elements, sorted.
+	 * @return the file of the run.
+	 * @throws IOException if the run cannot be written.
+	 */
+	protected Path write(Cursor cursor) throws IOException
+	{
+		Path run = Files.createTempFile("jsanalyser-", ".run");
+		run.toFile().deleteOnExit();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+			while (cursor.next()) {
+				out.writeInt(cursor.getKey().length());
+				out.writeChars(cursor.getKey());
+				out.writeInt(cursor.getCount());
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * @return the occupied slots of the table, sorted by element.
+	 */
+	protected Integer[] sortedSlots()
+	{
+		Integer[] slots = new Integer[this.size];
+		int nbSlots = 0;
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.keys[slot] != null) {
+				slots[nbSlots++] = slot;
+			}
+		}
+		Arrays.sort(slots, (a, b) -> this.keys[a].compareTo(this.keys[b]));
+		return slots;
+	}
+
+	/**
+	 * Deletes a run, ignoring the error if it cannot be deleted, as it will be
+	 * on exit.
+	 *
+	 * @param run The file of the run.
+	 */
+	protected static void delete(Path run)
+	{
+		try {
+			Files.deleteIfExists(run);
+		} catch (IOException io) {
+			// Deleted on exit
+		}
+	}
+
+	/**
+	 * Cursor on the elements of sorted sources, merged.
+	 * <p>
+	 * The sources are kept in a heap by their current element, so each
+	 * element is found by comparing it with log(k) elements of k sources.
+	 * The sources are closed once they are read.
+	 * </p>
+	 */
+	public static class Cursor
+	{
+		/**
+		 * Sources having a current element, the least one first.
+		 */
+		protected PriorityQueue<Source> heap;
+
+		/**
+		 * Current element.
+		 */
+		protected String key;
+
+		/**
+		 * Number of occurences of the current element, in all the sources.
+		 */
+		protected int count;
+
+		/**
+		 * Construct
+		 *
+		 * @param sources The sources of the elements, each one sorted.
+		 */
+		protected Cursor(List<Source> sources)
+		{
+			this.heap = new PriorityQueue<Source>(Math.max(1, sources.size()), (a, b) -> a.key.compareTo(b.key));
+			for (Source source : sources) {
+				this.advance(source);
+			}
+		}
+
+		/**
+		 * Moves to the next element.
+		 *
+		 * @return false if there are no more elements.
+		 */
+		public boolean next()
+		{
+			Source source = this.heap.poll();
+			if (source == null) {
+				return false;
+			}
+
+			this.key = source.key;
+			this.count = source.count;
+			this.advance(source);
+			while (!this.heap.isEmpty() && this.heap.peek().key.equals(this.key)) {
+				source = this.heap.poll();
+				this.count += source.count;
+				this.advance(source);
+			}
+			return true;
+		}
+
+		/**
+		 * @return the current element.
+		 */
+		public String getKey()
+		{
+			return this.key;
+		}
+
+		/**
+		 * @return the number of occurences of the current element.
+		 */
+		public int getCount()
+		{
+			return this.count;
+		}
+
+		/**
+		 * Moves a source to its next element, and puts it back in the heap,
+		 * or closes it if it is read.
+		 *
+		 * @param source The source.
+		 */
+		protected void advance(Source source)
+		{
+			try {
+				if (source.next()) {
+					this.heap.add(source);
+				}
+				else {
+					source.close();
+				}
+			} catch (IOException io) {
+				source.close();
+				throw new UncheckedIOException(io);
+			}
+		}
+	}
+
+	/**
+	 * Sorted source of elements.
+	 */
+	protected abstract static class Source implements AutoCloseable
+	{
+		/**
+		 * Current element.
+		 */
+		protected String key;
+
+		/**
+		 * Number of occurences of the current element.
+		 */
+		protected int count;
+
+		/**
+		 * Moves to the next element.
+		 *
+		 * @return false if there are no more elements.
+		 * @throws IOException if the source cannot be read.
+		 */
+		protected abstract boolean next() throws IOException;
+
+		/**
+		 * Releases the source.
+		 */
+		public void close()
+		{
+		}
+	}
+
+	/**
+	 * Source reading a run.
+	 */
+	protected static class RunReader extends Source
+	{
+		/**
+		 * Stream of the run.
+		 */
+		protected DataInputStream in;
+
+		/**
+		 * Construct
+		 *
+		 * @param run The file of the run.
+		 * @throws IOException if the run cannot be opened.
+		 */
+		protected RunReader(Path run) throws IOException
+		{
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+		}
+
+		protected boolean next() throws IOException
+		{
+			int length;
+			try {
+				length = this.in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = this.in.readChar();
+			}
+			this.key = new String(chars);
+			this.count = this.in.readInt();
+			return true;
+		}
+
+		public void close()
+		{
+			try {
+				this.in.close();
+			} catch (IOException io) {
+				// Nothing more to read
+			}
+		}
+	}
+
+	/**
+	 * Source reading the elements of the table, sorted.
+	 */
+	protected class TableReader extends Source
+	{
+		/**
+		 * Occupied slots of the table, sorted by element.
+		 */
+		protected Integer[] slots;
+
+		/**
+		 * Index of the next slot.
+		 */
+		protected int next;
+
+		/**
+		 * Construct
+		 *
+		 * @param slots The occupied slots of the table, sorted by element.
+		 */
+		protected TableReader(Integer[] slots)
+		{
+			this.slots = slots;
+		}
+
+		protected boolean next()
+		{
+			if (this.next == this.slots.length) {
+				return false;
+			}
+
+			int slot = this.slots[this.next++];
+			this.key = SpillingElementTable.this.keys[slot];
+			this.count = SpillingElementTable.this.counts[slot];
+			return true;
+		}
+	}
+}
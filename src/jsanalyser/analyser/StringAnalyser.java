@@ -1,7 +1,13 @@
 package jsanalyser.analyser;
 
+import java.util.Collections;
 import java.util.Map;
 
+import jsanalyser.report.Entry;
+import jsanalyser.report.Optimisation;
+import jsanalyser.report.Savings;
+import jsanalyser.report.Section;
+
 /**
  * Analyser class for the strings.
  * <p>
@@ -20,32 +26,115 @@ import java.util.Map;
  * The fact that a value is optimisable (with or without a new var) depends on
  * the value's size and on the number of occurences of the value.
  * </p>
+ * <p>
+ * With a {@link GzipEstimator}, the bytes saved in the gzipped code are also
+ * estimated for the optimisable strings, which stay optimisable only if the
+ * gzipped code is smaller, and are reported first, ranked by those savings.
+ * </p>
  */
 public class StringAnalyser extends Analyser
 {
+	/**
+	 * Estimator of the savings in the gzipped code, null if they are not
+	 * estimated.
+	 */
+	protected GzipEstimator gzip;
+
 	public StringAnalyser()
 	{
 		super();
+		this.name = "strings";
 		this.reportTitle = "Strings:";
 	}
 
 	/**
-	 * The specific report will display if the code can be optimised by
-	 * fectorising the string.
+	 * Estimates the savings of the optimisable strings in the gzipped code.
+	 *
+	 * @param gzip The estimator, containing the analysed code, or null to not
+	 * 		estimate the savings.
+	 */
+	public void setGzipEstimator(GzipEstimator gzip)
+	{
+		this.gzip = gzip;
+	}
+
+	/**
+	 * The estimator of the savings in the gzipped code is kept if both
+	 * analysers found their elements in the same code, such as successive
+	 * snapshots of a stream.
 	 */
-	public void specificReport(boolean verbose, String element, Integer nbOccurences)
+	public Analyser merge(Analyser other)
+	{
+		boolean empty = this.nbOccurences == 0;
+		super.merge(other);
+		GzipEstimator gzip = ((StringAnalyser) other).gzip;
+		if (this.gzip != gzip) {
+			this.gzip = empty ? gzip : null;
+		}
+		return this;
+	}
+
+	/**
+	 * With the savings in the gzipped code estimated, the entries are ranked
+	 * by those savings.
+	 */
+	protected Section buildReport(final int top)
+	{
+		Section section = super.buildReport(top);
+		if (this.gzip != null) {
+			Collections.sort(section.getEntries(), Entry.BY_COMPRESSED_SAVINGS);
+		}
+		return section;
+	}
+
+	/**
+	 * The optimisation test tells if the code can be optimised by
+	 * fectorising the string. With a {@link GzipEstimator}, the string must
+	 * also shorten the gzipped code.
+	 */
+	public Optimisation optimisation(String element, int nbOccurences)
+	{
+		Optimisation optimisation = this.rawOptimisation(element, nbOccurences);
+		if (optimisation != Optimisation.NON_OPTIMISABLE && this.gzip != null) {
+			Savings savings = this.gzip.savings(element);
+			if (savings != null && savings.getCompressedBytes() <= 0) {
+				return Optimisation.NON_OPTIMISABLE;
+			}
+		}
+		return optimisation;
+	}
+
+	/**
+	 * Tests if the raw code can be optimised by factorising the string.
+	 *
+	 * @param element The string.
+	 * @param nbOccurences The number of occurences of the string.
+	 * @return the result of the test.
+	 */
+	protected Optimisation rawOptimisation(String element, int nbOccurences)
 	{
 		int strLength = element.length(),
 			relationLenOccurences = (strLength + 1) * nbOccurences - strLength;
 
 		if (9 < relationLenOccurences) {
-			System.out.println("\tOptimisable");
+			return Optimisation.OPTIMISABLE;
 		}
 		else if (5 < relationLenOccurences) {
-			System.out.println("\tOptimisable with existing var");
+			return Optimisation.OPTIMISABLE_WITH_EXISTING_VAR;
 		}
-		else if (verbose) {
-			System.out.println("\tNon optimisable");
+		return Optimisation.NON_OPTIMISABLE;
+	}
+
+	/**
+	 * The savings are estimated for the strings optimisable in the raw code,
+	 * if there is a {@link GzipEstimator}.
+	 */
+	public Savings savings(String element, int nbOccurences)
+	{
+		if (this.gzip == null || this.rawOptimisation(element, nbOccurences) == Optimisation.NON_OPTIMISABLE) {
+			return null;
 		}
+
+		return this.gzip.savings(element);
 	}
 }
@@ -13,6 +13,7 @@ public class TokenAnalyser extends Analyser
 	public TokenAnalyser()
 	{
 		super();
+		this.name = "tokens";
 		this.reportTitle = "Tokens:";
 	}
 }
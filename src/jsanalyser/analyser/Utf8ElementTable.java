@@ -0,0 +1,273 @@
+package jsanalyser.analyser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hash table counting the occurences of elements stored as UTF-8 bytes.
+ * <p>
+ * The elements found by the {@link jsanalyser.Utf8Lexer} are looked up
+ * directly from a range of the parsed bytes, and are only copied the first
+ * time they are seen, as their bytes. They are decoded when they are visited,
+ * to be reported.
+ * </p>
+ * <p>
+ * The elements given as strings or chars, as when merging another store, are
+ * encoded in UTF-8, so an element has one entry however it is given.
+ * </p>
+ * <p>
+ * The table uses open addressing with linear probing, as
+ * {@link ElementTable}.
+ * </p>
+ */
+public class Utf8ElementTable implements ElementStore
+{
+	/**
+	 * Elements of each slot, in UTF-8, null for the free slots.
+	 */
+	protected byte[][] keys;
+
+	/**
+	 * Hash of the element of each slot.
+	 */
+	protected int[] hashes;
+
+	/**
+	 * Number of occurences of the element of each slot.
+	 */
+	protected int[] counts;
+
+	/**
+	 * Number of elements in the table.
+	 */
+	protected int size;
+
+	/**
+	 * Construct
+	 */
+	public Utf8ElementTable()
+	{
+		this.keys = new byte[ElementTable.INITIAL_CAPACITY][];
+		this.hashes = new int[ElementTable.INITIAL_CAPACITY];
+		this.counts = new int[ElementTable.INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @return the number of elements in the table.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Visits all the elements of the table, in no particular order. The
+	 * elements are decoded for the visitor.
+	 *
+	 * @param visitor The visitor called for each element.
+	 */
+	public void forEach(Visitor visitor)
+	{
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.keys[slot] != null) {
+				visitor.visit(new String(this.keys[slot], StandardCharsets.UTF_8), this.counts[slot], 0);
+			}
+		}
+	}
+
+	/**
+	 * @param key The element.
+	 * @return the number of occurences of the element, 0 if it is not in the
+	 * 		table.
+	 */
+	public int get(String key)
+	{
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		int slot = this.find(bytes, 0, bytes.length, hash(bytes, 0, bytes.length));
+		return this.keys[slot] == null ? 0 : this.counts[slot];
+	}
+
+	/**
+	 * @param key The element.
+	 * @return 0, the counts are exact.
+	 */
+	public int error(String key)
+	{
+		return 0;
+	}
+
+	/**
+	 * Adds occurences to an element, encoded in UTF-8.
+	 *
+	 * @param key The element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(String key, int count)
+	{
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		this.add(bytes, 0, bytes.length, count);
+	}
+
+	/**
+	 * Adds occurences to an element stored in a range of a char buffer,
+	 * encoded in UTF-8.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(char[] buf, int off, int len, int count)
+	{
+		this.add(new String(buf, off, len), count);
+	}
+
+	/**
+	 * @param buf The buffer containing an element.
+	 * @param off The index of the element's first char in the buffer.
+	 * @param len The number of chars of the element.
+	 * @return null, the elements are kept as UTF-8 bytes.
+	 */
+	public String key(char[] buf, int off, int len)
+	{
+		return null;
+	}
+
+	/**
+	 * Adds occurences to an element stored in UTF-8 in a range of a byte
+	 * buffer. The bytes are only copied if the element is not in the table.
+	 *
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 * @param count The number of occurences to add.
+	 */
+	public void add(byte[] buf, int off, int len, int count)
+	{
+		int hash = hash(buf, off, len),
+			slot = this.find(buf, off, len, hash);
+		if (this.keys[slot] != null) {
+			this.counts[slot] += count;
+			return;
+		}
+
+		this.insert(slot, Arrays.copyOfRange(buf, off, off + len), hash, count);
+	}
+
+	/**
+	 * Adds all the elements of this table to another store. The elements are
+	 * only decoded if the other store is not a table of UTF-8 elements.
+	 *
+	 * @param target The store receiving the elements.
+	 */
+	public void addTo(ElementStore target)
+	{
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.keys[slot] == null) {
+				continue;
+			}
+
+			if (target instanceof Utf8ElementTable) {
+				target.add(this.keys[slot], 0, this.keys[slot].length, this.counts[slot]);
+			}
+			else {
+				target.add(new String(this.keys[slot], StandardCharsets.UTF_8), this.counts[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Removes all the elements. The slots are kept, unless the table has
+	 * grown over {@link ElementTable#MAX_KEPT_CAPACITY} slots.
+	 */
+	public void clear()
+	{
+		if (this.keys.length > ElementTable.MAX_KEPT_CAPACITY) {
+			this.keys = new byte[ElementTable.INITIAL_CAPACITY][];
+			this.hashes = new int[ElementTable.INITIAL_CAPACITY];
+			this.counts = new int[ElementTable.INITIAL_CAPACITY];
+		}
+		else {
+			Arrays.fill(this.keys, null);
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 * @param hash The element's hash.
+	 * @return the slot of the element, or the free slot where it would be
+	 * 		inserted.
+	 */
+	protected int find(byte[] buf, int off, int len, int hash)
+	{
+		int mask = this.keys.length - 1,
+			slot;
+		for (slot = ElementTable.mix(hash) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.hashes[slot] == hash && Arrays.equals(this.keys[slot], 0, this.keys[slot].length, buf, off, off + len)) {
+				break;
+			}
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Inserts a new element in a free slot, and grows the table if it is more
+	 * than half full.
+	 *
+	 * @param slot The free slot.
+	 * @param key The element's bytes.
+	 * @param hash The element's hash.
+	 * @param count The number of occurences of the element.
+	 */
+	protected void insert(int slot, byte[] key, int hash, int count)
+	{
+		this.keys[slot] = key;
+		this.hashes[slot] = hash;
+		this.counts[slot] = count;
+		if (++this.size * 2 <= this.keys.length) {
+			return;
+		}
+
+		byte[][] keys = this.keys;
+		int[] hashes = this.hashes,
+			counts = this.counts;
+		int mask = keys.length * 2 - 1;
+
+		this.keys = new byte[keys.length * 2][];
+		this.hashes = new int[keys.length * 2];
+		this.counts = new int[keys.length * 2];
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null) {
+				continue;
+			}
+
+			int newSlot = ElementTable.mix(hashes[i]) & mask;
+			while (this.keys[newSlot] != null) {
+				newSlot = (newSlot + 1) & mask;
+			}
+			this.keys[newSlot] = keys[i];
+			this.hashes[newSlot] = hashes[i];
+			this.counts[newSlot] = counts[i];
+		}
+	}
+
+	/**
+	 * @param buf The buffer containing the element.
+	 * @param off The index of the element's first byte in the buffer.
+	 * @param len The number of bytes of the element.
+	 * @return the hash of the element's bytes.
+	 */
+	protected static int hash(byte[] buf, int off, int len)
+	{
+		int hash = 0;
+		for (int i = off, end = off + len; i < end; i++) {
+			hash = 31 * hash + buf[i];
+		}
+
+		return hash;
+	}
+}
@@ -0,0 +1,92 @@
+package jsanalyser.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the analysers of a kind of elements, shared by all the
+ * parsers of the application.
+ * <p>
+ * Each parser has its own analysers, so the number of distinct elements is
+ * the one of the last analyser updated, which is the analyser of the whole
+ * code when a single input is parsed.
+ * </p>
+ */
+public class AnalyserStats implements AnalyserStatsMBean
+{
+	/**
+	 * Number of elements found.
+	 */
+	protected LongAdder elements = new LongAdder();
+
+	/**
+	 * Number of distinct elements of the last updated analyser.
+	 */
+	protected volatile long distinctElements;
+
+	/**
+	 * Number of reports built.
+	 */
+	protected LongAdder reports = new LongAdder();
+
+	/**
+	 * Time spent building the reports, in nanoseconds.
+	 */
+	protected LongAdder reportTime = new LongAdder();
+
+	/**
+	 * Counts the elements found in a parsed buffer.
+	 *
+	 * @param nbElements The number of elements found.
+	 * @param distinctElements The number of distinct elements of the analyser
+	 * 		after the buffer.
+	 */
+	public void found(long nbElements, long distinctElements)
+	{
+		this.elements.add(nbElements);
+		this.distinctElements = distinctElements;
+	}
+
+	/**
+	 * Counts a built report.
+	 *
+	 * @param nanos The time spent building it, in nanoseconds.
+	 */
+	public void reported(long nanos)
+	{
+		this.reports.increment();
+		this.reportTime.add(nanos);
+	}
+
+	/**
+	 * @return the number of elements found.
+	 */
+	public long getElementsFound()
+	{
+		return this.elements.sum();
+	}
+
+	/**
+	 * @return the number of distinct elements of the last updated analyser.
+	 */
+	public long getDistinctElements()
+	{
+		return this.distinctElements;
+	}
+
+	/**
+	 * @return the number of reports built.
+	 */
+	public long getReports()
+	{
+		return this.reports.sum();
+	}
+
+	/**
+	 * @return the time spent building the reports, in milliseconds.
+	 */
+	public long getReportTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(this.reportTime.sum());
+	}
+}
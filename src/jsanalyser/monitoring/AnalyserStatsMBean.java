@@ -0,0 +1,29 @@
+package jsanalyser.monitoring;
+
+/**
+ * Management interface of the statistics of an analyser (see
+ * {@link AnalyserStats}).
+ */
+public interface AnalyserStatsMBean
+{
+	/**
+	 * @return the number of elements found, each occurence counting.
+	 */
+	public long getElementsFound();
+
+	/**
+	 * @return the number of distinct elements in the last updated analyser.
+	 */
+	public long getDistinctElements();
+
+	/**
+	 * @return the number of reports of the analyser built.
+	 */
+	public long getReports();
+
+	/**
+	 * @return the time spent building the reports of the analyser, in
+	 * 		milliseconds.
+	 */
+	public long getReportTimeMillis();
+}
@@ -0,0 +1,35 @@
+package jsanalyser.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the parsing of a chunk of code, by the parallel
+ * parser.
+ */
+@Name("jsanalyser.Chunk")
+@Label("Parse Chunk")
+@Category("JsAnalyser")
+@Description("Parsing of a chunk of code split for the parallel parsing")
+public class ChunkEvent extends jdk.jfr.Event
+{
+	/**
+	 * Number of chars of the chunk.
+	 */
+	@Label("Chars")
+	public long chars;
+
+	/**
+	 * State the chunk is parsed from.
+	 */
+	@Label("Entry State")
+	public int entryState;
+
+	/**
+	 * If true, the chunk is parsed again, its speculative state being wrong.
+	 */
+	@Label("Reparsed")
+	public boolean reparsed;
+}
@@ -0,0 +1,95 @@
+package jsanalyser.monitoring;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Entry point of the instrumentation of the application.
+ * <p>
+ * The statistics are only collected once enabled, and exposed as JMX MBeans:
+ * "jsanalyser:type=Parser" for the parsing and "jsanalyser:type=Analyser,
+ * name=..." for each kind of elements. While disabled, the instrumented code
+ * only tests once per buffer of chars whether the statistics are enabled.
+ * </p>
+ * <p>
+ * The flight recorder events ({@link ParseEvent}, {@link ChunkEvent},
+ * {@link ReportEvent}) do not depend on this class, they are emitted while a
+ * recording is running.
+ * </p>
+ */
+public class Monitoring
+{
+	/**
+	 * Statistics of the parsing, null while disabled.
+	 */
+	protected static volatile ParserStats parserStats;
+
+	/**
+	 * Names of the analysers having statistics.
+	 */
+	protected static String[] analyserNames;
+
+	/**
+	 * Statistics of the analysers, same index as {@link #analyserNames}, null
+	 * while disabled.
+	 */
+	protected static volatile AnalyserStats[] analyserStats;
+
+	/**
+	 * Enables the statistics and registers their MBeans in the platform MBean
+	 * server. Does nothing if already enabled.
+	 *
+	 * @param names The names of the analysers, such as "strings".
+	 * @throws JMException if the MBeans cannot be registered.
+	 */
+	public static synchronized void enable(String[] names) throws JMException
+	{
+		if (parserStats != null) {
+			return;
+		}
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ParserStats parser = new ParserStats();
+		AnalyserStats[] analysers = new AnalyserStats[names.length];
+		server.registerMBean(parser, new ObjectName("jsanalyser:type=Parser"));
+		for (int i = 0; i < names.length; i++) {
+			analysers[i] = new AnalyserStats();
+			server.registerMBean(analysers[i], new ObjectName("jsanalyser:type=Analyser,name=" + names[i]));
+		}
+
+		analyserNames = names.clone();
+		analyserStats = analysers;
+		parserStats = parser;
+	}
+
+	/**
+	 * @return the statistics of the parsing, null if they are disabled.
+	 */
+	public static ParserStats getParserStats()
+	{
+		return parserStats;
+	}
+
+	/**
+	 * @param name The name of an analyser, such as "strings".
+	 * @return the statistics of the analysers of this name, null if they are
+	 * 		disabled.
+	 */
+	public static AnalyserStats getAnalyserStats(String name)
+	{
+		AnalyserStats[] stats = analyserStats;
+		if (stats == null) {
+			return null;
+		}
+
+		for (int i = 0; i < stats.length; i++) {
+			if (analyserNames[i].equals(name)) {
+				return stats[i];
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,34 @@
+package jsanalyser.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the parsing of an input, such as a file or stdin.
+ * <p>
+ * The events only cost something while they are recorded, such as with
+ * {@code -XX:StartFlightRecording}.
+ * </p>
+ */
+@Name("jsanalyser.Parse")
+@Label("Parse")
+@Category("JsAnalyser")
+@Description("Parsing of an input")
+public class ParseEvent extends jdk.jfr.Event
+{
+	/**
+	 * Parsed input, a file path or "stdin".
+	 */
+	@Label("Source")
+	public String source;
+
+	/**
+	 * Number of bytes read.
+	 */
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,203 @@
+package jsanalyser.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the parsing, shared by all the parsers of the application.
+ * <p>
+ * The statistics are updated once per buffer of chars given to a parser,
+ * never per char. The time spent in each parsing method of the legacy engine
+ * is estimated by timing the methods on a sample of the chars only (see
+ * {@link #SAMPLE_INTERVAL}). The methods taking a few nanoseconds per char,
+ * the cost of reading the clock is measured once and deducted from their
+ * times.
+ * </p>
+ */
+public class ParserStats implements ParserStatsMBean
+{
+	/**
+	 * Number of chars parsed for each char whose parsing methods are timed,
+	 * a power of 2.
+	 */
+	public static final int SAMPLE_INTERVAL = 64;
+
+	/**
+	 * Index of {@code Parser.parseComments} in the methods times.
+	 */
+	public static final int PARSE_COMMENTS = 0;
+
+	/**
+	 * Index of {@code Parser.parseRegex} in the methods times.
+	 */
+	public static final int PARSE_REGEX = 1;
+
+	/**
+	 * Index of {@code Parser.parseString} in the methods times.
+	 */
+	public static final int PARSE_STRING = 2;
+
+	/**
+	 * Index of {@code Parser.parseNumeric} in the methods times.
+	 */
+	public static final int PARSE_NUMERIC = 3;
+
+	/**
+	 * Index of {@code Parser.parseToken} in the methods times.
+	 */
+	public static final int PARSE_TOKEN = 4;
+
+	/**
+	 * Number of timed parsing methods.
+	 */
+	protected static final int NB_METHODS = 5;
+
+	/**
+	 * Average time of two successive reads of the clock, in nanoseconds.
+	 */
+	protected static final long TIMER_OVERHEAD = timerOverhead();
+
+	/**
+	 * Number of chars parsed.
+	 */
+	protected LongAdder chars = new LongAdder();
+
+	/**
+	 * Number of buffers parsed.
+	 */
+	protected LongAdder chunks = new LongAdder();
+
+	/**
+	 * Time spent parsing, in nanoseconds.
+	 */
+	protected LongAdder parseTime = new LongAdder();
+
+	/**
+	 * Estimated time spent in each parsing method, in nanoseconds.
+	 */
+	protected LongAdder[] methodsTimes = new LongAdder[NB_METHODS];
+
+	/**
+	 * Construct
+	 */
+	public ParserStats()
+	{
+		for (int i = 0; i < NB_METHODS; i++) {
+			this.methodsTimes[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Counts a parsed buffer.
+	 *
+	 * @param nbChars The number of chars of the buffer.
+	 * @param nanos The time spent parsing it, in nanoseconds.
+	 */
+	public void parsed(long nbChars, long nanos)
+	{
+		this.chars.add(nbChars);
+		this.chunks.increment();
+		this.parseTime.add(nanos);
+	}
+
+	/**
+	 * Counts the time spent in a parsing method for a sampled char.
+	 *
+	 * @param method The index of the method, one of the PARSE_* constants.
+	 * @param nanos The time spent in the method, in nanoseconds, for the
+	 * 		sampled char.
+	 */
+	public void sampled(int method, long nanos)
+	{
+		this.methodsTimes[method].add(Math.max(0, nanos - TIMER_OVERHEAD) * SAMPLE_INTERVAL);
+	}
+
+	/**
+	 * @return the average time of two successive reads of the clock, in
+	 * 		nanoseconds.
+	 */
+	protected static long timerOverhead()
+	{
+		int nbReads = 100_000;
+		long start = System.nanoTime(),
+			last = start;
+		for (int i = 0; i < nbReads; i++) {
+			last = System.nanoTime();
+		}
+
+		return (last - start) / nbReads;
+	}
+
+	/**
+	 * @return the number of chars parsed.
+	 */
+	public long getCharsProcessed()
+	{
+		return this.chars.sum();
+	}
+
+	/**
+	 * @return the number of buffers of chars parsed.
+	 */
+	public long getChunksProcessed()
+	{
+		return this.chunks.sum();
+	}
+
+	/**
+	 * @return the time spent parsing, in milliseconds.
+	 */
+	public long getParseTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(this.parseTime.sum());
+	}
+
+	/**
+	 * @return the number of chars parsed per second of parsing.
+	 */
+	public long getCharsPerSecond()
+	{
+		long nanos = this.parseTime.sum();
+		return nanos == 0 ? 0 : (long) (this.chars.sum() * 1e9 / nanos);
+	}
+
+	/**
+	 * @return the estimated time spent in parseComments, in milliseconds.
+	 */
+	public long getParseCommentsMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(this.methodsTimes[PARSE_COMMENTS].sum());
+	}
+
+	/**
+	 * @return the estimated time spent in parseRegex, in milliseconds.
+	 */
+	public long getParseRegexMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(this.methodsTimes[PARSE_REGEX].sum());
+	}
+
+	/**
+	 * @return the estimated time spent in parseString, in milliseconds.
+	 */
+	public long getParseStringMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(this.methodsTimes[PARSE_STRING].sum());
+	}
+
+	/**
+	 * @return the estimated time spent in parseNumeric, in milliseconds.
+	 */
+	public long getParseNumericMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(this.methodsTimes[PARSE_NUMERIC].sum());
+	}
+
+	/**
+	 * @return the estimated time spent in parseToken, in milliseconds.
+	 */
+	public long getParseTokenMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(this.methodsTimes[PARSE_TOKEN].sum());
+	}
+}
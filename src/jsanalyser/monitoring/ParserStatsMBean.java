@@ -0,0 +1,57 @@
+package jsanalyser.monitoring;
+
+/**
+ * Management interface of the parsing statistics (see {@link ParserStats}).
+ */
+public interface ParserStatsMBean
+{
+	/**
+	 * @return the number of chars parsed.
+	 */
+	public long getCharsProcessed();
+
+	/**
+	 * @return the number of buffers of chars parsed.
+	 */
+	public long getChunksProcessed();
+
+	/**
+	 * @return the time spent parsing, in milliseconds.
+	 */
+	public long getParseTimeMillis();
+
+	/**
+	 * @return the number of chars parsed per second of parsing.
+	 */
+	public long getCharsPerSecond();
+
+	/**
+	 * @return the estimated time spent in {@code Parser.parseComments} by the
+	 * 		legacy engine, in milliseconds.
+	 */
+	public long getParseCommentsMillis();
+
+	/**
+	 * @return the estimated time spent in {@code Parser.parseRegex} by the
+	 * 		legacy engine, in milliseconds.
+	 */
+	public long getParseRegexMillis();
+
+	/**
+	 * @return the estimated time spent in {@code Parser.parseString} by the
+	 * 		legacy engine, in milliseconds.
+	 */
+	public long getParseStringMillis();
+
+	/**
+	 * @return the estimated time spent in {@code Parser.parseNumeric} by the
+	 * 		legacy engine, in milliseconds.
+	 */
+	public long getParseNumericMillis();
+
+	/**
+	 * @return the estimated time spent in {@code Parser.parseToken} by the
+	 * 		legacy engine, in milliseconds.
+	 */
+	public long getParseTokenMillis();
+}
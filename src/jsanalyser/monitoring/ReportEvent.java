@@ -0,0 +1,34 @@
+package jsanalyser.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the building of the report of an analyser.
+ */
+@Name("jsanalyser.Report")
+@Label("Report")
+@Category("JsAnalyser")
+@Description("Building of the report of an analyser")
+public class ReportEvent extends jdk.jfr.Event
+{
+	/**
+	 * Name of the analyser, such as "strings".
+	 */
+	@Label("Analyser")
+	public String analyser;
+
+	/**
+	 * Number of distinct elements of the analyser.
+	 */
+	@Label("Elements")
+	public long elements;
+
+	/**
+	 * Number of reported elements.
+	 */
+	@Label("Entries")
+	public long entries;
+}
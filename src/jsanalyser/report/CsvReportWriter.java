@@ -0,0 +1,149 @@
+package jsanalyser.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writer of the reports in CSV (RFC 4180), one line per element.
+ * <p>
+ * The columns are the title of the report, the name of the section, the
+ * element, its number of occurences, the maximum overestimation of this
+ * number and the result of the optimisation test of the element, empty if
+ * the element is not tested. A header line is written before the first
+ * report.
+ * </p>
+ * <p>
+ * They are followed by the bytes and lookups saved by the optimisation of
+ * the element, the bytes saved in the gzipped code, the performance hazard
+ * of the element, the files containing it, separated by spaces, and the
+ * positions of its occurences, as "line:column" separated by spaces. These
+ * columns are always written, empty for the elements without them, so all
+ * the reports of a stream (batch, snapshots) have the same columns whatever
+ * their first elements.
+ * </p>
+ */
+public class CsvReportWriter extends ReportWriter
+{
+	/**
+	 * Construct
+	 *
+	 * @param out The writer the reports are written in.
+	 */
+	public CsvReportWriter(Writer out)
+	{
+		super(out);
+	}
+
+	/**
+	 * Writes the elements of a report, one per line.
+	 *
+	 * @param report The report to write.
+	 * @throws IOException if the report cannot be written.
+	 */
+	protected void writeReport(Report report) throws IOException
+	{
+		if (this.nbReports == 0) {
+			this.out.write("report,section,element,occurences,error,optimisation,saved_bytes,saved_lookups,saved_gzip_bytes,hazard,files,positions\r\n");
+		}
+
+		for (Section section : report.getSections()) {
+			for (Entry entry : section.getEntries()) {
+				this.writeField(report.getTitle());
+				this.out.write(',');
+				this.writeField(section.getName());
+				this.out.write(',');
+				this.writeField(entry.getElement());
+				this.out.write(',');
+				this.out.write(Integer.toString(entry.getOccurences()));
+				this.out.write(',');
+				this.out.write(Integer.toString(entry.getError()));
+				this.out.write(',');
+				if (entry.getOptimisation() != null) {
+					this.out.write(entry.getOptimisation().getKey());
+				}
+				this.writeSavings(entry.getSavings());
+				this.out.write(',');
+				if (entry.getHazard() != null) {
+					this.writeField(entry.getHazard());
+				}
+				this.out.write(',');
+				if (entry.getFiles() != null) {
+					this.writeField(String.join(" ", entry.getFiles()));
+				}
+				this.out.write(',');
+				this.writePositions(entry.getPositions());
+				this.out.write("\r\n");
+			}
+		}
+	}
+
+	/**
+	 * Writes the columns of the estimated savings of an entry, in the raw
+	 * and in the gzipped code.
+	 *
+	 * @param savings The savings, or null if they are not estimated.
+	 * @throws IOException if the savings cannot be written.
+	 */
+	protected void writeSavings(Savings savings) throws IOException
+	{
+		this.out.write(',');
+		if (savings != null) {
+			this.out.write(Long.toString(savings.getBytes()));
+		}
+		this.out.write(',');
+		if (savings != null) {
+			this.out.write(Long.toString(savings.getLookups()));
+		}
+		this.out.write(',');
+		if (savings != null && savings.getCompressedBytes() != null) {
+			this.out.write(savings.getCompressedBytes().toString());
+		}
+	}
+
+	/**
+	 * Writes the positions of the occurences of an entry, as "line:column"
+	 * separated by spaces.
+	 *
+	 * @param positions The positions, or null if they are not indexed.
+	 * @throws IOException if the positions cannot be written.
+	 */
+	protected void writePositions(List<Position> positions) throws IOException
+	{
+		if (positions == null) {
+			return;
+		}
+
+		for (int i = 0; i < positions.size(); i++) {
+			if (i > 0) {
+				this.out.write(' ');
+			}
+			this.out.write(positions.get(i).toString());
+		}
+	}
+
+	/**
+	 * Writes a field, quoted if it contains a comma, a quote or a line
+	 * ending.
+	 *
+	 * @param field The field to write.
+	 * @throws IOException if the field cannot be written.
+	 */
+	protected void writeField(String field) throws IOException
+	{
+		boolean quoted = false;
+		for (int i = 0; i < field.length() && !quoted; i++) {
+			char c = field.charAt(i);
+			quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+
+		if (!quoted) {
+			this.out.write(field);
+			return;
+		}
+
+		this.out.write('"');
+		this.out.write(field.replace("\"", "\"\""));
+		this.out.write('"');
+	}
+}
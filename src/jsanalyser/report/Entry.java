@@ -0,0 +1,260 @@
+package jsanalyser.report;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Element of a report, with its number of occurences.
+ */
+public class Entry
+{
+	/**
+	 * Order of the entries by decreasing number of occurences, then by
+	 * element.
+	 */
+	public static final Comparator<Entry> BY_OCCURENCES = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b)
+		{
+			if (a.occurences != b.occurences) {
+				return a.occurences > b.occurences ? -1 : 1;
+			}
+			return a.element.compareTo(b.element);
+		}
+	};
+
+	/**
+	 * Order of the entries by element.
+	 */
+	public static final Comparator<Entry> BY_ELEMENT = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b)
+		{
+			return a.element.compareTo(b.element);
+		}
+	};
+
+	/**
+	 * Order of the entries by decreasing number of bytes saved in the
+	 * compressed code, the entries whose compressed savings are not estimated
+	 * being the last ones. The order of the entries saving as many bytes is
+	 * kept by a stable sort.
+	 */
+	public static final Comparator<Entry> BY_COMPRESSED_SAVINGS = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b)
+		{
+			Long aBytes = a.savings == null ? null : a.savings.getCompressedBytes(),
+				bBytes = b.savings == null ? null : b.savings.getCompressedBytes();
+			if (aBytes == null || bBytes == null) {
+				return aBytes == bBytes ? 0 : (aBytes == null ? 1 : -1);
+			}
+			return Long.compare(bBytes, aBytes);
+		}
+	};
+
+	/**
+	 * The element.
+	 */
+	protected String element;
+
+	/**
+	 * Number of occurences of the element, estimated if the counting is
+	 * approximate.
+	 */
+	protected int occurences;
+
+	/**
+	 * Maximum overestimation of the number of occurences, 0 if it is exact.
+	 */
+	protected int error;
+
+	/**
+	 * Result of the optimisation test of the element, null if the analyser
+	 * does not test its elements.
+	 */
+	protected Optimisation optimisation;
+
+	/**
+	 * Positions of the occurences of the element, in the order of the code,
+	 * null if they are not indexed.
+	 */
+	protected List<Position> positions;
+
+	/**
+	 * Estimated savings of the optimisation of the element, null if the
+	 * analyser does not estimate them.
+	 */
+	protected Savings savings;
+
+	/**
+	 * Names of the files containing the element, null if the element is not
+	 * searched in several files.
+	 */
+	protected List<String> files;
+
+	/**
+	 * Performance hazard of the element, such as the catastrophic
+	 * backtracking of a regex, null if it has none or is not checked.
+	 */
+	protected String hazard;
+
+	/**
+	 * Construct
+	 *
+	 * @param element The element.
+	 * @param occurences The number of occurences of the element.
+	 * @param error The maximum overestimation of the number of occurences.
+	 * @param optimisation The result of the optimisation test of the element,
+	 * 		or null.
+	 */
+	public Entry(String element, int occurences, int error, Optimisation optimisation)
+	{
+		this.element = element;
+		this.occurences = occurences;
+		this.error = error;
+		this.optimisation = optimisation;
+	}
+
+	/**
+	 * Construct
+	 *
+	 * @param element The element.
+	 * @param occurences The number of occurences of the element.
+	 * @param error The maximum overestimation of the number of occurences.
+	 * @param optimisation The result of the optimisation test of the element,
+	 * 		or null.
+	 * @param positions The positions of the occurences of the element, or
+	 * 		null if they are not indexed.
+	 */
+	public Entry(String element, int occurences, int error, Optimisation optimisation, List<Position> positions)
+	{
+		this(element, occurences, error, optimisation);
+		this.positions = positions;
+	}
+
+	/**
+	 * Construct
+	 *
+	 * @param element The element.
+	 * @param occurences The number of occurences of the element.
+	 * @param error The maximum overestimation of the number of occurences.
+	 * @param optimisation The result of the optimisation test of the element,
+	 * 		or null.
+	 * @param positions The positions of the occurences of the element, or
+	 * 		null if they are not indexed.
+	 * @param savings The estimated savings of the optimisation of the
+	 * 		element, or null.
+	 */
+	public Entry(String element, int occurences, int error, Optimisation optimisation, List<Position> positions, Savings savings)
+	{
+		this(element, occurences, error, optimisation, positions);
+		this.savings = savings;
+	}
+
+	/**
+	 * Construct
+	 *
+	 * @param element The element.
+	 * @param occurences The number of occurences of the element.
+	 * @param error The maximum overestimation of the number of occurences.
+	 * @param optimisation The result of the optimisation test of the element,
+	 * 		or null.
+	 * @param positions The positions of the occurences of the element, or
+	 * 		null if they are not indexed.
+	 * @param savings The estimated savings of the optimisation of the
+	 * 		element, or null.
+	 * @param files The names of the files containing the element, or null.
+	 */
+	public Entry(String element, int occurences, int error, Optimisation optimisation, List<Position> positions, Savings savings, List<String> files)
+	{
+		this(element, occurences, error, optimisation, positions, savings);
+		this.files = files;
+	}
+
+	/**
+	 * Construct
+	 *
+	 * @param element The element.
+	 * @param occurences The number of occurences of the element.
+	 * @param error The maximum overestimation of the number of occurences.
+	 * @param optimisation The result of the optimisation test of the element,
+	 * 		or null.
+	 * @param positions The positions of the occurences of the element, or
+	 * 		null if they are not indexed.
+	 * @param savings The estimated savings of the optimisation of the
+	 * 		element, or null.
+	 * @param files The names of the files containing the element, or null.
+	 * @param hazard The performance hazard of the element, or null.
+	 */
+	public Entry(String element, int occurences, int error, Optimisation optimisation, List<Position> positions, Savings savings, List<String> files, String hazard)
+	{
+		this(element, occurences, error, optimisation, positions, savings, files);
+		this.hazard = hazard;
+	}
+
+	/**
+	 * @return the element.
+	 */
+	public String getElement()
+	{
+		return this.element;
+	}
+
+	/**
+	 * @return the number of occurences of the element.
+	 */
+	public int getOccurences()
+	{
+		return this.occurences;
+	}
+
+	/**
+	 * @return the maximum overestimation of the number of occurences.
+	 */
+	public int getError()
+	{
+		return this.error;
+	}
+
+	/**
+	 * @return the result of the optimisation test of the element, or null.
+	 */
+	public Optimisation getOptimisation()
+	{
+		return this.optimisation;
+	}
+
+	/**
+	 * @return the positions of the occurences of the element, in the order of
+	 * 		the code, or null if they are not indexed.
+	 */
+	public List<Position> getPositions()
+	{
+		return this.positions;
+	}
+
+	/**
+	 * @return the estimated savings of the optimisation of the element, or
+	 * 		null.
+	 */
+	public Savings getSavings()
+	{
+		return this.savings;
+	}
+
+	/**
+	 * @return the names of the files containing the element, or null if the
+	 * 		element is not searched in several files.
+	 */
+	public List<String> getFiles()
+	{
+		return this.files;
+	}
+
+	/**
+	 * @return the performance hazard of the element, such as the
+	 * 		catastrophic backtracking of a regex, or null.
+	 */
+	public String getHazard()
+	{
+		return this.hazard;
+	}
+}
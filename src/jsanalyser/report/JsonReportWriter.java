@@ -0,0 +1,183 @@
+package jsanalyser.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writer of the reports in JSON, one report per line (JSON Lines).
+ * <p>
+ * Each report is an object such as:
+ * </p>
+ * <pre>
+ * {"title": "Report", "sections": [{"name": "strings", "entries": [
+ *     {"element": "foo", "occurences": 2, "error": 0, "optimisation": "non_optimisable"}
+ * ]}]}
+ * </pre>
+ * <p>
+ * The optimisation is null for the elements which are not tested. If the
+ * positions of the occurences are indexed, each entry also has a "positions"
+ * array of [line, column] arrays. The entries whose savings are estimated
+ * have a "savings" object, such as {"bytes": 24, "lookups": 6}, with the
+ * bytes saved in the gzipped code if they are estimated, such as
+ * {"bytes": 24, "lookups": 0, "gzip_bytes": 3}. The elements searched in
+ * several files have a "files" array of the names of the files containing
+ * them, and the elements with a performance hazard have a "hazard" string
+ * describing it.
+ * </p>
+ */
+public class JsonReportWriter extends ReportWriter
+{
+	/**
+	 * Construct
+	 *
+	 * @param out The writer the reports are written in.
+	 */
+	public JsonReportWriter(Writer out)
+	{
+		super(out);
+	}
+
+	/**
+	 * Writes a report as a JSON object on a single line.
+	 *
+	 * @param report The report to write.
+	 * @throws IOException if the report cannot be written.
+	 */
+	protected void writeReport(Report report) throws IOException
+	{
+		this.out.write("{\"title\":");
+		this.writeString(report.getTitle());
+		this.out.write(",\"sections\":[");
+		boolean firstSection = true;
+		for (Section section : report.getSections()) {
+			if (!firstSection) {
+				this.out.write(',');
+			}
+			firstSection = false;
+
+			this.out.write("{\"name\":");
+			this.writeString(section.getName());
+			this.out.write(",\"entries\":[");
+			boolean firstEntry = true;
+			for (Entry entry : section.getEntries()) {
+				if (!firstEntry) {
+					this.out.write(',');
+				}
+				firstEntry = false;
+
+				this.out.write("{\"element\":");
+				this.writeString(entry.getElement());
+				this.out.write(",\"occurences\":");
+				this.out.write(Integer.toString(entry.getOccurences()));
+				this.out.write(",\"error\":");
+				this.out.write(Integer.toString(entry.getError()));
+				this.out.write(",\"optimisation\":");
+				if (entry.getOptimisation() == null) {
+					this.out.write("null");
+				}
+				else {
+					this.writeString(entry.getOptimisation().getKey());
+				}
+				if (entry.getSavings() != null) {
+					this.out.write(",\"savings\":{\"bytes\":");
+					this.out.write(Long.toString(entry.getSavings().getBytes()));
+					this.out.write(",\"lookups\":");
+					this.out.write(Long.toString(entry.getSavings().getLookups()));
+					if (entry.getSavings().getCompressedBytes() != null) {
+						this.out.write(",\"gzip_bytes\":");
+						this.out.write(entry.getSavings().getCompressedBytes().toString());
+					}
+					this.out.write('}');
+				}
+				if (entry.getHazard() != null) {
+					this.out.write(",\"hazard\":");
+					this.writeString(entry.getHazard());
+				}
+				if (entry.getFiles() != null) {
+					this.out.write(",\"files\":[");
+					for (int i = 0; i < entry.getFiles().size(); i++) {
+						if (i > 0) {
+							this.out.write(',');
+						}
+						this.writeString(entry.getFiles().get(i));
+					}
+					this.out.write(']');
+				}
+				if (entry.getPositions() != null) {
+					this.writePositions(entry.getPositions());
+				}
+				this.out.write('}');
+			}
+			this.out.write("]}");
+		}
+		this.out.write("]}\n");
+	}
+
+	/**
+	 * Writes the "positions" member of an entry.
+	 *
+	 * @param positions The positions of the occurences of the entry.
+	 * @throws IOException if the positions cannot be written.
+	 */
+	protected void writePositions(List<Position> positions) throws IOException
+	{
+		this.out.write(",\"positions\":[");
+		for (int i = 0; i < positions.size(); i++) {
+			if (i > 0) {
+				this.out.write(',');
+			}
+			this.out.write('[');
+			this.out.write(Long.toString(positions.get(i).getLine()));
+			this.out.write(',');
+			this.out.write(Long.toString(positions.get(i).getColumn()));
+			this.out.write(']');
+		}
+		this.out.write(']');
+	}
+
+	/**
+	 * Writes a JSON string, escaping the quotes, the backslashes and the
+	 * control chars.
+	 *
+	 * @param string The string to write.
+	 * @throws IOException if the string cannot be written.
+	 */
+	protected void writeString(String string) throws IOException
+	{
+		int length = string.length(),
+			start = 0;
+
+		this.out.write('"');
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+
+			this.out.write(string, start, i - start);
+			start = i + 1;
+			switch (c) {
+				case '"':
+					this.out.write("\\\"");
+					break;
+				case '\\':
+					this.out.write("\\\\");
+					break;
+				case '\n':
+					this.out.write("\\n");
+					break;
+				case '\r':
+					this.out.write("\\r");
+					break;
+				case '\t':
+					this.out.write("\\t");
+					break;
+				default:
+					this.out.write(String.format("\\u%04x", (int) c));
+			}
+		}
+		this.out.write(string, start, length - start);
+		this.out.write('"');
+	}
+}
@@ -0,0 +1,61 @@
+package jsanalyser.report;
+
+/**
+ * Result of the optimisation test of an element.
+ */
+public enum Optimisation
+{
+	/**
+	 * The element can be stored in a new variable to shorten the code.
+	 */
+	OPTIMISABLE("optimisable", "Optimisable"),
+
+	/**
+	 * The element can be stored in an existing variable declaration to
+	 * shorten the code.
+	 */
+	OPTIMISABLE_WITH_EXISTING_VAR("optimisable_with_existing_var", "Optimisable with existing var"),
+
+	/**
+	 * Storing the element in a variable would not shorten the code.
+	 */
+	NON_OPTIMISABLE("non_optimisable", "Non optimisable");
+
+	/**
+	 * Identifier of the result in the structured reports.
+	 */
+	protected final String key;
+
+	/**
+	 * Label of the result in the text reports.
+	 */
+	protected final String label;
+
+	/**
+	 * Construct
+	 *
+	 * @param key Identifier of the result in the structured reports.
+	 * @param label Label of the result in the text reports.
+	 */
+	Optimisation(String key, String label)
+	{
+		this.key = key;
+		this.label = label;
+	}
+
+	/**
+	 * @return the identifier of the result in the structured reports.
+	 */
+	public String getKey()
+	{
+		return this.key;
+	}
+
+	/**
+	 * @return the label of the result in the text reports.
+	 */
+	public String getLabel()
+	{
+		return this.label;
+	}
+}
@@ -0,0 +1,53 @@
+package jsanalyser.report;
+
+/**
+ * Position of an occurence of an element in the analysed code.
+ */
+public class Position
+{
+	/**
+	 * Line of the occurence, from 1.
+	 */
+	protected long line;
+
+	/**
+	 * Column of the occurence's first char in its line, from 1.
+	 */
+	protected long column;
+
+	/**
+	 * Construct
+	 *
+	 * @param line The line of the occurence, from 1.
+	 * @param column The column of the occurence's first char, from 1.
+	 */
+	public Position(long line, long column)
+	{
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * @return the line of the occurence, from 1.
+	 */
+	public long getLine()
+	{
+		return this.line;
+	}
+
+	/**
+	 * @return the column of the occurence's first char in its line, from 1.
+	 */
+	public long getColumn()
+	{
+		return this.column;
+	}
+
+	/**
+	 * @return the position as "line:column".
+	 */
+	public String toString()
+	{
+		return this.line + ":" + this.column;
+	}
+}
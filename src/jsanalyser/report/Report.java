@@ -0,0 +1,51 @@
+package jsanalyser.report;
+
+import java.util.List;
+
+/**
+ * Report of an analyse, containing a section per analyser.
+ * <p>
+ * The report is built by the parser (see {@link jsanalyser.Parser#report})
+ * and written in a format by a {@link ReportWriter}.
+ * </p>
+ */
+public class Report
+{
+	/**
+	 * Title of the report.
+	 */
+	protected String title;
+
+	/**
+	 * Sections of the report.
+	 */
+	protected List<Section> sections;
+
+	/**
+	 * Construct
+	 *
+	 * @param title The title of the report.
+	 * @param sections The sections of the report.
+	 */
+	public Report(String title, List<Section> sections)
+	{
+		this.title = title;
+		this.sections = sections;
+	}
+
+	/**
+	 * @return the title of the report.
+	 */
+	public String getTitle()
+	{
+		return this.title;
+	}
+
+	/**
+	 * @return the sections of the report.
+	 */
+	public List<Section> getSections()
+	{
+		return this.sections;
+	}
+}
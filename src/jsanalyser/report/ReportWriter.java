@@ -0,0 +1,88 @@
+package jsanalyser.report;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer of reports in a given format.
+ * <p>
+ * All the reports of a run are written in the same writer, which should be
+ * buffered: the elements are written piece by piece, without intermediate
+ * strings.
+ * </p>
+ */
+public abstract class ReportWriter implements Flushable
+{
+	/**
+	 * Writer the reports are written in.
+	 */
+	protected Writer out;
+
+	/**
+	 * Number of reports written.
+	 */
+	protected int nbReports;
+
+	/**
+	 * Construct
+	 *
+	 * @param out The writer the reports are written in.
+	 */
+	public ReportWriter(Writer out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Creates the writer of a format.
+	 *
+	 * @param format The format of the reports: "text", "json" or "csv".
+	 * @param out The writer the reports are written in.
+	 * @return the report writer.
+	 * @throws IllegalArgumentException if the format is unknown.
+	 */
+	public static ReportWriter create(String format, Writer out)
+	{
+		switch (format) {
+			case "text":
+				return new TextReportWriter(out, true);
+			case "json":
+				return new JsonReportWriter(out);
+			case "csv":
+				return new CsvReportWriter(out);
+			default:
+				throw new IllegalArgumentException("Unknown report format: " + format);
+		}
+	}
+
+	/**
+	 * Writes a report.
+	 *
+	 * @param report The report to write.
+	 * @throws IOException if the report cannot be written.
+	 */
+	public void write(Report report) throws IOException
+	{
+		this.writeReport(report);
+		this.nbReports++;
+	}
+
+	/**
+	 * Writes a report in the writer's format.
+	 *
+	 * @param report The report to write.
+	 * @throws IOException if the report cannot be written.
+	 */
+	protected abstract void writeReport(Report report) throws IOException;
+
+	/**
+	 * Flushes the written reports.
+	 *
+	 * @throws IOException if the reports cannot be written.
+	 */
+	public void flush() throws IOException
+	{
+		this.out.flush();
+	}
+}
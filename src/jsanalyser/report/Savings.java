@@ -0,0 +1,75 @@
+package jsanalyser.report;
+
+/**
+ * Estimated savings of the optimisation of an element.
+ */
+public class Savings
+{
+	/**
+	 * Number of bytes saved in the code.
+	 */
+	protected long bytes;
+
+	/**
+	 * Number of property lookups saved at runtime.
+	 */
+	protected long lookups;
+
+	/**
+	 * Number of bytes saved in the code compressed with gzip, null if it is
+	 * not estimated. Negative if the compressed code is larger.
+	 */
+	protected Long compressedBytes;
+
+	/**
+	 * Construct
+	 *
+	 * @param bytes The number of bytes saved in the code.
+	 * @param lookups The number of property lookups saved at runtime.
+	 */
+	public Savings(long bytes, long lookups)
+	{
+		this.bytes = bytes;
+		this.lookups = lookups;
+	}
+
+	/**
+	 * Construct
+	 *
+	 * @param bytes The number of bytes saved in the code.
+	 * @param lookups The number of property lookups saved at runtime.
+	 * @param compressedBytes The number of bytes saved in the code compressed
+	 * 		with gzip.
+	 */
+	public Savings(long bytes, long lookups, long compressedBytes)
+	{
+		this(bytes, lookups);
+		this.compressedBytes = compressedBytes;
+	}
+
+	/**
+	 * @return the number of bytes saved in the code.
+	 */
+	public long getBytes()
+	{
+		return this.bytes;
+	}
+
+	/**
+	 * @return the number of property lookups saved at runtime.
+	 */
+	public long getLookups()
+	{
+		return this.lookups;
+	}
+
+	/**
+	 * @return the number of bytes saved in the code compressed with gzip,
+	 * 		negative if the compressed code is larger, null if it is not
+	 * 		estimated.
+	 */
+	public Long getCompressedBytes()
+	{
+		return this.compressedBytes;
+	}
+}
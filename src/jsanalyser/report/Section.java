@@ -0,0 +1,63 @@
+package jsanalyser.report;
+
+import java.util.List;
+
+/**
+ * Part of a report containing the elements of an analyser.
+ */
+public class Section
+{
+	/**
+	 * Identifier of the section, such as "strings".
+	 */
+	protected String name;
+
+	/**
+	 * Title of the section in the text reports.
+	 */
+	protected String title;
+
+	/**
+	 * Elements of the section, in the order they are reported.
+	 */
+	protected List<Entry> entries;
+
+	/**
+	 * Construct
+	 *
+	 * @param name The identifier of the section.
+	 * @param title The title of the section in the text reports.
+	 * @param entries The elements of the section, in the order they are
+	 * 		reported.
+	 */
+	public Section(String name, String title, List<Entry> entries)
+	{
+		this.name = name;
+		this.title = title;
+		this.entries = entries;
+	}
+
+	/**
+	 * @return the identifier of the section.
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+
+	/**
+	 * @return the title of the section in the text reports.
+	 */
+	public String getTitle()
+	{
+		return this.title;
+	}
+
+	/**
+	 * @return the elements of the section.
+	 */
+	public List<Entry> getEntries()
+	{
+		return this.entries;
+	}
+}
@@ -0,0 +1,131 @@
+package jsanalyser.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writer of the reports as text, for humans.
+ * <p>
+ * Each section starts with its title, followed by a line per element with its
+ * number of occurences, and the result of the optimisation test of the
+ * element on the next line, followed by the estimated savings of the
+ * optimisation, its performance hazard, the files containing it and the
+ * positions of its occurences if they are known. The reports are separated by an empty line.
+ * </p>
+ */
+public class TextReportWriter extends ReportWriter
+{
+	/**
+	 * If true, the non optimisable elements are indicated too.
+	 */
+	protected boolean verbose;
+
+	/**
+	 * Construct
+	 *
+	 * @param out The writer the reports are written in.
+	 * @param verbose If true, the non optimisable elements are indicated too.
+	 */
+	public TextReportWriter(Writer out, boolean verbose)
+	{
+		super(out);
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Writes a report as text.
+	 *
+	 * @param report The report to write.
+	 * @throws IOException if the report cannot be written.
+	 */
+	protected void writeReport(Report report) throws IOException
+	{
+		if (this.nbReports > 0) {
+			this.out.write('\n');
+		}
+		this.out.write(report.getTitle());
+		this.out.write('\n');
+		for (Section section : report.getSections()) {
+			this.writeSection(section);
+		}
+	}
+
+	/**
+	 * Writes a section, if it is not empty.
+	 *
+	 * @param section The section to write.
+	 * @throws IOException if the section cannot be written.
+	 */
+	public void writeSection(Section section) throws IOException
+	{
+		if (section.getEntries().isEmpty()) {
+			return;
+		}
+
+		this.out.write('\n');
+		this.out.write(section.getTitle());
+		this.out.write('\n');
+		for (Entry entry : section.getEntries()) {
+			this.out.write(entry.getElement());
+			this.out.write(": ");
+			this.out.write(Integer.toString(entry.getOccurences()));
+			this.out.write(" occurence(s)");
+			if (entry.getError() > 0) {
+				this.out.write(", at least ");
+				this.out.write(Integer.toString(entry.getOccurences() - entry.getError()));
+			}
+			this.out.write('\n');
+
+			Optimisation optimisation = entry.getOptimisation();
+			if (optimisation != null && (this.verbose || optimisation != Optimisation.NON_OPTIMISABLE)) {
+				this.out.write('\t');
+				this.out.write(optimisation.getLabel());
+				this.out.write('\n');
+			}
+
+			Savings savings = entry.getSavings();
+			if (savings != null) {
+				this.out.write("\tSaves ");
+				this.out.write(Long.toString(savings.getBytes()));
+				this.out.write(" byte(s)");
+				if (savings.getCompressedBytes() != null) {
+					this.out.write(", ");
+					this.out.write(savings.getCompressedBytes().toString());
+					this.out.write(" gzipped");
+				}
+				if (savings.getLookups() > 0) {
+					this.out.write(" and ");
+					this.out.write(Long.toString(savings.getLookups()));
+					this.out.write(" lookup(s)");
+				}
+				this.out.write('\n');
+			}
+
+			if (entry.getHazard() != null) {
+				this.out.write("\tHazard: ");
+				this.out.write(entry.getHazard());
+				this.out.write('\n');
+			}
+
+			List<String> files = entry.getFiles();
+			if (files != null) {
+				this.out.write("\tin ");
+				this.out.write(String.join(", ", files));
+				this.out.write('\n');
+			}
+
+			List<Position> positions = entry.getPositions();
+			if (positions != null && !positions.isEmpty()) {
+				this.out.write("\tat ");
+				for (int i = 0; i < positions.size(); i++) {
+					if (i > 0) {
+						this.out.write(", ");
+					}
+					this.out.write(positions.get(i).toString());
+				}
+				this.out.write('\n');
+			}
+		}
+	}
+}